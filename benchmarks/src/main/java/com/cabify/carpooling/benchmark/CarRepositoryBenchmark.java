@@ -0,0 +1,130 @@
+package com.cabify.carpooling.benchmark;
+
+import com.cabify.carpooling.model.Car;
+import com.cabify.carpooling.repository.CarRepository;
+import com.cabify.carpooling.repository.inmemory.InMemoryCarRepository;
+import com.cabify.carpooling.repository.inmemory.LockFreeCarRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot paths of the car stores (struct-of-arrays or lock-free) on a half-occupied fleet, on one
+ * thread. Run {@link #main} for the retained heap of a large fleet in each store.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CarRepositoryBenchmark {
+
+    @Param({"1000", "100000"})
+    public int cars;
+
+    @Param({"UNIFORM", "SMALL", "LARGE"})
+    public GroupSizes groupSizes;
+
+    @Param({"arrays", "lock-free"})
+    public String store;
+
+    private CarRepository repository;
+    private final SplittableRandom random = new SplittableRandom(1);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        repository = newStore(store);
+        repository.replaceAll(fleet(cars));
+
+        // Half-fill the fleet so every seat bucket is populated
+        for (int carId = 1; carId <= cars; carId += 2) {
+            repository.tryReserveSeats(carId, groupSizes.next(random) % 4 + 1);
+        }
+    }
+
+    @Benchmark
+    public Integer findAndReserveThenRelease() {
+        int people = groupSizes.next(random);
+        Integer carId = repository.findAndReserveCar(people);
+
+        if (carId != null) {
+            repository.releaseSeats(carId, people);
+        }
+        return carId;
+    }
+
+    @Benchmark
+    public boolean tryReserveThenRelease() {
+        int people = groupSizes.next(random);
+        int carId = 1 + random.nextInt(cars);
+        boolean reserved = repository.tryReserveSeats(carId, people);
+
+        if (reserved) {
+            repository.releaseSeats(carId, people);
+        }
+        return reserved;
+    }
+
+    /**
+     * Create an empty car store: "arrays" or "lock-free".
+     */
+    static CarRepository newStore(String store) {
+        switch (store) {
+            case "arrays":
+                return new InMemoryCarRepository();
+            case "lock-free":
+                return new LockFreeCarRepository();
+            default:
+                throw new IllegalArgumentException("Unknown car store: " + store);
+        }
+    }
+
+    static List<Car> fleet(int size) {
+        List<Car> cars = new ArrayList<>(size);
+        for (int id = 1; id <= size; id++) {
+            cars.add(new Car(id, 4 + id % 3));
+        }
+        return cars;
+    }
+
+    /**
+     * Print the heap retained by a fleet of 5M cars (or the first argument) in each store.
+     */
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        List<Car> cars = fleet(size);
+
+        for (String store : new String[]{"arrays", "lock-free"}) {
+            long before = usedHeapAfterGc();
+            CarRepository repository = newStore(store);
+            repository.replaceAll(cars);
+            long retained = usedHeapAfterGc() - before;
+
+            System.out.printf("store=%s cars=%d retained=%,d bytes (%.1f bytes/car), sample=%s%n",
+                    store, size, retained, retained / (double) size, repository.getAvailableSeats(size));
+        }
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
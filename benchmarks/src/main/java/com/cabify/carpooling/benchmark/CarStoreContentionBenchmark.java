@@ -0,0 +1,109 @@
+package com.cabify.carpooling.benchmark;
+
+import com.cabify.carpooling.repository.CarRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Seat reservations and releases from several threads on one shared car store, synchronized
+ * (arrays) against lock-free. Run {@link #main} to measure the scaling curve from 1 to N threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CarStoreContentionBenchmark {
+
+    // Reservations each thread holds, so the fleet stays partly occupied
+    private static final int HELD = 64;
+
+    @Param({"arrays", "lock-free"})
+    public String store;
+
+    @Param({"10000"})
+    public int cars;
+
+    private CarRepository repository;
+
+    @State(Scope.Thread)
+    public static class Worker {
+        private final SplittableRandom random = new SplittableRandom();
+        private final int[] carIds = new int[HELD];
+        private final int[] people = new int[HELD];
+        private int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        repository = CarRepositoryBenchmark.newStore(store);
+        repository.replaceAll(CarRepositoryBenchmark.fleet(cars));
+    }
+
+    /**
+     * Give back the thread's oldest reservation, if any, and take a new one for a random group.
+     */
+    @Benchmark
+    public Integer reserveAndRelease(Worker worker) {
+        int slot = worker.next++ % HELD;
+        if (worker.people[slot] > 0) {
+            repository.releaseSeats(worker.carIds[slot], worker.people[slot]);
+        }
+
+        int people = 1 + worker.random.nextInt(6);
+        Integer carId = repository.findAndReserveCar(people);
+        worker.carIds[slot] = carId != null ? carId : 0;
+        worker.people[slot] = carId != null ? people : 0;
+
+        return carId;
+    }
+
+    /**
+     * Run the benchmark with 1, 2, 4, ... threads (up to the first argument, or the number of
+     * available processors) and print the throughput of each store.
+     */
+    public static void main(String[] args) throws RunnerException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        List<String> rows = new ArrayList<>();
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            Options options = new OptionsBuilder()
+                    .include(CarStoreContentionBenchmark.class.getName())
+                    .threads(threads)
+                    .build();
+
+            Collection<RunResult> results = new Runner(options).run();
+
+            for (RunResult result : results) {
+                rows.add(String.format("%-10s threads=%-3d %10.2f ops/us",
+                        result.getParams().getParam("store"), threads, result.getPrimaryResult().getScore()));
+            }
+        }
+
+        System.out.println();
+        System.out.println("Car store contention (release + findAndReserveCar per op)");
+        rows.forEach(System.out::println);
+    }
+}
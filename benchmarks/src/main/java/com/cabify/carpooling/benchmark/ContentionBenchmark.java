@@ -0,0 +1,170 @@
+package com.cabify.carpooling.benchmark;
+
+import com.cabify.carpooling.service.CarPoolingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.util.Statistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Mixed locate / dropoff+journey workload on a shared service, for contention scaling.
+ * Each thread owns a slice of the groups, so writers never drop off each other's groups.
+ * Run {@link #main} for throughput and p50/p99/p99.9 latency at 1 to 32 threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContentionBenchmark {
+
+    @Param({"locking", "single-writer", "striped", "combining", "sharded", "copy-on-write"})
+    public String engine;
+
+    // Share of operations that are locates; the rest are a dropoff followed by a new journey
+    @Param({"50", "90", "99"})
+    public int readPercent;
+
+    @Param({"10000"})
+    public int cars;
+
+    private ServiceFixture fixture;
+    private CarPoolingService service;
+    private final AtomicInteger nextGroupId = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class Worker {
+        private final SplittableRandom random = new SplittableRandom();
+
+        // This thread's active group IDs, as a ring starting at head
+        private int[] groups;
+        private int head;
+
+        @Setup(Level.Trial)
+        public void setUp(ContentionBenchmark benchmark, BenchmarkParams params) {
+            // Twice as many groups as cars across all threads: both journeys and the queue are busy
+            groups = new int[Math.max(1, benchmark.cars * 2 / params.getThreads())];
+
+            for (int i = 0; i < groups.length; i++) {
+                groups[i] = benchmark.nextGroupId.incrementAndGet();
+                benchmark.service.requestJourney(groups[i], ServiceFixture.peopleFor(groups[i]));
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = ServiceFixture.create(engine);
+        service = fixture.service();
+        fixture.loadFleet(cars);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fixture.close();
+    }
+
+    @Benchmark
+    public Object mixed(Worker worker) {
+        if (worker.random.nextInt(100) < readPercent) {
+            return service.locate(worker.groups[worker.random.nextInt(worker.groups.length)]);
+        }
+
+        service.dropoff(worker.groups[worker.head]);
+
+        int groupId = nextGroupId.incrementAndGet();
+        service.requestJourney(groupId, ServiceFixture.peopleFor(groupId));
+
+        worker.groups[worker.head] = groupId;
+        worker.head = (worker.head + 1) % worker.groups.length;
+
+        return groupId;
+    }
+
+    /**
+     * Run the workload at 1, 2, 4, ... threads (up to the first argument, default 32) and print
+     * throughput and latency percentiles per engine, read ratio and thread count. Any further
+     * arguments are passed through as extra JMH options, e.g. {@code -p readPercent=90}.
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        CommandLineOptions extraOptions = new CommandLineOptions(
+                args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : new String[0]);
+        List<String> rows = new ArrayList<>();
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            Options options = new OptionsBuilder()
+                    .parent(extraOptions)
+                    .include(ContentionBenchmark.class.getName())
+                    .mode(Mode.Throughput)
+                    .mode(Mode.SampleTime)
+                    .threads(threads)
+                    .build();
+
+            Collection<RunResult> results = new Runner(options).run();
+
+            for (RunResult throughput : results) {
+                if (throughput.getParams().getMode() != Mode.Throughput) {
+                    continue;
+                }
+
+                Statistics latency = sampleTimeFor(results, throughput);
+                rows.add(String.format(
+                        "%-14s read=%2s%% threads=%-3d %10.1f ops/ms  p50=%8.2f us  p99=%8.2f us  p99.9=%9.2f us",
+                        throughput.getParams().getParam("engine"),
+                        throughput.getParams().getParam("readPercent"),
+                        threads,
+                        throughput.getPrimaryResult().getScore() * 1000,
+                        latency.getPercentile(50),
+                        latency.getPercentile(99),
+                        latency.getPercentile(99.9)));
+            }
+        }
+
+        System.out.println();
+        System.out.println("CarPoolingService contention scaling (throughput, sampled latency)");
+        rows.forEach(System.out::println);
+    }
+
+    private static Statistics sampleTimeFor(Collection<RunResult> results, RunResult throughput) {
+        for (RunResult result : results) {
+            if (result.getParams().getMode() == Mode.SampleTime
+                    && sameParam(result, throughput, "engine")
+                    && sameParam(result, throughput, "readPercent")) {
+                return result.getPrimaryResult().getStatistics();
+            }
+        }
+        throw new IllegalStateException("No latency samples for " + throughput.getParams());
+    }
+
+    private static boolean sameParam(RunResult a, RunResult b, String name) {
+        return a.getParams().getParam(name).equals(b.getParams().getParam(name));
+    }
+}
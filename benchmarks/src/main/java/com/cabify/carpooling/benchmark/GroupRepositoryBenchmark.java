@@ -0,0 +1,85 @@
+package com.cabify.carpooling.benchmark;
+
+import com.cabify.carpooling.repository.inmemory.InMemoryGroupRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waiting queue operations at a steady queue depth: the oldest group leaves as a new one
+ * arrives, so the queue keeps its size across iterations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GroupRepositoryBenchmark {
+
+    @Param({"100", "10000"})
+    public int queueDepth;
+
+    @Param({"UNIFORM", "SMALL", "LARGE"})
+    public GroupSizes groupSizes;
+
+    private InMemoryGroupRepository repository;
+    private final SplittableRandom random = new SplittableRandom(1);
+
+    // Waiting group IDs in arrival order, as a ring starting at head
+    private int[] waiting;
+    private int head;
+    private int nextGroupId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        repository = new InMemoryGroupRepository();
+        waiting = new int[queueDepth];
+
+        for (int i = 0; i < queueDepth; i++) {
+            int size = groupSizes.next(random);
+            waiting[i] = ++nextGroupId;
+            repository.save(waiting[i], size);
+            repository.enqueue(waiting[i], size);
+        }
+    }
+
+    @Benchmark
+    public int dequeueThenEnqueue() {
+        repository.dequeue(waiting[head]);
+        repository.remove(waiting[head]);
+
+        int groupId = ++nextGroupId;
+        int size = groupSizes.next(random);
+        repository.save(groupId, size);
+        repository.enqueue(groupId, size);
+
+        waiting[head] = groupId;
+        head = (head + 1) % queueDepth;
+
+        return groupId;
+    }
+
+    @Benchmark
+    public Integer findOldestWaitingGroup() {
+        return repository.findOldestWaitingGroup(1 + random.nextInt(6));
+    }
+
+    @Benchmark
+    public LinkedHashMap<Integer, Integer> getWaitingQueue() {
+        return repository.getWaitingQueue();
+    }
+}
@@ -0,0 +1,42 @@
+package com.cabify.carpooling.benchmark;
+
+import java.util.SplittableRandom;
+
+/**
+ * Group-size distributions used as a benchmark parameter.
+ */
+public enum GroupSizes {
+
+    /** Every size from 1 to 6 equally likely. */
+    UNIFORM(1, 1, 1, 1, 1, 1),
+
+    /** Mostly singles and pairs, as in off-peak city traffic. */
+    SMALL(40, 30, 15, 10, 3, 2),
+
+    /** Mostly full cars, the hardest case for the waiting queue. */
+    LARGE(2, 3, 10, 15, 30, 40);
+
+    // Cumulative weights for sizes 1 to 6
+    private final int[] cumulative = new int[6];
+
+    GroupSizes(int... weights) {
+        int total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            total += weights[i];
+            cumulative[i] = total;
+        }
+    }
+
+    /**
+     * Draw a group size between 1 and 6.
+     */
+    public int next(SplittableRandom random) {
+        int draw = random.nextInt(cumulative[cumulative.length - 1]);
+
+        int size = 0;
+        while (draw >= cumulative[size]) {
+            size++;
+        }
+        return size + 1;
+    }
+}
@@ -0,0 +1,33 @@
+package com.cabify.carpooling.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the repository and service benchmarks with the GC profiler, so every result comes
+ * with its allocation rate and bytes/op. The first argument, if any, narrows the run to
+ * benchmarks matching that regular expression.
+ */
+public final class HotPathBenchmarks {
+
+    private HotPathBenchmarks() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        OptionsBuilder options = new OptionsBuilder();
+
+        if (args.length > 0) {
+            options.include(args[0]);
+        } else {
+            options.include(CarRepositoryBenchmark.class.getSimpleName())
+                    .include(GroupRepositoryBenchmark.class.getSimpleName())
+                    .include(ServiceBenchmark.class.getSimpleName());
+        }
+
+        Options built = options.addProfiler(GCProfiler.class).build();
+        new Runner(built).run();
+    }
+}
@@ -0,0 +1,122 @@
+package com.cabify.carpooling.benchmark;
+
+import com.cabify.carpooling.collection.IntIntHashMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group table comparison at 1M groups: the primitive {@link IntIntHashMap} against the
+ * {@code ConcurrentHashMap<Integer, Integer>} it replaced. Run with {@code -prof gc} to
+ * see the boxing allocations per operation. Run {@link #main} for the retained heap.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IntMapBenchmark {
+
+    @Param({"primitive", "concurrent"})
+    public String map;
+
+    @Param({"1000000"})
+    public int groups;
+
+    private IntIntHashMap primitive;
+    private Map<Integer, Integer> concurrent;
+    private final SplittableRandom random = new SplittableRandom(1);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("primitive".equals(map)) {
+            primitive = fillPrimitive(groups);
+        } else {
+            concurrent = fillConcurrent(groups);
+        }
+    }
+
+    @Benchmark
+    public int get() {
+        int groupId = 1 + random.nextInt(groups);
+
+        if (primitive != null) {
+            return primitive.get(groupId);
+        }
+        return concurrent.get(groupId);
+    }
+
+    @Benchmark
+    public int removeAndPut() {
+        int groupId = 1 + random.nextInt(groups);
+
+        if (primitive != null) {
+            int people = primitive.remove(groupId);
+            primitive.put(groupId, people);
+            return people;
+        }
+        int people = concurrent.remove(groupId);
+        concurrent.put(groupId, people);
+        return people;
+    }
+
+    private static IntIntHashMap fillPrimitive(int size) {
+        IntIntHashMap map = new IntIntHashMap(0, 0);
+        for (int groupId = 1; groupId <= size; groupId++) {
+            map.put(groupId, ServiceFixture.peopleFor(groupId));
+        }
+        return map;
+    }
+
+    private static Map<Integer, Integer> fillConcurrent(int size) {
+        Map<Integer, Integer> map = new ConcurrentHashMap<>();
+        for (int groupId = 1; groupId <= size; groupId++) {
+            map.put(groupId, ServiceFixture.peopleFor(groupId));
+        }
+        return map;
+    }
+
+    /**
+     * Print the heap retained by each map holding 1M groups (or the first argument).
+     */
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        long before = usedHeapAfterGc();
+        IntIntHashMap primitive = fillPrimitive(size);
+        long primitiveBytes = usedHeapAfterGc() - before;
+
+        before = usedHeapAfterGc();
+        Map<Integer, Integer> concurrent = fillConcurrent(size);
+        long concurrentBytes = usedHeapAfterGc() - before;
+
+        System.out.printf("entries=%d%n", size);
+        System.out.printf("IntIntHashMap      retained=%,d bytes (%.1f bytes/entry), size=%d%n",
+                primitiveBytes, primitiveBytes / (double) size, primitive.size());
+        System.out.printf("ConcurrentHashMap  retained=%,d bytes (%.1f bytes/entry), size=%d%n",
+                concurrentBytes, concurrentBytes / (double) size, concurrent.size());
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
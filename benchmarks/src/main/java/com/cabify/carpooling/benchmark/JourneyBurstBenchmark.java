@@ -0,0 +1,97 @@
+package com.cabify.carpooling.benchmark;
+
+import com.cabify.carpooling.engine.CombiningEngine;
+import com.cabify.carpooling.service.CarPoolingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bursts of concurrent journey requests: each invocation releases {@code burst} requests from as
+ * many threads at once and waits for all of them, under one lock acquisition per request or
+ * flat combining. The combining run also prints its lock acquisitions per request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JourneyBurstBenchmark {
+
+    @Param({"locking", "combining"})
+    public String engine;
+
+    @Param({"500"})
+    public int burst;
+
+    @Param({"10000"})
+    public int cars;
+
+    private ServiceFixture fixture;
+    private CarPoolingService service;
+    private ExecutorService threads;
+    private int nextGroupId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = ServiceFixture.create(engine);
+        service = fixture.service();
+        threads = Executors.newFixedThreadPool(burst);
+    }
+
+    @Setup(Level.Iteration)
+    public void loadFleet() {
+        // Start every iteration from an empty fleet, so later bursts are not all queued
+        fixture.loadFleet(cars);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (fixture.engine() instanceof CombiningEngine) {
+            CombiningEngine combining = (CombiningEngine) fixture.engine();
+            System.out.printf("%nLock acquisitions per request: %.3f%n",
+                    combining.lockAcquisitions() / (double) combining.requests());
+        }
+        threads.shutdownNow();
+        fixture.close();
+    }
+
+    @Benchmark
+    public void burst() throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(burst);
+
+        for (int i = 0; i < burst; i++) {
+            int groupId = ++nextGroupId;
+            threads.execute(() -> {
+                try {
+                    start.await();
+                    service.requestJourney(groupId, ServiceFixture.peopleFor(groupId));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+
+        start.countDown();
+        done.await();
+    }
+}
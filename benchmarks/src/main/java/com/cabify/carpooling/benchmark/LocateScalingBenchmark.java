@@ -0,0 +1,130 @@
+package com.cabify.carpooling.benchmark;
+
+import com.cabify.carpooling.exception.GroupNotFoundException;
+import com.cabify.carpooling.model.Car;
+import com.cabify.carpooling.service.CarPoolingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Locate throughput while one writer keeps dropping off and re-requesting journeys.
+ * Run {@link #main} to measure the scaling curve from 1 to N locate threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Group)
+public class LocateScalingBenchmark {
+
+    @Param({"locking", "single-writer", "copy-on-write"})
+    public String engine;
+
+    @Param({"100000"})
+    public int cars;
+
+    private ServiceFixture fixture;
+    private CarPoolingService service;
+    private int groups;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private final SplittableRandom random = new SplittableRandom();
+        private int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = ServiceFixture.create(engine);
+        service = fixture.service();
+        fixture.loadFleet(cars);
+
+        // Twice as many groups as cars, so both journeys and the waiting queue are populated
+        groups = cars * 2;
+        for (int groupId = 1; groupId <= groups; groupId++) {
+            service.requestJourney(groupId, ServiceFixture.peopleFor(groupId));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fixture.close();
+    }
+
+    @Benchmark
+    @Group("locateWhileWriting")
+    @GroupThreads(1)
+    public void write(Cursor cursor) {
+        int groupId = 1 + cursor.next++ % groups;
+
+        service.dropoff(groupId);
+        service.requestJourney(groupId, ServiceFixture.peopleFor(groupId));
+    }
+
+    @Benchmark
+    @Group("locateWhileWriting")
+    @GroupThreads(4)
+    public Car locate(Cursor cursor) {
+        try {
+            return service.locate(1 + cursor.random.nextInt(groups));
+        } catch (GroupNotFoundException e) {
+            // The writer is between the dropoff and the new request of this group
+            return null;
+        }
+    }
+
+    /**
+     * Run the benchmark with 1, 2, 4, ... locate threads (up to the first argument, or the
+     * number of available processors) next to one writer, and print the locate scaling curve.
+     */
+    public static void main(String[] args) throws RunnerException {
+        int maxReaders = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        List<String> rows = new ArrayList<>();
+
+        for (int readers = 1; readers <= maxReaders; readers *= 2) {
+            Options options = new OptionsBuilder()
+                    .include(LocateScalingBenchmark.class.getName())
+                    // Thread groups follow the alphabetical order of the methods: locate, write
+                    .threadGroups(readers, 1)
+                    .build();
+
+            Collection<RunResult> results = new Runner(options).run();
+
+            for (RunResult result : results) {
+                rows.add(String.format("%-14s readers=%-3d locate=%12.1f ops/ms  write=%10.1f ops/ms",
+                        result.getParams().getParam("engine"), readers,
+                        result.getSecondaryResults().get("locate").getScore(),
+                        result.getSecondaryResults().get("write").getScore()));
+            }
+        }
+
+        System.out.println();
+        System.out.println("Locate scaling (1 writer thread)");
+        rows.forEach(System.out::println);
+    }
+}
@@ -0,0 +1,149 @@
+package com.cabify.carpooling.benchmark;
+
+import com.cabify.carpooling.logging.HotPathLogger;
+import com.cabify.carpooling.model.Car;
+import com.cabify.carpooling.service.CarPoolingService;
+import com.cabify.carpooling.service.PoolRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dropoff/journey churn from several threads, either all on one pool or each thread on a pool
+ * of its own. Run {@link #main} to measure the scaling curve from 1 to N threads: with one pool
+ * per thread, threads never share an engine lock.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PoolScalingBenchmark {
+
+    private static final int MAX_THREADS = 256;
+
+    @Param({"locking", "single-writer"})
+    public String engine;
+
+    @Param({"shared", "per-thread"})
+    public String pools;
+
+    @Param({"10000"})
+    public int cars;
+
+    private final HotPathLogger hotPathLogger = new HotPathLogger(8192, 1);
+    private PoolRegistry registry;
+
+    @State(Scope.Thread)
+    public static class Worker {
+        private CarPoolingService service;
+        private int groups;
+        private int firstGroupId;
+        private long next;
+
+        @Setup(Level.Trial)
+        public void setUp(PoolScalingBenchmark benchmark, ThreadParams thread) {
+            boolean shared = "shared".equals(benchmark.pools);
+            service = benchmark.pool(shared ? "shared" : "pool-" + thread.getThreadIndex());
+
+            // Each thread cycles through its own range of group IDs, so shared-pool threads do not
+            // collide; sharing threads split the fleet so every pool is equally full
+            groups = shared ? benchmark.cars / thread.getThreadCount() : benchmark.cars;
+            firstGroupId = 1 + thread.getThreadIndex() * groups;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        registry = new PoolRegistry(new SimpleMeterRegistry(), hotPathLogger, engine, 1024, 64, MAX_THREADS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        registry.destroy();
+        hotPathLogger.destroy();
+    }
+
+    /**
+     * Request a journey for the next group of the thread's range, dropping it off first if it
+     * was requested on the previous lap; one group per car keeps the fleet about 70% full.
+     */
+    @Benchmark
+    public void churn(Worker worker) {
+        int groupId = worker.firstGroupId + (int) (worker.next % worker.groups);
+
+        if (worker.next >= worker.groups) {
+            worker.service.dropoff(groupId);
+        }
+        worker.service.requestJourney(groupId, ServiceFixture.peopleFor(groupId));
+        worker.next++;
+    }
+
+    /**
+     * Create and load a pool on first use; threads sharing a pool get the same one.
+     */
+    private synchronized CarPoolingService pool(String poolId) {
+        if (registry.poolIds().contains(poolId)) {
+            return registry.get(poolId);
+        }
+
+        CarPoolingService service = registry.getOrCreate(poolId);
+        List<Car> fleet = new ArrayList<>(cars);
+        for (int id = 1; id <= cars; id++) {
+            fleet.add(new Car(id, 4 + id % 3));
+        }
+        service.loadCars(fleet);
+        return service;
+    }
+
+    /**
+     * Run the benchmark with 1, 2, 4, ... threads (up to the first argument, or the number of
+     * available processors) and print the throughput of a shared pool against one pool per thread.
+     */
+    public static void main(String[] args) throws RunnerException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        List<String> rows = new ArrayList<>();
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            Options options = new OptionsBuilder()
+                    .include(PoolScalingBenchmark.class.getName())
+                    .threads(threads)
+                    .build();
+
+            Collection<RunResult> results = new Runner(options).run();
+
+            for (RunResult result : results) {
+                rows.add(String.format("%-14s %-11s threads=%-3d %12.1f ops/ms",
+                        result.getParams().getParam("engine"), result.getParams().getParam("pools"), threads,
+                        result.getPrimaryResult().getScore()));
+            }
+        }
+
+        System.out.println();
+        System.out.println("Pool scaling (dropoff + journey per op)");
+        rows.forEach(System.out::println);
+    }
+}
@@ -0,0 +1,130 @@
+package com.cabify.carpooling.benchmark;
+
+import com.cabify.carpooling.model.Car;
+import com.cabify.carpooling.raft.FileRaftStorage;
+import com.cabify.carpooling.raft.RaftServer;
+import com.cabify.carpooling.raft.RaftStorage;
+import com.cabify.carpooling.service.CarPoolingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Write latency through a Raft cluster on localhost: each operation is a journey request or a
+ * dropoff proposed on the leader and returned once a majority has stored it and the leader
+ * has applied it. {@code fsync=false} isolates the network and apply cost from the disk.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RaftCommitBenchmark {
+
+    @Param({"3", "5"})
+    public int nodes;
+
+    @Param({"true", "false"})
+    public boolean fsync;
+
+    private Path directory;
+    private final List<ServiceFixture> fixtures = new ArrayList<>();
+    private final List<RaftServer> servers = new ArrayList<>();
+    private CarPoolingService leader;
+    private int groupId;
+    private boolean travelling;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("raft-benchmark");
+        Map<Integer, InetSocketAddress> members = new LinkedHashMap<>();
+        for (int id = 1; id <= nodes; id++) {
+            members.put(id, new InetSocketAddress("localhost", freePort()));
+        }
+
+        for (int id = 1; id <= nodes; id++) {
+            int nodeId = id;
+            RaftStorage storage = new FileRaftStorage(directory.resolve("node-" + id), fsync);
+            RaftServer[] server = new RaftServer[1];
+            ServiceFixture fixture = ServiceFixture.createReplicated(fleet -> server[0] = new RaftServer(nodeId,
+                    members, storage, fleet::applyCommitted, 10, 30, 5, 5000));
+            server[0].start();
+            fixtures.add(fixture);
+            servers.add(server[0]);
+        }
+
+        leader = awaitLeader();
+        List<Car> cars = new ArrayList<>();
+        for (int id = 1; id <= 1000; id++) {
+            cars.add(new Car(id, 4 + id % 3));
+        }
+        leader.loadCars(cars);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        for (RaftServer server : servers) {
+            server.stop();
+        }
+        for (ServiceFixture fixture : fixtures) {
+            fixture.close();
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void commit() {
+        if (travelling) {
+            leader.dropoff(groupId);
+        } else {
+            groupId++;
+            leader.requestJourney(groupId, ServiceFixture.peopleFor(groupId));
+        }
+        travelling = !travelling;
+    }
+
+    private CarPoolingService awaitLeader() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            for (int i = 0; i < servers.size(); i++) {
+                if (servers.get(i).isLeader()) {
+                    return fixtures.get(i).service();
+                }
+            }
+            Thread.sleep(10);
+        }
+        throw new IllegalStateException("No Raft leader elected");
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
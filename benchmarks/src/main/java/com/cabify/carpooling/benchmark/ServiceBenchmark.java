@@ -0,0 +1,108 @@
+package com.cabify.carpooling.benchmark;
+
+import com.cabify.carpooling.model.Car;
+import com.cabify.carpooling.model.JourneyResult;
+import com.cabify.carpooling.service.CarPoolingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end service operations, single-threaded, at a steady state: each churn step drops
+ * off the oldest active group and requests a journey for a new one, so the number of
+ * groups on board and waiting stays about the same across iterations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ServiceBenchmark {
+
+    @Param({"locking", "single-writer", "striped", "combining", "sharded", "copy-on-write"})
+    public String engine;
+
+    @Param({"1000", "100000"})
+    public int cars;
+
+    // Waiting groups once the fleet is full; 0 leaves a fifth of the seats free instead
+    @Param({"0", "1000"})
+    public int queueDepth;
+
+    @Param({"UNIFORM", "SMALL", "LARGE"})
+    public GroupSizes groupSizes;
+
+    private ServiceFixture fixture;
+    private CarPoolingService service;
+    private final SplittableRandom random = new SplittableRandom(1);
+
+    // Active group IDs in arrival order, as a ring starting at head
+    private int[] active;
+    private int head;
+    private int nextGroupId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = ServiceFixture.create(engine);
+        service = fixture.service();
+        fixture.loadFleet(cars);
+
+        List<Integer> groups = new ArrayList<>();
+        int seatBudget = cars * 4;
+        int people = 0;
+        int queued = 0;
+
+        while (queueDepth > 0 ? queued < queueDepth : people < seatBudget) {
+            int groupId = ++nextGroupId;
+            int size = groupSizes.next(random);
+            JourneyResult result = service.requestJourneys(new int[] {groupId}, new int[] {size}).get(0);
+
+            groups.add(groupId);
+            people += size;
+            if (result.getStatus() == JourneyResult.Status.QUEUED) {
+                queued++;
+            }
+        }
+
+        active = groups.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fixture.close();
+    }
+
+    @Benchmark
+    public int dropoffThenRequestJourney() {
+        service.dropoff(active[head]);
+
+        int groupId = ++nextGroupId;
+        service.requestJourney(groupId, groupSizes.next(random));
+
+        active[head] = groupId;
+        head = (head + 1) % active.length;
+
+        return groupId;
+    }
+
+    @Benchmark
+    public Car locate() {
+        return service.locate(active[random.nextInt(active.length)]);
+    }
+}
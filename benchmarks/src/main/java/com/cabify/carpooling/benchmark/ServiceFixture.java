@@ -0,0 +1,143 @@
+package com.cabify.carpooling.benchmark;
+
+import com.cabify.carpooling.engine.CombiningEngine;
+import com.cabify.carpooling.engine.CopyOnWriteEngine;
+import com.cabify.carpooling.engine.LockingEngine;
+import com.cabify.carpooling.engine.PoolingEngine;
+import com.cabify.carpooling.engine.ShardedEngine;
+import com.cabify.carpooling.engine.SingleWriterEngine;
+import com.cabify.carpooling.engine.StripedEngine;
+import com.cabify.carpooling.logging.HotPathLogger;
+import com.cabify.carpooling.metrics.CarPoolingMetrics;
+import com.cabify.carpooling.model.Car;
+import com.cabify.carpooling.persistence.NoOpWriteAheadLog;
+import com.cabify.carpooling.raft.Consensus;
+import com.cabify.carpooling.replication.ReplicationHub;
+import com.cabify.carpooling.repository.CarRepository;
+import com.cabify.carpooling.repository.GroupRepository;
+import com.cabify.carpooling.repository.JourneyRepository;
+import com.cabify.carpooling.repository.inmemory.InMemoryCarRepository;
+import com.cabify.carpooling.repository.inmemory.InMemoryGroupRepository;
+import com.cabify.carpooling.repository.inmemory.InMemoryJourneyRepository;
+import com.cabify.carpooling.repository.inmemory.PersistentCarRepository;
+import com.cabify.carpooling.repository.inmemory.PersistentGroupRepository;
+import com.cabify.carpooling.repository.inmemory.PersistentJourneyRepository;
+import com.cabify.carpooling.repository.inmemory.PersistentState;
+import com.cabify.carpooling.service.CarPoolingService;
+import com.cabify.carpooling.service.ConsensusFleet;
+import com.cabify.carpooling.service.FleetOperations;
+import com.cabify.carpooling.service.LocalFleet;
+import com.cabify.carpooling.service.ShardedFleet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Builds a CarPoolingService wired by hand, outside Spring, for benchmarks.
+ */
+public final class ServiceFixture implements AutoCloseable {
+
+    private final PoolingEngine engine;
+    private final HotPathLogger hotPathLogger = new HotPathLogger(8192, 1);
+    private final CarPoolingService service;
+
+    private ServiceFixture(PoolingEngine engine) {
+        this(engine, new InMemoryCarRepository(), new InMemoryGroupRepository(), new InMemoryJourneyRepository(), null);
+    }
+
+    private ServiceFixture(PoolingEngine engine, CarRepository carRepository, GroupRepository groupRepository,
+            JourneyRepository journeyRepository, Function<LocalFleet, Consensus> consensus) {
+        this.engine = engine;
+        CarPoolingMetrics metrics = new CarPoolingMetrics(new SimpleMeterRegistry());
+        LocalFleet local = new LocalFleet(
+                carRepository,
+                groupRepository,
+                journeyRepository,
+                engine,
+                metrics,
+                hotPathLogger,
+                new NoOpWriteAheadLog(),
+                new ReplicationHub(64 * 1024 * 1024));
+        FleetOperations operations;
+        if (engine instanceof ShardedEngine) {
+            operations = new ShardedFleet((ShardedEngine) engine, metrics, new SimpleMeterRegistry(), hotPathLogger);
+        } else if (consensus != null) {
+            operations = new ConsensusFleet(consensus.apply(local), local);
+        } else {
+            operations = local;
+        }
+        this.service = new CarPoolingService(local, operations, metrics);
+    }
+
+    /**
+     * Create a service on the locking engine that sends its writes through the consensus
+     * built over its local fleet, e.g. a Raft node applying to it.
+     */
+    public static ServiceFixture createReplicated(Function<LocalFleet, Consensus> consensus) {
+        return new ServiceFixture(new LockingEngine(), new InMemoryCarRepository(), new InMemoryGroupRepository(),
+                new InMemoryJourneyRepository(), consensus);
+    }
+
+    /**
+     * Create a service running on the given engine mode ("locking", "single-writer", "striped",
+     * "combining", "sharded", with 4 shards, or "copy-on-write", on its persistent stores).
+     */
+    public static ServiceFixture create(String engineMode) {
+        switch (engineMode) {
+            case "locking":
+                return new ServiceFixture(new LockingEngine());
+            case "single-writer":
+                return new ServiceFixture(new SingleWriterEngine(1024));
+            case "striped":
+                return new ServiceFixture(new StripedEngine(64));
+            case "combining":
+                return new ServiceFixture(new CombiningEngine());
+            case "sharded":
+                return new ServiceFixture(new ShardedEngine(4, 1024));
+            case "copy-on-write":
+                PersistentState state = new PersistentState();
+                return new ServiceFixture(new CopyOnWriteEngine(state), new PersistentCarRepository(state),
+                        new PersistentGroupRepository(state), new PersistentJourneyRepository(state), null);
+            default:
+                throw new IllegalArgumentException("Unknown engine mode: " + engineMode);
+        }
+    }
+
+    public CarPoolingService service() {
+        return service;
+    }
+
+    public PoolingEngine engine() {
+        return engine;
+    }
+
+    /**
+     * Load a fleet of cars with 4, 5 and 6 seats in rotation.
+     */
+    public void loadFleet(int carCount) {
+        List<Car> cars = new ArrayList<>(carCount);
+        for (int id = 1; id <= carCount; id++) {
+            cars.add(new Car(id, 4 + id % 3));
+        }
+
+        service.loadCars(cars);
+    }
+
+    /**
+     * Group size used for a given group ID (1 to 6, spread evenly).
+     */
+    public static int peopleFor(int groupId) {
+        return 1 + groupId % 6;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (engine instanceof DisposableBean) {
+            ((DisposableBean) engine).destroy();
+        }
+        hotPathLogger.destroy();
+    }
+}
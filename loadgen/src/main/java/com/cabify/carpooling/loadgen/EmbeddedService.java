@@ -0,0 +1,49 @@
+package com.cabify.carpooling.loadgen;
+
+import com.cabify.carpooling.CarPoolingApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+
+/**
+ * The Car Pooling Service started in this JVM on a random port, so a load test needs
+ * nothing else running.
+ */
+final class EmbeddedService implements AutoCloseable {
+
+    private final ConfigurableApplicationContext context;
+    private final URI baseUri;
+
+    private EmbeddedService(ConfigurableApplicationContext context) {
+        this.context = context;
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        this.baseUri = URI.create("http://localhost:" + port);
+    }
+
+    /**
+     * Start the service with the given engine mode and its logging off: per-request log lines,
+     * including the expected 404s of locate polling, would dominate every measurement.
+     */
+    static EmbeddedService start(String engine) {
+        // Passed as command-line arguments so they override application.properties
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(CarPoolingApplication.class)
+                .logStartupInfo(false)
+                .run(
+                        "--server.port=0",
+                        "--carpooling.engine.mode=" + engine,
+                        "--logging.level.com.cabify.carpooling=OFF");
+
+        return new EmbeddedService(context);
+    }
+
+    URI getBaseUri() {
+        return baseUri;
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
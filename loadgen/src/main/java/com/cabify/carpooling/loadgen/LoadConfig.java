@@ -0,0 +1,119 @@
+package com.cabify.carpooling.loadgen;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Load generator settings, parsed from {@code --key=value} arguments.
+ */
+public final class LoadConfig {
+
+    private final String url;
+    private final String engine;
+    private final int cars;
+    private final double journeyRate;
+    private final double locateRate;
+    private final int durationSeconds;
+    private final RideDurations rideDurations;
+    private final String histogramDirectory;
+
+    private LoadConfig(Map<String, String> options) {
+        this.url = options.get("url");
+        this.engine = options.getOrDefault("engine", "locking");
+        this.cars = Integer.parseInt(options.getOrDefault("cars", "1000"));
+        this.journeyRate = Double.parseDouble(options.getOrDefault("rate", "500"));
+        this.locateRate = Double.parseDouble(options.getOrDefault("locate-rate", "1000"));
+        this.durationSeconds = Integer.parseInt(options.getOrDefault("duration", "30"));
+        this.rideDurations = RideDurations.parse(options.getOrDefault("ride", "exponential:2000"));
+        this.histogramDirectory = options.get("hgrm");
+
+        if (journeyRate <= 0 || locateRate < 0 || durationSeconds <= 0 || cars <= 0) {
+            throw new IllegalArgumentException("rate, duration and cars must be positive, locate-rate not negative");
+        }
+    }
+
+    /**
+     * Parse {@code --key=value} arguments; unknown keys are rejected.
+     */
+    public static LoadConfig parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --key=value, got: " + arg);
+            }
+
+            String key = arg.substring(2, separator);
+            if (!isKnown(key)) {
+                throw new IllegalArgumentException("Unknown option: --" + key);
+            }
+            options.put(key, arg.substring(separator + 1));
+        }
+
+        return new LoadConfig(options);
+    }
+
+    private static boolean isKnown(String key) {
+        switch (key) {
+            case "url":
+            case "engine":
+            case "cars":
+            case "rate":
+            case "locate-rate":
+            case "duration":
+            case "ride":
+            case "hgrm":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Base URL of a running service, or null to start one in-process on a random port.
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Engine mode of the in-process service.
+     */
+    public String getEngine() {
+        return engine;
+    }
+
+    public int getCars() {
+        return cars;
+    }
+
+    /**
+     * Journey requests per second.
+     */
+    public double getJourneyRate() {
+        return journeyRate;
+    }
+
+    /**
+     * Locate requests per second, spread over recently requested groups.
+     */
+    public double getLocateRate() {
+        return locateRate;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public RideDurations getRideDurations() {
+        return rideDurations;
+    }
+
+    /**
+     * Directory to write one .hgrm percentile file per operation to, or null.
+     */
+    public String getHistogramDirectory() {
+        return histogramDirectory;
+    }
+}
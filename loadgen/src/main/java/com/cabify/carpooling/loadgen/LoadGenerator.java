@@ -0,0 +1,94 @@
+package com.cabify.carpooling.loadgen;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Open-loop HTTP load generator for the Car Pooling Service.
+ *
+ * <p>Options (all {@code --key=value}): {@code url} of a running service (default: start one
+ * in-process on a random port), {@code engine} for the in-process service, {@code cars},
+ * {@code rate} (journeys/s), {@code locate-rate} (locates/s), {@code duration} (s),
+ * {@code ride} ({@code fixed:MS}, {@code uniform:MIN-MAX} or {@code exponential:MEAN}) and
+ * {@code hgrm} (directory for .hgrm percentile files).
+ */
+public final class LoadGenerator {
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private LoadGenerator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadConfig config = LoadConfig.parse(args);
+        EmbeddedService embedded = null;
+
+        try {
+            URI baseUri;
+            if (config.getUrl() != null) {
+                baseUri = URI.create(config.getUrl());
+            } else {
+                embedded = EmbeddedService.start(config.getEngine());
+                baseUri = embedded.getBaseUri();
+            }
+
+            System.out.printf("Target %s: %d cars, %.0f journeys/s, %.0f locates/s, ride %s, %d s%n",
+                    baseUri, config.getCars(), config.getJourneyRate(), config.getLocateRate(),
+                    config.getRideDurations(), config.getDurationSeconds());
+
+            LoadRun run = new LoadRun(config, baseUri);
+            run.loadCars();
+            run.run();
+
+            report(run.getStats());
+            if (config.getHistogramDirectory() != null) {
+                writeHistograms(run.getStats(), Paths.get(config.getHistogramDirectory()));
+            }
+        } finally {
+            if (embedded != null) {
+                embedded.close();
+            }
+        }
+    }
+
+    private static void report(OperationStats[] stats) {
+        System.out.println();
+        System.out.println("Latency in ms, measured from the intended send time (corrected for coordinated omission)");
+        System.out.printf("%-8s %9s %7s %9s %9s %9s %9s %9s   %s%n",
+                "op", "count", "errors", "p50", "p90", "p99", "p99.9", "max", "uncorrected p99 / p99.9");
+
+        for (OperationStats operation : stats) {
+            Histogram corrected = operation.getCorrected();
+            Histogram uncorrected = operation.getUncorrected();
+
+            System.out.printf("%-8s %9d %7d %9.3f %9.3f %9.3f %9.3f %9.3f   %.3f / %.3f%n",
+                    operation.getName(), corrected.getTotalCount(), operation.getErrors(),
+                    millis(corrected, 50), millis(corrected, 90), millis(corrected, 99),
+                    millis(corrected, 99.9), corrected.getMaxValue() / NANOS_PER_MILLI,
+                    millis(uncorrected, 99), millis(uncorrected, 99.9));
+        }
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / NANOS_PER_MILLI;
+    }
+
+    private static void writeHistograms(OperationStats[] stats, Path directory) throws IOException {
+        Files.createDirectories(directory);
+
+        for (OperationStats operation : stats) {
+            Path file = directory.resolve(operation.getName() + ".hgrm");
+            try (PrintStream out = new PrintStream(new FileOutputStream(file.toFile()))) {
+                operation.getCorrected().outputPercentileDistribution(out, NANOS_PER_MILLI);
+            }
+        }
+        System.out.println("Percentile distributions written to " + directory.toAbsolutePath());
+    }
+}
@@ -0,0 +1,226 @@
+package com.cabify.carpooling.loadgen;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntPredicate;
+import java.util.function.LongConsumer;
+
+/**
+ * One open-loop load run against the HTTP API. Journeys arrive at a fixed rate whatever the
+ * server does, each group is dropped off after a ride drawn from the configured distribution,
+ * and recently requested groups are polled with locate at their own fixed rate.
+ * Requests are sent asynchronously, so a slow response never delays the next arrival.
+ */
+final class LoadRun {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    // Group IDs recently assigned or queued, for locate polling
+    private static final int RECENT_GROUPS = 4096;
+
+    private final LoadConfig config;
+    private final URI baseUri;
+    private final ExecutorService responseExecutor = Executors.newFixedThreadPool(4);
+    private final HttpClient client;
+    private final ScheduledExecutorService dropoffScheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private final OperationStats journeys = new OperationStats("journey");
+    private final OperationStats dropoffs = new OperationStats("dropoff");
+    private final OperationStats locates = new OperationStats("locate");
+
+    private final AtomicInteger nextGroupId = new AtomicInteger();
+    private final AtomicIntegerArray recentGroups = new AtomicIntegerArray(RECENT_GROUPS);
+    private final AtomicInteger recentCount = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile long endNanos;
+
+    LoadRun(LoadConfig config, URI baseUri) {
+        this.config = config;
+        this.baseUri = baseUri;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(responseExecutor)
+                .build();
+    }
+
+    /**
+     * Load the fleet with PUT /cars, waiting for the response.
+     */
+    void loadCars() throws IOException, InterruptedException {
+        StringBuilder body = new StringBuilder(config.getCars() * 24).append('[');
+        for (int carId = 1; carId <= config.getCars(); carId++) {
+            if (carId > 1) {
+                body.append(',');
+            }
+            body.append("{\"id\":").append(carId).append(",\"seats\":").append(4 + carId % 3).append('}');
+        }
+        body.append(']');
+
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/cars"))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build();
+
+        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("PUT /cars failed with status " + response.statusCode());
+        }
+    }
+
+    /**
+     * Drive the load for the configured duration, then wait for in-flight requests.
+     * Dropoffs due after the end of the run are not sent.
+     */
+    void run() throws InterruptedException {
+        long startNanos = System.nanoTime();
+        endNanos = startNanos + TimeUnit.SECONDS.toNanos(config.getDurationSeconds());
+
+        Thread locatePacer = null;
+        if (config.getLocateRate() > 0) {
+            locatePacer = new Thread(() -> pace(config.getLocateRate(), startNanos, this::sendLocate), "locate-pacer");
+            locatePacer.start();
+        }
+
+        pace(config.getJourneyRate(), startNanos, this::sendJourney);
+
+        if (locatePacer != null) {
+            locatePacer.join();
+        }
+
+        dropoffScheduler.shutdownNow();
+        long drainDeadline = System.nanoTime() + DRAIN_TIMEOUT_NANOS;
+        while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        responseExecutor.shutdownNow();
+    }
+
+    OperationStats[] getStats() {
+        return new OperationStats[] {journeys, dropoffs, locates};
+    }
+
+    /**
+     * Call send with the intended start time of each request at the given rate, until the end
+     * of the run. A pacer that falls behind sends the missed requests at once, keeping their
+     * original intended times.
+     */
+    private void pace(double ratePerSecond, long startNanos, LongConsumer send) {
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+
+        for (long i = 0; ; i++) {
+            long intendedNanos = startNanos + (long) (i * intervalNanos);
+            if (intendedNanos >= endNanos) {
+                return;
+            }
+
+            long waitNanos = intendedNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(waitNanos);
+            }
+
+            send.accept(intendedNanos);
+        }
+    }
+
+    private void sendJourney(long intendedNanos) {
+        int groupId = nextGroupId.incrementAndGet();
+        int people = 1 + ThreadLocalRandom.current().nextInt(6);
+
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/journey"))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"id\":" + groupId + ",\"people\":" + people + "}"))
+                .build();
+
+        send(request, intendedNanos, journeys, status -> status == 200, () -> {
+            recentGroups.set(recentCount.getAndIncrement() % RECENT_GROUPS, groupId);
+            scheduleDropoff(groupId);
+        });
+    }
+
+    private void scheduleDropoff(int groupId) {
+        long rideNanos = config.getRideDurations().nextNanos(ThreadLocalRandom.current());
+        long intendedNanos = System.nanoTime() + rideNanos;
+
+        if (intendedNanos >= endNanos || dropoffScheduler.isShutdown()) {
+            return;
+        }
+
+        try {
+            dropoffScheduler.schedule(() -> sendDropoff(groupId, intendedNanos), rideNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // The run ended between the check and the schedule
+        }
+    }
+
+    private void sendDropoff(int groupId, long intendedNanos) {
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/dropoff"))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString("ID=" + groupId))
+                .build();
+
+        send(request, intendedNanos, dropoffs, status -> status == 200, null);
+    }
+
+    private void sendLocate(long intendedNanos) {
+        int known = Math.min(recentCount.get(), RECENT_GROUPS);
+        if (known == 0) {
+            return;
+        }
+
+        int groupId = recentGroups.get(ThreadLocalRandom.current().nextInt(known));
+
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/locate"))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString("ID=" + groupId))
+                .build();
+
+        // 404 is expected for a group already dropped off
+        send(request, intendedNanos, locates, status -> status == 200 || status == 204 || status == 404, null);
+    }
+
+    private void send(HttpRequest request, long intendedNanos, OperationStats stats,
+            IntPredicate expected, Runnable onSuccess) {
+        long sentNanos = System.nanoTime();
+        inFlight.incrementAndGet();
+
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    long completedNanos = System.nanoTime();
+                    try {
+                        // Failures and timeouts count too: they are the worst outcomes
+                        stats.record(intendedNanos, sentNanos, completedNanos);
+                        if (error != null) {
+                            stats.recordError();
+                            return;
+                        }
+
+                        if (!expected.test(response.statusCode())) {
+                            stats.recordError();
+                        } else if (onSuccess != null) {
+                            onSuccess.run();
+                        }
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                });
+    }
+}
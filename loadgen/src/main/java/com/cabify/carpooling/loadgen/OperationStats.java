@@ -0,0 +1,59 @@
+package com.cabify.carpooling.loadgen;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms and error count for one HTTP operation.
+ * The corrected histogram measures from the intended start time of each request, so a stalled
+ * server is charged for every request it delayed (no coordinated omission); the uncorrected
+ * one measures from the moment the request was actually sent, for comparison.
+ */
+public final class OperationStats {
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final String name;
+    private final Histogram corrected = new ConcurrentHistogram(HIGHEST_TRACKABLE_NANOS, 3);
+    private final Histogram uncorrected = new ConcurrentHistogram(HIGHEST_TRACKABLE_NANOS, 3);
+    private final LongAdder errors = new LongAdder();
+
+    public OperationStats(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Record a completed request, given when it should have started, was sent and completed.
+     */
+    public void record(long intendedNanos, long sentNanos, long completedNanos) {
+        corrected.recordValue(clamp(completedNanos - intendedNanos));
+        uncorrected.recordValue(clamp(completedNanos - sentNanos));
+    }
+
+    public void recordError() {
+        errors.increment();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Histogram getCorrected() {
+        return corrected;
+    }
+
+    public Histogram getUncorrected() {
+        return uncorrected;
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    private static long clamp(long nanos) {
+        return Math.max(0, Math.min(nanos, HIGHEST_TRACKABLE_NANOS));
+    }
+}
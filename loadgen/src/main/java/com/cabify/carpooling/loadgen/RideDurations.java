@@ -0,0 +1,78 @@
+package com.cabify.carpooling.loadgen;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Distribution of the time between a journey request and its dropoff.
+ * Parsed from {@code fixed:MS}, {@code uniform:MIN-MAX} or {@code exponential:MEAN} (milliseconds).
+ */
+public final class RideDurations {
+
+    private enum Kind { FIXED, UNIFORM, EXPONENTIAL }
+
+    private final Kind kind;
+    private final long first;
+    private final long second;
+
+    private RideDurations(Kind kind, long first, long second) {
+        this.kind = kind;
+        this.first = first;
+        this.second = second;
+    }
+
+    public static RideDurations parse(String spec) {
+        int separator = spec.indexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Ride distribution must look like kind:value, got: " + spec);
+        }
+
+        String kind = spec.substring(0, separator);
+        String value = spec.substring(separator + 1);
+
+        switch (kind) {
+            case "fixed":
+                return new RideDurations(Kind.FIXED, Long.parseLong(value), 0);
+            case "uniform":
+                String[] bounds = value.split("-");
+                return new RideDurations(Kind.UNIFORM, Long.parseLong(bounds[0]), Long.parseLong(bounds[1]));
+            case "exponential":
+                return new RideDurations(Kind.EXPONENTIAL, Long.parseLong(value), 0);
+            default:
+                throw new IllegalArgumentException("Unknown ride distribution: " + kind);
+        }
+    }
+
+    /**
+     * Draw a ride duration in nanoseconds.
+     */
+    public long nextNanos(Random random) {
+        double millis;
+
+        switch (kind) {
+            case FIXED:
+                millis = first;
+                break;
+            case UNIFORM:
+                millis = first + random.nextDouble() * (second - first);
+                break;
+            default:
+                millis = -first * Math.log(1 - random.nextDouble());
+                break;
+        }
+
+        return (long) (millis * TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case FIXED:
+                return "fixed " + first + " ms";
+            case UNIFORM:
+                return "uniform " + first + "-" + second + " ms";
+            default:
+                return "exponential, mean " + first + " ms";
+        }
+    }
+}
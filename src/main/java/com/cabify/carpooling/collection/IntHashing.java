@@ -0,0 +1,34 @@
+package com.cabify.carpooling.collection;
+
+/**
+ * Hashing and sizing helpers shared by the open-addressing maps.
+ */
+final class IntHashing {
+
+    static final int DEFAULT_CAPACITY = 16;
+    static final float LOAD_FACTOR = 0.75f;
+
+    private IntHashing() {
+        throw new AssertionError("Utility class cannot be instantiated");
+    }
+
+    /**
+     * Spread an int key (Fibonacci hashing), so sequential IDs do not cluster.
+     */
+    static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Smallest power-of-two table that holds the expected entries below the load factor.
+     */
+    static int capacityFor(int expectedSize) {
+        long needed = (long) Math.ceil(Math.max(expectedSize, 1) / (double) LOAD_FACTOR);
+        if (needed > 1 << 30) {
+            throw new IllegalArgumentException("Map too large: " + expectedSize);
+        }
+
+        return Math.max(DEFAULT_CAPACITY, Integer.highestOneBit((int) needed - 1) << 1);
+    }
+}
@@ -0,0 +1,267 @@
+package com.cabify.carpooling.collection;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing int to int hash map with linear probing over primitive arrays.
+ * Stores no boxed keys or values and no per-entry nodes. Deletions use backward shifting,
+ * so no tombstones accumulate.
+ * <p>
+ * Not thread-safe: writers must be serialised by the caller. Lookups never loop forever
+ * or fail on a torn table, so optimistic readers that validate afterwards may call them
+ * concurrently with a writer.
+ */
+public final class IntIntHashMap {
+
+    // Key 0 marks a free slot; a real 0 key is stored aside
+    private static final int FREE = 0;
+
+    private final int missingValue;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int resizeThreshold;
+
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    /**
+     * Create a map returning {@code missingValue} for absent keys.
+     */
+    public IntIntHashMap(int expectedSize, int missingValue) {
+        this.missingValue = missingValue;
+        allocate(IntHashing.capacityFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int missingValue() {
+        return missingValue;
+    }
+
+    /**
+     * Get the value for a key, or the missing value if absent.
+     */
+    public int get(int key) {
+        if (key == FREE) {
+            return hasZeroKey ? zeroValue : missingValue;
+        }
+
+        int[] keys = this.keys;
+        int[] values = this.values;
+        int mask = keys.length - 1;
+        int index = IntHashing.mix(key) & mask;
+
+        for (int probes = 0; probes < keys.length; probes++) {
+            int current = keys[index];
+            if (current == key) {
+                return index < values.length ? values[index] : missingValue;
+            }
+            if (current == FREE) {
+                return missingValue;
+            }
+            index = (index + 1) & mask;
+        }
+
+        return missingValue;
+    }
+
+    public boolean containsKey(int key) {
+        if (key == FREE) {
+            return hasZeroKey;
+        }
+
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Associate a value with a key, returning the previous value or the missing value.
+     */
+    public int put(int key, int value) {
+        if (key == FREE) {
+            int previous = hasZeroKey ? zeroValue : missingValue;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return previous;
+        }
+
+        int mask = keys.length - 1;
+        int index = IntHashing.mix(key) & mask;
+
+        while (keys[index] != FREE) {
+            if (keys[index] == key) {
+                int previous = values[index];
+                values[index] = value;
+                return previous;
+            }
+            index = (index + 1) & mask;
+        }
+
+        // Publish the value before the key, so a reader never pairs the key with a stale value
+        values[index] = value;
+        keys[index] = key;
+
+        if (++size > resizeThreshold) {
+            rehash(keys.length << 1);
+        }
+
+        return missingValue;
+    }
+
+    /**
+     * Remove a key, returning its value or the missing value if absent.
+     */
+    public int remove(int key) {
+        if (key == FREE) {
+            if (!hasZeroKey) {
+                return missingValue;
+            }
+            hasZeroKey = false;
+            size--;
+            return zeroValue;
+        }
+
+        int index = indexOf(key);
+        if (index < 0) {
+            return missingValue;
+        }
+
+        int previous = values[index];
+        shiftBack(index);
+        size--;
+
+        return previous;
+    }
+
+    /**
+     * Remove every entry, shrinking the table back to the given expected size.
+     */
+    public void clear(int expectedSize) {
+        int capacity = IntHashing.capacityFor(expectedSize);
+
+        if (capacity == keys.length) {
+            Arrays.fill(keys, FREE);
+            resizeThreshold = (int) (capacity * IntHashing.LOAD_FACTOR);
+        } else {
+            allocate(capacity);
+        }
+
+        size = 0;
+        hasZeroKey = false;
+    }
+
+    public void clear() {
+        clear(0);
+    }
+
+    /**
+     * Visit every entry (in table order, not insertion order).
+     */
+    public void forEach(IntIntConsumer consumer) {
+        if (hasZeroKey) {
+            consumer.accept(FREE, zeroValue);
+        }
+
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Approximate heap retained by the table arrays, in bytes.
+     */
+    public long footprintBytes() {
+        return 2L * keys.length * Integer.BYTES;
+    }
+
+    private int indexOf(int key) {
+        int mask = keys.length - 1;
+        int index = IntHashing.mix(key) & mask;
+
+        while (keys[index] != FREE) {
+            if (keys[index] == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Backward-shift deletion: pull later entries of the probe chain into the freed slot.
+     */
+    private void shiftBack(int freed) {
+        int mask = keys.length - 1;
+        int index = freed;
+
+        while (true) {
+            index = (index + 1) & mask;
+            int key = keys[index];
+            if (key == FREE) {
+                break;
+            }
+
+            int home = IntHashing.mix(key) & mask;
+            // Move the entry if its home slot is not cyclically within (freed, index]
+            if (((index - home) & mask) >= ((index - freed) & mask)) {
+                values[freed] = values[index];
+                keys[freed] = key;
+                freed = index;
+            }
+        }
+
+        keys[freed] = FREE;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        int[] newKeys = new int[capacity];
+        int[] newValues = new int[capacity];
+        int mask = capacity - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            int key = oldKeys[i];
+            if (key != FREE) {
+                int index = IntHashing.mix(key) & mask;
+                while (newKeys[index] != FREE) {
+                    index = (index + 1) & mask;
+                }
+                newKeys[index] = key;
+                newValues[index] = oldValues[i];
+            }
+        }
+
+        // Values first, so a reader holding the new keys always finds a matching values array
+        values = newValues;
+        keys = newKeys;
+        resizeThreshold = (int) (capacity * IntHashing.LOAD_FACTOR);
+    }
+
+    private void allocate(int capacity) {
+        values = new int[capacity];
+        keys = new int[capacity];
+        resizeThreshold = (int) (capacity * IntHashing.LOAD_FACTOR);
+    }
+
+    /**
+     * Primitive (key, value) callback.
+     */
+    @FunctionalInterface
+    public interface IntIntConsumer {
+        void accept(int key, int value);
+    }
+}
@@ -0,0 +1,300 @@
+package com.cabify.carpooling.collection;
+
+/**
+ * Immutable int to long map, as a hash array mapped trie (HAMT) in the compact CHAMP layout.
+ * Every update returns a new map that shares all but the path to the changed entry with this
+ * one (at most seven small nodes), so any version stays valid, and costs nothing, for as long
+ * as someone reads it. Keys are spread with a bijective hash, so two keys never collide on
+ * every level and the trie needs no collision nodes.
+ * <p>
+ * Thread-safe: a map never changes, and all its fields are final.
+ */
+public final class PersistentIntLongMap {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final PersistentIntLongMap EMPTY = new PersistentIntLongMap(Node.EMPTY, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentIntLongMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    public static PersistentIntLongMap empty() {
+        return EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the value of a key, or {@code missingValue} if it is absent.
+     */
+    public long get(int key, long missingValue) {
+        int hash = IntHashing.mix(key);
+        Node node = root;
+
+        for (int shift = 0; ; shift += BITS) {
+            int bit = bit(hash, shift);
+            if ((node.dataMap & bit) != 0) {
+                int index = index(node.dataMap, bit);
+                return node.keys[index] == key ? node.values[index] : missingValue;
+            }
+            if ((node.nodeMap & bit) == 0) {
+                return missingValue;
+            }
+            node = node.children[index(node.nodeMap, bit)];
+        }
+    }
+
+    public boolean containsKey(int key) {
+        int hash = IntHashing.mix(key);
+        Node node = root;
+
+        for (int shift = 0; ; shift += BITS) {
+            int bit = bit(hash, shift);
+            if ((node.dataMap & bit) != 0) {
+                return node.keys[index(node.dataMap, bit)] == key;
+            }
+            if ((node.nodeMap & bit) == 0) {
+                return false;
+            }
+            node = node.children[index(node.nodeMap, bit)];
+        }
+    }
+
+    /**
+     * Return a map with the key set to the value; this map if it already was.
+     */
+    public PersistentIntLongMap put(int key, long value) {
+        boolean present = containsKey(key);
+        Node updated = root.put(key, IntHashing.mix(key), value, 0);
+
+        return updated == root ? this : new PersistentIntLongMap(updated, present ? size : size + 1);
+    }
+
+    /**
+     * Return a map without the key; this map if it was absent.
+     */
+    public PersistentIntLongMap remove(int key) {
+        if (!containsKey(key)) {
+            return this;
+        }
+
+        return new PersistentIntLongMap(root.remove(key, IntHashing.mix(key), 0), size - 1);
+    }
+
+    /**
+     * Visit every entry, in no particular order.
+     */
+    public void forEach(IntLongConsumer consumer) {
+        root.forEach(consumer);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static int index(int bitmap, int bit) {
+        return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    @FunctionalInterface
+    public interface IntLongConsumer {
+        void accept(int key, long value);
+    }
+
+    /**
+     * One trie level: entries stored inline for the hash fragments in {@code dataMap}, and
+     * sub-nodes for those in {@code nodeMap}. A sub-node always holds at least two entries.
+     */
+    private static final class Node {
+
+        private static final int[] NO_KEYS = new int[0];
+        private static final long[] NO_VALUES = new long[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        static final Node EMPTY = new Node(0, 0, NO_KEYS, NO_VALUES, NO_CHILDREN);
+
+        final int dataMap;
+        final int nodeMap;
+        final int[] keys;
+        final long[] values;
+        final Node[] children;
+
+        Node(int dataMap, int nodeMap, int[] keys, long[] values, Node[] children) {
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.keys = keys;
+            this.values = values;
+            this.children = children;
+        }
+
+        Node put(int key, int hash, long value, int shift) {
+            int bit = bit(hash, shift);
+
+            if ((dataMap & bit) != 0) {
+                int index = index(dataMap, bit);
+                if (keys[index] == key) {
+                    return values[index] == value ? this : withValue(index, value);
+                }
+
+                // Two keys share this fragment: push both one level down
+                Node child = merge(keys[index], IntHashing.mix(keys[index]), values[index], key, hash, value,
+                        shift + BITS);
+                return withDataMovedDown(bit, index, child);
+            }
+
+            if ((nodeMap & bit) != 0) {
+                int index = index(nodeMap, bit);
+                Node child = children[index];
+                Node updated = child.put(key, hash, value, shift + BITS);
+                return updated == child ? this : withChild(index, updated);
+            }
+
+            return withData(bit, key, value);
+        }
+
+        Node remove(int key, int hash, int shift) {
+            int bit = bit(hash, shift);
+
+            if ((dataMap & bit) != 0) {
+                int index = index(dataMap, bit);
+                return keys[index] == key ? withoutData(bit, index) : this;
+            }
+
+            if ((nodeMap & bit) != 0) {
+                int index = index(nodeMap, bit);
+                Node child = children[index];
+                Node updated = child.remove(key, hash, shift + BITS);
+                if (updated == child) {
+                    return this;
+                }
+
+                // Keep the trie canonical: a single entry left below moves up into this node
+                if (updated.nodeMap == 0 && Integer.bitCount(updated.dataMap) == 1) {
+                    return withDataMovedUp(bit, index, updated.keys[0], updated.values[0]);
+                }
+                return withChild(index, updated);
+            }
+
+            return this;
+        }
+
+        void forEach(IntLongConsumer consumer) {
+            for (int i = 0; i < keys.length; i++) {
+                consumer.accept(keys[i], values[i]);
+            }
+            for (Node child : children) {
+                child.forEach(consumer);
+            }
+        }
+
+        /**
+         * Build the smallest subtree holding two keys of different hashes.
+         */
+        private static Node merge(int key1, int hash1, long value1, int key2, int hash2, long value2, int shift) {
+            int fragment1 = (hash1 >>> shift) & MASK;
+            int fragment2 = (hash2 >>> shift) & MASK;
+
+            if (fragment1 == fragment2) {
+                Node child = merge(key1, hash1, value1, key2, hash2, value2, shift + BITS);
+                return new Node(0, 1 << fragment1, NO_KEYS, NO_VALUES, new Node[] {child});
+            }
+
+            return fragment1 < fragment2
+                    ? new Node(1 << fragment1 | 1 << fragment2, 0, new int[] {key1, key2}, new long[] {value1, value2},
+                            NO_CHILDREN)
+                    : new Node(1 << fragment1 | 1 << fragment2, 0, new int[] {key2, key1}, new long[] {value2, value1},
+                            NO_CHILDREN);
+        }
+
+        private Node withValue(int index, long value) {
+            long[] newValues = values.clone();
+            newValues[index] = value;
+
+            return new Node(dataMap, nodeMap, keys, newValues, children);
+        }
+
+        private Node withChild(int index, Node child) {
+            Node[] newChildren = children.clone();
+            newChildren[index] = child;
+
+            return new Node(dataMap, nodeMap, keys, values, newChildren);
+        }
+
+        private Node withData(int bit, int key, long value) {
+            int index = index(dataMap, bit);
+
+            return new Node(dataMap | bit, nodeMap, insert(keys, index, key), insert(values, index, value), children);
+        }
+
+        private Node withoutData(int bit, int index) {
+            return new Node(dataMap & ~bit, nodeMap, delete(keys, index), delete(values, index), children);
+        }
+
+        private Node withDataMovedDown(int bit, int dataIndex, Node child) {
+            int childIndex = index(nodeMap, bit);
+
+            return new Node(dataMap & ~bit, nodeMap | bit, delete(keys, dataIndex), delete(values, dataIndex),
+                    insert(children, childIndex, child));
+        }
+
+        private Node withDataMovedUp(int bit, int childIndex, int key, long value) {
+            int dataIndex = index(dataMap, bit);
+
+            return new Node(dataMap | bit, nodeMap & ~bit, insert(keys, dataIndex, key),
+                    insert(values, dataIndex, value), delete(children, childIndex));
+        }
+
+        private static int[] insert(int[] array, int index, int element) {
+            int[] result = new int[array.length + 1];
+            System.arraycopy(array, 0, result, 0, index);
+            result[index] = element;
+            System.arraycopy(array, index, result, index + 1, array.length - index);
+            return result;
+        }
+
+        private static long[] insert(long[] array, int index, long element) {
+            long[] result = new long[array.length + 1];
+            System.arraycopy(array, 0, result, 0, index);
+            result[index] = element;
+            System.arraycopy(array, index, result, index + 1, array.length - index);
+            return result;
+        }
+
+        private static Node[] insert(Node[] array, int index, Node element) {
+            Node[] result = new Node[array.length + 1];
+            System.arraycopy(array, 0, result, 0, index);
+            result[index] = element;
+            System.arraycopy(array, index, result, index + 1, array.length - index);
+            return result;
+        }
+
+        private static int[] delete(int[] array, int index) {
+            int[] result = new int[array.length - 1];
+            System.arraycopy(array, 0, result, 0, index);
+            System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+            return result;
+        }
+
+        private static long[] delete(long[] array, int index) {
+            long[] result = new long[array.length - 1];
+            System.arraycopy(array, 0, result, 0, index);
+            System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+            return result;
+        }
+
+        private static Node[] delete(Node[] array, int index) {
+            Node[] result = new Node[array.length - 1];
+            System.arraycopy(array, 0, result, 0, index);
+            System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+            return result;
+        }
+    }
+}
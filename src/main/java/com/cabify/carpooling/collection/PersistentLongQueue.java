@@ -0,0 +1,136 @@
+package com.cabify.carpooling.collection;
+
+import java.util.NoSuchElementException;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Immutable FIFO queue of longs: a front list read from its head, and a back list holding the
+ * newer elements in reverse, which becomes the front once the front runs out. Every update
+ * returns a new queue sharing its cells with this one. Each element is reversed at most once
+ * as long as updates always start from the latest version, as with a single writer, so all
+ * operations are amortised O(1).
+ * <p>
+ * Thread-safe: a queue never changes, and all its fields are final.
+ */
+public final class PersistentLongQueue {
+
+    private static final PersistentLongQueue EMPTY = new PersistentLongQueue(null, null, 0);
+
+    // Never empty unless the whole queue is
+    private final Cell front;
+    private final Cell back;
+    private final int size;
+
+    private PersistentLongQueue(Cell front, Cell back, int size) {
+        this.front = front;
+        this.back = back;
+        this.size = size;
+    }
+
+    public static PersistentLongQueue empty() {
+        return EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get the oldest element.
+     */
+    public long peek() {
+        if (front == null) {
+            throw new NoSuchElementException();
+        }
+
+        return front.value;
+    }
+
+    /**
+     * Return a queue with the element appended.
+     */
+    public PersistentLongQueue offer(long value) {
+        return front == null
+                ? new PersistentLongQueue(new Cell(value, null), null, 1)
+                : new PersistentLongQueue(front, new Cell(value, back), size + 1);
+    }
+
+    /**
+     * Return a queue without its oldest element.
+     */
+    public PersistentLongQueue poll() {
+        if (front == null) {
+            throw new NoSuchElementException();
+        }
+        if (size == 1) {
+            return EMPTY;
+        }
+
+        return front.next != null
+                ? new PersistentLongQueue(front.next, back, size - 1)
+                : new PersistentLongQueue(reverse(back), null, size - 1);
+    }
+
+    /**
+     * Visit every element, oldest first.
+     */
+    public void forEach(LongConsumer consumer) {
+        for (Cell cell = front; cell != null; cell = cell.next) {
+            consumer.accept(cell.value);
+        }
+
+        if (back != null) {
+            long[] newest = new long[size];
+            int count = 0;
+            for (Cell cell = back; cell != null; cell = cell.next) {
+                newest[count++] = cell.value;
+            }
+            for (int i = count - 1; i >= 0; i--) {
+                consumer.accept(newest[i]);
+            }
+        }
+    }
+
+    /**
+     * Return a queue of the elements to keep, in the same order.
+     */
+    public PersistentLongQueue filter(LongPredicate keep) {
+        long[] kept = new long[size];
+        int[] count = new int[1];
+        forEach(value -> {
+            if (keep.test(value)) {
+                kept[count[0]++] = value;
+            }
+        });
+
+        Cell cells = null;
+        for (int i = count[0] - 1; i >= 0; i--) {
+            cells = new Cell(kept[i], cells);
+        }
+        return cells != null ? new PersistentLongQueue(cells, null, count[0]) : EMPTY;
+    }
+
+    private static Cell reverse(Cell cells) {
+        Cell reversed = null;
+        for (Cell cell = cells; cell != null; cell = cell.next) {
+            reversed = new Cell(cell.value, reversed);
+        }
+        return reversed;
+    }
+
+    private static final class Cell {
+
+        final long value;
+        final Cell next;
+
+        Cell(long value, Cell next) {
+            this.value = value;
+            this.next = next;
+        }
+    }
+}
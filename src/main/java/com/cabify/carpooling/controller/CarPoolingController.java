@@ -1,33 +1,62 @@
 package com.cabify.carpooling.controller;
 
+import java.io.InputStream;
+import java.util.Collections;
 import java.util.List;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import com.cabify.carpooling.dto.CarDTO;
+import com.cabify.carpooling.dto.DropoffResultDTO;
+import com.cabify.carpooling.dto.FleetUpdateDTO;
 import com.cabify.carpooling.dto.JourneyDTO;
+import com.cabify.carpooling.dto.JourneyResultDTO;
 import com.cabify.carpooling.exception.InvalidPayloadException;
+import com.cabify.carpooling.exception.PoolNotFoundException;
 import com.cabify.carpooling.mapper.CarMapper;
+import com.cabify.carpooling.mapper.DropoffMapper;
+import com.cabify.carpooling.mapper.JourneyMapper;
 import com.cabify.carpooling.model.Car;
+import com.cabify.carpooling.model.DropoffResult;
+import com.cabify.carpooling.model.JourneyResult;
+import com.cabify.carpooling.repository.CarGeneration;
 import com.cabify.carpooling.service.CarPoolingService;
+import com.cabify.carpooling.service.PoolRegistry;
 
 /**
- * Main controller for the Car Pooling service.
+ * Main controller for the Car Pooling service. With pools enabled, every endpoint but /status
+ * also serves each pool of the {@link PoolRegistry} under /pools/{poolId}. Replaced by
+ * {@link RouterController} when this instance runs as the router of a partitioned deployment.
  */
 @RestController
+@ConditionalOnProperty(name = "carpooling.router.enabled", havingValue = "false", matchIfMissing = true)
 public class CarPoolingController {
 
     private final CarPoolingService carPoolingService;
+    // Null unless carpooling.pools.enabled
+    private final PoolRegistry poolRegistry;
+    private final JsonFactory jsonFactory;
 
-    public CarPoolingController(CarPoolingService carPoolingService) {
+    public CarPoolingController(CarPoolingService carPoolingService, ObjectProvider<PoolRegistry> poolRegistry,
+                                ObjectMapper objectMapper) {
         this.carPoolingService = carPoolingService;
+        this.poolRegistry = poolRegistry.getIfAvailable();
+        this.jsonFactory = objectMapper.getFactory();
     }
 
     /**
@@ -40,21 +69,53 @@ public class CarPoolingController {
 
     /**
      * PUT /cars Load the list of available cars and reset application state.
+     * The body is streamed straight into a new fleet, so no list of cars is ever built.
      */
-    @PutMapping(value = "/cars", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Void> putCars(@RequestBody List<CarDTO> carDTOs) {
-        if (carDTOs == null) {
-            throw new InvalidPayloadException("Cars list cannot be null");
-        }
+    @PutMapping(value = {"/cars", "/pools/{poolId}/cars"}, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Void> putCars(@PathVariable(required = false) String poolId, InputStream body) {
+        CarGeneration fleet = poolId == null ? carPoolingService.newFleet() : pools(poolId).newFleet(poolId);
+
+        Payloads.readCars(jsonFactory, body, fleet::add);
+
+        // A new pool is only created once its fleet has been read in full
+        CarPoolingService service = poolId == null ? carPoolingService : pools(poolId).getOrCreate(poolId);
+        service.loadCars(fleet);
+
+        return ResponseEntity.ok().build();
+    }
+
+    /**
+     * DELETE /cars Reset application state with no cars, e.g. to take a fleet out of service.
+     * Groups requesting a journey afterwards wait.
+     */
+    @DeleteMapping({"/cars", "/pools/{poolId}/cars"})
+    public ResponseEntity<Void> deleteCars(@PathVariable(required = false) String poolId) {
+        CarPoolingService service = service(poolId);
+        service.loadCars(service.newFleet());
+
+        return ResponseEntity.ok().build();
+    }
 
-        if (carDTOs.isEmpty()) {
-            throw new InvalidPayloadException("Cars list cannot be empty");
+    /**
+     * PATCH /cars Add, resize or retire cars, keeping journeys and the waiting queue.
+     */
+    @PatchMapping(value = {"/cars", "/pools/{poolId}/cars"}, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Void> patchCars(@PathVariable(required = false) String poolId,
+                                          @RequestBody FleetUpdateDTO fleetUpdateDTO) {
+        if (fleetUpdateDTO == null) {
+            throw new InvalidPayloadException("Fleet update cannot be null");
         }
 
-        validateCars(carDTOs);
+        List<CarDTO> upsert = fleetUpdateDTO.getUpsert() != null
+                ? fleetUpdateDTO.getUpsert()
+                : Collections.emptyList();
+        List<Integer> retire = fleetUpdateDTO.getRetire() != null
+                ? fleetUpdateDTO.getRetire()
+                : Collections.emptyList();
+
+        int[] retiredCarIds = Payloads.validateFleetUpdate(upsert, retire);
 
-        List<Car> cars = CarMapper.toEntities(carDTOs);
-        carPoolingService.loadCars(cars);
+        service(poolId).updateFleet(CarMapper.toEntities(upsert), retiredCarIds);
 
         return ResponseEntity.ok().build();
     }
@@ -62,44 +123,102 @@ public class CarPoolingController {
     /**
      * POST /journey Register a group requesting a journey.
      */
-    @PostMapping(value = "/journey", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Void> postJourney(@RequestBody JourneyDTO journeyDTO) {
-        validateJourney(journeyDTO);
+    @PostMapping(value = {"/journey", "/pools/{poolId}/journey"}, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Void> postJourney(@PathVariable(required = false) String poolId,
+                                            @RequestBody JourneyDTO journeyDTO) {
+        Payloads.validateJourney(journeyDTO);
 
         int groupId = journeyDTO.getId();
         int people = journeyDTO.getPeople();
 
-        carPoolingService.requestJourney(groupId, people);
+        service(poolId).requestJourney(groupId, people);
 
         return ResponseEntity.ok().build();
     }
 
+    /**
+     * POST /journeys/batch Register several groups requesting a journey, in arrival order.
+     * Responds with one result per group: assigned (with its car), queued or duplicate.
+     */
+    @PostMapping(value = {"/journeys/batch", "/pools/{poolId}/journeys/batch"}, consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<JourneyResultDTO>> postJourneysBatch(@PathVariable(required = false) String poolId,
+                                                                    @RequestBody List<JourneyDTO> journeyDTOs) {
+        if (journeyDTOs == null || journeyDTOs.isEmpty()) {
+            throw new InvalidPayloadException("Journeys list cannot be empty");
+        }
+
+        int[] groupIds = new int[journeyDTOs.size()];
+        int[] people = new int[journeyDTOs.size()];
+
+        for (int i = 0; i < journeyDTOs.size(); i++) {
+            JourneyDTO journeyDTO = journeyDTOs.get(i);
+            if (!Payloads.isValidJourney(journeyDTO)) {
+                throw new InvalidPayloadException(String.format(
+                        "Journey at index %d is invalid: id must be positive, people must be between 1 and 6", i));
+            }
+
+            groupIds[i] = journeyDTO.getId();
+            people[i] = journeyDTO.getPeople();
+        }
+
+        List<JourneyResult> results = service(poolId).requestJourneys(groupIds, people);
+
+        return ResponseEntity.ok(JourneyMapper.toResultDTOs(results));
+    }
+
     /**
      * POST /dropoff Unregister a group (whether they traveled or not).
      */
-    @PostMapping(value = "/dropoff", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+    @PostMapping(value = {"/dropoff", "/pools/{poolId}/dropoff"}, consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
     public ResponseEntity<Void> postDropoff(
+            @PathVariable(required = false) String poolId,
             @RequestParam(value = "ID", required = false) Integer groupId) {
         if (groupId == null) {
             return ResponseEntity.badRequest().build();
         }
 
-        carPoolingService.dropoff(groupId);
+        service(poolId).dropoff(groupId);
 
         return ResponseEntity.ok().build();
     }
 
+    /**
+     * POST /dropoffs/batch Unregister several groups at once.
+     * Responds with one result per group ID: ok or not_found.
+     */
+    @PostMapping(value = {"/dropoffs/batch", "/pools/{poolId}/dropoffs/batch"}, consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<DropoffResultDTO>> postDropoffsBatch(@PathVariable(required = false) String poolId,
+                                                                    @RequestBody List<Integer> groupIds) {
+        if (groupIds == null || groupIds.isEmpty()) {
+            throw new InvalidPayloadException("Group IDs list cannot be empty");
+        }
+
+        int[] ids = new int[groupIds.size()];
+        for (int i = 0; i < ids.length; i++) {
+            Integer groupId = groupIds.get(i);
+            if (groupId == null) {
+                throw new InvalidPayloadException(String.format("Group ID at index %d is null", i));
+            }
+            ids[i] = groupId;
+        }
+
+        List<DropoffResult> results = service(poolId).dropoffs(ids);
+
+        return ResponseEntity.ok(DropoffMapper.toResultDTOs(results));
+    }
+
     /**
      * POST /locate Get the car assigned to a group.
      */
-    @PostMapping(value = "/locate", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    @PostMapping(value = {"/locate", "/pools/{poolId}/locate"}, consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<CarDTO> postLocate(
+            @PathVariable(required = false) String poolId,
             @RequestParam(value = "ID", required = false) Integer groupId) {
         if (groupId == null) {
             return ResponseEntity.badRequest().build();
         }
 
-        Car car = carPoolingService.locate(groupId);
+        Car car = service(poolId).locate(groupId);
         if (car == null) {
             return ResponseEntity.noContent().build();
         }
@@ -110,40 +229,16 @@ public class CarPoolingController {
     }
 
     /**
-     * Validate the list of cars in PUT /cars request.
+     * The service of the default fleet, or of the pool in the path.
      */
-    private void validateCars(List<CarDTO> carDTOs) {
-        int index = 0;
-
-        for (CarDTO carDTO : carDTOs) {
-            if (carDTO == null) {
-                throw new InvalidPayloadException(String.format("Car at index %d is null", index));
-            }
-
-            if (carDTO.getId() <= 0) {
-                throw new InvalidPayloadException(
-                        String.format("Car at index %d has invalid id: %d (must be positive)",
-                                index, carDTO.getId()));
-            }
-
-            if (carDTO.getSeats() < 1 || carDTO.getSeats() > 6) {
-                throw new InvalidPayloadException(String.format(
-                        "Car at index %d (id=%d) has invalid seats: %d (must be between 1 and 6)",
-                        index, carDTO.getId(), carDTO.getSeats()));
-            }
-
-            index++;
-        }
+    private CarPoolingService service(String poolId) {
+        return poolId == null ? carPoolingService : pools(poolId).get(poolId);
     }
 
-    /**
-     * Validate the journey payload in POST /journey request.
-     */
-    private void validateJourney(JourneyDTO journeyDTO) {
-        if (journeyDTO == null || journeyDTO.getId() <= 0 || journeyDTO.getPeople() < 1
-                || journeyDTO.getPeople() > 6) {
-            throw new InvalidPayloadException(
-                    "Invalid journey: id must be positive, people must be between 1 and 6");
+    private PoolRegistry pools(String poolId) {
+        if (poolRegistry == null) {
+            throw new PoolNotFoundException(poolId);
         }
+        return poolRegistry;
     }
 }
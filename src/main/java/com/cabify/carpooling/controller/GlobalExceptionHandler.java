@@ -11,6 +11,9 @@ import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import com.cabify.carpooling.exception.ExistingGroupException;
 import com.cabify.carpooling.exception.GroupNotFoundException;
 import com.cabify.carpooling.exception.InvalidPayloadException;
+import com.cabify.carpooling.exception.NotPrimaryException;
+import com.cabify.carpooling.exception.PartitionUnavailableException;
+import com.cabify.carpooling.exception.PoolNotFoundException;
 
 /**
  * Global exception handler to catch and log errors.
@@ -50,6 +53,36 @@ public class GlobalExceptionHandler {
         return ResponseEntity.notFound().build();
     }
 
+    /**
+     * Handles requests to a pool that does not exist.
+     */
+    @ExceptionHandler(PoolNotFoundException.class)
+    public ResponseEntity<Void> handlePoolNotFound(PoolNotFoundException e) {
+        log.error("Pool not found: {}", e.getMessage());
+
+        return ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Handles writes sent to a read-only replica.
+     */
+    @ExceptionHandler(NotPrimaryException.class)
+    public ResponseEntity<Void> handleNotPrimary(NotPrimaryException e) {
+        log.warn("Rejected write: {}", e.getMessage());
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+    }
+
+    /**
+     * Handles a router request whose partition node is down or too slow.
+     */
+    @ExceptionHandler(PartitionUnavailableException.class)
+    public ResponseEntity<Void> handlePartitionUnavailable(PartitionUnavailableException e) {
+        log.warn("Partition unavailable: {}", e.getMessage());
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+    }
+
     /**
      * Handles HTTP message not readable exceptions.
      */
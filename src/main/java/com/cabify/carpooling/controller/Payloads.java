@@ -0,0 +1,195 @@
+package com.cabify.carpooling.controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+import com.cabify.carpooling.collection.IntIntHashMap.IntIntConsumer;
+import com.cabify.carpooling.dto.CarDTO;
+import com.cabify.carpooling.dto.JourneyDTO;
+import com.cabify.carpooling.exception.InvalidPayloadException;
+
+/**
+ * Payload checks shared by the service and router controllers, so the router rejects
+ * exactly what a node would before forwarding anything.
+ */
+final class Payloads {
+
+    private Payloads() {
+        throw new AssertionError("Utility class cannot be instantiated");
+    }
+
+    /**
+     * Validate a PATCH /cars request and return the car IDs to retire: every upserted car
+     * must be valid, and a car ID may appear only once across upsert and retire.
+     */
+    static int[] validateFleetUpdate(List<CarDTO> upsert, List<Integer> retire) {
+        if (upsert.isEmpty() && retire.isEmpty()) {
+            throw new InvalidPayloadException("Fleet update cannot be empty");
+        }
+
+        validateCars(upsert);
+
+        Set<Integer> carIds = new HashSet<>();
+        for (CarDTO carDTO : upsert) {
+            if (!carIds.add(carDTO.getId())) {
+                throw new InvalidPayloadException(String.format("Car %d appears more than once", carDTO.getId()));
+            }
+        }
+
+        int[] retiredCarIds = new int[retire.size()];
+        for (int i = 0; i < retiredCarIds.length; i++) {
+            Integer carId = retire.get(i);
+            if (carId == null || carId <= 0) {
+                throw new InvalidPayloadException(String.format(
+                        "Car ID to retire at index %d is invalid (must be positive)", i));
+            }
+            if (!carIds.add(carId)) {
+                throw new InvalidPayloadException(String.format("Car %d appears more than once", carId));
+            }
+            retiredCarIds[i] = carId;
+        }
+
+        return retiredCarIds;
+    }
+
+    /**
+     * Read the cars array of a PUT /cars request, validating each car as it is read and passing
+     * it on as (id, seats). Stops at the first invalid car.
+     */
+    static void readCars(JsonFactory jsonFactory, InputStream body, IntIntConsumer cars) {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            readCars(parser, cars);
+        } catch (JsonProcessingException e) {
+            throw new InvalidPayloadException("Malformed cars list: " + e.getOriginalMessage());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void readCars(JsonParser parser, IntIntConsumer cars) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null || token == JsonToken.VALUE_NULL) {
+            throw new InvalidPayloadException("Cars list cannot be null");
+        }
+
+        if (token != JsonToken.START_ARRAY) {
+            throw new InvalidPayloadException("Cars list must be a JSON array");
+        }
+
+        int index = 0;
+
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == JsonToken.VALUE_NULL) {
+                throw new InvalidPayloadException(String.format("Car at index %d is null", index));
+            }
+
+            if (token != JsonToken.START_OBJECT) {
+                throw new InvalidPayloadException(String.format("Car at index %d is not an object", index));
+            }
+
+            int id = 0;
+            int seats = 0;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+
+                if ("id".equals(field)) {
+                    id = readInt(parser, index, field);
+                } else if ("seats".equals(field)) {
+                    seats = readInt(parser, index, field);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+
+            validateCar(index, id, seats);
+            cars.accept(id, seats);
+            index++;
+        }
+
+        if (index == 0) {
+            throw new InvalidPayloadException("Cars list cannot be empty");
+        }
+
+        if (parser.nextToken() != null) {
+            throw new InvalidPayloadException("Unexpected content after the cars list");
+        }
+    }
+
+    /**
+     * Read an integer field of a car, with no coercion from other JSON types. Null reads as 0,
+     * so it is rejected like a missing field.
+     */
+    private static int readInt(JsonParser parser, int index, String field) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return 0;
+        }
+
+        if (token != JsonToken.VALUE_NUMBER_INT) {
+            throw new InvalidPayloadException(String.format("Car at index %d has a non-integer %s", index, field));
+        }
+
+        return parser.getIntValue();
+    }
+
+    /**
+     * Validate a list of cars.
+     */
+    static void validateCars(List<CarDTO> carDTOs) {
+        int index = 0;
+
+        for (CarDTO carDTO : carDTOs) {
+            if (carDTO == null) {
+                throw new InvalidPayloadException(String.format("Car at index %d is null", index));
+            }
+
+            validateCar(index, carDTO.getId(), carDTO.getSeats());
+            index++;
+        }
+    }
+
+    /**
+     * Validate one car: id must be positive, seats must be between 1 and 6.
+     */
+    static void validateCar(int index, int id, int seats) {
+        if (id <= 0) {
+            throw new InvalidPayloadException(
+                    String.format("Car at index %d has invalid id: %d (must be positive)", index, id));
+        }
+
+        if (seats < 1 || seats > 6) {
+            throw new InvalidPayloadException(String.format(
+                    "Car at index %d (id=%d) has invalid seats: %d (must be between 1 and 6)",
+                    index, id, seats));
+        }
+    }
+
+    /**
+     * Validate the journey payload in POST /journey request.
+     */
+    static void validateJourney(JourneyDTO journeyDTO) {
+        if (!isValidJourney(journeyDTO)) {
+            throw new InvalidPayloadException(
+                    "Invalid journey: id must be positive, people must be between 1 and 6");
+        }
+    }
+
+    /**
+     * Check a journey payload: id must be positive, people must be between 1 and 6.
+     */
+    static boolean isValidJourney(JourneyDTO journeyDTO) {
+        return journeyDTO != null && journeyDTO.getId() > 0 && journeyDTO.getPeople() >= 1
+                && journeyDTO.getPeople() <= 6;
+    }
+}
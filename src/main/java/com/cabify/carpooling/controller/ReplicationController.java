@@ -0,0 +1,42 @@
+package com.cabify.carpooling.controller;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import com.cabify.carpooling.dto.ReplicationStatusDTO;
+import com.cabify.carpooling.mapper.ReplicationMapper;
+import com.cabify.carpooling.replication.ReplicationManager;
+
+/**
+ * Replication status and failover.
+ */
+@RestController
+public class ReplicationController {
+
+    private final ReplicationManager replicationManager;
+
+    public ReplicationController(ReplicationManager replicationManager) {
+        this.replicationManager = replicationManager;
+    }
+
+    /**
+     * GET /replication/status Role, last applied LSN and, on a follower, its lag behind the primary.
+     */
+    @GetMapping(value = "/replication/status", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ReplicationStatusDTO> getStatus() {
+        return ResponseEntity.ok(ReplicationMapper.toDTO(replicationManager.status()));
+    }
+
+    /**
+     * POST /replication/promote Turn a follower into a primary that accepts writes and
+     * replicas. A no-op on a node that is already writable.
+     */
+    @PostMapping(value = "/replication/promote", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ReplicationStatusDTO> promote() {
+        replicationManager.promote();
+
+        return ResponseEntity.ok(ReplicationMapper.toDTO(replicationManager.status()));
+    }
+}
@@ -0,0 +1,220 @@
+package com.cabify.carpooling.controller;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.cabify.carpooling.dto.CarDTO;
+import com.cabify.carpooling.dto.FleetUpdateDTO;
+import com.cabify.carpooling.dto.JourneyDTO;
+import com.cabify.carpooling.exception.InvalidPayloadException;
+import com.cabify.carpooling.routing.PartitionRouter;
+import com.cabify.carpooling.routing.PartitionTable;
+
+/**
+ * Front-end of a partitioned deployment: serves the Car Pooling API, with or without a pool,
+ * by forwarding each request whole to the node owning the pool (see {@link PartitionTable}).
+ * A pool's cars and groups always meet on one node, which applies each request on its own.
+ * Payloads are validated here first with the node's own checks, so a request a node would
+ * reject is not forwarded.
+ */
+@RestController
+@ConditionalOnProperty(name = "carpooling.router.enabled", havingValue = "true")
+public class RouterController {
+
+    private static final String JSON = MediaType.APPLICATION_JSON_VALUE;
+    private static final String FORM = MediaType.APPLICATION_FORM_URLENCODED_VALUE;
+
+    private static final byte[] NO_BODY = new byte[0];
+
+    private final PartitionRouter router;
+    private final PartitionTable table;
+    private final ObjectMapper objectMapper;
+    private final JsonFactory jsonFactory;
+
+    public RouterController(PartitionRouter router, ObjectMapper objectMapper) {
+        this.router = router;
+        this.table = router.table();
+        this.objectMapper = objectMapper;
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    /**
+     * GET /status Health check of the router itself.
+     */
+    @GetMapping("/status")
+    public ResponseEntity<Void> getStatus() {
+        return ResponseEntity.ok().build();
+    }
+
+    /**
+     * PUT /cars Check the fleet with the node's streaming parser, then forward it unchanged.
+     */
+    @PutMapping(value = {"/cars", "/pools/{poolId}/cars"}, consumes = JSON)
+    public ResponseEntity<byte[]> putCars(@PathVariable(required = false) String poolId,
+                                          @RequestBody(required = false) byte[] body) {
+        byte[] cars = body != null ? body : NO_BODY;
+        Payloads.readCars(jsonFactory, new ByteArrayInputStream(cars), (id, seats) -> {
+        });
+
+        return forward(poolId, "PUT", "/cars", JSON, cars);
+    }
+
+    /**
+     * DELETE /cars Forward to the pool's partition.
+     */
+    @DeleteMapping({"/cars", "/pools/{poolId}/cars"})
+    public ResponseEntity<byte[]> deleteCars(@PathVariable(required = false) String poolId) {
+        return forward(poolId, "DELETE", "/cars", null, null);
+    }
+
+    /**
+     * PATCH /cars Forward to the pool's partition.
+     */
+    @PatchMapping(value = {"/cars", "/pools/{poolId}/cars"}, consumes = JSON)
+    public ResponseEntity<byte[]> patchCars(@PathVariable(required = false) String poolId,
+                                            @RequestBody FleetUpdateDTO fleetUpdateDTO) {
+        if (fleetUpdateDTO == null) {
+            throw new InvalidPayloadException("Fleet update cannot be null");
+        }
+
+        List<CarDTO> upsert = fleetUpdateDTO.getUpsert() != null
+                ? fleetUpdateDTO.getUpsert()
+                : Collections.emptyList();
+        List<Integer> retire = fleetUpdateDTO.getRetire() != null
+                ? fleetUpdateDTO.getRetire()
+                : Collections.emptyList();
+        Payloads.validateFleetUpdate(upsert, retire);
+
+        return forward(poolId, "PATCH", "/cars", JSON, toJson(fleetUpdateDTO));
+    }
+
+    /**
+     * POST /journey Forward to the pool's partition.
+     */
+    @PostMapping(value = {"/journey", "/pools/{poolId}/journey"}, consumes = JSON)
+    public ResponseEntity<byte[]> postJourney(@PathVariable(required = false) String poolId,
+                                              @RequestBody JourneyDTO journeyDTO) {
+        Payloads.validateJourney(journeyDTO);
+
+        return forward(poolId, "POST", "/journey", JSON, toJson(journeyDTO));
+    }
+
+    /**
+     * POST /journeys/batch Forward to the pool's partition, which keeps the arrival order.
+     */
+    @PostMapping(value = {"/journeys/batch", "/pools/{poolId}/journeys/batch"}, consumes = JSON, produces = JSON)
+    public ResponseEntity<byte[]> postJourneysBatch(@PathVariable(required = false) String poolId,
+                                                    @RequestBody List<JourneyDTO> journeyDTOs) {
+        if (journeyDTOs == null || journeyDTOs.isEmpty()) {
+            throw new InvalidPayloadException("Journeys list cannot be empty");
+        }
+
+        for (int i = 0; i < journeyDTOs.size(); i++) {
+            if (!Payloads.isValidJourney(journeyDTOs.get(i))) {
+                throw new InvalidPayloadException(String.format(
+                        "Journey at index %d is invalid: id must be positive, people must be between 1 and 6", i));
+            }
+        }
+
+        return forward(poolId, "POST", "/journeys/batch", JSON, toJson(journeyDTOs));
+    }
+
+    /**
+     * POST /dropoff Forward to the pool's partition.
+     */
+    @PostMapping(value = {"/dropoff", "/pools/{poolId}/dropoff"}, consumes = FORM)
+    public ResponseEntity<byte[]> postDropoff(@PathVariable(required = false) String poolId,
+                                              @RequestParam(value = "ID", required = false) Integer groupId) {
+        if (groupId == null) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return forward(poolId, "POST", "/dropoff", FORM, form(groupId));
+    }
+
+    /**
+     * POST /dropoffs/batch Forward to the pool's partition.
+     */
+    @PostMapping(value = {"/dropoffs/batch", "/pools/{poolId}/dropoffs/batch"}, consumes = JSON, produces = JSON)
+    public ResponseEntity<byte[]> postDropoffsBatch(@PathVariable(required = false) String poolId,
+                                                    @RequestBody List<Integer> groupIds) {
+        if (groupIds == null || groupIds.isEmpty()) {
+            throw new InvalidPayloadException("Group IDs list cannot be empty");
+        }
+
+        for (int i = 0; i < groupIds.size(); i++) {
+            if (groupIds.get(i) == null) {
+                throw new InvalidPayloadException(String.format("Group ID at index %d is null", i));
+            }
+        }
+
+        return forward(poolId, "POST", "/dropoffs/batch", JSON, toJson(groupIds));
+    }
+
+    /**
+     * POST /locate Forward to the pool's partition.
+     */
+    @PostMapping(value = {"/locate", "/pools/{poolId}/locate"}, consumes = FORM, produces = JSON)
+    public ResponseEntity<byte[]> postLocate(@PathVariable(required = false) String poolId,
+                                             @RequestParam(value = "ID", required = false) Integer groupId) {
+        if (groupId == null) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return forward(poolId, "POST", "/locate", FORM, form(groupId));
+    }
+
+    /**
+     * Send a request to the node owning the pool, under the same pool path, and relay its response.
+     */
+    private ResponseEntity<byte[]> forward(String poolId, String method, String path, String contentType,
+                                           byte[] body) {
+        int partition = table.partitionOf(poolId);
+        String target = poolId == null
+                ? path
+                : "/pools/" + URLEncoder.encode(poolId, StandardCharsets.UTF_8).replace("+", "%20") + path;
+
+        return relay(router.await(partition, router.send(partition, method, target, contentType, body)));
+    }
+
+    private static byte[] form(int groupId) {
+        return ("ID=" + groupId).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static ResponseEntity<byte[]> relay(HttpResponse<byte[]> response) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(response.statusCode());
+        response.headers().firstValue("Content-Type").map(MediaType::parseMediaType).ifPresent(builder::contentType);
+
+        return response.body().length > 0 ? builder.body(response.body()) : builder.build();
+    }
+
+    private byte[] toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.cabify.carpooling.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Data Transfer Object for one item of a POST /dropoffs/batch response.
+ * Status is "ok" or "not_found".
+ */
+public final class DropoffResultDTO {
+
+    @JsonProperty("id")
+    private int id;
+
+    @JsonProperty("status")
+    private String status;
+
+    public DropoffResultDTO() {
+    }
+
+    public DropoffResultDTO(int id, String status) {
+        this.id = id;
+        this.status = status;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+}
@@ -0,0 +1,42 @@
+package com.cabify.carpooling.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Data Transfer Object for PATCH /cars requests.
+ * Cars in "upsert" are added or resized; car IDs in "retire" stop taking new groups.
+ */
+public final class FleetUpdateDTO {
+
+    @JsonProperty("upsert")
+    private List<CarDTO> upsert;
+
+    @JsonProperty("retire")
+    private List<Integer> retire;
+
+    public FleetUpdateDTO() {
+    }
+
+    public FleetUpdateDTO(List<CarDTO> upsert, List<Integer> retire) {
+        this.upsert = upsert;
+        this.retire = retire;
+    }
+
+    public List<CarDTO> getUpsert() {
+        return upsert;
+    }
+
+    public void setUpsert(List<CarDTO> upsert) {
+        this.upsert = upsert;
+    }
+
+    public List<Integer> getRetire() {
+        return retire;
+    }
+
+    public void setRetire(List<Integer> retire) {
+        this.retire = retire;
+    }
+}
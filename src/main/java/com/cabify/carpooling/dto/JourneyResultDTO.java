@@ -0,0 +1,54 @@
+package com.cabify.carpooling.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Data Transfer Object for one item of a POST /journeys/batch response.
+ * Status is "assigned" (with the car), "queued" or "duplicate".
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class JourneyResultDTO {
+
+    @JsonProperty("id")
+    private int id;
+
+    @JsonProperty("status")
+    private String status;
+
+    @JsonProperty("car")
+    private CarDTO car;
+
+    public JourneyResultDTO() {
+    }
+
+    public JourneyResultDTO(int id, String status, CarDTO car) {
+        this.id = id;
+        this.status = status;
+        this.car = car;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public CarDTO getCar() {
+        return car;
+    }
+
+    public void setCar(CarDTO car) {
+        this.car = car;
+    }
+}
@@ -0,0 +1,88 @@
+package com.cabify.carpooling.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Data Transfer Object for the GET /replication/status response.
+ * Role is "standalone", "primary" or "follower"; connected and lag only apply to followers.
+ */
+public final class ReplicationStatusDTO {
+
+    @JsonProperty("role")
+    private String role;
+
+    @JsonProperty("last_lsn")
+    private long lastLsn;
+
+    @JsonProperty("followers")
+    private int followers;
+
+    @JsonProperty("connected")
+    private boolean connected;
+
+    @JsonProperty("lag_records")
+    private long lagRecords;
+
+    @JsonProperty("lag_ms")
+    private long lagMillis;
+
+    public ReplicationStatusDTO() {
+    }
+
+    public ReplicationStatusDTO(String role, long lastLsn, int followers, boolean connected, long lagRecords, long lagMillis) {
+        this.role = role;
+        this.lastLsn = lastLsn;
+        this.followers = followers;
+        this.connected = connected;
+        this.lagRecords = lagRecords;
+        this.lagMillis = lagMillis;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public void setRole(String role) {
+        this.role = role;
+    }
+
+    public long getLastLsn() {
+        return lastLsn;
+    }
+
+    public void setLastLsn(long lastLsn) {
+        this.lastLsn = lastLsn;
+    }
+
+    public int getFollowers() {
+        return followers;
+    }
+
+    public void setFollowers(int followers) {
+        this.followers = followers;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public void setConnected(boolean connected) {
+        this.connected = connected;
+    }
+
+    public long getLagRecords() {
+        return lagRecords;
+    }
+
+    public void setLagRecords(long lagRecords) {
+        this.lagRecords = lagRecords;
+    }
+
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    public void setLagMillis(long lagMillis) {
+        this.lagMillis = lagMillis;
+    }
+}
@@ -0,0 +1,126 @@
+package com.cabify.carpooling.engine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Engine that applies mutations by flat combining.
+ * Callers queue their mutation; whichever caller gets the combiner lock takes the write lock
+ * once and applies every queued mutation in arrival order, completing each caller's handle,
+ * while the others wait for theirs. The outcome is that of the same calls made one by one,
+ * but a burst of concurrent requests costs a few lock handoffs instead of one each.
+ */
+public class CombiningEngine implements PoolingEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(CombiningEngine.class);
+
+    private static final int SPIN_TRIES = 100;
+    // Bounds the extra latency of the thread that combines
+    private static final int MAX_BATCH = 1024;
+
+    private final ConcurrentLinkedQueue<Request<?>> pending = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock combiner = new ReentrantLock();
+    private final StateGuard guard = new StateGuard();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder lockAcquisitions = new LongAdder();
+
+    @Override
+    public <T> T writeAndGet(Supplier<T> mutation) {
+        Request<T> request = new Request<>(mutation);
+        pending.add(request);
+        requests.increment();
+
+        int spins = 0;
+        while (!request.completion.isDone()) {
+            if (combiner.tryLock()) {
+                combineAndHandOff();
+            } else if (spins++ < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.park(this);
+            }
+        }
+
+        return request.completion.await();
+    }
+
+    @Override
+    public <T> T read(Supplier<T> query) {
+        return guard.read(query);
+    }
+
+    /**
+     * Get the number of write lock acquisitions so far, one per combined batch.
+     */
+    public long lockAcquisitions() {
+        return lockAcquisitions.sum();
+    }
+
+    /**
+     * Get the number of mutations requested so far.
+     */
+    public long requests() {
+        return requests.sum();
+    }
+
+    /**
+     * Apply queued mutations under one write lock acquisition, then release the combiner lock.
+     */
+    private void combineAndHandOff() {
+        try {
+            if (!pending.isEmpty()) {
+                lockAcquisitions.increment();
+                guard.write(() -> {
+                    Request<?> request;
+                    for (int applied = 0; applied < MAX_BATCH && (request = pending.poll()) != null; applied++) {
+                        apply(request);
+                    }
+                    return null;
+                });
+            }
+        } finally {
+            combiner.unlock();
+        }
+
+        // A caller that queued while we combined may have parked finding the lock taken:
+        // wake the oldest one so it combines next. Whoever takes the lock first does the same
+        Request<?> next = pending.peek();
+        if (next != null) {
+            LockSupport.unpark(next.waiter);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static void apply(Request request) {
+        Completion completion = request.completion;
+        try {
+            completion.complete(request.mutation.get());
+        } catch (RuntimeException e) {
+            completion.fail(e);
+        } catch (Error e) {
+            log.error("Fatal error applying a combined mutation", e);
+            completion.fail(new IllegalStateException("Combined mutation failed", e));
+        }
+    }
+
+    /**
+     * A queued mutation and the handle its caller waits on.
+     */
+    private static final class Request<T> {
+
+        final Supplier<T> mutation;
+        final Completion<T> completion = new Completion<>();
+        final Thread waiter = Thread.currentThread();
+
+        Request(Supplier<T> mutation) {
+            this.mutation = mutation;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.cabify.carpooling.engine;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lightweight one-shot completion handle the caller waits on while the writer thread
+ * applies its mutation. Spins briefly before parking, since most mutations complete in
+ * a few microseconds.
+ */
+final class Completion<T> {
+
+    private static final int SPIN_TRIES = 100;
+
+    private final Thread waiter = Thread.currentThread();
+
+    private T result;
+    private RuntimeException failure;
+    private volatile boolean done;
+
+    void complete(T value) {
+        result = value;
+        done = true;
+        LockSupport.unpark(waiter);
+    }
+
+    void fail(RuntimeException error) {
+        failure = error;
+        done = true;
+        LockSupport.unpark(waiter);
+    }
+
+    /**
+     * Check if the mutation has been applied, without waiting.
+     */
+    boolean isDone() {
+        return done;
+    }
+
+    T await() {
+        int spins = 0;
+
+        while (!done) {
+            if (spins++ < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.park(this);
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+
+        return result;
+    }
+}
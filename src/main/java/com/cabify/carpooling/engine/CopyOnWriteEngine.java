@@ -0,0 +1,69 @@
+package com.cabify.carpooling.engine;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Engine for state kept in persistent data structures. Mutations run on the calling thread
+ * under an exclusive lock, against a working copy that shares everything it does not change
+ * with the latest version; the new version is published once the mutation returns, and thrown
+ * away if it throws. Readers take no lock at all: they run on the latest version, which stays
+ * consistent however long they take, so readers and writers never wait for each other.
+ */
+public class CopyOnWriteEngine implements PoolingEngine {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PublishedState state;
+
+    public CopyOnWriteEngine(PublishedState state) {
+        this.state = state;
+    }
+
+    @Override
+    public <T> T writeAndGet(Supplier<T> mutation) {
+        lock.lock();
+        try {
+            if (lock.getHoldCount() > 1) {
+                // Nested in another mutation, which publishes both
+                return mutation.get();
+            }
+
+            boolean applied = false;
+            try {
+                T result = mutation.get();
+                state.publish();
+                applied = true;
+                return result;
+            } finally {
+                if (!applied) {
+                    state.discard();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public <T> T read(Supplier<T> query) {
+        return state.latest().read(query);
+    }
+
+    /**
+     * Run an action exclusively with every mutation, then a query on the state as of that
+     * moment. Writers only wait for the action, not for the query.
+     */
+    public <T> T readAfter(Runnable action, Supplier<T> query) {
+        PublishedState.Version version;
+
+        lock.lock();
+        try {
+            action.run();
+            version = state.latest();
+        } finally {
+            lock.unlock();
+        }
+
+        return version.read(query);
+    }
+}
@@ -0,0 +1,105 @@
+package com.cabify.carpooling.engine;
+
+import com.cabify.carpooling.persistence.WriteAheadLog;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Selects the pooling engine with the {@code carpooling.engine.mode} property.
+ */
+@Configuration
+public class EngineConfiguration {
+
+    @Bean
+    @ConditionalOnProperty(name = "carpooling.engine.mode", havingValue = "locking", matchIfMissing = true)
+    public PoolingEngine lockingEngine() {
+        return new LockingEngine();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "carpooling.engine.mode", havingValue = "single-writer")
+    public PoolingEngine singleWriterEngine(
+            @Value("${carpooling.engine.ring-buffer-size:1024}") int ringBufferSize) {
+        return new SingleWriterEngine(ringBufferSize);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "carpooling.engine.mode", havingValue = "striped")
+    public PoolingEngine stripedEngine(
+            @Value("${carpooling.engine.lock-stripes:64}") int lockStripes,
+            WriteAheadLog wal,
+            @Value("${carpooling.replication.role:standalone}") String replicationRole) {
+        // Parallel dropoffs take waiting groups in no single order that a log could replay
+        if (wal.isEnabled() || !"standalone".equals(replicationRole)) {
+            throw new IllegalStateException("carpooling.engine.mode=striped requires the write-ahead log "
+                    + "and replication to be disabled: dropoffs on different cars are not applied in log order");
+        }
+        return new StripedEngine(lockStripes);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "carpooling.engine.mode", havingValue = "combining")
+    public PoolingEngine combiningEngine(MeterRegistry registry) {
+        CombiningEngine engine = new CombiningEngine();
+
+        FunctionCounter.builder("carpooling.engine.lock.acquisitions", engine, CombiningEngine::lockAcquisitions)
+                .description("Write lock acquisitions, one per batch of combined mutations")
+                .register(registry);
+        FunctionCounter.builder("carpooling.engine.requests", engine, CombiningEngine::requests)
+                .description("Mutations submitted to the engine")
+                .register(registry);
+        Gauge.builder("carpooling.engine.lock.acquisitions.per.request", engine,
+                        combining -> combining.lockAcquisitions() / (double) Math.max(1, combining.requests()))
+                .description("Write lock acquisitions per mutation since startup; 1 when nothing is combined")
+                .register(registry);
+        return engine;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "carpooling.engine.mode", havingValue = "copy-on-write")
+    public PoolingEngine copyOnWriteEngine(PublishedState state) {
+        return new CopyOnWriteEngine(state);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "carpooling.engine.mode", havingValue = "sharded")
+    public PoolingEngine shardedEngine(
+            @Value("${carpooling.engine.shards:0}") int shards,
+            @Value("${carpooling.engine.ring-buffer-size:1024}") int ringBufferSize,
+            WriteAheadLog wal,
+            @Value("${carpooling.snapshot.enabled:false}") boolean snapshotsEnabled,
+            @Value("${carpooling.replication.role:standalone}") String replicationRole,
+            @Value("${carpooling.raft.enabled:false}") boolean raftEnabled) {
+        // The log, snapshots, replication and Raft all cover the state of one CarPoolingService
+        if (wal.isEnabled() || snapshotsEnabled || !"standalone".equals(replicationRole) || raftEnabled) {
+            throw new IllegalStateException("carpooling.engine.mode=sharded requires the write-ahead log, "
+                    + "snapshots, replication and Raft to be disabled: the shards are kept in memory only");
+        }
+        return new ShardedEngine(shards > 0 ? shards : Runtime.getRuntime().availableProcessors(), ringBufferSize);
+    }
+
+    /**
+     * Create an engine outside Spring, e.g. for an extra pool, in the given mode
+     * ("locking", "single-writer", "striped" or "combining"; pools are never sharded, and a
+     * copy-on-write engine comes with its own state, see {@link CopyOnWriteEngine}).
+     */
+    public static PoolingEngine newEngine(String mode, int ringBufferSize, int lockStripes) {
+        switch (mode) {
+            case "locking":
+                return new LockingEngine();
+            case "single-writer":
+                return new SingleWriterEngine(ringBufferSize);
+            case "striped":
+                return new StripedEngine(lockStripes);
+            case "combining":
+                return new CombiningEngine();
+            default:
+                throw new IllegalArgumentException("Unknown engine mode: " + mode);
+        }
+    }
+}
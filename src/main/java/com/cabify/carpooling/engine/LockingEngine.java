@@ -0,0 +1,21 @@
+package com.cabify.carpooling.engine;
+
+import java.util.function.Supplier;
+
+/**
+ * Engine that runs mutations on the calling thread under an exclusive lock.
+ */
+public class LockingEngine implements PoolingEngine {
+
+    private final StateGuard guard = new StateGuard();
+
+    @Override
+    public <T> T writeAndGet(Supplier<T> mutation) {
+        return guard.write(mutation);
+    }
+
+    @Override
+    public <T> T read(Supplier<T> query) {
+        return guard.read(query);
+    }
+}
@@ -0,0 +1,31 @@
+package com.cabify.carpooling.engine;
+
+import java.util.function.Supplier;
+
+/**
+ * Execution strategy for the pooling state.
+ * Decides how mutations and queries of the repositories are serialised.
+ */
+public interface PoolingEngine {
+
+    /**
+     * Apply a mutation exclusively and return its result.
+     * Runtime exceptions thrown by the mutation are rethrown to the caller.
+     */
+    <T> T writeAndGet(Supplier<T> mutation);
+
+    /**
+     * Apply a mutation exclusively.
+     */
+    default void write(Runnable mutation) {
+        writeAndGet(() -> {
+            mutation.run();
+            return null;
+        });
+    }
+
+    /**
+     * Run a query that must observe a consistent state.
+     */
+    <T> T read(Supplier<T> query);
+}
@@ -0,0 +1,36 @@
+package com.cabify.carpooling.engine;
+
+import java.util.function.Supplier;
+
+/**
+ * State that writers change in a working copy and publish as a whole, for the
+ * {@link CopyOnWriteEngine}. Published versions never change, so readers never wait.
+ */
+public interface PublishedState {
+
+    /**
+     * Make the working copy the latest version.
+     */
+    void publish();
+
+    /**
+     * Throw the working copy away and restart from the latest version.
+     */
+    void discard();
+
+    /**
+     * Get the latest published version.
+     */
+    Version latest();
+
+    /**
+     * One published version of the state.
+     */
+    interface Version {
+
+        /**
+         * Run a query that only sees this version, however many are published meanwhile.
+         */
+        <T> T read(Supplier<T> query);
+    }
+}
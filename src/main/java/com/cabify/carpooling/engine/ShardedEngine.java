@@ -0,0 +1,96 @@
+package com.cabify.carpooling.engine;
+
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Engine that splits the state into shards, each owned by one writer thread.
+ * A shard's state is only mutated on its own thread ({@link #writeShard}) and read like in
+ * {@link SingleWriterEngine}, so operations on different shards never share a lock. An
+ * operation that visits several shards one after the other runs inside {@link #shared};
+ * whole-state mutations ({@link #writeAndGet}) exclude those, then visit every shard.
+ */
+public class ShardedEngine implements PoolingEngine, DisposableBean {
+
+    // Shared by cross-shard operations, exclusive for whole-state mutations
+    private final ReentrantReadWriteLock state = new ReentrantReadWriteLock();
+    private final SingleWriterEngine[] shards;
+
+    public ShardedEngine(int shardCount, int ringBufferSize) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException(String.format("Shard count must be positive, got %d", shardCount));
+        }
+
+        shards = new SingleWriterEngine[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new SingleWriterEngine(ringBufferSize, "pooling-shard-" + i);
+        }
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Get the shard that owns an ID; consecutive IDs are spread over the shards.
+     */
+    public int shardOf(int id) {
+        return Integer.remainderUnsigned(id * 0x9E3779B9, shards.length);
+    }
+
+    /**
+     * Run a mutation of the whole state, exclusively with every other operation. It touches
+     * shards through {@link #writeShard} and {@link #readShard}, like any other operation.
+     */
+    @Override
+    public <T> T writeAndGet(Supplier<T> mutation) {
+        state.writeLock().lock();
+        try {
+            return mutation.get();
+        } finally {
+            state.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public <T> T read(Supplier<T> query) {
+        return shared(query);
+    }
+
+    /**
+     * Run an operation that visits one or more shards in turn, in parallel with other such
+     * operations; whole-state mutations wait until it is done.
+     */
+    public <T> T shared(Supplier<T> operation) {
+        state.readLock().lock();
+        try {
+            return operation.get();
+        } finally {
+            state.readLock().unlock();
+        }
+    }
+
+    /**
+     * Apply a mutation of one shard on its writer thread. Must be called inside {@link #shared}
+     * or {@link #writeAndGet}, and never from a shard mutation.
+     */
+    public <T> T writeShard(int shard, Supplier<T> mutation) {
+        return shards[shard].writeAndGet(mutation);
+    }
+
+    /**
+     * Read one shard without blocking its writer.
+     */
+    public <T> T readShard(int shard, Supplier<T> query) {
+        return shards[shard].read(query);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        for (SingleWriterEngine shard : shards) {
+            shard.destroy();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.cabify.carpooling.engine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Engine that applies every mutation on one dedicated writer thread.
+ * Callers publish their mutation into a bounded ring buffer (multi-producer, single
+ * consumer, in the style of LMAX Disruptor) and wait on a completion handle.
+ * The writer drains all published slots in one batch, so request threads never contend
+ * with each other on a lock. Reads never enter the ring buffer. On shutdown the writer
+ * applies every claimed slot, then closes the sequence so no later claim can succeed.
+ */
+public class SingleWriterEngine implements PoolingEngine, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(SingleWriterEngine.class);
+
+    private static final int WRITER_SPIN_TRIES = 1000;
+    private static final int PRODUCER_SPIN_TRIES = 100;
+    private static final int PRODUCER_YIELD_TRIES = 100;
+    private static final long PRODUCER_PARK_NANOS = 10_000L;
+    // Claim sequence once the writer has stopped
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    private final Slot[] ring;
+    private final int mask;
+
+    // Next sequence to be claimed by a producer
+    private final AtomicLong claimSequence = new AtomicLong();
+    // Last sequence applied by the writer
+    private volatile long consumedSequence = -1;
+
+    private final StateGuard guard = new StateGuard();
+
+    private final Thread writer;
+    private volatile boolean running = true;
+    private volatile boolean writerParked;
+
+    public SingleWriterEngine(int ringBufferSize) {
+        this(ringBufferSize, "pooling-writer");
+    }
+
+    public SingleWriterEngine(int ringBufferSize, String writerName) {
+        if (ringBufferSize < 1 || Integer.bitCount(ringBufferSize) != 1) {
+            throw new IllegalArgumentException(
+                    String.format("Ring buffer size must be a power of two, got %d", ringBufferSize));
+        }
+
+        ring = new Slot[ringBufferSize];
+        for (int i = 0; i < ringBufferSize; i++) {
+            ring[i] = new Slot();
+        }
+        mask = ringBufferSize - 1;
+
+        writer = new Thread(this::runWriter, writerName);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public <T> T writeAndGet(Supplier<T> mutation) {
+        // Nested mutations issued by the writer itself run inline
+        if (Thread.currentThread() == writer) {
+            return mutation.get();
+        }
+
+        Completion<T> completion = new Completion<>();
+        long sequence = claim();
+
+        // Back-pressure: wait until the writer has freed the slot we claimed, spinning briefly,
+        // then yielding and parking so waiting producers leave the writer a core
+        int tries = 0;
+        while (sequence - ring.length > consumedSequence) {
+            wakeWriter();
+            if (tries < PRODUCER_SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else if (tries < PRODUCER_SPIN_TRIES + PRODUCER_YIELD_TRIES) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(this, PRODUCER_PARK_NANOS);
+            }
+            tries++;
+        }
+
+        Slot slot = ring[(int) (sequence & mask)];
+        slot.mutation = mutation;
+        slot.completion = completion;
+        slot.published = sequence;
+
+        wakeWriter();
+
+        return completion.await();
+    }
+
+    @Override
+    public <T> T read(Supplier<T> query) {
+        return guard.read(query);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join();
+    }
+
+    /**
+     * Claim the next sequence, unless the writer has stopped. A claimed slot is always applied:
+     * the writer only stops once it has caught up with every claim.
+     */
+    private long claim() {
+        while (true) {
+            long sequence = claimSequence.get();
+            if (sequence == CLOSED || !running) {
+                throw new IllegalStateException("Single-writer engine is stopped");
+            }
+            if (claimSequence.compareAndSet(sequence, sequence + 1)) {
+                return sequence;
+            }
+        }
+    }
+
+    private void wakeWriter() {
+        if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Writer loop: apply every published slot in sequence order until stopped and caught up.
+     */
+    private void runWriter() {
+        long next = 0;
+        int idleSpins = 0;
+
+        while (true) {
+            if (!isPublished(next)) {
+                // Fails while a producer still has a claimed slot to publish
+                if (!running && claimSequence.compareAndSet(next, CLOSED)) {
+                    return;
+                }
+                if (idleSpins++ < WRITER_SPIN_TRIES) {
+                    Thread.onSpinWait();
+                } else {
+                    writerParked = true;
+                    if (!isPublished(next) && running) {
+                        LockSupport.parkNanos(this, 1_000_000L);
+                    }
+                    writerParked = false;
+                }
+                continue;
+            }
+
+            idleSpins = 0;
+            while (isPublished(next)) {
+                apply(ring[(int) (next & mask)]);
+                consumedSequence = next;
+                next++;
+            }
+        }
+    }
+
+    private boolean isPublished(long sequence) {
+        return ring[(int) (sequence & mask)].published == sequence;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void apply(Slot slot) {
+        Supplier<?> mutation = slot.mutation;
+        Completion completion = slot.completion;
+        slot.mutation = null;
+        slot.completion = null;
+
+        try {
+            // The write lock is only taken so optimistic readers can detect the mutation
+            completion.complete(guard.write(mutation));
+        } catch (RuntimeException e) {
+            completion.fail(e);
+        } catch (Error e) {
+            log.error("Fatal error applying mutation on writer thread", e);
+            completion.fail(new IllegalStateException("Mutation failed on writer thread", e));
+        }
+    }
+
+    /**
+     * Ring buffer entry. The volatile publish marker orders the plain field writes.
+     */
+    private static final class Slot {
+        private Supplier<?> mutation;
+        private Completion<?> completion;
+        private volatile long published = -1;
+    }
+}
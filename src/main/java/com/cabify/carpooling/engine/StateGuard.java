@@ -0,0 +1,57 @@
+package com.cabify.carpooling.engine;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Guards the pooling state with a {@link StampedLock}.
+ * Writers take the exclusive lock; readers first run optimistically without any lock
+ * and only fall back to the shared read lock when a write overlapped them, so reads
+ * scale with cores while still observing a consistent state.
+ */
+final class StateGuard {
+
+    private static final int OPTIMISTIC_TRIES = 3;
+
+    private final StampedLock lock = new StampedLock();
+
+    <T> T write(Supplier<T> mutation) {
+        long stamp = lock.writeLock();
+        try {
+            return mutation.get();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    <T> T read(Supplier<T> query) {
+        for (int i = 0; i < OPTIMISTIC_TRIES; i++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp == 0) {
+                break;
+            }
+
+            T result;
+            try {
+                result = query.get();
+            } catch (RuntimeException e) {
+                // A concurrent write may have left the repositories mid-update
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+                continue;
+            }
+
+            if (lock.validate(stamp)) {
+                return result;
+            }
+        }
+
+        long stamp = lock.readLock();
+        try {
+            return query.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.cabify.carpooling.engine;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Engine that lets mutations confined to one car run in parallel.
+ * Whole-state mutations still run exclusively, like in {@link LockingEngine}. A per-car
+ * mutation ({@link #writeCar}) only excludes those and mutations of cars in the same lock
+ * stripe; whenever it touches groups, journeys or the waiting queue, it does so in a short
+ * {@link #bookkeeping} section, which is also what readers validate against.
+ */
+public class StripedEngine implements PoolingEngine {
+
+    // Exclusive for whole-state mutations, shared for per-car ones; unlike a StampedLock,
+    // new shared holders queue behind a waiting writer, so dropoffs cannot starve requests
+    private final ReentrantReadWriteLock state = new ReentrantReadWriteLock();
+    private final ReentrantLock[] stripes;
+    private final int mask;
+    private final StateGuard bookkeeping = new StateGuard();
+
+    public StripedEngine(int stripeCount) {
+        if (stripeCount < 1 || Integer.bitCount(stripeCount) != 1) {
+            throw new IllegalArgumentException(
+                    String.format("Lock stripe count must be a power of two, got %d", stripeCount));
+        }
+
+        stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        mask = stripeCount - 1;
+    }
+
+    @Override
+    public <T> T writeAndGet(Supplier<T> mutation) {
+        state.writeLock().lock();
+        try {
+            return bookkeeping.write(mutation);
+        } finally {
+            state.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public <T> T read(Supplier<T> query) {
+        return bookkeeping.read(query);
+    }
+
+    /**
+     * Apply a mutation of one car's seats under that car's lock stripe, in parallel with
+     * mutations of cars in other stripes. Groups, journeys and the waiting queue must only be
+     * touched inside {@link #bookkeeping} sections.
+     */
+    public <T> T writeCar(int carId, Supplier<T> mutation) {
+        ReentrantLock stripe = stripes[stripeOf(carId)];
+
+        state.readLock().lock();
+        stripe.lock();
+        try {
+            return mutation.get();
+        } finally {
+            stripe.unlock();
+            state.readLock().unlock();
+        }
+    }
+
+    /**
+     * Apply a short mutation of groups, journeys or the waiting queue, exclusively with every
+     * other one. May run inside {@link #writeCar}, never inside {@link #writeAndGet}.
+     */
+    public <T> T bookkeeping(Supplier<T> section) {
+        return bookkeeping.write(section);
+    }
+
+    private int stripeOf(int carId) {
+        // Spread consecutive IDs over the stripes
+        return (carId * 0x9E3779B9 >>> 16) & mask;
+    }
+}
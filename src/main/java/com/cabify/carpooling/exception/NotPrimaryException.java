@@ -0,0 +1,22 @@
+package com.cabify.carpooling.exception;
+
+/**
+ * Exception thrown when a replica is asked to change state; only the primary (or the Raft
+ * leader) accepts writes.
+ */
+public class NotPrimaryException extends RuntimeException {
+
+    /**
+     * Creates an exception with default message.
+     */
+    public NotPrimaryException() {
+        super("This node is a read-only replica");
+    }
+
+    /**
+     * Creates an exception with a custom message.
+     */
+    public NotPrimaryException(String message) {
+        super(message);
+    }
+}
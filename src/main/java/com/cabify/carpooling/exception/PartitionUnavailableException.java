@@ -0,0 +1,14 @@
+package com.cabify.carpooling.exception;
+
+/**
+ * Exception thrown by the router when the node owning a partition cannot be reached in time.
+ */
+public class PartitionUnavailableException extends RuntimeException {
+
+    /**
+     * Creates an exception for the given partition and the failure that made it unreachable.
+     */
+    public PartitionUnavailableException(int partition, String node, Throwable cause) {
+        super(String.format("Partition %d at %s is unavailable: %s", partition, node, cause), cause);
+    }
+}
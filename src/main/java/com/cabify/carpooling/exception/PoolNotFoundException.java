@@ -0,0 +1,14 @@
+package com.cabify.carpooling.exception;
+
+/**
+ * Exception thrown when a request names a pool that has not been loaded with PUT.
+ */
+public class PoolNotFoundException extends RuntimeException {
+
+    /**
+     * Creates an exception with the pool ID.
+     */
+    public PoolNotFoundException(String poolId) {
+        super(String.format("Pool %s not found", poolId));
+    }
+}
@@ -0,0 +1,122 @@
+package com.cabify.carpooling.logging;
+
+import com.cabify.carpooling.service.CarPoolingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Log lines written from inside the pooling engine. Arguments are primitive longs, so
+ * publishing an event neither formats nor boxes anything on the caller's thread.
+ */
+public enum HotPathEvent {
+
+    CARS_LOADED(Level.INFO,
+            "Cars loaded - application state reset. cars_count={}, duration_ms={}"),
+    FLEET_UPDATED(Level.INFO,
+            "Fleet updated. cars_upserted={}, cars_retired={}, duration_ms={}"),
+    JOURNEY_ALREADY_ASSIGNED(Level.WARN,
+            "Journey request for group already assigned. group_id={}, people={}"),
+    JOURNEY_ASSIGNED(Level.INFO,
+            "Journey assigned successfully. group_id={}, people={}, car_id={}, duration_ms={}"),
+    JOURNEY_QUEUED(Level.INFO,
+            "Journey queued - no available car. group_id={}, people={}, duration_ms={}"),
+    DROPOFF_TRAVELLING(Level.INFO,
+            "Dropoff processed for traveling group. group_id={}, people={}, car_id={}, duration_ms={}"),
+    DROPOFF_WAITING(Level.INFO,
+            "Dropoff processed for waiting group. group_id={}, people={}, duration_ms={}"),
+    BATCH_DROPOFF(Level.INFO,
+            "Batch dropoff processed. groups_count={}, cars_reallocated={}, duration_ms={}"),
+    SEATS_RELEASED(Level.DEBUG,
+            "Seats released atomically. car_id={}, seats_released={}, total_available={}"),
+    RETIRED_CAR_NOT_REFILLED(Level.DEBUG,
+            "Retired car not refilled. car_id={}, total_available={}"),
+    RESERVATION_RACE(Level.WARN,
+            "Could not reserve seats for group during reallocation (race condition). " +
+                    "car_id={}, group_id={}, people={}"),
+    WAITING_GROUP_ASSIGNED(Level.DEBUG,
+            "Seats reserved for waiting group. car_id={}, group_id={}, people={}"),
+    CAR_ALLOCATION_UPDATED(Level.INFO,
+            "Car allocation updated after dropoff. car_id={}, new_free_seats={}, total_free_seats={}, " +
+                    "groups_assigned={}, total_people_assigned={}, remaining_seats={}, duration_ms={}");
+
+    /**
+     * Severity of an event. WARN and ERROR events are never sampled out.
+     */
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    private static final Logger SERVICE_LOG = LoggerFactory.getLogger(CarPoolingService.class);
+
+    private final Level level;
+    private final String message;
+    private final int arity;
+
+    HotPathEvent(Level level, String message) {
+        this.level = level;
+        this.message = message;
+        this.arity = countPlaceholders(message);
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * Check if this event bypasses sampling and is written even when the buffer is full.
+     */
+    public boolean isAlwaysLogged() {
+        return level == Level.WARN || level == Level.ERROR;
+    }
+
+    /**
+     * Check if this event would be written at the current logger level.
+     */
+    public boolean isEnabled() {
+        switch (level) {
+            case DEBUG:
+                return SERVICE_LOG.isDebugEnabled();
+            case INFO:
+                return SERVICE_LOG.isInfoEnabled();
+            case WARN:
+                return SERVICE_LOG.isWarnEnabled();
+            default:
+                return SERVICE_LOG.isErrorEnabled();
+        }
+    }
+
+    /**
+     * Format and write this event; called off the hot path.
+     */
+    void write(Object[] arguments) {
+        switch (level) {
+            case DEBUG:
+                SERVICE_LOG.debug(message, arguments);
+                break;
+            case INFO:
+                SERVICE_LOG.info(message, arguments);
+                break;
+            case WARN:
+                SERVICE_LOG.warn(message, arguments);
+                break;
+            default:
+                SERVICE_LOG.error(message, arguments);
+                break;
+        }
+    }
+
+    /**
+     * Number of {} placeholders in the message.
+     */
+    int arity() {
+        return arity;
+    }
+
+    private static int countPlaceholders(String message) {
+        int count = 0;
+        for (int i = message.indexOf("{}"); i >= 0; i = message.indexOf("{}", i + 2)) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,225 @@
+package com.cabify.carpooling.logging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous logger for the pooling engine's hot path.
+ * Callers copy an event and its primitive arguments into a pre-allocated ring buffer slot
+ * (multi-producer, single consumer, like the single-writer engine); a background thread
+ * formats and writes them, so neither formatting nor appender I/O happens under the engine's
+ * lock. When the buffer is full, DEBUG and INFO events are dropped and counted, and WARN and
+ * ERROR events are written on the caller's thread instead.
+ * DEBUG and INFO events can be sampled 1-in-N per event type; WARN and ERROR never are.
+ */
+@Component
+public class HotPathLogger implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(HotPathLogger.class);
+
+    private static final int MAX_ARGUMENTS = 7;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long DROP_REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final Slot[] ring;
+    private final int mask;
+    private final int sampleRate;
+
+    // Next sequence to be claimed by a producer
+    private final AtomicLong claimSequence = new AtomicLong();
+    // Last sequence written by the consumer
+    private volatile long consumedSequence = -1;
+
+    private final AtomicLongArray eventCounts = new AtomicLongArray(HotPathEvent.values().length);
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Thread consumer;
+    private volatile boolean running = true;
+
+    public HotPathLogger(
+            @Value("${carpooling.logging.ring-buffer-size:8192}") int ringBufferSize,
+            @Value("${carpooling.logging.sample-rate:1}") int sampleRate) {
+        if (ringBufferSize < 1 || Integer.bitCount(ringBufferSize) != 1) {
+            throw new IllegalArgumentException(
+                    String.format("Log ring buffer size must be a power of two, got %d", ringBufferSize));
+        }
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException(
+                    String.format("Log sample rate must be at least 1, got %d", sampleRate));
+        }
+
+        ring = new Slot[ringBufferSize];
+        for (int i = 0; i < ringBufferSize; i++) {
+            ring[i] = new Slot();
+        }
+        mask = ringBufferSize - 1;
+        this.sampleRate = sampleRate;
+
+        consumer = new Thread(this::runConsumer, "hot-path-log");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    public void log(HotPathEvent event, long a0, long a1) {
+        publish(event, a0, a1, 0, 0, 0, 0, 0);
+    }
+
+    public void log(HotPathEvent event, long a0, long a1, long a2) {
+        publish(event, a0, a1, a2, 0, 0, 0, 0);
+    }
+
+    public void log(HotPathEvent event, long a0, long a1, long a2, long a3) {
+        publish(event, a0, a1, a2, a3, 0, 0, 0);
+    }
+
+    public void log(HotPathEvent event, long a0, long a1, long a2, long a3, long a4, long a5, long a6) {
+        publish(event, a0, a1, a2, a3, a4, a5, a6);
+    }
+
+    /**
+     * Wait until every event published so far has been written, or the timeout elapses.
+     */
+    public boolean flush(long timeout, TimeUnit unit) {
+        long target = claimSequence.get() - 1;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        while (consumedSequence < target) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS / 10);
+        }
+        return true;
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(consumer);
+        consumer.join();
+    }
+
+    private void publish(HotPathEvent event, long a0, long a1, long a2, long a3, long a4, long a5, long a6) {
+        if (!event.isEnabled()) {
+            return;
+        }
+
+        boolean always = event.isAlwaysLogged();
+        if (!always && sampleRate > 1 && eventCounts.getAndIncrement(event.ordinal()) % sampleRate != 0) {
+            return;
+        }
+
+        long sequence = claim();
+        if (sequence < 0) {
+            if (always) {
+                event.write(arguments(event.arity(), new long[] {a0, a1, a2, a3, a4, a5, a6}));
+            } else {
+                dropped.incrementAndGet();
+            }
+            return;
+        }
+
+        Slot slot = ring[(int) (sequence & mask)];
+        slot.event = event;
+        long[] args = slot.arguments;
+        args[0] = a0;
+        args[1] = a1;
+        args[2] = a2;
+        args[3] = a3;
+        args[4] = a4;
+        args[5] = a5;
+        args[6] = a6;
+        slot.published = sequence;
+    }
+
+    /**
+     * Claim the next slot, or return -1 if the buffer is full. Never waits for the consumer.
+     */
+    private long claim() {
+        while (true) {
+            long sequence = claimSequence.get();
+            if (sequence - ring.length > consumedSequence) {
+                return -1;
+            }
+            if (claimSequence.compareAndSet(sequence, sequence + 1)) {
+                return sequence;
+            }
+        }
+    }
+
+    /**
+     * Consumer loop: format and write every published slot in sequence order.
+     */
+    private void runConsumer() {
+        long next = 0;
+        long lastDropReport = System.nanoTime();
+
+        while (running || next < claimSequence.get()) {
+            if (!isPublished(next)) {
+                if (running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                } else if (next < claimSequence.get()) {
+                    // A producer claimed a slot but has not published it yet
+                    Thread.onSpinWait();
+                }
+            } else {
+                while (isPublished(next)) {
+                    write(ring[(int) (next & mask)]);
+                    consumedSequence = next;
+                    next++;
+                }
+            }
+
+            if (System.nanoTime() - lastDropReport > DROP_REPORT_INTERVAL_NANOS) {
+                reportDropped();
+                lastDropReport = System.nanoTime();
+            }
+        }
+
+        reportDropped();
+    }
+
+    private boolean isPublished(long sequence) {
+        return ring[(int) (sequence & mask)].published == sequence;
+    }
+
+    private void write(Slot slot) {
+        try {
+            slot.event.write(arguments(slot.event.arity(), slot.arguments));
+        } catch (RuntimeException e) {
+            log.error("Failed to write hot-path log event {}", slot.event, e);
+        }
+    }
+
+    private void reportDropped() {
+        long count = dropped.getAndSet(0);
+        if (count > 0) {
+            log.warn("Hot-path log buffer full, events dropped. dropped_count={}", count);
+        }
+    }
+
+    private static Object[] arguments(int arity, long[] values) {
+        Object[] arguments = new Object[arity];
+        for (int i = 0; i < arity; i++) {
+            arguments[i] = values[i];
+        }
+        return arguments;
+    }
+
+    /**
+     * Ring buffer entry. The volatile publish marker orders the plain field writes.
+     */
+    private static final class Slot {
+        private HotPathEvent event;
+        private final long[] arguments = new long[MAX_ARGUMENTS];
+        private volatile long published = -1;
+    }
+}
@@ -0,0 +1,40 @@
+package com.cabify.carpooling.mapper;
+
+import com.cabify.carpooling.dto.DropoffResultDTO;
+import com.cabify.carpooling.model.DropoffResult;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Mapper for converting dropoff outcomes to DTOs.
+ */
+public final class DropoffMapper {
+
+    private DropoffMapper() {
+        throw new AssertionError("Utility class cannot be instantiated");
+    }
+
+    /**
+     * Convert a dropoff outcome to its API representation.
+     */
+    public static DropoffResultDTO toResultDTO(DropoffResult result) {
+        if (result == null) {
+            return null;
+        }
+        return new DropoffResultDTO(result.getGroupId(), result.getStatus().name().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Convert a list of dropoff outcomes to DTOs, keeping their order.
+     */
+    public static List<DropoffResultDTO> toResultDTOs(List<DropoffResult> results) {
+        if (results == null) {
+            return null;
+        }
+        return results.stream()
+                .map(DropoffMapper::toResultDTO)
+                .collect(Collectors.toList());
+    }
+}
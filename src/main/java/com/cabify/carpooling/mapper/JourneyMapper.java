@@ -0,0 +1,43 @@
+package com.cabify.carpooling.mapper;
+
+import com.cabify.carpooling.dto.JourneyResultDTO;
+import com.cabify.carpooling.model.JourneyResult;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Mapper for converting journey outcomes to DTOs.
+ */
+public final class JourneyMapper {
+
+    private JourneyMapper() {
+        throw new AssertionError("Utility class cannot be instantiated");
+    }
+
+    /**
+     * Convert a journey outcome to its API representation.
+     */
+    public static JourneyResultDTO toResultDTO(JourneyResult result) {
+        if (result == null) {
+            return null;
+        }
+        return new JourneyResultDTO(
+                result.getGroupId(),
+                result.getStatus().name().toLowerCase(Locale.ROOT),
+                CarMapper.toDTO(result.getCar()));
+    }
+
+    /**
+     * Convert a list of journey outcomes to DTOs, keeping their order.
+     */
+    public static List<JourneyResultDTO> toResultDTOs(List<JourneyResult> results) {
+        if (results == null) {
+            return null;
+        }
+        return results.stream()
+                .map(JourneyMapper::toResultDTO)
+                .collect(Collectors.toList());
+    }
+}
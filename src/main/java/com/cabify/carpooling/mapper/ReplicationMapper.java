@@ -0,0 +1,32 @@
+package com.cabify.carpooling.mapper;
+
+import com.cabify.carpooling.dto.ReplicationStatusDTO;
+import com.cabify.carpooling.model.ReplicationStatus;
+
+import java.util.Locale;
+
+/**
+ * Mapper for converting the replication status to its DTO.
+ */
+public final class ReplicationMapper {
+
+    private ReplicationMapper() {
+        throw new AssertionError("Utility class cannot be instantiated");
+    }
+
+    /**
+     * Convert the replication status to its API representation.
+     */
+    public static ReplicationStatusDTO toDTO(ReplicationStatus status) {
+        if (status == null) {
+            return null;
+        }
+        return new ReplicationStatusDTO(
+                status.getRole().name().toLowerCase(Locale.ROOT),
+                status.getLastLsn(),
+                status.getFollowers(),
+                status.isConnected(),
+                status.getLagRecords(),
+                status.getLagMillis());
+    }
+}
@@ -0,0 +1,138 @@
+package com.cabify.carpooling.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters for the allocation engine.
+ * Timers and counters are lock-free; gauges read the fleet's {@link FleetCounts} without locking
+ * when scraped, so neither adds contention to the hot path. Gauges are registered once the
+ * fleet serving the operations is known (see {@link #registerGauges}).
+ */
+@Component
+public class CarPoolingMetrics {
+
+    private static final int MAX_SEATS = 6;
+
+    /**
+     * Timed CarPoolingService operations.
+     */
+    public enum Operation {
+        LOAD_CARS,
+        UPDATE_FLEET,
+        REQUEST_JOURNEY,
+        REQUEST_JOURNEYS,
+        DROPOFF,
+        DROPOFFS,
+        LOCATE
+    }
+
+    private final Timer[] timers = new Timer[Operation.values().length];
+    private final Counter reallocatedGroups;
+    private final DistributionSummary reallocationsPerDropoff;
+
+    private final MeterRegistry registry;
+    private final String prefix;
+    private final Tags tags;
+
+    @Autowired
+    public CarPoolingMetrics(MeterRegistry registry) {
+        this(registry, null);
+    }
+
+    /**
+     * Meters for one of several pools, or for the default fleet if {@code pool} is null.
+     * Pool meters are named {@code carpooling.pool.*} and tagged with the pool ID, so the
+     * default fleet's series keep their names and labels.
+     */
+    public CarPoolingMetrics(MeterRegistry registry, String pool) {
+        this.registry = registry;
+        this.prefix = pool == null ? "carpooling." : "carpooling.pool.";
+        this.tags = pool == null ? Tags.empty() : Tags.of("pool", pool);
+
+        for (Operation operation : Operation.values()) {
+            timers[operation.ordinal()] = Timer.builder(prefix + "operation")
+                    .description("Time spent in a CarPoolingService operation, engine wait included")
+                    .tag("operation", operation.name().toLowerCase(Locale.ROOT))
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofNanos(100))
+                    .maximumExpectedValue(Duration.ofSeconds(1))
+                    .tags(tags)
+                    .register(registry);
+        }
+
+        reallocatedGroups = Counter.builder(prefix + "reallocated.groups")
+                .description("Waiting groups assigned to a car freed by a dropoff")
+                .tags(tags)
+                .register(registry);
+        reallocationsPerDropoff = DistributionSummary.builder(prefix + "dropoff.reallocations")
+                .description("Waiting groups assigned per car freed by a dropoff")
+                .tags(tags)
+                .register(registry);
+    }
+
+    /**
+     * Register the state gauges over the fleet that serves the operations.
+     */
+    public void registerGauges(FleetCounts fleet) {
+        for (int people = 1; people <= MAX_SEATS; people++) {
+            int size = people;
+            Gauge.builder(prefix + "waiting.groups", fleet, counts -> counts.countWaiting(size))
+                    .description("Groups in the waiting queue by group size")
+                    .tag("people", String.valueOf(size))
+                    .tags(tags)
+                    .register(registry);
+        }
+
+        for (int seats = 0; seats <= MAX_SEATS; seats++) {
+            int bucket = seats;
+            Gauge.builder(prefix + "cars", fleet, counts -> counts.countCars(bucket))
+                    .description("Cars in service by number of available seats")
+                    .tag("available_seats", String.valueOf(bucket))
+                    .tags(tags)
+                    .register(registry);
+        }
+
+        Gauge.builder(prefix + "free.seats", fleet, CarPoolingMetrics::freeSeats)
+                .description("Available seats across the cars in service")
+                .tags(tags)
+                .register(registry);
+        Gauge.builder(prefix + "journeys.active", fleet, FleetCounts::countJourneys)
+                .description("Groups currently travelling")
+                .tags(tags)
+                .register(registry);
+    }
+
+    /**
+     * Record the duration of an operation that started at the given System.nanoTime().
+     */
+    public void record(Operation operation, long startNanos) {
+        timers[operation.ordinal()].record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Record the waiting groups assigned to one car after a dropoff.
+     */
+    public void recordReallocation(int groupsAssigned) {
+        reallocatedGroups.increment(groupsAssigned);
+        reallocationsPerDropoff.record(groupsAssigned);
+    }
+
+    private static double freeSeats(FleetCounts cars) {
+        long seats = 0;
+        for (int bucket = 1; bucket <= MAX_SEATS; bucket++) {
+            seats += (long) bucket * cars.countCars(bucket);
+        }
+        return seats;
+    }
+}
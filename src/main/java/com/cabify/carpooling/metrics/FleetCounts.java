@@ -0,0 +1,23 @@
+package com.cabify.carpooling.metrics;
+
+/**
+ * Sizes of a fleet's state behind the {@link CarPoolingMetrics} gauges.
+ * Read without locking when scraped, so a count may be a moment out of date.
+ */
+public interface FleetCounts {
+
+    /**
+     * Count the groups of the given size in the waiting queue.
+     */
+    int countWaiting(int people);
+
+    /**
+     * Count the cars in service with the given number of available seats.
+     */
+    int countCars(int availableSeats);
+
+    /**
+     * Count the groups currently travelling.
+     */
+    int countJourneys();
+}
@@ -0,0 +1,39 @@
+package com.cabify.carpooling.model;
+
+/**
+ * Outcome of a single dropoff within a batch.
+ */
+public final class DropoffResult {
+
+    /**
+     * Whether the group was found and dropped off.
+     */
+    public enum Status {
+        OK,
+        NOT_FOUND
+    }
+
+    private final int groupId;
+    private final Status status;
+
+    private DropoffResult(int groupId, Status status) {
+        this.groupId = groupId;
+        this.status = status;
+    }
+
+    public static DropoffResult ok(int groupId) {
+        return new DropoffResult(groupId, Status.OK);
+    }
+
+    public static DropoffResult notFound(int groupId) {
+        return new DropoffResult(groupId, Status.NOT_FOUND);
+    }
+
+    public int getGroupId() {
+        return groupId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,53 @@
+package com.cabify.carpooling.model;
+
+/**
+ * Outcome of a single journey request within a batch.
+ */
+public final class JourneyResult {
+
+    /**
+     * What happened to the requesting group.
+     */
+    public enum Status {
+        ASSIGNED,
+        QUEUED,
+        DUPLICATE
+    }
+
+    private final int groupId;
+    private final Status status;
+    private final Car car;
+
+    private JourneyResult(int groupId, Status status, Car car) {
+        this.groupId = groupId;
+        this.status = status;
+        this.car = car;
+    }
+
+    public static JourneyResult assigned(int groupId, Car car) {
+        return new JourneyResult(groupId, Status.ASSIGNED, car);
+    }
+
+    public static JourneyResult queued(int groupId) {
+        return new JourneyResult(groupId, Status.QUEUED, null);
+    }
+
+    public static JourneyResult duplicate(int groupId) {
+        return new JourneyResult(groupId, Status.DUPLICATE, null);
+    }
+
+    public int getGroupId() {
+        return groupId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * The assigned car, or null unless the status is ASSIGNED.
+     */
+    public Car getCar() {
+        return car;
+    }
+}
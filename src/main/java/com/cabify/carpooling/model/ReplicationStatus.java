@@ -0,0 +1,62 @@
+package com.cabify.carpooling.model;
+
+/**
+ * Replication role and progress of this node.
+ */
+public final class ReplicationStatus {
+
+    /**
+     * What this node does in replication.
+     */
+    public enum Role {
+        STANDALONE,
+        PRIMARY,
+        FOLLOWER
+    }
+
+    private final Role role;
+    private final long lastLsn;
+    private final int followers;
+    private final boolean connected;
+    private final long lagRecords;
+    private final long lagMillis;
+
+    public ReplicationStatus(Role role, long lastLsn, int followers, boolean connected, long lagRecords, long lagMillis) {
+        this.role = role;
+        this.lastLsn = lastLsn;
+        this.followers = followers;
+        this.connected = connected;
+        this.lagRecords = lagRecords;
+        this.lagMillis = lagMillis;
+    }
+
+    public Role getRole() {
+        return role;
+    }
+
+    public long getLastLsn() {
+        return lastLsn;
+    }
+
+    /**
+     * Replicas streaming from this node; 0 unless primary.
+     */
+    public int getFollowers() {
+        return followers;
+    }
+
+    /**
+     * Whether a follower is connected to its primary.
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public long getLagRecords() {
+        return lagRecords;
+    }
+
+    public long getLagMillis() {
+        return lagMillis;
+    }
+}
@@ -0,0 +1,83 @@
+package com.cabify.carpooling.persistence;
+
+import java.util.Arrays;
+
+/**
+ * Reader for the formats written by {@link BinaryWriter}.
+ */
+public final class BinaryReader {
+
+    private final byte[] bytes;
+    private final int limit;
+    private int position;
+
+    public BinaryReader(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    public int readByte() {
+        checkAvailable(1);
+        return bytes[position++] & 0xFF;
+    }
+
+    public int readInt() {
+        checkAvailable(4);
+        int value = ((bytes[position] & 0xFF) << 24)
+                | ((bytes[position + 1] & 0xFF) << 16)
+                | ((bytes[position + 2] & 0xFF) << 8)
+                | (bytes[position + 3] & 0xFF);
+        position += 4;
+        return value;
+    }
+
+    public long readLong() {
+        return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+    }
+
+    public int readVarInt() {
+        long value = readVarLong();
+        if ((value >>> 32) != 0) {
+            throw new IllegalStateException("Varint does not fit in an int");
+        }
+        return (int) value;
+    }
+
+    public long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+    public int readSignedVarInt() {
+        int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Read the next {@code length} bytes into a new array.
+     */
+    public byte[] readBytes(int length) {
+        checkAvailable(length);
+        byte[] copy = Arrays.copyOfRange(bytes, position, position + length);
+        position += length;
+        return copy;
+    }
+
+    public boolean hasRemaining() {
+        return position < limit;
+    }
+
+    private void checkAvailable(int count) {
+        if (position + count > limit) {
+            throw new IllegalStateException("Unexpected end of record");
+        }
+    }
+}
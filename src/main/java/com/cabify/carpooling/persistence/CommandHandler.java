@@ -0,0 +1,24 @@
+package com.cabify.carpooling.persistence;
+
+/**
+ * Receives decoded engine commands, in the order they were applied.
+ */
+public interface CommandHandler {
+
+    void loadCars(int[] carIds, int[] seats);
+
+    void updateFleet(int[] carIds, int[] seats, int[] retiredCarIds);
+
+    void requestJourney(int groupId, int people);
+
+    void requestJourneys(int[] groupIds, int[] people);
+
+    void dropoff(int groupId);
+
+    void dropoffs(int[] groupIds);
+
+    /**
+     * Replace the whole state, e.g. with the state a replica received from its primary.
+     */
+    void restore(StateSnapshot snapshot);
+}
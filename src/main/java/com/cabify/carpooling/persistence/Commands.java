@@ -0,0 +1,154 @@
+package com.cabify.carpooling.persistence;
+
+/**
+ * Binary encoding of the engine commands recorded in the write-ahead log.
+ * A record is a command type byte followed by its varint-encoded arguments. Commands are the
+ * inputs of each mutation: allocation is deterministic, so replaying them in order rebuilds the
+ * same assignments and the same waiting-queue order.
+ */
+public final class Commands {
+
+    private static final int LOAD_CARS = 1;
+    private static final int UPDATE_FLEET = 2;
+    private static final int REQUEST_JOURNEY = 3;
+    private static final int DROPOFF = 4;
+    private static final int DROPOFFS = 5;
+    private static final int RESTORE = 6;
+    private static final int REQUEST_JOURNEYS = 7;
+
+    private Commands() {
+        throw new AssertionError("Utility class cannot be instantiated");
+    }
+
+    /**
+     * Start a load-cars record; follow it with the car count and {@link #car} per car.
+     */
+    public static void loadCars(BinaryWriter out, int carCount) {
+        out.writeByte(LOAD_CARS);
+        out.writeVarInt(carCount);
+    }
+
+    public static void car(BinaryWriter out, int carId, int seats) {
+        out.writeVarInt(carId);
+        out.writeByte(seats);
+    }
+
+    /**
+     * Start an update-fleet record; follow it with {@link #car} per upserted car, then
+     * {@link #retiredCars} and the retired IDs.
+     */
+    public static void updateFleet(BinaryWriter out, int upsertCount) {
+        out.writeByte(UPDATE_FLEET);
+        out.writeVarInt(upsertCount);
+    }
+
+    public static void retiredCars(BinaryWriter out, int[] retiredCarIds) {
+        writeIds(out, retiredCarIds);
+    }
+
+    public static void requestJourney(BinaryWriter out, int groupId, int people) {
+        out.writeByte(REQUEST_JOURNEY);
+        out.writeVarInt(groupId);
+        out.writeByte(people);
+    }
+
+    /**
+     * Encode a batch of journey requests as one command, as replicated through Raft.
+     */
+    public static void requestJourneys(BinaryWriter out, int[] groupIds, int[] people) {
+        out.writeByte(REQUEST_JOURNEYS);
+        writeIds(out, groupIds);
+        for (int count : people) {
+            out.writeByte(count);
+        }
+    }
+
+    public static void dropoff(BinaryWriter out, int groupId) {
+        out.writeByte(DROPOFF);
+        out.writeVarInt(groupId);
+    }
+
+    public static void dropoffs(BinaryWriter out, int[] groupIds) {
+        out.writeByte(DROPOFFS);
+        writeIds(out, groupIds);
+    }
+
+    /**
+     * Encode a full state, sorting its groups and journeys in place.
+     */
+    public static void restore(BinaryWriter out, StateSnapshot snapshot) {
+        out.writeByte(RESTORE);
+        snapshot.writeTo(out);
+    }
+
+    /**
+     * Decode one record and hand it to the handler.
+     */
+    public static void decode(BinaryReader in, CommandHandler handler) {
+        int type = in.readByte();
+
+        switch (type) {
+            case LOAD_CARS: {
+                int count = in.readVarInt();
+                int[] carIds = new int[count];
+                int[] seats = new int[count];
+                readCars(in, carIds, seats);
+                handler.loadCars(carIds, seats);
+                break;
+            }
+            case UPDATE_FLEET: {
+                int count = in.readVarInt();
+                int[] carIds = new int[count];
+                int[] seats = new int[count];
+                readCars(in, carIds, seats);
+                handler.updateFleet(carIds, seats, readIds(in));
+                break;
+            }
+            case REQUEST_JOURNEY:
+                handler.requestJourney(in.readVarInt(), in.readByte());
+                break;
+            case REQUEST_JOURNEYS: {
+                int[] groupIds = readIds(in);
+                int[] people = new int[groupIds.length];
+                for (int i = 0; i < people.length; i++) {
+                    people[i] = in.readByte();
+                }
+                handler.requestJourneys(groupIds, people);
+                break;
+            }
+            case DROPOFF:
+                handler.dropoff(in.readVarInt());
+                break;
+            case DROPOFFS:
+                handler.dropoffs(readIds(in));
+                break;
+            case RESTORE:
+                handler.restore(StateSnapshot.readFrom(in));
+                break;
+            default:
+                throw new IllegalStateException("Unknown command type " + type);
+        }
+    }
+
+    private static void readCars(BinaryReader in, int[] carIds, int[] seats) {
+        for (int i = 0; i < carIds.length; i++) {
+            carIds[i] = in.readVarInt();
+            seats[i] = in.readByte();
+        }
+    }
+
+    private static void writeIds(BinaryWriter out, int[] ids) {
+        out.writeVarInt(ids.length);
+        for (int id : ids) {
+            out.writeVarInt(id);
+        }
+    }
+
+    private static int[] readIds(BinaryReader in) {
+        int[] ids = new int[in.readVarInt()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = in.readVarInt();
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,425 @@
+package com.cabify.carpooling.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead log stored as segment files written through a {@link FileChannel}, each
+ * named after the sequence number (LSN) of its first record.
+ * Each record is framed as {@code [int length][int crc32c][command bytes]}.
+ * Appends only copy the record into an in-memory batch; a flusher thread writes the batch
+ * and fsyncs it once for every caller that appended meanwhile (group commit).
+ * On open, records are replayed until the first torn or corrupt one, and the log is
+ * truncated there: that record was never acknowledged.
+ * A reset records its LSN in {@value #BASE_FILE}, so the log may then start after that LSN
+ * instead of continuing a snapshot: its first record holds the complete state.
+ */
+public class FileWriteAheadLog implements WriteAheadLog, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(FileWriteAheadLog.class);
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+    // LSN the log was last reset after; its first segment may start right after it
+    private static final String BASE_FILE = "base.lsn";
+    private static final int HEADER_BYTES = 8;
+
+    private final Path directory;
+    private final long segmentSize;
+    private final boolean fsync;
+
+    private final CRC32C crc = new CRC32C();
+    private final Object monitor = new Object();
+
+    // Guarded by monitor
+    private BinaryWriter pending = new BinaryWriter(64 * 1024);
+    private long pendingFirstLsn;
+    private long appendedLsn;
+    private long durableLsn;
+    private IOException failure;
+    private boolean running;
+    // A requested reset, and a counter of resets so a batch written before one is not
+    // mistaken for records numbered after it
+    private boolean resetPending;
+    private long resetAfterLsn;
+    private long epoch;
+
+    // Owned by the flusher thread once opened
+    private BinaryWriter flushing = new BinaryWriter(64 * 1024);
+    private FileChannel channel;
+
+    private Thread flusher;
+    private long replayedRecords;
+
+    public FileWriteAheadLog(Path directory, long segmentSize, boolean fsync) {
+        if (segmentSize < 1) {
+            throw new IllegalArgumentException("Segment size must be positive, got " + segmentSize);
+        }
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public long open(long afterLsn, RecordHandler handler) throws IOException {
+        Files.createDirectories(directory);
+
+        List<Path> segments = listSegments();
+        long base = readBase();
+        long lastLsn = afterLsn;
+        // LSN of the last intact record in the last segment scanned
+        long lastSegmentEnd = afterLsn;
+
+        for (int i = 0; i < segments.size(); i++) {
+            Path segment = segments.get(i);
+            long firstLsn = parseLsn(segment);
+            if (firstLsn > lastLsn + 1 && !(i == 0 && firstLsn == base + 1)) {
+                throw new IllegalStateException(String.format(
+                        "Write-ahead log is missing LSNs %d to %d", lastLsn + 1, firstLsn - 1));
+            }
+
+            SegmentScan scan = replaySegment(segment, firstLsn, afterLsn, handler);
+            long validBytes = scan.validBytes;
+            lastSegmentEnd = firstLsn - 1 + scan.records;
+            lastLsn = Math.max(lastLsn, lastSegmentEnd);
+
+            if (validBytes < Files.size(segment)) {
+                log.warn("Truncating write-ahead log at {}:{} after a torn or corrupt record",
+                        segment.getFileName(), validBytes);
+                try (FileChannel truncate = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                    truncate.truncate(validBytes);
+                    truncate.force(true);
+                }
+                // Anything after the damaged record was written later and is unreachable
+                for (Path later : segments.subList(i + 1, segments.size())) {
+                    Files.delete(later);
+                }
+                segments = segments.subList(0, i + 1);
+                break;
+            }
+        }
+
+        // Keep appending to the last segment only if its records run up to lastLsn; a restored
+        // state may be ahead of the log, and then numbering restarts in a new segment
+        if (!segments.isEmpty() && lastSegmentEnd == lastLsn) {
+            channel = openSegment(parseLsn(segments.get(segments.size() - 1)));
+        } else {
+            channel = openSegment(lastLsn + 1);
+        }
+
+        log.info("Replayed {} write-ahead log records after LSN {} from {} segment(s) in {}",
+                replayedRecords, afterLsn, segments.size(), directory);
+
+        synchronized (monitor) {
+            appendedLsn = lastLsn;
+            durableLsn = lastLsn;
+            running = true;
+        }
+        flusher = new Thread(this::runFlusher, "wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+
+        return lastLsn;
+    }
+
+    @Override
+    public long append(BinaryWriter command) {
+        synchronized (monitor) {
+            if (!running) {
+                throw new IllegalStateException("Write-ahead log is not open");
+            }
+
+            crc.reset();
+            crc.update(command.array(), 0, command.size());
+            int checksum = (int) crc.getValue();
+
+            if (pending.size() == 0) {
+                pendingFirstLsn = appendedLsn + 1;
+            }
+            pending.writeInt(command.size());
+            pending.writeInt(checksum);
+            pending.writeBytes(command);
+            appendedLsn++;
+            monitor.notifyAll();
+
+            return appendedLsn;
+        }
+    }
+
+    @Override
+    public void awaitDurable(long lsn) {
+        synchronized (monitor) {
+            while (durableLsn < lsn) {
+                if (failure != null) {
+                    throw new UncheckedIOException("Write-ahead log failed", failure);
+                }
+                if (!running) {
+                    throw new IllegalStateException("Write-ahead log closed before the record was flushed");
+                }
+                try {
+                    monitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted waiting for the write-ahead log", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void reset(long afterLsn) {
+        synchronized (monitor) {
+            pending.reset();
+            appendedLsn = afterLsn;
+            durableLsn = afterLsn;
+            resetPending = true;
+            resetAfterLsn = afterLsn;
+            epoch++;
+            monitor.notifyAll();
+        }
+    }
+
+    @Override
+    public void truncateBefore(long lsn) throws IOException {
+        List<Path> segments = listSegments();
+
+        // A segment can go once the next one starts at or before lsn + 1; the last one stays open
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (parseLsn(segments.get(i + 1)) > lsn + 1) {
+                break;
+            }
+            Files.deleteIfExists(segments.get(i));
+            log.debug("Deleted write-ahead log segment {}", segments.get(i).getFileName());
+        }
+    }
+
+    /**
+     * Flush what is pending and close the current segment.
+     */
+    @Override
+    public void destroy() throws InterruptedException, IOException {
+        synchronized (monitor) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            monitor.notifyAll();
+        }
+        flusher.join();
+        channel.close();
+    }
+
+    private void runFlusher() {
+        while (true) {
+            long firstLsn;
+            long lastLsn;
+            long batchEpoch;
+            long resetTo = -1;
+            boolean reset;
+
+            synchronized (monitor) {
+                while (pending.size() == 0 && !resetPending && running) {
+                    try {
+                        monitor.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (pending.size() == 0 && !resetPending) {
+                    return;
+                }
+
+                reset = resetPending;
+                if (reset) {
+                    resetTo = resetAfterLsn;
+                    resetPending = false;
+                }
+
+                BinaryWriter batch = pending;
+                pending = flushing;
+                flushing = batch;
+                firstLsn = pendingFirstLsn;
+                lastLsn = appendedLsn;
+                batchEpoch = epoch;
+            }
+
+            try {
+                if (reset) {
+                    restart(resetTo);
+                }
+                if (flushing.size() > 0) {
+                    write(flushing, firstLsn);
+                }
+            } catch (IOException e) {
+                log.error("Write-ahead log flush failed, rejecting further durable writes", e);
+                synchronized (monitor) {
+                    failure = e;
+                    monitor.notifyAll();
+                }
+                return;
+            } finally {
+                flushing.reset();
+            }
+
+            synchronized (monitor) {
+                if (epoch == batchEpoch) {
+                    durableLsn = lastLsn;
+                }
+                monitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Delete every segment and start numbering again after the given LSN.
+     */
+    private void restart(long afterLsn) throws IOException {
+        channel.close();
+        writeBase(afterLsn);
+        for (Path segment : listSegments()) {
+            Files.deleteIfExists(segment);
+        }
+        channel = openSegment(afterLsn + 1);
+        log.info("Write-ahead log reset, next LSN is {}", afterLsn + 1);
+    }
+
+    private void write(BinaryWriter batch, long firstLsn) throws IOException {
+        // Batches hold whole records, so rolling between batches never splits a record
+        if (channel.position() > 0 && channel.position() + batch.size() > segmentSize) {
+            channel.close();
+            channel = openSegment(firstLsn);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(batch.array(), 0, batch.size());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+    }
+
+    private SegmentScan replaySegment(Path segment, long firstLsn, long afterLsn, RecordHandler handler)
+            throws IOException {
+        SegmentScan scan = new SegmentScan();
+        long segmentBytes = Files.size(segment);
+        byte[] record = new byte[256];
+
+        try (InputStream file = Files.newInputStream(segment);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file, 64 * 1024))) {
+            while (true) {
+                int length;
+                int checksum;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    // A record may exceed the segment size, as it is never split, but not the file
+                    if (length < 1 || length > segmentBytes - scan.validBytes - HEADER_BYTES) {
+                        return scan;
+                    }
+                    if (record.length < length) {
+                        record = new byte[Math.max(length, record.length * 2)];
+                    }
+                    in.readFully(record, 0, length);
+                } catch (EOFException e) {
+                    return scan;
+                }
+
+                crc.reset();
+                crc.update(record, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    return scan;
+                }
+
+                // Records up to afterLsn are already part of the restored state
+                long lsn = firstLsn + scan.records;
+                if (lsn > afterLsn) {
+                    handler.accept(lsn, new BinaryReader(record, 0, length));
+                    replayedRecords++;
+                }
+                scan.validBytes += HEADER_BYTES + length;
+                scan.records++;
+            }
+        }
+    }
+
+    private FileChannel openSegment(long firstLsn) throws IOException {
+        FileChannel segment = FileChannel.open(directory.resolve(segmentName(firstLsn)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        segment.position(segment.size());
+        return segment;
+    }
+
+    private long readBase() throws IOException {
+        Path file = directory.resolve(BASE_FILE);
+        if (!Files.exists(file)) {
+            return -1;
+        }
+        return Long.parseLong(new String(Files.readAllBytes(file), StandardCharsets.US_ASCII).trim());
+    }
+
+    private void writeBase(long afterLsn) throws IOException {
+        Path tmp = directory.resolve(BASE_FILE + ".tmp");
+        try (FileChannel file = FileChannel.open(tmp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            file.write(ByteBuffer.wrap(Long.toString(afterLsn).getBytes(StandardCharsets.US_ASCII)));
+            file.force(true);
+        }
+        Files.move(tmp, directory.resolve(BASE_FILE), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Intact prefix of a segment: its record count and byte length.
+     */
+    private static final class SegmentScan {
+        long records;
+        long validBytes;
+    }
+
+    private static String segmentName(long firstLsn) {
+        return String.format("%s%020d%s", SEGMENT_PREFIX, firstLsn, SEGMENT_SUFFIX);
+    }
+
+    private static long parseLsn(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
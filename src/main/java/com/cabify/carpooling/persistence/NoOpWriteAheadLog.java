@@ -0,0 +1,34 @@
+package com.cabify.carpooling.persistence;
+
+/**
+ * Write-ahead log used when persistence is disabled: state lives in memory only.
+ */
+public class NoOpWriteAheadLog implements WriteAheadLog {
+
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+
+    @Override
+    public long open(long afterLsn, RecordHandler handler) {
+        return afterLsn;
+    }
+
+    @Override
+    public long append(BinaryWriter command) {
+        return 0;
+    }
+
+    @Override
+    public void awaitDurable(long lsn) {
+    }
+
+    @Override
+    public void truncateBefore(long lsn) {
+    }
+
+    @Override
+    public void reset(long afterLsn) {
+    }
+}
@@ -0,0 +1,39 @@
+package com.cabify.carpooling.persistence;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+/**
+ * Enables the file write-ahead log with {@code carpooling.wal.enabled} and snapshots with
+ * {@code carpooling.snapshot.enabled}.
+ */
+@Configuration
+public class PersistenceConfiguration {
+
+    @Bean
+    @ConditionalOnProperty(name = "carpooling.wal.enabled", havingValue = "true")
+    public WriteAheadLog fileWriteAheadLog(
+            @Value("${carpooling.wal.directory:data/wal}") String directory,
+            @Value("${carpooling.wal.segment-size:67108864}") long segmentSize,
+            @Value("${carpooling.wal.fsync:true}") boolean fsync) {
+        return new FileWriteAheadLog(Paths.get(directory), segmentSize, fsync);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "carpooling.wal.enabled", havingValue = "false", matchIfMissing = true)
+    public WriteAheadLog noOpWriteAheadLog() {
+        return new NoOpWriteAheadLog();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "carpooling.snapshot.enabled", havingValue = "true")
+    public SnapshotStore snapshotStore(
+            @Value("${carpooling.snapshot.directory:data/snapshots}") String directory,
+            @Value("${carpooling.snapshot.retain:2}") int retain) {
+        return new SnapshotStore(Paths.get(directory), retain);
+    }
+}
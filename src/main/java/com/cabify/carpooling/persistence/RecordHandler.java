@@ -0,0 +1,10 @@
+package com.cabify.carpooling.persistence;
+
+/**
+ * Receives raw log records with their sequence number, in order.
+ */
+@FunctionalInterface
+public interface RecordHandler {
+
+    void accept(long lsn, BinaryReader record);
+}
@@ -0,0 +1,121 @@
+package com.cabify.carpooling.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Snapshot files in one directory, named after the LSN they cover.
+ * A snapshot is written to a temporary file, fsynced and renamed into place, so a crash
+ * never leaves a half-written snapshot under a real name. Each file ends with a CRC32C
+ * of its contents; a damaged file is skipped in favour of the previous one.
+ */
+public class SnapshotStore {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotStore.class);
+
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".snap";
+
+    private final Path directory;
+    private final int retain;
+
+    public SnapshotStore(Path directory, int retain) {
+        if (retain < 1) {
+            throw new IllegalArgumentException("At least one snapshot must be retained, got " + retain);
+        }
+
+        this.directory = directory;
+        this.retain = retain;
+    }
+
+    /**
+     * Load the newest intact snapshot, or return null if there is none.
+     */
+    public StateSnapshot loadLatest() throws IOException {
+        List<Path> snapshots = list();
+
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            Path file = snapshots.get(i);
+            byte[] bytes = Files.readAllBytes(file);
+
+            if (bytes.length < 4 || checksum(bytes, bytes.length - 4) != readInt(bytes, bytes.length - 4)) {
+                log.warn("Skipping corrupt snapshot {}", file.getFileName());
+                continue;
+            }
+
+            return StateSnapshot.readFrom(new BinaryReader(bytes, 0, bytes.length - 4));
+        }
+
+        return null;
+    }
+
+    /**
+     * Encode and write a snapshot, then delete the oldest ones beyond the retained count.
+     * Returns the size of the file in bytes.
+     */
+    public long write(StateSnapshot snapshot) throws IOException {
+        Files.createDirectories(directory);
+
+        BinaryWriter out = new BinaryWriter(1024 * 1024);
+        snapshot.writeTo(out);
+        out.writeInt(checksum(out.array(), out.size()));
+
+        Path target = directory.resolve(String.format("%s%020d%s", PREFIX, snapshot.lsn(), SUFFIX));
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(out.array(), 0, out.size());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        List<Path> snapshots = list();
+        for (Path old : snapshots.subList(0, Math.max(0, snapshots.size() - retain))) {
+            Files.delete(old);
+        }
+
+        return out.size();
+    }
+
+    private List<Path> list() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+                    })
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static int checksum(byte[] bytes, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, 0, length);
+        return (int) crc.getValue();
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return new BinaryReader(bytes, offset, 4).readInt();
+    }
+}
@@ -0,0 +1,267 @@
+package com.cabify.carpooling.persistence;
+
+import com.cabify.carpooling.collection.IntIntHashMap.IntIntConsumer;
+import com.cabify.carpooling.repository.CarRepository.CarVisitor;
+
+import java.util.Arrays;
+
+/**
+ * Copy of the full pooling state as of one log sequence number (LSN).
+ * Filled inside the engine with primitive copies only, then encoded off the engine.
+ * <p>
+ * Binary layout, after the magic number and the LSN, sections each led by a varint count:
+ * cars in allocation order, groups sorted by ID, journeys sorted by group ID, then one
+ * waiting queue per group size, oldest first, with each group's arrival sequence.
+ * IDs are zigzag varint deltas from the previous entry, so sorted IDs mostly take one or
+ * two bytes; arrival sequences only grow within a queue and are stored as varint deltas.
+ */
+public final class StateSnapshot {
+
+    private static final int MAGIC = 0x43505331; // "CPS1"
+    private static final int MAX_PEOPLE = 6;
+
+    private final long lsn;
+
+    // Car ID and packed state: seats | available seats << 3 | retired << 6
+    private int carCount;
+    private int[] carIds = new int[16];
+    private byte[] carStates = new byte[16];
+
+    private final Pairs groups = new Pairs();
+    private final Pairs journeys = new Pairs();
+    // Waiting queues indexed by group size (1-6)
+    private final WaitingQueue[] waiting = new WaitingQueue[MAX_PEOPLE + 1];
+
+    public StateSnapshot(long lsn) {
+        this.lsn = lsn;
+        for (int people = 1; people <= MAX_PEOPLE; people++) {
+            waiting[people] = new WaitingQueue();
+        }
+    }
+
+    public long lsn() {
+        return lsn;
+    }
+
+    public int carCount() {
+        return carCount;
+    }
+
+    public int groupCount() {
+        return groups.size;
+    }
+
+    public void addCar(int carId, int seats, int availableSeats, boolean retired) {
+        if (carCount == carIds.length) {
+            carIds = Arrays.copyOf(carIds, carCount * 2);
+            carStates = Arrays.copyOf(carStates, carCount * 2);
+        }
+        carIds[carCount] = carId;
+        carStates[carCount] = (byte) (seats | availableSeats << 3 | (retired ? 1 << 6 : 0));
+        carCount++;
+    }
+
+    public void addGroup(int groupId, int people) {
+        groups.add(groupId, people);
+    }
+
+    public void addJourney(int groupId, int carId) {
+        journeys.add(groupId, carId);
+    }
+
+    /**
+     * Add the next waiting group of a size; call in queue order, oldest first.
+     */
+    public void addWaiting(int groupId, int people, long arrivalSequence) {
+        waiting[people].add(groupId, arrivalSequence);
+    }
+
+    public void forEachCar(CarVisitor visitor) {
+        for (int i = 0; i < carCount; i++) {
+            int state = carStates[i];
+            visitor.accept(carIds[i], state & 7, (state >> 3) & 7, (state & (1 << 6)) != 0);
+        }
+    }
+
+    public void forEachGroup(IntIntConsumer consumer) {
+        groups.forEach(consumer);
+    }
+
+    public void forEachJourney(IntIntConsumer consumer) {
+        journeys.forEach(consumer);
+    }
+
+    /**
+     * Visit each waiting queue, oldest first, from group size 1 to 6.
+     */
+    public void forEachWaiting(WaitingConsumer consumer) {
+        for (int people = 1; people <= MAX_PEOPLE; people++) {
+            WaitingQueue queue = waiting[people];
+            for (int i = 0; i < queue.size; i++) {
+                consumer.accept(queue.groupIds[i], people, queue.sequences[i]);
+            }
+        }
+    }
+
+    /**
+     * Encode the snapshot. Sorts the groups and journeys in place.
+     */
+    public void writeTo(BinaryWriter out) {
+        out.writeInt(MAGIC);
+        out.writeLong(lsn);
+
+        out.writeVarInt(carCount);
+        int previous = 0;
+        for (int i = 0; i < carCount; i++) {
+            out.writeSignedVarInt(carIds[i] - previous);
+            out.writeByte(carStates[i]);
+            previous = carIds[i];
+        }
+
+        groups.sort();
+        groups.writeTo(out, false);
+        journeys.sort();
+        journeys.writeTo(out, true);
+        for (int people = 1; people <= MAX_PEOPLE; people++) {
+            waiting[people].writeTo(out);
+        }
+    }
+
+    public static StateSnapshot readFrom(BinaryReader in) {
+        int magic = in.readInt();
+        if (magic != MAGIC) {
+            throw new IllegalStateException(String.format("Not a snapshot: magic %08x", magic));
+        }
+
+        StateSnapshot snapshot = new StateSnapshot(in.readLong());
+
+        int cars = in.readVarInt();
+        snapshot.carIds = new int[Math.max(cars, 16)];
+        snapshot.carStates = new byte[Math.max(cars, 16)];
+        int previous = 0;
+        for (int i = 0; i < cars; i++) {
+            previous += in.readSignedVarInt();
+            snapshot.carIds[i] = previous;
+            snapshot.carStates[i] = (byte) in.readByte();
+        }
+        snapshot.carCount = cars;
+
+        snapshot.groups.readFrom(in, false);
+        snapshot.journeys.readFrom(in, true);
+        for (int people = 1; people <= MAX_PEOPLE; people++) {
+            snapshot.waiting[people].readFrom(in);
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Growable list of (ID, value) pairs packed into longs, so sorting by ID is a primitive sort.
+     */
+    private static final class Pairs {
+
+        private long[] entries = new long[16];
+        private int size;
+
+        void add(int id, int value) {
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            entries[size++] = (long) id << 32 | (value & 0xFFFFFFFFL);
+        }
+
+        void forEach(IntIntConsumer consumer) {
+            for (int i = 0; i < size; i++) {
+                consumer.accept((int) (entries[i] >> 32), (int) entries[i]);
+            }
+        }
+
+        void sort() {
+            Arrays.sort(entries, 0, size);
+        }
+
+        /**
+         * Write IDs as deltas; values are a varint (car IDs) or a single byte (group sizes).
+         */
+        void writeTo(BinaryWriter out, boolean varIntValues) {
+            out.writeVarInt(size);
+            int previous = 0;
+            for (int i = 0; i < size; i++) {
+                int id = (int) (entries[i] >> 32);
+                int value = (int) entries[i];
+                out.writeSignedVarInt(id - previous);
+                if (varIntValues) {
+                    out.writeVarInt(value);
+                } else {
+                    out.writeByte(value);
+                }
+                previous = id;
+            }
+        }
+
+        void readFrom(BinaryReader in, boolean varIntValues) {
+            size = in.readVarInt();
+            entries = new long[Math.max(size, 16)];
+            int previous = 0;
+            for (int i = 0; i < size; i++) {
+                previous += in.readSignedVarInt();
+                int value = varIntValues ? in.readVarInt() : in.readByte();
+                entries[i] = (long) previous << 32 | (value & 0xFFFFFFFFL);
+            }
+        }
+    }
+
+    /**
+     * Growable queue of (group ID, arrival sequence) in arrival order.
+     */
+    private static final class WaitingQueue {
+
+        private int[] groupIds = new int[16];
+        private long[] sequences = new long[16];
+        private int size;
+
+        void add(int groupId, long sequence) {
+            if (size == groupIds.length) {
+                groupIds = Arrays.copyOf(groupIds, size * 2);
+                sequences = Arrays.copyOf(sequences, size * 2);
+            }
+            groupIds[size] = groupId;
+            sequences[size] = sequence;
+            size++;
+        }
+
+        void writeTo(BinaryWriter out) {
+            out.writeVarInt(size);
+            int previousId = 0;
+            long previousSequence = 0;
+            for (int i = 0; i < size; i++) {
+                out.writeSignedVarInt(groupIds[i] - previousId);
+                out.writeVarLong(sequences[i] - previousSequence);
+                previousId = groupIds[i];
+                previousSequence = sequences[i];
+            }
+        }
+
+        void readFrom(BinaryReader in) {
+            size = in.readVarInt();
+            groupIds = new int[Math.max(size, 16)];
+            sequences = new long[Math.max(size, 16)];
+            int previousId = 0;
+            long previousSequence = 0;
+            for (int i = 0; i < size; i++) {
+                previousId += in.readSignedVarInt();
+                previousSequence += in.readVarLong();
+                groupIds[i] = previousId;
+                sequences[i] = previousSequence;
+            }
+        }
+    }
+
+    /**
+     * Callback for {@link #forEachWaiting(WaitingConsumer)}.
+     */
+    @FunctionalInterface
+    public interface WaitingConsumer {
+        void accept(int groupId, int people, long arrivalSequence);
+    }
+}
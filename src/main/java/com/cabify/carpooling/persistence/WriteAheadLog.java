@@ -0,0 +1,44 @@
+package com.cabify.carpooling.persistence;
+
+import java.io.IOException;
+
+/**
+ * Append-only log of engine commands, replayed on startup to rebuild the repositories.
+ */
+public interface WriteAheadLog {
+
+    /**
+     * Check if commands should be encoded and appended at all.
+     */
+    boolean isEnabled();
+
+    /**
+     * Replay every intact record after the given sequence number (LSN) to the handler, then
+     * open the log for appending. Returns the LSN of the last record, at least {@code afterLsn}.
+     */
+    long open(long afterLsn, RecordHandler handler) throws IOException;
+
+    /**
+     * Append one encoded command and return its LSN. Called inside the engine, so LSNs follow
+     * apply order.
+     */
+    long append(BinaryWriter command);
+
+    /**
+     * Wait until every record up to the given LSN is on disk.
+     * Called outside the engine, so one fsync covers every caller waiting meanwhile.
+     */
+    void awaitDurable(long lsn);
+
+    /**
+     * Drop log files holding only records up to the given LSN, once a snapshot covers them.
+     */
+    void truncateBefore(long lsn) throws IOException;
+
+    /**
+     * Discard the whole log and number the next record {@code afterLsn + 1}, e.g. when a
+     * replica adopts another node's state. The next record must hold the complete state, as
+     * replay then starts from it. Called inside the engine.
+     */
+    void reset(long afterLsn);
+}
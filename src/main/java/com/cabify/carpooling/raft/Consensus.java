@@ -0,0 +1,17 @@
+package com.cabify.carpooling.raft;
+
+import com.cabify.carpooling.persistence.BinaryWriter;
+
+/**
+ * Agrees on the order of commands across a cluster before any node applies them.
+ */
+public interface Consensus {
+
+    /**
+     * Replicate an encoded command and wait until it is committed and applied on this node.
+     * Returns what the {@link StateMachine} returned for it.
+     * Throws {@link com.cabify.carpooling.exception.NotPrimaryException} when this node is not
+     * the leader or the command could not be committed in time.
+     */
+    Object propose(BinaryWriter command);
+}
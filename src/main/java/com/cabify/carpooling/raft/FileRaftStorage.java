@@ -0,0 +1,207 @@
+package com.cabify.carpooling.raft;
+
+import com.cabify.carpooling.persistence.BinaryReader;
+import com.cabify.carpooling.persistence.BinaryWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Raft state kept in one append-only file of records framed like the write-ahead log,
+ * {@code [int length][int crc32c][record]}: votes, appended entries and truncations.
+ * Opening replays the file up to the first torn or corrupt record and cuts it there.
+ * Records are buffered and written with one fsync per {@link #sync()}, i.e. per flush of the
+ * node, so a burst of proposals shares one fsync. The file is never compacted.
+ */
+public class FileRaftStorage implements RaftStorage {
+
+    private static final Logger log = LoggerFactory.getLogger(FileRaftStorage.class);
+
+    private static final String FILE_NAME = "raft.log";
+    private static final int HEADER_BYTES = 8;
+
+    private static final int VOTE = 1;
+    private static final int ENTRY = 2;
+    private static final int TRUNCATE = 3;
+
+    private final boolean fsync;
+    private final FileChannel channel;
+    private final CRC32C crc = new CRC32C();
+    private final BinaryWriter pending = new BinaryWriter(64 * 1024);
+    private final BinaryWriter record = new BinaryWriter(256);
+
+    private long term;
+    private int votedFor;
+    // Entries loaded on open, released once the node has read them
+    private long[] loadedTerms = new long[1024];
+    private List<byte[]> loadedCommands = new ArrayList<>();
+
+    public FileRaftStorage(Path directory, boolean fsync) throws IOException {
+        this.fsync = fsync;
+        Files.createDirectories(directory);
+        Path file = directory.resolve(FILE_NAME);
+
+        long validBytes = load(file);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (validBytes < channel.size()) {
+            log.warn("Truncating Raft log {} at {} after a torn or corrupt record", file, validBytes);
+            channel.truncate(validBytes);
+            channel.force(true);
+        }
+        channel.position(validBytes);
+
+        log.info("Loaded Raft state from {}: term {}, {} entries", file, term, loadedCommands.size());
+    }
+
+    @Override
+    public long term() {
+        return term;
+    }
+
+    @Override
+    public int votedFor() {
+        return votedFor;
+    }
+
+    @Override
+    public void forEachEntry(EntryConsumer consumer) {
+        for (int i = 0; i < loadedCommands.size(); i++) {
+            consumer.accept(i + 1, loadedTerms[i], loadedCommands.get(i));
+        }
+        loadedTerms = null;
+        loadedCommands = null;
+    }
+
+    @Override
+    public void saveVote(long term, int votedFor) {
+        record.reset();
+        record.writeByte(VOTE);
+        record.writeVarLong(term);
+        record.writeVarInt(votedFor);
+        frame();
+    }
+
+    @Override
+    public void append(long index, long term, byte[] command) {
+        record.reset();
+        record.writeByte(ENTRY);
+        record.writeVarLong(index);
+        record.writeVarLong(term);
+        record.writeVarInt(command.length);
+        record.writeBytes(command, 0, command.length);
+        frame();
+    }
+
+    @Override
+    public void truncateFrom(long index) {
+        record.reset();
+        record.writeByte(TRUNCATE);
+        record.writeVarLong(index);
+        frame();
+    }
+
+    @Override
+    public void sync() throws IOException {
+        if (pending.size() == 0) {
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(pending.array(), 0, pending.size());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+        pending.reset();
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync();
+        channel.close();
+    }
+
+    private void frame() {
+        crc.reset();
+        crc.update(record.array(), 0, record.size());
+        pending.writeInt(record.size());
+        pending.writeInt((int) crc.getValue());
+        pending.writeBytes(record);
+    }
+
+    /**
+     * Replay the file into the loaded state and return the length of its intact prefix.
+     */
+    private long load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+
+        byte[] bytes = Files.readAllBytes(file);
+        int position = 0;
+
+        while (position + HEADER_BYTES <= bytes.length) {
+            BinaryReader header = new BinaryReader(bytes, position, HEADER_BYTES);
+            int length = header.readInt();
+            int checksum = header.readInt();
+            if (length < 0 || position + HEADER_BYTES + length > bytes.length) {
+                break;
+            }
+
+            crc.reset();
+            crc.update(bytes, position + HEADER_BYTES, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            replay(new BinaryReader(bytes, position + HEADER_BYTES, length));
+            position += HEADER_BYTES + length;
+        }
+
+        return position;
+    }
+
+    private void replay(BinaryReader in) {
+        int type = in.readByte();
+
+        switch (type) {
+            case VOTE:
+                term = in.readVarLong();
+                votedFor = in.readVarInt();
+                break;
+            case ENTRY: {
+                long index = in.readVarLong();
+                long entryTerm = in.readVarLong();
+                byte[] command = in.readBytes(in.readVarInt());
+                if (index != loadedCommands.size() + 1) {
+                    throw new IllegalStateException(String.format(
+                            "Raft log entry %d does not follow entry %d", index, loadedCommands.size()));
+                }
+                if (loadedCommands.size() == loadedTerms.length) {
+                    loadedTerms = Arrays.copyOf(loadedTerms, loadedTerms.length * 2);
+                }
+                loadedTerms[loadedCommands.size()] = entryTerm;
+                loadedCommands.add(command);
+                break;
+            }
+            case TRUNCATE: {
+                int from = (int) in.readVarLong();
+                loadedCommands.subList(from - 1, loadedCommands.size()).clear();
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unknown Raft record type " + type);
+        }
+    }
+}
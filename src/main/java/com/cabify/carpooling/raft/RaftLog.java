@@ -0,0 +1,88 @@
+package com.cabify.carpooling.raft;
+
+import java.util.Arrays;
+
+/**
+ * In-memory copy of the Raft log, written through to its {@link RaftStorage}.
+ * Entries are numbered from 1 and stored in parallel arrays of terms and commands.
+ */
+final class RaftLog {
+
+    private static final byte[][] NO_COMMANDS = new byte[0][];
+    private static final long[] NO_TERMS = new long[0];
+
+    private final RaftStorage storage;
+
+    private long[] terms = new long[1024];
+    private byte[][] commands = new byte[1024][];
+    private int size;
+
+    RaftLog(RaftStorage storage) {
+        this.storage = storage;
+        storage.forEachEntry((index, term, command) -> add(term, command));
+    }
+
+    long lastIndex() {
+        return size;
+    }
+
+    long lastTerm() {
+        return term(size);
+    }
+
+    /**
+     * Term of the entry at the given index; 0 for index 0 and -1 past the end.
+     */
+    long term(long index) {
+        if (index == 0) {
+            return 0;
+        }
+        return index <= size ? terms[(int) index - 1] : -1;
+    }
+
+    byte[] command(long index) {
+        return commands[(int) index - 1];
+    }
+
+    long append(long term, byte[] command) {
+        add(term, command);
+        storage.append(size, term, command);
+        return size;
+    }
+
+    void truncateFrom(long index) {
+        Arrays.fill(commands, (int) index - 1, size, null);
+        size = (int) index - 1;
+        storage.truncateFrom(index);
+    }
+
+    /**
+     * Terms of up to {@code max} entries starting at the given index.
+     */
+    long[] terms(long from, int max) {
+        int count = count(from, max);
+        return count == 0 ? NO_TERMS : Arrays.copyOfRange(terms, (int) from - 1, (int) from - 1 + count);
+    }
+
+    /**
+     * Commands of up to {@code max} entries starting at the given index.
+     */
+    byte[][] commands(long from, int max) {
+        int count = count(from, max);
+        return count == 0 ? NO_COMMANDS : Arrays.copyOfRange(commands, (int) from - 1, (int) from - 1 + count);
+    }
+
+    private int count(long from, int max) {
+        return (int) Math.max(0, Math.min(max, size - from + 1));
+    }
+
+    private void add(long term, byte[] command) {
+        if (size == terms.length) {
+            terms = Arrays.copyOf(terms, size * 2);
+            commands = Arrays.copyOf(commands, size * 2);
+        }
+        terms[size] = term;
+        commands[size] = command;
+        size++;
+    }
+}
@@ -0,0 +1,132 @@
+package com.cabify.carpooling.raft;
+
+import com.cabify.carpooling.persistence.WriteAheadLog;
+import com.cabify.carpooling.service.LocalFleet;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Runs this node as member {@code carpooling.raft.node-id} of the Raft cluster listed in
+ * {@code carpooling.raft.members} ({@code id@host:port,...}). Every mutation is proposed to
+ * the leader's log and applied on each node once a majority stored it; followers answer reads
+ * from their own copy and reject writes with 503. The Raft log replaces the write-ahead log,
+ * snapshots and primary-follower replication, which must stay disabled.
+ * The CarPoolingService sends its writes to {@link #server()} (see ServiceConfiguration).
+ */
+@Component
+@ConditionalOnProperty(name = "carpooling.raft.enabled", havingValue = "true")
+public class RaftManager implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(RaftManager.class);
+
+    private final RaftServer server;
+    private boolean running;
+
+    public RaftManager(
+            LocalFleet localFleet,
+            WriteAheadLog wal,
+            MeterRegistry registry,
+            @Value("${carpooling.raft.node-id}") int nodeId,
+            @Value("${carpooling.raft.members}") String members,
+            @Value("${carpooling.raft.directory:data/raft}") Path directory,
+            @Value("${carpooling.raft.fsync:true}") boolean fsync,
+            @Value("${carpooling.raft.tick:10ms}") Duration tick,
+            @Value("${carpooling.raft.election-timeout:300ms}") Duration electionTimeout,
+            @Value("${carpooling.raft.heartbeat-interval:50ms}") Duration heartbeatInterval,
+            @Value("${carpooling.raft.commit-timeout:5s}") Duration commitTimeout,
+            @Value("${carpooling.snapshot.enabled:false}") boolean snapshotsEnabled,
+            @Value("${carpooling.replication.role:standalone}") String replicationRole) throws IOException {
+        if (wal.isEnabled() || snapshotsEnabled || !"standalone".equals(replicationRole)) {
+            throw new IllegalStateException("carpooling.raft.enabled requires the write-ahead log, snapshots "
+                    + "and replication to be disabled: the Raft log already makes every node durable");
+        }
+
+        Map<Integer, InetSocketAddress> cluster = parseMembers(members);
+        long tickMillis = tick.toMillis();
+        server = new RaftServer(nodeId, cluster, new FileRaftStorage(directory, fsync), localFleet::applyCommitted,
+                tickMillis, (int) (electionTimeout.toMillis() / tickMillis),
+                (int) (heartbeatInterval.toMillis() / tickMillis), commitTimeout.toMillis());
+
+        Gauge.builder("carpooling.raft.term", server, RaftServer::term)
+                .description("Current Raft term on this node")
+                .register(registry);
+        Gauge.builder("carpooling.raft.leader", server, raft -> raft.isLeader() ? 1 : 0)
+                .description("1 if this node is the Raft leader")
+                .register(registry);
+        Gauge.builder("carpooling.raft.commit.index", server, RaftServer::commitIndex)
+                .description("Last Raft log index known to be committed")
+                .register(registry);
+
+        log.info("Raft node {} of {} members", nodeId, cluster.size());
+    }
+
+    @Override
+    public synchronized void start() {
+        try {
+            server.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to start the Raft node", e);
+        }
+        running = true;
+    }
+
+    @Override
+    public synchronized void stop() {
+        try {
+            server.stop();
+        } catch (IOException e) {
+            log.warn("Failed to close the Raft log", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        running = false;
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    public RaftServer server() {
+        return server;
+    }
+
+    /**
+     * Parse {@code id@host:port} entries separated by commas.
+     */
+    static Map<Integer, InetSocketAddress> parseMembers(String members) {
+        Map<Integer, InetSocketAddress> cluster = new LinkedHashMap<>();
+
+        for (String member : members.split(",")) {
+            String entry = member.trim();
+            int at = entry.indexOf('@');
+            int colon = entry.lastIndexOf(':');
+            if (at <= 0 || colon < at) {
+                throw new IllegalArgumentException("Raft members must be id@host:port, got " + entry);
+            }
+
+            int id = Integer.parseInt(entry.substring(0, at));
+            String host = entry.substring(at + 1, colon);
+            int port = Integer.parseInt(entry.substring(colon + 1));
+            if (cluster.put(id, new InetSocketAddress(host, port)) != null) {
+                throw new IllegalArgumentException("Raft node " + id + " is listed twice");
+            }
+        }
+
+        return cluster;
+    }
+}
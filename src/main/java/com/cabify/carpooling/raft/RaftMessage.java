@@ -0,0 +1,120 @@
+package com.cabify.carpooling.raft;
+
+import com.cabify.carpooling.persistence.BinaryReader;
+import com.cabify.carpooling.persistence.BinaryWriter;
+
+/**
+ * One Raft RPC or its reply. Fields are shared between types:
+ * <ul>
+ *   <li>{@code VOTE_REQUEST}: index and logTerm describe the candidate's last entry</li>
+ *   <li>{@code VOTE_RESPONSE}: success says whether the vote was granted</li>
+ *   <li>{@code APPEND_REQUEST}: index and logTerm describe the entry before {@code entries},
+ *       commit is the leader's commit index; no entries makes it a heartbeat</li>
+ *   <li>{@code APPEND_RESPONSE}: on success, index is the follower's last matching entry;
+ *       otherwise index echoes the rejected previous index and hint is where to retry after</li>
+ * </ul>
+ */
+final class RaftMessage {
+
+    enum Type {
+        VOTE_REQUEST,
+        VOTE_RESPONSE,
+        APPEND_REQUEST,
+        APPEND_RESPONSE
+    }
+
+    private static final Type[] TYPES = Type.values();
+    private static final long[] NO_TERMS = new long[0];
+    private static final byte[][] NO_COMMANDS = new byte[0][];
+
+    final Type type;
+    final int from;
+    final int to;
+    final long term;
+    final long index;
+    final long logTerm;
+    final long commit;
+    final boolean success;
+    final long hint;
+    final long[] entryTerms;
+    final byte[][] entries;
+
+    private RaftMessage(Type type, int from, int to, long term, long index, long logTerm, long commit,
+                        boolean success, long hint, long[] entryTerms, byte[][] entries) {
+        this.type = type;
+        this.from = from;
+        this.to = to;
+        this.term = term;
+        this.index = index;
+        this.logTerm = logTerm;
+        this.commit = commit;
+        this.success = success;
+        this.hint = hint;
+        this.entryTerms = entryTerms;
+        this.entries = entries;
+    }
+
+    static RaftMessage voteRequest(int from, int to, long term, long lastIndex, long lastTerm) {
+        return new RaftMessage(Type.VOTE_REQUEST, from, to, term, lastIndex, lastTerm, 0, false, 0, NO_TERMS, NO_COMMANDS);
+    }
+
+    static RaftMessage voteResponse(int from, int to, long term, boolean granted) {
+        return new RaftMessage(Type.VOTE_RESPONSE, from, to, term, 0, 0, 0, granted, 0, NO_TERMS, NO_COMMANDS);
+    }
+
+    static RaftMessage appendRequest(int from, int to, long term, long prevIndex, long prevTerm, long commit,
+                                     long[] entryTerms, byte[][] entries) {
+        return new RaftMessage(Type.APPEND_REQUEST, from, to, term, prevIndex, prevTerm, commit, false, 0,
+                entryTerms, entries);
+    }
+
+    static RaftMessage appendResponse(int from, int to, long term, boolean success, long index, long hint) {
+        return new RaftMessage(Type.APPEND_RESPONSE, from, to, term, index, 0, 0, success, hint, NO_TERMS, NO_COMMANDS);
+    }
+
+    void writeTo(BinaryWriter out) {
+        out.writeByte(type.ordinal());
+        out.writeVarInt(from);
+        out.writeVarInt(to);
+        out.writeVarLong(term);
+        out.writeVarLong(index);
+        out.writeVarLong(logTerm);
+        out.writeVarLong(commit);
+        out.writeByte(success ? 1 : 0);
+        out.writeVarLong(hint);
+        out.writeVarInt(entries.length);
+        for (int i = 0; i < entries.length; i++) {
+            out.writeVarLong(entryTerms[i]);
+            out.writeVarInt(entries[i].length);
+            out.writeBytes(entries[i], 0, entries[i].length);
+        }
+    }
+
+    static RaftMessage readFrom(BinaryReader in) {
+        Type type = TYPES[in.readByte()];
+        int from = in.readVarInt();
+        int to = in.readVarInt();
+        long term = in.readVarLong();
+        long index = in.readVarLong();
+        long logTerm = in.readVarLong();
+        long commit = in.readVarLong();
+        boolean success = in.readByte() != 0;
+        long hint = in.readVarLong();
+
+        int count = in.readVarInt();
+        long[] entryTerms = count == 0 ? NO_TERMS : new long[count];
+        byte[][] entries = count == 0 ? NO_COMMANDS : new byte[count][];
+        for (int i = 0; i < count; i++) {
+            entryTerms[i] = in.readVarLong();
+            entries[i] = in.readBytes(in.readVarInt());
+        }
+
+        return new RaftMessage(type, from, to, term, index, logTerm, commit, success, hint, entryTerms, entries);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %d->%d term=%d index=%d logTerm=%d commit=%d success=%b hint=%d entries=%d",
+                type, from, to, term, index, logTerm, commit, success, hint, entries.length);
+    }
+}
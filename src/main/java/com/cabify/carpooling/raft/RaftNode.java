@@ -0,0 +1,450 @@
+package com.cabify.carpooling.raft;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Raft consensus for one node, as a deterministic state machine driven by a single thread:
+ * {@link #tick()} advances logical time, {@link #step} handles a message from a peer and
+ * {@link #propose} appends a command on the leader. Nothing is sent or applied until
+ * {@link #flush()}, which first syncs storage so every vote and acknowledgement sent is durable.
+ *
+ * <p>Besides the core algorithm (leader election, log replication, commit on a majority of
+ * the current term) the leader appends an empty entry when elected, so entries of earlier
+ * terms commit without waiting for a client, and steps down when it has not heard from a
+ * majority within an election timeout (check quorum), so a partitioned leader stops taking
+ * writes. Replication is pipelined: entries are sent as soon as they are appended and a
+ * rejected append rewinds to the follower's hint.
+ */
+final class RaftNode {
+
+    enum Role {
+        FOLLOWER,
+        CANDIDATE,
+        LEADER
+    }
+
+    static final int NONE = 0;
+
+    private static final int MAX_ENTRIES_PER_APPEND = 512;
+    private static final byte[] NO_OP = new byte[0];
+
+    private final int id;
+    private final int[] peers;
+    private final RaftStorage storage;
+    private final RaftLog log;
+    private final EntryApplier applier;
+    private final Random random;
+    private final int electionTicks;
+    private final int heartbeatTicks;
+    private final List<RaftMessage> outbox = new ArrayList<>();
+
+    private long term;
+    private int votedFor;
+    private Role role = Role.FOLLOWER;
+    private int leaderId = NONE;
+
+    private long commitIndex;
+    private long lastApplied;
+    // Last index known to be on disk locally; the leader counts itself up to here
+    private long durableIndex;
+
+    private int electionElapsed;
+    private int randomizedElectionTicks;
+    private int heartbeatElapsed;
+
+    // Per peer, in the order of peers
+    private final boolean[] votes;
+    private final long[] nextIndex;
+    private final long[] matchIndex;
+    private final boolean[] recentlyActive;
+
+    /**
+     * Create a node that restarts from whatever the storage holds.
+     * Ticks are logical: an election starts after {@code electionTicks} to twice that many
+     * ticks without a leader, and a leader sends heartbeats every {@code heartbeatTicks}.
+     */
+    RaftNode(int id, int[] peers, RaftStorage storage, EntryApplier applier, Random random,
+             int electionTicks, int heartbeatTicks) {
+        if (id == NONE) {
+            throw new IllegalArgumentException("Node IDs must be positive");
+        }
+        if (heartbeatTicks >= electionTicks) {
+            throw new IllegalArgumentException("Heartbeats must be more frequent than elections");
+        }
+
+        this.id = id;
+        this.peers = peers.clone();
+        this.storage = storage;
+        this.log = new RaftLog(storage);
+        this.applier = applier;
+        this.random = random;
+        this.electionTicks = electionTicks;
+        this.heartbeatTicks = heartbeatTicks;
+
+        this.term = storage.term();
+        this.votedFor = storage.votedFor();
+        this.durableIndex = log.lastIndex();
+
+        this.votes = new boolean[peers.length];
+        this.nextIndex = new long[peers.length];
+        this.matchIndex = new long[peers.length];
+        this.recentlyActive = new boolean[peers.length];
+
+        resetElectionTimer();
+    }
+
+    int id() {
+        return id;
+    }
+
+    Role role() {
+        return role;
+    }
+
+    boolean isLeader() {
+        return role == Role.LEADER;
+    }
+
+    /**
+     * Current leader as far as this node knows, or {@link #NONE}.
+     */
+    int leaderId() {
+        return leaderId;
+    }
+
+    long term() {
+        return term;
+    }
+
+    long commitIndex() {
+        return commitIndex;
+    }
+
+    long lastApplied() {
+        return lastApplied;
+    }
+
+    long lastIndex() {
+        return log.lastIndex();
+    }
+
+    long termAt(long index) {
+        return log.term(index);
+    }
+
+    /**
+     * Append a command to the leader's log and return its index, or -1 if not the leader.
+     * The entry is only committed once a majority has stored it, and may still be lost if
+     * leadership changes first.
+     */
+    long propose(byte[] command) {
+        if (role != Role.LEADER) {
+            return -1;
+        }
+        return log.append(term, command);
+    }
+
+    void tick() {
+        electionElapsed++;
+
+        if (role == Role.LEADER) {
+            if (++heartbeatElapsed >= heartbeatTicks) {
+                heartbeatElapsed = 0;
+                for (int peer = 0; peer < peers.length; peer++) {
+                    sendAppend(peer);
+                }
+            }
+            if (electionElapsed >= electionTicks) {
+                electionElapsed = 0;
+                checkQuorum();
+            }
+        } else if (electionElapsed >= randomizedElectionTicks) {
+            campaign();
+        }
+    }
+
+    void step(RaftMessage message) {
+        if (message.term > term) {
+            becomeFollower(message.term, message.type == RaftMessage.Type.APPEND_REQUEST ? message.from : NONE);
+        } else if (message.term < term) {
+            // Tell a stale leader or candidate about the newer term; stale replies are dropped
+            if (message.type == RaftMessage.Type.APPEND_REQUEST) {
+                send(RaftMessage.appendResponse(id, message.from, term, false, message.index, log.lastIndex()));
+            } else if (message.type == RaftMessage.Type.VOTE_REQUEST) {
+                send(RaftMessage.voteResponse(id, message.from, term, false));
+            }
+            return;
+        }
+
+        switch (message.type) {
+            case VOTE_REQUEST:
+                handleVoteRequest(message);
+                break;
+            case VOTE_RESPONSE:
+                handleVoteResponse(message);
+                break;
+            case APPEND_REQUEST:
+                handleAppendRequest(message);
+                break;
+            case APPEND_RESPONSE:
+                handleAppendResponse(message);
+                break;
+            default:
+                throw new IllegalStateException("Unknown message type " + message.type);
+        }
+    }
+
+    /**
+     * Make everything appended durable, replicate new entries, apply committed ones and
+     * release the messages produced since the last flush, in order.
+     */
+    List<RaftMessage> flush() throws IOException {
+        storage.sync();
+        durableIndex = log.lastIndex();
+
+        if (role == Role.LEADER) {
+            advanceCommit();
+            for (int peer = 0; peer < peers.length; peer++) {
+                if (nextIndex[peer] <= log.lastIndex()) {
+                    sendAppend(peer);
+                }
+            }
+        }
+
+        while (lastApplied < commitIndex) {
+            lastApplied++;
+            applier.apply(lastApplied, log.term(lastApplied), log.command(lastApplied));
+        }
+
+        List<RaftMessage> messages = new ArrayList<>(outbox);
+        outbox.clear();
+        return messages;
+    }
+
+    private void handleVoteRequest(RaftMessage request) {
+        boolean upToDate = request.logTerm > log.lastTerm()
+                || (request.logTerm == log.lastTerm() && request.index >= log.lastIndex());
+        boolean canVote = votedFor == NONE || votedFor == request.from;
+
+        if (canVote && upToDate && role != Role.LEADER) {
+            votedFor = request.from;
+            storage.saveVote(term, votedFor);
+            electionElapsed = 0;
+            send(RaftMessage.voteResponse(id, request.from, term, true));
+        } else {
+            send(RaftMessage.voteResponse(id, request.from, term, false));
+        }
+    }
+
+    private void handleVoteResponse(RaftMessage response) {
+        int peer = peerIndex(response.from);
+        if (role != Role.CANDIDATE || peer < 0 || !response.success) {
+            return;
+        }
+
+        votes[peer] = true;
+        int granted = 1;
+        for (boolean vote : votes) {
+            if (vote) {
+                granted++;
+            }
+        }
+        if (isMajority(granted)) {
+            becomeLeader();
+        }
+    }
+
+    private void handleAppendRequest(RaftMessage request) {
+        // Only one leader per term, so a candidate that hears from it gives up
+        role = Role.FOLLOWER;
+        leaderId = request.from;
+        electionElapsed = 0;
+
+        if (request.index > log.lastIndex()) {
+            send(RaftMessage.appendResponse(id, request.from, term, false, request.index, log.lastIndex()));
+            return;
+        }
+
+        if (log.term(request.index) != request.logTerm) {
+            // Skip back over the whole conflicting term in one round trip
+            long conflictTerm = log.term(request.index);
+            long hint = request.index - 1;
+            while (hint > commitIndex && log.term(hint) == conflictTerm) {
+                hint--;
+            }
+            send(RaftMessage.appendResponse(id, request.from, term, false, request.index, hint));
+            return;
+        }
+
+        for (int i = 0; i < request.entries.length; i++) {
+            long index = request.index + 1 + i;
+            if (index <= log.lastIndex()) {
+                if (log.term(index) == request.entryTerms[i]) {
+                    continue;
+                }
+                if (index <= commitIndex) {
+                    throw new IllegalStateException(String.format(
+                            "Leader %d conflicts with committed entry %d", request.from, index));
+                }
+                log.truncateFrom(index);
+            }
+            log.append(request.entryTerms[i], request.entries[i]);
+        }
+
+        long lastNew = request.index + request.entries.length;
+        if (request.commit > commitIndex) {
+            commitIndex = Math.min(request.commit, lastNew);
+        }
+
+        send(RaftMessage.appendResponse(id, request.from, term, true, lastNew, 0));
+    }
+
+    private void handleAppendResponse(RaftMessage response) {
+        int peer = peerIndex(response.from);
+        if (role != Role.LEADER || peer < 0) {
+            return;
+        }
+        recentlyActive[peer] = true;
+
+        if (response.success) {
+            if (response.index > matchIndex[peer]) {
+                matchIndex[peer] = response.index;
+                nextIndex[peer] = Math.max(nextIndex[peer], response.index + 1);
+                advanceCommit();
+            }
+            return;
+        }
+
+        // A rejection of an append that is already covered by a later success is stale
+        if (response.index <= matchIndex[peer]) {
+            return;
+        }
+        nextIndex[peer] = Math.max(matchIndex[peer] + 1, Math.min(response.hint + 1, response.index));
+        sendAppend(peer);
+    }
+
+    private void campaign() {
+        term++;
+        role = Role.CANDIDATE;
+        votedFor = id;
+        leaderId = NONE;
+        storage.saveVote(term, votedFor);
+        Arrays.fill(votes, false);
+        resetElectionTimer();
+
+        if (isMajority(1)) {
+            becomeLeader();
+            return;
+        }
+        for (int peer : peers) {
+            send(RaftMessage.voteRequest(id, peer, term, log.lastIndex(), log.lastTerm()));
+        }
+    }
+
+    private void becomeLeader() {
+        role = Role.LEADER;
+        leaderId = id;
+        heartbeatElapsed = 0;
+        electionElapsed = 0;
+        Arrays.fill(nextIndex, log.lastIndex() + 1);
+        Arrays.fill(matchIndex, 0);
+        Arrays.fill(recentlyActive, false);
+
+        // Entries of earlier terms only commit along with one of the current term
+        log.append(term, NO_OP);
+        for (int peer = 0; peer < peers.length; peer++) {
+            sendAppend(peer);
+        }
+    }
+
+    private void becomeFollower(long newTerm, int leader) {
+        if (newTerm != term) {
+            term = newTerm;
+            votedFor = NONE;
+            storage.saveVote(term, NONE);
+        }
+        role = Role.FOLLOWER;
+        leaderId = leader;
+        resetElectionTimer();
+    }
+
+    private void checkQuorum() {
+        int active = 1;
+        for (int peer = 0; peer < peers.length; peer++) {
+            if (recentlyActive[peer]) {
+                active++;
+            }
+            recentlyActive[peer] = false;
+        }
+
+        if (!isMajority(active)) {
+            becomeFollower(term, NONE);
+        }
+    }
+
+    private void advanceCommit() {
+        for (long index = log.lastIndex(); index > commitIndex; index--) {
+            // Counting replicas only commits entries of the current term
+            if (log.term(index) != term) {
+                break;
+            }
+
+            int replicas = durableIndex >= index ? 1 : 0;
+            for (long match : matchIndex) {
+                if (match >= index) {
+                    replicas++;
+                }
+            }
+            if (isMajority(replicas)) {
+                commitIndex = index;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Send the entries a peer is missing, or a heartbeat, assuming they will arrive.
+     */
+    private void sendAppend(int peer) {
+        long prevIndex = nextIndex[peer] - 1;
+        long[] entryTerms = log.terms(nextIndex[peer], MAX_ENTRIES_PER_APPEND);
+        byte[][] entries = log.commands(nextIndex[peer], MAX_ENTRIES_PER_APPEND);
+
+        send(RaftMessage.appendRequest(id, peers[peer], term, prevIndex, log.term(prevIndex),
+                commitIndex, entryTerms, entries));
+        nextIndex[peer] += entries.length;
+    }
+
+    private void send(RaftMessage message) {
+        outbox.add(message);
+    }
+
+    private boolean isMajority(int count) {
+        return count * 2 > peers.length + 1;
+    }
+
+    private int peerIndex(int nodeId) {
+        for (int i = 0; i < peers.length; i++) {
+            if (peers[i] == nodeId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void resetElectionTimer() {
+        electionElapsed = 0;
+        randomizedElectionTicks = electionTicks + random.nextInt(electionTicks);
+    }
+
+    /**
+     * Receives committed entries in index order; empty commands are the leaders' no-ops.
+     */
+    interface EntryApplier {
+        void apply(long index, long term, byte[] command);
+    }
+}
@@ -0,0 +1,281 @@
+package com.cabify.carpooling.raft;
+
+import com.cabify.carpooling.exception.NotPrimaryException;
+import com.cabify.carpooling.persistence.BinaryWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs a {@link RaftNode} on its own thread over TCP. The thread handles every message and
+ * proposal that arrived, ticks the node on a wall clock, then flushes once: one fsync and one
+ * round of appends cover every proposal of the batch. Committed entries are applied to the
+ * {@link StateMachine} on the same thread, and clients waiting in {@link #propose} get the
+ * result of their own entry. Proposals are forgotten once their client gives up waiting, and
+ * failed once this node stops leading. The Raft log is never compacted: it grows with every
+ * command until log snapshots are implemented.
+ */
+public class RaftServer implements Consensus {
+
+    private static final Logger log = LoggerFactory.getLogger(RaftServer.class);
+
+    // Wakes the node thread to stop; interrupting it could close the storage file mid-write
+    private static final Object STOP = new Object();
+
+    private final int id;
+    private final RaftStorage storage;
+    private final StateMachine stateMachine;
+    private final TcpRaftTransport transport;
+    private final RaftNode node;
+    private final long tickMillis;
+    private final long commitTimeoutMillis;
+
+    // Messages and proposals for the node thread
+    private final LinkedBlockingQueue<Object> inbox = new LinkedBlockingQueue<>();
+    // Proposals waiting for their index to be applied, only touched by the node thread
+    private final Map<Long, Proposal> pending = new HashMap<>();
+
+    private volatile boolean running;
+    private Thread thread;
+
+    // Published by the node thread after every flush
+    private volatile RaftNode.Role role = RaftNode.Role.FOLLOWER;
+    private volatile int leaderId;
+    private volatile long term;
+    private volatile long commitIndex;
+    private volatile int pendingProposals;
+
+    /**
+     * Create a member of the cluster listed in {@code members} (node ID to address).
+     * Elections start after {@code electionTicks} to twice that many ticks of
+     * {@code tickMillis} without a leader; leaders send heartbeats every {@code heartbeatTicks}.
+     */
+    public RaftServer(int id, Map<Integer, InetSocketAddress> members, RaftStorage storage, StateMachine stateMachine,
+                      long tickMillis, int electionTicks, int heartbeatTicks, long commitTimeoutMillis) {
+        this.id = id;
+        this.storage = storage;
+        this.stateMachine = stateMachine;
+        this.transport = new TcpRaftTransport(id, members);
+        this.tickMillis = tickMillis;
+        this.commitTimeoutMillis = commitTimeoutMillis;
+
+        int[] peers = members.keySet().stream().mapToInt(Integer::intValue).filter(member -> member != id).toArray();
+        this.node = new RaftNode(id, peers, storage, this::apply, new Random(), electionTicks, heartbeatTicks);
+    }
+
+    public synchronized void start() throws IOException {
+        running = true;
+        transport.start(inbox::add);
+
+        thread = new Thread(this::run, "raft-node-" + id);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() throws IOException, InterruptedException {
+        running = false;
+        inbox.add(STOP);
+        thread.join();
+        transport.close();
+        storage.close();
+    }
+
+    @Override
+    public Object propose(BinaryWriter command) {
+        if (role != RaftNode.Role.LEADER) {
+            throw notLeader();
+        }
+
+        Proposal proposal = new Proposal(Arrays.copyOf(command.array(), command.size()));
+        inbox.add(proposal);
+
+        try {
+            return proposal.result.get(commitTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Nobody waits for the entry any more, though it may still commit
+            inbox.add(new Abandoned(proposal));
+            throw new NotPrimaryException("Timed out waiting for a Raft majority; the command may still be applied");
+        } catch (ExecutionException e) {
+            throw (RuntimeException) e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a Raft commit", e);
+        }
+    }
+
+    public int id() {
+        return id;
+    }
+
+    public boolean isLeader() {
+        return role == RaftNode.Role.LEADER;
+    }
+
+    /**
+     * Leader as last known by this node, 0 if none.
+     */
+    public int leaderId() {
+        return leaderId;
+    }
+
+    public long term() {
+        return term;
+    }
+
+    public long commitIndex() {
+        return commitIndex;
+    }
+
+    /**
+     * Proposals appended by this leader and still waiting to be applied.
+     */
+    public int pendingProposals() {
+        return pendingProposals;
+    }
+
+    private void run() {
+        long nextTick = System.currentTimeMillis() + tickMillis;
+
+        try {
+            while (running) {
+                Object item = inbox.poll(Math.max(0, nextTick - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                while (item != null) {
+                    handle(item);
+                    item = inbox.poll();
+                }
+
+                long now = System.currentTimeMillis();
+                if (now >= nextTick) {
+                    node.tick();
+                    // After a long pause, skip missed ticks rather than firing them in a burst
+                    nextTick = Math.max(nextTick + tickMillis, now);
+                }
+
+                if (!pending.isEmpty() && !node.isLeader()) {
+                    // A follower's log may be truncated, so our uncommitted entries may never be applied
+                    failPending(new NotPrimaryException(
+                            "Leadership changed before the command was committed; it may still be applied"));
+                }
+
+                List<RaftMessage> messages = node.flush();
+                for (RaftMessage message : messages) {
+                    transport.send(message);
+                }
+                publishStatus();
+            }
+        } catch (InterruptedException e) {
+            // Stopping
+        } catch (IOException | RuntimeException e) {
+            log.error("Raft node {} stopped: storage or state machine failed", id, e);
+            running = false;
+        }
+
+        failPending(new NotPrimaryException("Raft node stopped"));
+        role = RaftNode.Role.FOLLOWER;
+    }
+
+    private void handle(Object item) {
+        if (item == STOP) {
+            return;
+        }
+        if (item instanceof RaftMessage) {
+            node.step((RaftMessage) item);
+            return;
+        }
+        if (item instanceof Abandoned) {
+            Proposal proposal = ((Abandoned) item).proposal;
+            pending.remove(proposal.index, proposal);
+            return;
+        }
+
+        Proposal proposal = (Proposal) item;
+        long index = node.propose(proposal.command);
+        if (index < 0) {
+            proposal.result.completeExceptionally(notLeader());
+            return;
+        }
+        proposal.index = index;
+        proposal.term = node.term();
+        pending.put(index, proposal);
+    }
+
+    private void apply(long index, long entryTerm, byte[] command) {
+        Object result = stateMachine.apply(index, command);
+
+        Proposal proposal = pending.remove(index);
+        if (proposal == null) {
+            return;
+        }
+        if (proposal.term == entryTerm) {
+            proposal.result.complete(result);
+        } else {
+            // Another leader's entry replaced ours at this index
+            proposal.result.completeExceptionally(
+                    new NotPrimaryException("Leadership changed before the command was committed"));
+        }
+    }
+
+    private void failPending(RuntimeException cause) {
+        for (Proposal proposal : pending.values()) {
+            proposal.result.completeExceptionally(cause);
+        }
+        pending.clear();
+    }
+
+    private void publishStatus() {
+        if (node.role() != role && node.isLeader()) {
+            log.info("Raft node {} elected leader for term {}", id, node.term());
+        }
+        role = node.role();
+        leaderId = node.leaderId();
+        term = node.term();
+        commitIndex = node.commitIndex();
+        pendingProposals = pending.size();
+    }
+
+    private NotPrimaryException notLeader() {
+        int leader = leaderId;
+        return new NotPrimaryException(leader != RaftNode.NONE
+                ? "This node is not the Raft leader; node " + leader + " is"
+                : "This node is not the Raft leader and no leader is known");
+    }
+
+    /**
+     * A command waiting to be appended, then committed and applied.
+     */
+    private static final class Proposal {
+
+        final byte[] command;
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+        long index;
+        long term;
+
+        Proposal(byte[] command) {
+            this.command = command;
+        }
+    }
+
+    /**
+     * A proposal whose client stopped waiting.
+     */
+    private static final class Abandoned {
+
+        final Proposal proposal;
+
+        Abandoned(Proposal proposal) {
+            this.proposal = proposal;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.cabify.carpooling.raft;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Durable Raft state: the current term, the vote cast in it and the log entries.
+ * Writes may be buffered; nothing counts as persisted until {@link #sync()} returns, and a
+ * node only sends messages (votes, acknowledgements) after syncing what they promise.
+ */
+public interface RaftStorage extends Closeable {
+
+    /**
+     * Term loaded on open, 0 for a new node.
+     */
+    long term();
+
+    /**
+     * Node voted for in {@link #term()} as loaded on open, 0 for none.
+     */
+    int votedFor();
+
+    /**
+     * Replay the entries loaded on open, in index order starting at 1.
+     */
+    void forEachEntry(EntryConsumer consumer);
+
+    void saveVote(long term, int votedFor);
+
+    void append(long index, long term, byte[] command);
+
+    /**
+     * Drop the entry at the given index and every entry after it.
+     */
+    void truncateFrom(long index);
+
+    void sync() throws IOException;
+
+    /**
+     * Receives one log entry.
+     */
+    interface EntryConsumer {
+        void accept(long index, long term, byte[] command);
+    }
+}
@@ -0,0 +1,14 @@
+package com.cabify.carpooling.raft;
+
+/**
+ * Applies committed Raft entries, in index order, on every node.
+ * Applying must be deterministic so that all replicas reach the same state.
+ */
+public interface StateMachine {
+
+    /**
+     * Apply the command committed at the given index and return its outcome for the client
+     * that proposed it, if it is waiting on this node. Empty commands are no-ops.
+     */
+    Object apply(long index, byte[] command);
+}
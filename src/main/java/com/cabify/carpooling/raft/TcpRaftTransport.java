@@ -0,0 +1,215 @@
+package com.cabify.carpooling.raft;
+
+import com.cabify.carpooling.persistence.BinaryReader;
+import com.cabify.carpooling.persistence.BinaryWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Carries Raft messages between nodes over TCP, as {@code [int length][message]} frames.
+ * Each peer gets one outgoing connection with its own queue and sender thread, so a slow or
+ * dead peer never blocks the node. Messages to an unreachable peer, or beyond the queue
+ * capacity, are dropped: Raft retries through heartbeats and rejected appends.
+ */
+final class TcpRaftTransport implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(TcpRaftTransport.class);
+
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final long RETRY_DELAY_MILLIS = 100;
+
+    private final int selfId;
+    private final InetSocketAddress address;
+    private final Map<Integer, Peer> peers = new HashMap<>();
+    private final Set<Socket> inbound = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean running;
+    private ServerSocket serverSocket;
+
+    TcpRaftTransport(int selfId, Map<Integer, InetSocketAddress> members) {
+        this.selfId = selfId;
+        this.address = members.get(selfId);
+        if (address == null) {
+            throw new IllegalArgumentException("Node " + selfId + " is not a cluster member");
+        }
+
+        for (Map.Entry<Integer, InetSocketAddress> member : members.entrySet()) {
+            if (member.getKey() != selfId) {
+                peers.put(member.getKey(), new Peer(member.getKey(), member.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Listen on this node's address and hand every message received to the inbox.
+     */
+    void start(Consumer<RaftMessage> inbox) throws IOException {
+        running = true;
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(address.getPort()));
+
+        Thread acceptor = new Thread(() -> accept(inbox), "raft-acceptor-" + selfId);
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        for (Peer peer : peers.values()) {
+            peer.start();
+        }
+    }
+
+    void send(RaftMessage message) {
+        Peer peer = peers.get(message.to);
+        if (peer != null) {
+            peer.queue.offer(message);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        for (Socket socket : inbound) {
+            closeQuietly(socket);
+        }
+        for (Peer peer : peers.values()) {
+            peer.stop();
+        }
+    }
+
+    private void accept(Consumer<RaftMessage> inbox) {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                inbound.add(socket);
+
+                Thread reader = new Thread(() -> receive(socket, inbox), "raft-receiver-" + selfId);
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("Failed to accept a Raft peer", e);
+                }
+            }
+        }
+    }
+
+    private void receive(Socket socket, Consumer<RaftMessage> inbox) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024))) {
+            byte[] frame = new byte[1024];
+            while (running) {
+                int length = in.readInt();
+                if (frame.length < length) {
+                    frame = new byte[Math.max(length, frame.length * 2)];
+                }
+                in.readFully(frame, 0, length);
+                inbox.accept(RaftMessage.readFrom(new BinaryReader(frame, 0, length)));
+            }
+        } catch (IOException e) {
+            log.debug("Raft peer connection closed: {}", e.toString());
+        } finally {
+            inbound.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already gone
+        }
+    }
+
+    /**
+     * Outgoing connection to one peer, drained by its own thread.
+     */
+    private final class Peer {
+
+        private final int id;
+        private final InetSocketAddress address;
+        private final BlockingQueue<RaftMessage> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private Thread sender;
+        private volatile Socket socket;
+
+        Peer(int id, InetSocketAddress address) {
+            this.id = id;
+            this.address = address;
+        }
+
+        void start() {
+            sender = new Thread(this::run, "raft-sender-" + selfId + "-" + id);
+            sender.setDaemon(true);
+            sender.start();
+        }
+
+        void stop() {
+            Socket current = socket;
+            if (current != null) {
+                closeQuietly(current);
+            }
+            sender.interrupt();
+        }
+
+        private void run() {
+            BinaryWriter frame = new BinaryWriter(64 * 1024);
+
+            while (running) {
+                try (Socket connection = new Socket()) {
+                    socket = connection;
+                    connection.connect(address, CONNECT_TIMEOUT_MILLIS);
+                    connection.setTcpNoDelay(true);
+                    DataOutputStream out = new DataOutputStream(
+                            new BufferedOutputStream(connection.getOutputStream(), 64 * 1024));
+
+                    while (running) {
+                        RaftMessage message = queue.take();
+                        // Coalesce whatever else is queued into one write
+                        do {
+                            frame.reset();
+                            message.writeTo(frame);
+                            out.writeInt(frame.size());
+                            out.write(frame.array(), 0, frame.size());
+                        } while ((message = queue.poll()) != null);
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    // Messages sent meanwhile are lost; Raft resends what matters
+                    queue.clear();
+                    log.debug("Raft peer {} unreachable: {}", id, e.toString());
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    socket = null;
+                }
+
+                try {
+                    TimeUnit.MILLISECONDS.sleep(RETRY_DELAY_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.cabify.carpooling.replication;
+
+import com.cabify.carpooling.persistence.BinaryReader;
+import com.cabify.carpooling.persistence.StateSnapshot;
+import com.cabify.carpooling.service.CarPoolingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Replica side of replication: connects to the primary, installs the snapshot it sends and
+ * applies every command after it. Reconnects (and resyncs from a new snapshot) after any
+ * failure until stopped.
+ */
+public class ReplicationClient {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicationClient.class);
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private final CarPoolingService carPoolingService;
+    private final String host;
+    private final int port;
+
+    private volatile boolean running;
+    private volatile boolean connected;
+    private volatile Socket socket;
+    private Thread follower;
+
+    // Latest LSN known on the primary, and the primary time of the last applied command
+    private volatile long primaryLsn;
+    private volatile long appliedPrimaryMillis;
+
+    public ReplicationClient(CarPoolingService carPoolingService, String host, int port) {
+        this.carPoolingService = carPoolingService;
+        this.host = host;
+        this.port = port;
+    }
+
+    public synchronized void start() {
+        running = true;
+        follower = new Thread(this::follow, "replication-follower");
+        follower.setDaemon(true);
+        follower.start();
+    }
+
+    public synchronized void stop() throws InterruptedException {
+        running = false;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                // Already gone
+            }
+        }
+        follower.interrupt();
+        follower.join();
+        connected = false;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public long primaryLsn() {
+        return primaryLsn;
+    }
+
+    /**
+     * Commands the primary applied that this replica has not, as of the last frame received.
+     */
+    public long lagRecords() {
+        return Math.max(0, primaryLsn - carPoolingService.lastLsn());
+    }
+
+    /**
+     * Age of the last applied command while behind the primary; 0 when caught up.
+     */
+    public long lagMillis() {
+        if (lagRecords() == 0) {
+            return 0;
+        }
+        return Math.max(0, System.currentTimeMillis() - appliedPrimaryMillis);
+    }
+
+    private void follow() {
+        while (running) {
+            try (Socket connection = new Socket()) {
+                socket = connection;
+                connection.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+                connection.setTcpNoDelay(true);
+                connected = true;
+                log.info("Connected to primary {}:{}", host, port);
+
+                receive(new DataInputStream(new BufferedInputStream(connection.getInputStream(), 64 * 1024)));
+            } catch (IOException | RuntimeException e) {
+                if (running) {
+                    log.warn("Replication from {}:{} interrupted: {}", host, port, e.toString());
+                }
+            } finally {
+                connected = false;
+                socket = null;
+            }
+
+            if (running) {
+                try {
+                    Thread.sleep(RETRY_DELAY_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void receive(DataInputStream in) throws IOException {
+        byte[] record = new byte[256];
+
+        while (running) {
+            int type = in.readUnsignedByte();
+
+            switch (type) {
+                case ReplicationProtocol.SNAPSHOT: {
+                    byte[] state = new byte[in.readInt()];
+                    in.readFully(state);
+                    StateSnapshot snapshot = StateSnapshot.readFrom(new BinaryReader(state, 0, state.length));
+                    carPoolingService.installReplica(snapshot);
+                    primaryLsn = Math.max(primaryLsn, snapshot.lsn());
+                    log.info("Installed primary state at LSN {}: {} cars, {} groups",
+                            snapshot.lsn(), snapshot.carCount(), snapshot.groupCount());
+                    break;
+                }
+                case ReplicationProtocol.COMMAND: {
+                    long lsn = in.readLong();
+                    long primaryMillis = in.readLong();
+                    int length = in.readInt();
+                    if (record.length < length) {
+                        record = new byte[Math.max(length, record.length * 2)];
+                    }
+                    in.readFully(record, 0, length);
+
+                    carPoolingService.applyReplicated(lsn, record, length);
+                    appliedPrimaryMillis = primaryMillis;
+                    primaryLsn = Math.max(primaryLsn, lsn);
+                    break;
+                }
+                case ReplicationProtocol.HEARTBEAT:
+                    primaryLsn = in.readLong();
+                    in.readLong();
+                    break;
+                default:
+                    throw new IOException("Unknown replication frame type " + type);
+            }
+        }
+    }
+}
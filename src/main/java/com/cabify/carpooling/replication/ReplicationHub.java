@@ -0,0 +1,111 @@
+package com.cabify.carpooling.replication;
+
+import com.cabify.carpooling.persistence.BinaryWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Fans the commands applied on the primary out to every connected replica.
+ * Publishing only copies the framed command into each replica's backlog, so the engine
+ * never waits on a socket. A replica whose backlog outgrows
+ * {@code carpooling.replication.max-backlog-bytes} is cut off and resyncs from a snapshot.
+ */
+@Component
+public class ReplicationHub {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicationHub.class);
+
+    private final int maxBacklogBytes;
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    public ReplicationHub(@Value("${carpooling.replication.max-backlog-bytes:67108864}") int maxBacklogBytes) {
+        this.maxBacklogBytes = maxBacklogBytes;
+    }
+
+    public boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    public int subscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Queue a command for every replica. Called inside the engine, in LSN order.
+     */
+    public void publish(long lsn, BinaryWriter command) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(lsn, now, command);
+        }
+    }
+
+    /**
+     * Start queueing commands for a new replica. Call it in the same engine pause that copies
+     * the state sent to the replica, so no command is missed or sent twice.
+     */
+    Subscription subscribe() {
+        Subscription subscription = new Subscription();
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    void unsubscribe(Subscription subscription) {
+        subscription.close();
+        subscriptions.remove(subscription);
+    }
+
+    /**
+     * Backlog of framed commands for one replica, drained by its sender thread.
+     */
+    final class Subscription {
+
+        private BinaryWriter backlog = new BinaryWriter(64 * 1024);
+        private boolean closed;
+
+        synchronized void offer(long lsn, long primaryMillis, BinaryWriter command) {
+            if (closed) {
+                return;
+            }
+            if (backlog.size() + command.size() > maxBacklogBytes) {
+                log.warn("Replica backlog exceeded {} bytes, disconnecting it", maxBacklogBytes);
+                closed = true;
+                notifyAll();
+                return;
+            }
+
+            ReplicationProtocol.writeCommand(backlog, lsn, primaryMillis, command);
+            notifyAll();
+        }
+
+        /**
+         * Wait up to the timeout for commands and swap them out for an empty buffer.
+         * Returns null once the subscription is closed.
+         */
+        synchronized BinaryWriter take(BinaryWriter empty, long timeoutMillis) throws InterruptedException {
+            if (backlog.size() == 0 && !closed) {
+                wait(timeoutMillis);
+            }
+            if (closed) {
+                return null;
+            }
+
+            BinaryWriter batch = backlog;
+            backlog = empty;
+            return batch;
+        }
+
+        synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+    }
+}
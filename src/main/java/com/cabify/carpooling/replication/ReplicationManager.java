@@ -0,0 +1,153 @@
+package com.cabify.carpooling.replication;
+
+import com.cabify.carpooling.model.ReplicationStatus;
+import com.cabify.carpooling.model.ReplicationStatus.Role;
+import com.cabify.carpooling.service.CarPoolingService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+
+/**
+ * Runs this node in the configured {@code carpooling.replication.role}: standalone, primary
+ * (streams to replicas on {@code carpooling.replication.port}) or follower (streams from
+ * {@code carpooling.replication.primary} and rejects writes until promoted).
+ * Replication is asynchronous: the primary answers before replicas apply the change.
+ */
+@Component
+public class ReplicationManager implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicationManager.class);
+
+    private final CarPoolingService carPoolingService;
+    private final ReplicationHub hub;
+    private final int port;
+    private final String primaryHost;
+    private final int primaryPort;
+
+    private volatile Role role;
+    private ReplicationServer server;
+    private volatile ReplicationClient client;
+    private boolean running;
+
+    public ReplicationManager(
+            CarPoolingService carPoolingService,
+            ReplicationHub hub,
+            MeterRegistry registry,
+            @Value("${carpooling.replication.role:standalone}") String role,
+            @Value("${carpooling.replication.port:9191}") int port,
+            @Value("${carpooling.replication.primary:localhost:9191}") String primary) {
+        this.carPoolingService = carPoolingService;
+        this.hub = hub;
+        this.role = Role.valueOf(role.toUpperCase(Locale.ROOT));
+        this.port = port;
+
+        int separator = primary.lastIndexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("carpooling.replication.primary must be host:port, got " + primary);
+        }
+        this.primaryHost = primary.substring(0, separator);
+        this.primaryPort = Integer.parseInt(primary.substring(separator + 1));
+
+        // Reject writes before the web server comes up
+        carPoolingService.setReadOnly(this.role == Role.FOLLOWER);
+
+        Gauge.builder("carpooling.replication.lag.records", this, manager -> manager.status().getLagRecords())
+                .description("Commands applied on the primary but not yet on this follower")
+                .register(registry);
+        Gauge.builder("carpooling.replication.lag.seconds", this, manager -> manager.status().getLagMillis() / 1000.0)
+                .description("Age of the last command this follower applied while behind the primary")
+                .register(registry);
+        Gauge.builder("carpooling.replication.followers", hub, ReplicationHub::subscriberCount)
+                .description("Replicas streaming from this primary")
+                .register(registry);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (role == Role.PRIMARY) {
+            startServer();
+        } else if (role == Role.FOLLOWER) {
+            client = new ReplicationClient(carPoolingService, primaryHost, primaryPort);
+            client.start();
+            log.info("Following primary {}:{}", primaryHost, primaryPort);
+        }
+        running = true;
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop();
+            server = null;
+        }
+        if (client != null) {
+            stopClient();
+        }
+        running = false;
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Stop following and start accepting writes and replicas. Does nothing unless a follower.
+     */
+    public synchronized void promote() {
+        if (role != Role.FOLLOWER) {
+            return;
+        }
+
+        stopClient();
+        role = Role.PRIMARY;
+        carPoolingService.setReadOnly(false);
+        if (running) {
+            startServer();
+        }
+        log.info("Promoted to primary at LSN {}", carPoolingService.lastLsn());
+    }
+
+    public ReplicationStatus status() {
+        ReplicationClient follower = client;
+        boolean connected = follower != null && follower.isConnected();
+        long lagRecords = follower != null ? follower.lagRecords() : 0;
+        long lagMillis = follower != null ? follower.lagMillis() : 0;
+
+        return new ReplicationStatus(role, carPoolingService.lastLsn(), hub.subscriberCount(),
+                connected, lagRecords, lagMillis);
+    }
+
+    /**
+     * Port the primary accepts replicas on, or -1 when not listening.
+     */
+    public synchronized int localPort() {
+        return server != null ? server.localPort() : -1;
+    }
+
+    private void startServer() {
+        server = new ReplicationServer(carPoolingService, hub, port);
+        try {
+            server.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to listen for replicas on port " + port, e);
+        }
+    }
+
+    private void stopClient() {
+        try {
+            client.stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        client = null;
+    }
+}
@@ -0,0 +1,48 @@
+package com.cabify.carpooling.replication;
+
+import com.cabify.carpooling.persistence.BinaryWriter;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Frames sent from the primary to a replica over TCP. Every frame starts with a type byte:
+ * <ul>
+ *   <li>{@code SNAPSHOT [int length][state]}: the full state, sent once per connection</li>
+ *   <li>{@code COMMAND [long lsn][long primary millis][int length][command]}: one log record</li>
+ *   <li>{@code HEARTBEAT [long primary lsn][long primary millis]}: sent at least every second</li>
+ * </ul>
+ * Commands use the write-ahead log encoding, so a replica applies exactly what the primary logged.
+ */
+final class ReplicationProtocol {
+
+    static final int SNAPSHOT = 1;
+    static final int COMMAND = 2;
+    static final int HEARTBEAT = 3;
+
+    static final long HEARTBEAT_INTERVAL_MILLIS = 1000;
+
+    private ReplicationProtocol() {
+        throw new AssertionError("Utility class cannot be instantiated");
+    }
+
+    static void writeSnapshot(DataOutputStream out, BinaryWriter state) throws IOException {
+        out.writeByte(SNAPSHOT);
+        out.writeInt(state.size());
+        out.write(state.array(), 0, state.size());
+    }
+
+    static void writeCommand(BinaryWriter out, long lsn, long primaryMillis, BinaryWriter command) {
+        out.writeByte(COMMAND);
+        out.writeLong(lsn);
+        out.writeLong(primaryMillis);
+        out.writeInt(command.size());
+        out.writeBytes(command);
+    }
+
+    static void writeHeartbeat(DataOutputStream out, long primaryLsn, long primaryMillis) throws IOException {
+        out.writeByte(HEARTBEAT);
+        out.writeLong(primaryLsn);
+        out.writeLong(primaryMillis);
+    }
+}
@@ -0,0 +1,143 @@
+package com.cabify.carpooling.replication;
+
+import com.cabify.carpooling.persistence.BinaryWriter;
+import com.cabify.carpooling.persistence.StateSnapshot;
+import com.cabify.carpooling.replication.ReplicationHub.Subscription;
+import com.cabify.carpooling.service.CarPoolingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Primary side of replication: accepts replicas on a TCP port and streams to each one a
+ * snapshot followed by every later command, with one sender thread per replica.
+ */
+public class ReplicationServer {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicationServer.class);
+
+    private final CarPoolingService carPoolingService;
+    private final ReplicationHub hub;
+    private final int port;
+
+    private final Set<Socket> replicas = ConcurrentHashMap.newKeySet();
+    private ServerSocket serverSocket;
+    private Thread acceptor;
+
+    public ReplicationServer(CarPoolingService carPoolingService, ReplicationHub hub, int port) {
+        this.carPoolingService = carPoolingService;
+        this.hub = hub;
+        this.port = port;
+    }
+
+    public synchronized void start() throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port));
+
+        acceptor = new Thread(this::acceptReplicas, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        log.info("Replication primary listening on port {}", localPort());
+    }
+
+    /**
+     * Get the port replicas connect to, useful when started on port 0.
+     */
+    public int localPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public synchronized void stop() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            log.warn("Failed to close the replication port", e);
+        }
+        for (Socket replica : replicas) {
+            closeQuietly(replica);
+        }
+    }
+
+    private void acceptReplicas() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                replicas.add(socket);
+
+                Thread sender = new Thread(() -> serve(socket), "replication-sender-" + socket.getPort());
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    log.warn("Failed to accept a replica", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        Subscription[] subscription = new Subscription[1];
+        String replica = socket.getRemoteSocketAddress().toString();
+
+        try {
+            socket.setTcpNoDelay(true);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+
+            StateSnapshot snapshot = carPoolingService.snapshot(() -> subscription[0] = hub.subscribe());
+            BinaryWriter state = new BinaryWriter(1024 * 1024);
+            snapshot.writeTo(state);
+            ReplicationProtocol.writeSnapshot(out, state);
+            out.flush();
+            log.info("Replica {} attached at LSN {} ({} bytes of state)", replica, snapshot.lsn(), state.size());
+
+            BinaryWriter spare = new BinaryWriter(64 * 1024);
+            long lastHeartbeat = 0;
+
+            while (true) {
+                BinaryWriter batch = subscription[0].take(spare, ReplicationProtocol.HEARTBEAT_INTERVAL_MILLIS);
+                if (batch == null) {
+                    break;
+                }
+
+                out.write(batch.array(), 0, batch.size());
+                batch.reset();
+                spare = batch;
+
+                long now = System.currentTimeMillis();
+                if (now - lastHeartbeat >= ReplicationProtocol.HEARTBEAT_INTERVAL_MILLIS) {
+                    ReplicationProtocol.writeHeartbeat(out, carPoolingService.lastLsn(), now);
+                    lastHeartbeat = now;
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            log.info("Replica {} disconnected: {}", replica, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (subscription[0] != null) {
+                hub.unsubscribe(subscription[0]);
+            }
+            replicas.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already gone
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.cabify.carpooling.repository;
+
+import com.cabify.carpooling.collection.IntIntHashMap.IntIntConsumer;
+
+/**
+ * A fleet being built off to the side, invisible until it is installed with
+ * {@link CarRepository#install(CarGeneration)}. Used by a single thread, and installed once.
+ */
+public interface CarGeneration {
+
+    /**
+     * Add a car with all its seats available. A repeated ID replaces the earlier car.
+     */
+    void add(int carId, int seats);
+
+    /**
+     * Get the number of distinct cars added so far.
+     */
+    int size();
+
+    /**
+     * Add a car in any state, e.g. read back from a snapshot. Cars in service join the tail of
+     * their seat bucket, so restoring them in the order they were visited keeps fairness.
+     */
+    void restore(int carId, int seats, int availableSeats, boolean retired);
+
+    /**
+     * Visit every car as (car ID, seats), in allocation order: adding the cars to an empty
+     * fleet in this order rebuilds the same fleet.
+     */
+    void forEach(IntIntConsumer consumer);
+}
@@ -18,6 +18,50 @@ public interface CarRepository {
      */
     void replaceAll(List<Car> cars);
 
+    /**
+     * Start a new, empty fleet that can be filled without touching the current one.
+     */
+    CarGeneration newGeneration();
+
+    /**
+     * Replace the entire fleet with a generation built by {@link #newGeneration()}.
+     */
+    void install(CarGeneration generation);
+
+    /**
+     * Visit every car, cars in service in allocation order first, then retired cars still
+     * carrying groups. Restoring them in this order with {@link CarGeneration#restore}
+     * rebuilds the same fleet. Call it with writers excluded.
+     */
+    void forEachCar(CarVisitor visitor);
+
+    /**
+     * Add a car, or resize an existing one keeping its occupied seats.
+     * A retired car that is resized is put back in service.
+     */
+    void put(Car car);
+
+    /**
+     * Check if a car exists (in service or retired with groups still on board).
+     */
+    boolean contains(int carId);
+
+    /**
+     * Retire a car: it takes no new groups and is removed once its last group leaves.
+     */
+    void retire(int carId);
+
+    /**
+     * Check if a car is retired.
+     */
+    boolean isRetired(int carId);
+
+    /**
+     * Count the cars in service with exactly the given number of available seats.
+     * Read without locking, for metrics; the value may lag behind a concurrent update.
+     */
+    int countCars(int availableSeats);
+
     /**
      * Flush all car data.
      */
@@ -35,11 +79,20 @@ public interface CarRepository {
 
     /**
      * Release seats and get the new total available seats atomically.
+     * A retired car is removed when its last seat is released.
      */
     Integer releaseSeats(int carId, int seats);
 
     /**
-     * Try to reserve seats from a specific car atomically.
+     * Try to reserve seats from a specific car atomically. Retired cars take no reservations.
      */
     boolean tryReserveSeats(int carId, int seats);
+
+    /**
+     * Callback for {@link #forEachCar(CarVisitor)}.
+     */
+    @FunctionalInterface
+    interface CarVisitor {
+        void accept(int carId, int seats, int availableSeats, boolean retired);
+    }
 }
@@ -1,5 +1,7 @@
 package com.cabify.carpooling.repository;
 
+import com.cabify.carpooling.collection.IntIntHashMap.IntIntConsumer;
+
 import java.util.LinkedHashMap;
 
 /**
@@ -27,6 +29,34 @@ public interface GroupRepository {
      */
     LinkedHashMap<Integer, Integer> getWaitingQueue();
 
+    /**
+     * Visit every group as (groupId, people), in no particular order.
+     */
+    void forEachGroup(IntIntConsumer consumer);
+
+    /**
+     * Visit the waiting groups of one size with their arrival sequence, oldest first.
+     */
+    void forEachWaiting(int people, WaitingVisitor visitor);
+
+    /**
+     * Append a group to the tail of its waiting queue with a given arrival sequence, e.g. read
+     * back from a snapshot. Restoring every queue in visiting order preserves fairness exactly.
+     */
+    void restoreWaiting(int groupId, int people, long arrivalSequence);
+
+    /**
+     * Get the oldest waiting group that fits in the given number of seats, or
+     * null if no waiting group fits.
+     */
+    Integer findOldestWaitingGroup(int seats);
+
+    /**
+     * Count the groups of the given size in the waiting queue.
+     * Read without locking, for metrics; the value may lag behind a concurrent update.
+     */
+    int countWaiting(int people);
+
     /**
      * Check if there are groups waiting for allocation with the given number of
      * seats or less.
@@ -52,4 +82,12 @@ public interface GroupRepository {
      * Flush all group data.
      */
     void flush();
+
+    /**
+     * Callback for {@link #forEachWaiting(int, WaitingVisitor)}.
+     */
+    @FunctionalInterface
+    interface WaitingVisitor {
+        void accept(int groupId, long arrivalSequence);
+    }
 }
@@ -1,5 +1,7 @@
 package com.cabify.carpooling.repository;
 
+import com.cabify.carpooling.collection.IntIntHashMap.IntIntConsumer;
+
 /**
  * Repository interface for managing journey assignments (group -> car mapping).
  */
@@ -20,6 +22,17 @@ public interface JourneyRepository {
      */
     void remove(int groupId);
 
+    /**
+     * Count the active journeys.
+     * Read without locking, for metrics; the value may lag behind a concurrent update.
+     */
+    int count();
+
+    /**
+     * Visit every journey as (groupId, carId), in no particular order.
+     */
+    void forEach(IntIntConsumer consumer);
+
     /**
      * Flush all journey data.
      */
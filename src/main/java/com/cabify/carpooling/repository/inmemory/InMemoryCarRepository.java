@@ -1,169 +1,499 @@
 package com.cabify.carpooling.repository.inmemory;
 
+import com.cabify.carpooling.collection.IntIntHashMap;
+import com.cabify.carpooling.collection.IntIntHashMap.IntIntConsumer;
 import com.cabify.carpooling.model.Car;
+import com.cabify.carpooling.repository.CarGeneration;
 import com.cabify.carpooling.repository.CarRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
-import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * In-memory implementation of CarRepository.
+ * Cars are stored as a struct of parallel primitive arrays indexed by slot, so the
+ * fleet costs a few bytes per car and no object per car.
+ * <p>
+ * Mutations hold the monitor. Lookups by car ID do not: a striped dropoff may remove a retired
+ * car, shifting the ID index, while other stripes and readers look cars up. Lookups therefore run
+ * optimistically and are validated against {@link #mapping}, which every change of a car's slot
+ * holds, falling back to its read lock.
  */
 @Repository
+@ConditionalOnProperty(name = "carpooling.cars.store", havingValue = "arrays", matchIfMissing = true)
 public class InMemoryCarRepository implements CarRepository {
 
     private static final int MAX_SEATS = 6;
+    private static final int NIL = -1;
+    private static final int INITIAL_CAPACITY = 16;
 
-    // Cars indexed by their ID - thread-safe
-    private final Map<Integer, Car> cars = new ConcurrentHashMap<>();
+    // Car ID -> slot in the arrays below
+    private IntIntHashMap slots = new IntIntHashMap(0, NIL);
+    // Written around every change of the ID -> slot mapping, validated by lookups
+    private final StampedLock mapping = new StampedLock();
+
+    private int[] ids;
+    private byte[] seats;
+    private byte[] availableSeats;
+    private boolean[] retired;
 
     // Buckets indexed by number of available seats (0-6)
-    // Each bucket contains a LinkedHashSet of car IDs with that many available
-    // seats
-    // LinkedHashSet maintains insertion order (FIFO) for fair allocation
-    // Synchronized to ensure thread safety
-    private final List<Set<Integer>> seatBuckets = new ArrayList<>();
+    // Each bucket is an intrusive doubly-linked list threaded through next/prev,
+    // appended at the tail and read from the head (FIFO - fair allocation)
+    // Retired cars are in no bucket
+    private int[] next;
+    private int[] prev;
+    private final int[] bucketHead = new int[MAX_SEATS + 1];
+    private final int[] bucketTail = new int[MAX_SEATS + 1];
+    private final int[] bucketSizes = new int[MAX_SEATS + 1];
+
+    // Slots in use so far, and a free list of removed slots threaded through next
+    private int carCount;
+    private int freeSlotHead = NIL;
 
     public InMemoryCarRepository() {
-        for (int i = 0; i <= MAX_SEATS; i++) {
-            seatBuckets.add(Collections.synchronizedSet(new LinkedHashSet<>()));
-        }
+        allocate(INITIAL_CAPACITY);
     }
 
     @Override
     public Car get(int carId) {
-        Car car = cars.get(carId);
-        if (car == null) {
+        long stamp = mapping.tryOptimisticRead();
+        if (stamp != 0) {
+            Car car = carAt(slots.get(carId));
+            if (mapping.validate(stamp)) {
+                return car;
+            }
+        }
+
+        stamp = mapping.readLock();
+        try {
+            return carAt(slots.get(carId));
+        } finally {
+            mapping.unlockRead(stamp);
+        }
+    }
+
+    private Car carAt(int slot) {
+        int[] ids = this.ids;
+        byte[] seats = this.seats;
+
+        if (slot == NIL || slot >= ids.length || slot >= seats.length) {
             return null;
         }
 
-        return new Car(car.getId(), car.getSeats());
+        return new Car(ids[slot], seats[slot]);
     }
 
     @Override
     public synchronized void replaceAll(List<Car> newCars) {
-        cars.clear();
-        clearBuckets();
+        reset(newCars.size());
 
         for (Car car : newCars) {
-            Car newCar = new Car(car.getId(), car.getSeats());
-            cars.put(newCar.getId(), newCar);
+            put(car.getId(), car.getSeats());
+        }
+    }
+
+    @Override
+    public CarGeneration newGeneration() {
+        return new Generation();
+    }
+
+    @Override
+    public synchronized void install(CarGeneration generation) {
+        InMemoryCarRepository fleet = ((Generation) generation).fleet;
+
+        long stamp = mapping.writeLock();
+        try {
+            adopt(fleet);
+        } finally {
+            mapping.unlockWrite(stamp);
+        }
+    }
+
+    private void adopt(InMemoryCarRepository fleet) {
+        // Readers bound-check every array, so swapping them one by one is safe
+        slots = fleet.slots;
+        ids = fleet.ids;
+        seats = fleet.seats;
+        availableSeats = fleet.availableSeats;
+        retired = fleet.retired;
+        next = fleet.next;
+        prev = fleet.prev;
+        System.arraycopy(fleet.bucketHead, 0, bucketHead, 0, bucketHead.length);
+        System.arraycopy(fleet.bucketTail, 0, bucketTail, 0, bucketTail.length);
+        System.arraycopy(fleet.bucketSizes, 0, bucketSizes, 0, bucketSizes.length);
+        carCount = fleet.carCount;
+        freeSlotHead = fleet.freeSlotHead;
+    }
 
-            int availableSeats = newCar.getAvailableSeats();
+    @Override
+    public synchronized void forEachCar(CarVisitor visitor) {
+        for (int bucket = 0; bucket <= MAX_SEATS; bucket++) {
+            for (int slot = bucketHead[bucket]; slot != NIL; slot = next[slot]) {
+                visitor.accept(ids[slot], seats[slot], availableSeats[slot], false);
+            }
+        }
 
-            if (availableSeats >= 0 && availableSeats <= MAX_SEATS) {
-                seatBuckets.get(availableSeats).add(newCar.getId());
+        // Retired cars are in no bucket; slots on the free list are never marked retired
+        for (int slot = 0; slot < carCount; slot++) {
+            if (retired[slot]) {
+                visitor.accept(ids[slot], seats[slot], availableSeats[slot], true);
             }
         }
     }
 
     @Override
-    public synchronized void flush() {
-        cars.clear();
-        clearBuckets();
+    public synchronized void put(Car car) {
+        put(car.getId(), car.getSeats());
     }
 
-    /**
-     * Clear all seat buckets.
-     */
-    private void clearBuckets() {
-        for (Set<Integer> bucket : seatBuckets) {
-            bucket.clear();
+    @Override
+    public boolean contains(int carId) {
+        long stamp = mapping.tryOptimisticRead();
+        if (stamp != 0) {
+            boolean found = slots.get(carId) != NIL;
+            if (mapping.validate(stamp)) {
+                return found;
+            }
+        }
+
+        stamp = mapping.readLock();
+        try {
+            return slots.get(carId) != NIL;
+        } finally {
+            mapping.unlockRead(stamp);
         }
     }
 
+    @Override
+    public synchronized void retire(int carId) {
+        int slot = slots.get(carId);
+        if (slot == NIL || retired[slot]) {
+            return;
+        }
+
+        unlink(slot, availableSeats[slot]);
+        retired[slot] = true;
+
+        if (availableSeats[slot] == seats[slot]) {
+            remove(slot);
+        }
+    }
+
+    @Override
+    public boolean isRetired(int carId) {
+        long stamp = mapping.tryOptimisticRead();
+        if (stamp != 0) {
+            boolean retired = isRetiredAt(slots.get(carId));
+            if (mapping.validate(stamp)) {
+                return retired;
+            }
+        }
+
+        stamp = mapping.readLock();
+        try {
+            return isRetiredAt(slots.get(carId));
+        } finally {
+            mapping.unlockRead(stamp);
+        }
+    }
+
+    private boolean isRetiredAt(int slot) {
+        boolean[] retired = this.retired;
+
+        return slot != NIL && slot < retired.length && retired[slot];
+    }
+
+    @Override
+    public int countCars(int availableSeats) {
+        return availableSeats >= 0 && availableSeats <= MAX_SEATS ? bucketSizes[availableSeats] : 0;
+    }
+
+    @Override
+    public synchronized void flush() {
+        reset(0);
+    }
+
     /**
      * Adjust the available seats for a car and update its bucket position.
      */
-    private int adjustAvailableSeats(int carId, int deltaSeats) {
-        Car car = cars.get(carId);
-        if (car == null) {
-            return 0;
+    private int adjustAvailableSeats(int slot, int deltaSeats) {
+        int currentSeats = availableSeats[slot];
+        int newSeats = Math.max(0, Math.min(seats[slot], currentSeats + deltaSeats));
+
+        if (retired[slot]) {
+            availableSeats[slot] = (byte) newSeats;
+            if (newSeats == seats[slot]) {
+                remove(slot);
+            }
+            return newSeats;
         }
 
-        int currentSeats = car.getAvailableSeats();
-        int newSeats = Math.max(0, Math.min(car.getSeats(), currentSeats + deltaSeats));
-
-
-        moveBetweenBuckets(carId, currentSeats, newSeats);
-        car.setAvailableSeats(newSeats);
+        moveBetweenBuckets(slot, currentSeats, newSeats);
+        availableSeats[slot] = (byte) newSeats;
 
         return newSeats;
     }
 
     @Override
     public synchronized Integer findAndReserveCar(int seats) {
-        Integer carId = findCarInBuckets(seats);
+        int slot = findCarInBuckets(seats);
 
-        if (carId != null) {
-            adjustAvailableSeats(carId, -seats);
+        if (slot == NIL) {
+            return null;
         }
 
-        return carId;
+        adjustAvailableSeats(slot, -seats);
+
+        return ids[slot];
     }
 
     @Override
     public Integer getAvailableSeats(int carId) {
-        Car car = cars.get(carId);
+        long stamp = mapping.tryOptimisticRead();
+        if (stamp != 0) {
+            int available = availableSeatsAt(slots.get(carId));
+            if (mapping.validate(stamp)) {
+                return available;
+            }
+        }
+
+        stamp = mapping.readLock();
+        try {
+            return availableSeatsAt(slots.get(carId));
+        } finally {
+            mapping.unlockRead(stamp);
+        }
+    }
 
-        return car != null ? car.getAvailableSeats() : 0;
+    private int availableSeatsAt(int slot) {
+        byte[] availableSeats = this.availableSeats;
+
+        return slot != NIL && slot < availableSeats.length ? availableSeats[slot] : 0;
     }
 
     @Override
     public synchronized Integer releaseSeats(int carId, int seats) {
-        return adjustAvailableSeats(carId, seats);
+        int slot = slots.get(carId);
+
+        return slot != NIL ? adjustAvailableSeats(slot, seats) : 0;
     }
 
     @Override
     public synchronized boolean tryReserveSeats(int carId, int seats) {
-        Car car = cars.get(carId);
-        if (car != null && car.getAvailableSeats() >= seats) {
-            adjustAvailableSeats(carId, -seats);
+        int slot = slots.get(carId);
+        if (slot != NIL && !retired[slot] && availableSeats[slot] >= seats) {
+            adjustAvailableSeats(slot, -seats);
             return true;
         }
 
         return false;
     }
 
+    /**
+     * Add a car, or resize an existing one keeping its occupied seats, and put it in service.
+     */
+    private void put(int carId, int carSeats) {
+        int slot = slots.get(carId);
+        int occupiedSeats = 0;
+
+        if (slot != NIL) {
+            occupiedSeats = seats[slot] - availableSeats[slot];
+            if (retired[slot]) {
+                retired[slot] = false;
+            } else {
+                unlink(slot, availableSeats[slot]);
+            }
+        } else {
+            long stamp = mapping.writeLock();
+            try {
+                slot = allocateSlot();
+                ids[slot] = carId;
+                slots.put(carId, slot);
+            } finally {
+                mapping.unlockWrite(stamp);
+            }
+        }
+
+        int newAvailableSeats = Math.max(0, carSeats - occupiedSeats);
+        seats[slot] = (byte) carSeats;
+        availableSeats[slot] = (byte) newAvailableSeats;
+        append(slot, newAvailableSeats);
+    }
+
+    private int allocateSlot() {
+        if (freeSlotHead != NIL) {
+            int slot = freeSlotHead;
+            freeSlotHead = next[slot];
+            next[slot] = NIL;
+            return slot;
+        }
+
+        if (carCount == ids.length) {
+            grow(carCount + (carCount >> 1) + 1);
+        }
+
+        return carCount++;
+    }
+
+    /**
+     * Remove a car that is in no bucket and push its slot onto the free list.
+     */
+    private void remove(int slot) {
+        long stamp = mapping.writeLock();
+        try {
+            slots.remove(ids[slot]);
+            retired[slot] = false;
+            seats[slot] = 0;
+            availableSeats[slot] = 0;
+        } finally {
+            mapping.unlockWrite(stamp);
+        }
+
+        prev[slot] = NIL;
+        next[slot] = freeSlotHead;
+        freeSlotHead = slot;
+    }
+
     /**
      * Find a car in buckets with enough available seats.
      * Searches from the exact seat count upwards to find the best fit.
      */
-    private Integer findCarInBuckets(int seats) {
-        for (int i = seats; i <= MAX_SEATS; i++) {
-            Set<Integer> bucket = seatBuckets.get(i);
-
-            synchronized (bucket) {
-                if (!bucket.isEmpty()) {
-                    // Return the first car (FIFO - fair allocation)
-                    return bucket.iterator().next();
-                }
+    private int findCarInBuckets(int seats) {
+        for (int i = Math.max(seats, 0); i <= MAX_SEATS; i++) {
+            if (bucketHead[i] != NIL) {
+                // Return the first car (FIFO - fair allocation)
+                return bucketHead[i];
             }
         }
 
-        return null;
+        return NIL;
     }
 
     /**
-     * Move a car from one bucket to another when its available seats change.
+     * Move a car from one bucket to the tail of another when its available seats change.
      */
-    private void moveBetweenBuckets(int carId, int fromSeats, int toSeats) {
-        // Remove from old bucket
-        if (fromSeats >= 0 && fromSeats <= MAX_SEATS) {
-            Set<Integer> fromBucket = seatBuckets.get(fromSeats);
+    private void moveBetweenBuckets(int slot, int fromSeats, int toSeats) {
+        unlink(slot, fromSeats);
+        append(slot, toSeats);
+    }
 
-            synchronized (fromBucket) {
-                fromBucket.remove(carId);
-            }
+    private void append(int slot, int bucket) {
+        int tail = bucketTail[bucket];
+
+        prev[slot] = tail;
+        next[slot] = NIL;
+
+        if (tail == NIL) {
+            bucketHead[bucket] = slot;
+        } else {
+            next[tail] = slot;
+        }
+        bucketTail[bucket] = slot;
+        bucketSizes[bucket]++;
+    }
+
+    private void unlink(int slot, int bucket) {
+        int before = prev[slot];
+        int after = next[slot];
+
+        if (before == NIL) {
+            bucketHead[bucket] = after;
+        } else {
+            next[before] = after;
+        }
+
+        if (after == NIL) {
+            bucketTail[bucket] = before;
+        } else {
+            prev[after] = before;
+        }
+
+        prev[slot] = NIL;
+        next[slot] = NIL;
+        bucketSizes[bucket]--;
+    }
+
+    /**
+     * Drop every car and size the arrays for the expected fleet.
+     */
+    private void reset(int expectedCars) {
+        long stamp = mapping.writeLock();
+        try {
+            slots.clear(expectedCars);
+            allocate(Math.max(expectedCars, INITIAL_CAPACITY));
+        } finally {
+            mapping.unlockWrite(stamp);
+        }
+
+        Arrays.fill(bucketHead, NIL);
+        Arrays.fill(bucketTail, NIL);
+        carCount = 0;
+        freeSlotHead = NIL;
+    }
+
+    private void allocate(int capacity) {
+        ids = new int[capacity];
+        seats = new byte[capacity];
+        availableSeats = new byte[capacity];
+        retired = new boolean[capacity];
+        next = new int[capacity];
+        prev = new int[capacity];
+        Arrays.fill(bucketHead, NIL);
+        Arrays.fill(bucketTail, NIL);
+        Arrays.fill(bucketSizes, 0);
+    }
+
+    private void grow(int capacity) {
+        next = Arrays.copyOf(next, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        availableSeats = Arrays.copyOf(availableSeats, capacity);
+        retired = Arrays.copyOf(retired, capacity);
+        seats = Arrays.copyOf(seats, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+    }
+
+    /**
+     * A new fleet is simply a private repository whose arrays are adopted on install.
+     */
+    private static final class Generation implements CarGeneration {
+
+        private final InMemoryCarRepository fleet = new InMemoryCarRepository();
+
+        @Override
+        public void add(int carId, int seats) {
+            fleet.put(carId, seats);
         }
 
-        // Add to new bucket
-        if (toSeats >= 0 && toSeats <= MAX_SEATS) {
-            Set<Integer> toBucket = seatBuckets.get(toSeats);
+        @Override
+        public int size() {
+            return fleet.slots.size();
+        }
 
-            synchronized (toBucket) {
-                toBucket.add(carId);
+        @Override
+        public void restore(int carId, int seats, int availableSeats, boolean retired) {
+            int slot = fleet.allocateSlot();
+            fleet.ids[slot] = carId;
+            fleet.seats[slot] = (byte) seats;
+            fleet.availableSeats[slot] = (byte) availableSeats;
+            fleet.retired[slot] = retired;
+            fleet.slots.put(carId, slot);
+
+            if (!retired) {
+                fleet.append(slot, availableSeats);
+            }
+        }
+
+        @Override
+        public void forEach(IntIntConsumer consumer) {
+            // Every car is still fully free, so each bucket holds cars of one size in FIFO order
+            for (int bucket = 0; bucket <= MAX_SEATS; bucket++) {
+                for (int slot = fleet.bucketHead[bucket]; slot != NIL; slot = fleet.next[slot]) {
+                    consumer.accept(fleet.ids[slot], fleet.seats[slot]);
+                }
             }
         }
     }
@@ -1,11 +1,15 @@
 package com.cabify.carpooling.repository.inmemory;
 
+import com.cabify.carpooling.collection.IntIntHashMap;
+import com.cabify.carpooling.collection.IntIntHashMap.IntIntConsumer;
 import com.cabify.carpooling.repository.GroupRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * In-memory implementation of GroupRepository.
@@ -13,41 +17,130 @@ import java.util.concurrent.ConcurrentHashMap;
 @Repository
 public class InMemoryGroupRepository implements GroupRepository {
 
-    private final Map<Integer, Integer> groups = new ConcurrentHashMap<>();
-    private final Map<Integer, Integer> peopleCounter = new ConcurrentHashMap<>();
-    private final LinkedHashMap<Integer, Integer> waitingQueue = new LinkedHashMap<>();
+    private static final int MAX_PEOPLE = 6;
+    private static final int NO_GROUP = 0;
+
+    // Group ID -> people; 0 means the group is unknown (group sizes are 1-6)
+    private final IntIntHashMap groups = new IntIntHashMap(0, NO_GROUP);
+
+    // One FIFO queue per group size (index = people, 1-6)
+    // Each queue maps groupId -> global arrival sequence, so the oldest group
+    // that fits in N seats is the lowest sequence among at most six queue heads
+    private final List<LinkedHashMap<Integer, Long>> waitingQueues = new ArrayList<>();
+    private long arrivalSequence;
+
+    public InMemoryGroupRepository() {
+        for (int i = 0; i <= MAX_PEOPLE; i++) {
+            waitingQueues.add(new LinkedHashMap<>());
+        }
+    }
 
     @Override
     public Integer getPeople(int groupId) {
-        return groups.get(groupId);
+        int people = groups.get(groupId);
+
+        return people != NO_GROUP ? people : null;
     }
 
     @Override
-    public void save(int groupId, int people) {
+    public synchronized void save(int groupId, int people) {
         groups.put(groupId, people);
     }
 
     @Override
     public synchronized void remove(int groupId) {
-        Integer people = groups.remove(groupId);
-        waitingQueue.remove(groupId);
+        int people = groups.remove(groupId);
+        removeFromQueue(groupId, people);
+    }
 
-        if (people != null) {
-            decrementPeopleCounter(people);
+    @Override
+    public synchronized LinkedHashMap<Integer, Integer> getWaitingQueue() {
+        LinkedHashMap<Integer, Integer> result = new LinkedHashMap<>();
+        forEachWaiting(result::put);
+
+        return result;
+    }
+
+    @Override
+    public synchronized void forEachGroup(IntIntConsumer consumer) {
+        groups.forEach(consumer);
+    }
+
+    @Override
+    public synchronized void forEachWaiting(int people, WaitingVisitor visitor) {
+        for (Map.Entry<Integer, Long> entry : queueFor(people).entrySet()) {
+            visitor.accept(entry.getKey(), entry.getValue());
         }
     }
 
     @Override
-    public synchronized LinkedHashMap<Integer, Integer> getWaitingQueue() {
-        return new LinkedHashMap<>(waitingQueue);
+    public synchronized void restoreWaiting(int groupId, int people, long arrivalSequence) {
+        queueFor(people).put(groupId, arrivalSequence);
+        this.arrivalSequence = Math.max(this.arrivalSequence, arrivalSequence + 1);
+    }
+
+    private void forEachWaiting(IntIntConsumer consumer) {
+        // Merge the per-size queues back into a single arrival-ordered view
+        List<Iterator<Map.Entry<Integer, Long>>> iterators = new ArrayList<>();
+        List<Map.Entry<Integer, Long>> heads = new ArrayList<>();
+
+        for (int people = 0; people <= MAX_PEOPLE; people++) {
+            Iterator<Map.Entry<Integer, Long>> iterator = waitingQueues.get(people).entrySet().iterator();
+            iterators.add(iterator);
+            heads.add(iterator.hasNext() ? iterator.next() : null);
+        }
+
+        while (true) {
+            int oldest = -1;
+
+            for (int people = 1; people <= MAX_PEOPLE; people++) {
+                Map.Entry<Integer, Long> head = heads.get(people);
+                if (head != null && (oldest < 0 || head.getValue() < heads.get(oldest).getValue())) {
+                    oldest = people;
+                }
+            }
+
+            if (oldest < 0) {
+                return;
+            }
+
+            consumer.accept(heads.get(oldest).getKey(), oldest);
+
+            Iterator<Map.Entry<Integer, Long>> iterator = iterators.get(oldest);
+            heads.set(oldest, iterator.hasNext() ? iterator.next() : null);
+        }
     }
 
     @Override
-    public boolean areThereGroupsForAllocation(int seats) {
-        for (int people = seats; people > 0; people--) {
-            Integer count = peopleCounter.get(people);
+    public synchronized Integer findOldestWaitingGroup(int seats) {
+        Integer oldestGroupId = null;
+        long oldestSequence = Long.MAX_VALUE;
+
+        for (int people = 1; people <= Math.min(seats, MAX_PEOPLE); people++) {
+            LinkedHashMap<Integer, Long> queue = waitingQueues.get(people);
+            if (queue.isEmpty()) {
+                continue;
+            }
+
+            Map.Entry<Integer, Long> head = queue.entrySet().iterator().next();
+            if (head.getValue() < oldestSequence) {
+                oldestGroupId = head.getKey();
+                oldestSequence = head.getValue();
+            }
+        }
+
+        return oldestGroupId;
+    }
+
+    @Override
+    public int countWaiting(int people) {
+        return people >= 1 && people <= MAX_PEOPLE ? waitingQueues.get(people).size() : 0;
+    }
 
-            if (count != null && count > 0) {
+    @Override
+    public synchronized boolean areThereGroupsForAllocation(int seats) {
+        for (int people = Math.min(seats, MAX_PEOPLE); people > 0; people--) {
+            if (!waitingQueues.get(people).isEmpty()) {
                 return true;
             }
         }
@@ -57,53 +150,63 @@ public class InMemoryGroupRepository implements GroupRepository {
 
     @Override
     public synchronized void replaceQueue(LinkedHashMap<Integer, Integer> queue) {
-        waitingQueue.clear();
-        peopleCounter.clear();
+        clearQueues();
 
         for (Map.Entry<Integer, Integer> entry : queue.entrySet()) {
-            int groupId = entry.getKey();
-            int people = entry.getValue();
-
-            waitingQueue.put(groupId, people);
-
-            peopleCounter.put(people, peopleCounter.getOrDefault(people, 0) + 1);
+            queueFor(entry.getValue()).put(entry.getKey(), arrivalSequence++);
         }
     }
 
     @Override
     public synchronized void enqueue(int groupId, int people) {
-        waitingQueue.put(groupId, people);
-        peopleCounter.put(people, peopleCounter.getOrDefault(people, 0) + 1);
+        queueFor(people).putIfAbsent(groupId, arrivalSequence++);
     }
 
     @Override
     public synchronized void dequeue(int groupId) {
-        Integer people = waitingQueue.remove(groupId);
-
-        if (people != null) {
-            decrementPeopleCounter(people);
-        }
+        removeFromQueue(groupId, groups.get(groupId));
     }
 
     @Override
     public synchronized void flush() {
         groups.clear();
-        waitingQueue.clear();
-        peopleCounter.clear();
+        clearQueues();
     }
 
-    private void decrementPeopleCounter(int people) {
-        Integer count = peopleCounter.get(people);
+    /**
+     * Get the waiting queue for groups of the given size.
+     */
+    private LinkedHashMap<Integer, Long> queueFor(int people) {
+        if (people < 1 || people > MAX_PEOPLE) {
+            throw new IllegalArgumentException(
+                    String.format("Group size must be between 1 and %d, got %d", MAX_PEOPLE, people));
+        }
+
+        return waitingQueues.get(people);
+    }
 
-        if (count == null || count == 0) {
+    /**
+     * Remove a group from its waiting queue, searching every queue if its size is unknown.
+     */
+    private void removeFromQueue(int groupId, int people) {
+        if (people >= 1 && people <= MAX_PEOPLE) {
+            waitingQueues.get(people).remove(groupId);
             return;
         }
 
-        int newCount = Math.max(0, count - 1);
-        if (newCount == 0) {
-            peopleCounter.remove(people);
-        } else {
-            peopleCounter.put(people, newCount);
+        for (LinkedHashMap<Integer, Long> queue : waitingQueues) {
+            queue.remove(groupId);
+        }
+    }
+
+    /**
+     * Clear all waiting queues and restart the arrival sequence.
+     */
+    private void clearQueues() {
+        for (LinkedHashMap<Integer, Long> queue : waitingQueues) {
+            queue.clear();
         }
+
+        arrivalSequence = 0;
     }
 }
@@ -1,36 +1,50 @@
 package com.cabify.carpooling.repository.inmemory;
 
+import com.cabify.carpooling.collection.IntIntHashMap;
+import com.cabify.carpooling.collection.IntIntHashMap.IntIntConsumer;
 import com.cabify.carpooling.repository.JourneyRepository;
 import org.springframework.stereotype.Repository;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
 /**
  * In-memory implementation of JourneyRepository.
  */
 @Repository
 public class InMemoryJourneyRepository implements JourneyRepository {
 
-    private final Map<Integer, Integer> journeys = new ConcurrentHashMap<>();
+    private static final int NO_CAR = Integer.MIN_VALUE;
+
+    // Group ID -> car ID, stored unboxed
+    private final IntIntHashMap journeys = new IntIntHashMap(0, NO_CAR);
 
     @Override
     public Integer getCar(int groupId) {
-        return journeys.get(groupId);
+        int carId = journeys.get(groupId);
+
+        return carId != NO_CAR ? carId : null;
     }
 
     @Override
-    public void save(int groupId, int carId) {
+    public synchronized void save(int groupId, int carId) {
         journeys.put(groupId, carId);
     }
 
     @Override
-    public void remove(int groupId) {
+    public synchronized void remove(int groupId) {
         journeys.remove(groupId);
     }
 
     @Override
-    public void flush() {
+    public int count() {
+        return journeys.size();
+    }
+
+    @Override
+    public synchronized void forEach(IntIntConsumer consumer) {
+        journeys.forEach(consumer);
+    }
+
+    @Override
+    public synchronized void flush() {
         journeys.clear();
     }
 }
@@ -0,0 +1,437 @@
+package com.cabify.carpooling.repository.inmemory;
+
+import com.cabify.carpooling.collection.IntIntHashMap.IntIntConsumer;
+import com.cabify.carpooling.model.Car;
+import com.cabify.carpooling.repository.CarGeneration;
+import com.cabify.carpooling.repository.CarRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free implementation of CarRepository.
+ * Each car keeps its seats, available seats, retired flag and a version in a single
+ * {@code long} updated by CAS, so reserving and releasing seats never blocks and can never
+ * over-commit a car. Seat buckets are concurrent FIFO queues of (car, version) entries: every
+ * change appends an entry to the car's new bucket and leaves the old one behind, stale.
+ * Readers skip and drop stale entries at the head, and a bucket is swept once stale entries
+ * outnumber live ones, so the oldest live entry still gives the same fair order as
+ * {@link InMemoryCarRepository}. Costs an object per car and per entry; fleet replacement
+ * and resizing expect other writers to be excluded, like there.
+ */
+@Repository
+@ConditionalOnProperty(name = "carpooling.cars.store", havingValue = "lock-free")
+public class LockFreeCarRepository implements CarRepository {
+
+    private static final int MAX_SEATS = 6;
+    // Stale entries a bucket may hold beyond its live ones before it is swept
+    private static final int SWEEP_SLACK = 64;
+
+    // State layout: available seats (bits 0-7), seats (8-15), retired (16), version (17-63)
+    private static final int SEATS_SHIFT = 8;
+    private static final long RETIRED = 1L << 16;
+    private static final int VERSION_SHIFT = 17;
+
+    private volatile Fleet fleet = new Fleet();
+
+    @Override
+    public Car get(int carId) {
+        CarState car = fleet.cars.get(carId);
+
+        return car != null ? new Car(carId, seatsOf(car.get())) : null;
+    }
+
+    @Override
+    public void replaceAll(List<Car> cars) {
+        Fleet replacement = new Fleet();
+        for (Car car : cars) {
+            replacement.put(car.getId(), car.getSeats());
+        }
+        fleet = replacement;
+    }
+
+    @Override
+    public CarGeneration newGeneration() {
+        return new Generation();
+    }
+
+    @Override
+    public void install(CarGeneration generation) {
+        fleet = ((Generation) generation).fleet;
+    }
+
+    @Override
+    public void forEachCar(CarVisitor visitor) {
+        Fleet fleet = this.fleet;
+
+        // Cars with free seats in allocation order; the order of full cars does not matter,
+        // since no search ever reads their bucket
+        for (int bucket = 1; bucket <= MAX_SEATS; bucket++) {
+            for (Entry entry : fleet.buckets[bucket]) {
+                if (entry.isCurrent()) {
+                    long state = entry.car.get();
+                    visitor.accept(entry.car.id, seatsOf(state), availableOf(state), false);
+                }
+            }
+        }
+
+        fleet.cars.values().forEach(car -> {
+            long state = car.get();
+            if (availableOf(state) == 0 && !isRetired(state)) {
+                visitor.accept(car.id, seatsOf(state), 0, false);
+            }
+        });
+        fleet.cars.values().forEach(car -> {
+            long state = car.get();
+            if (isRetired(state)) {
+                visitor.accept(car.id, seatsOf(state), availableOf(state), true);
+            }
+        });
+    }
+
+    @Override
+    public void put(Car car) {
+        fleet.put(car.getId(), car.getSeats());
+    }
+
+    @Override
+    public boolean contains(int carId) {
+        return fleet.cars.containsKey(carId);
+    }
+
+    @Override
+    public void retire(int carId) {
+        Fleet fleet = this.fleet;
+        CarState car = fleet.cars.get(carId);
+        if (car == null) {
+            return;
+        }
+
+        long state;
+        long retired;
+        do {
+            state = car.get();
+            if (isRetired(state)) {
+                return;
+            }
+            retired = nextVersion(state) | RETIRED;
+        } while (!car.compareAndSet(state, retired));
+
+        fleet.counts.decrementAndGet(availableOf(state));
+        if (availableOf(retired) == seatsOf(retired)) {
+            fleet.cars.remove(carId, car);
+        }
+    }
+
+    @Override
+    public boolean isRetired(int carId) {
+        CarState car = fleet.cars.get(carId);
+
+        return car != null && isRetired(car.get());
+    }
+
+    @Override
+    public int countCars(int availableSeats) {
+        return availableSeats >= 0 && availableSeats <= MAX_SEATS ? fleet.counts.get(availableSeats) : 0;
+    }
+
+    @Override
+    public void flush() {
+        fleet = new Fleet();
+    }
+
+    @Override
+    public Integer findAndReserveCar(int seats) {
+        Fleet fleet = this.fleet;
+
+        for (int bucket = Math.max(seats, 1); bucket <= MAX_SEATS; bucket++) {
+            ConcurrentLinkedQueue<Entry> queue = fleet.buckets[bucket];
+
+            Entry head;
+            while ((head = queue.peek()) != null) {
+                long state = head.car.get();
+                if (versionOf(state) != head.version) {
+                    // The car moved since this entry was queued: repair the head and go on
+                    fleet.drop(bucket, head);
+                    continue;
+                }
+
+                // The first live entry is the car that has waited longest in this bucket
+                if (fleet.reserve(head.car, state, seats)) {
+                    fleet.drop(bucket, head);
+                    return head.car.id;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public Integer getAvailableSeats(int carId) {
+        CarState car = fleet.cars.get(carId);
+
+        return car != null ? availableOf(car.get()) : 0;
+    }
+
+    @Override
+    public Integer releaseSeats(int carId, int seats) {
+        Fleet fleet = this.fleet;
+        CarState car = fleet.cars.get(carId);
+        if (car == null) {
+            return 0;
+        }
+
+        long state;
+        long released;
+        do {
+            state = car.get();
+            int available = Math.max(0, Math.min(seatsOf(state), availableOf(state) + seats));
+            released = withAvailable(nextVersion(state), available);
+        } while (!car.compareAndSet(state, released));
+
+        if (isRetired(released)) {
+            if (availableOf(released) == seatsOf(released)) {
+                fleet.cars.remove(carId, car);
+            }
+        } else {
+            fleet.moved(car, state, released);
+        }
+
+        return availableOf(released);
+    }
+
+    @Override
+    public boolean tryReserveSeats(int carId, int seats) {
+        Fleet fleet = this.fleet;
+        CarState car = fleet.cars.get(carId);
+        if (car == null) {
+            return false;
+        }
+
+        long state;
+        do {
+            state = car.get();
+            if (isRetired(state) || availableOf(state) < seats) {
+                return false;
+            }
+        } while (!fleet.reserve(car, state, seats));
+
+        return true;
+    }
+
+    private static int availableOf(long state) {
+        return (int) (state & 0xFF);
+    }
+
+    private static int seatsOf(long state) {
+        return (int) (state >>> SEATS_SHIFT & 0xFF);
+    }
+
+    private static boolean isRetired(long state) {
+        return (state & RETIRED) != 0;
+    }
+
+    private static long versionOf(long state) {
+        return state >>> VERSION_SHIFT;
+    }
+
+    private static long nextVersion(long state) {
+        return state + (1L << VERSION_SHIFT);
+    }
+
+    private static long withAvailable(long state, int available) {
+        return state & ~0xFFL | available;
+    }
+
+    private static long newState(long version, int seats, int available) {
+        return version << VERSION_SHIFT | (long) seats << SEATS_SHIFT | available;
+    }
+
+    /**
+     * One car: its ID and its packed state.
+     */
+    private static final class CarState extends AtomicLong {
+
+        private static final long serialVersionUID = 1L;
+
+        final int id;
+
+        CarState(int id, long state) {
+            super(state);
+            this.id = id;
+        }
+    }
+
+    /**
+     * A car as it was queued in a bucket; live while the car keeps that version.
+     */
+    private static final class Entry {
+
+        final CarState car;
+        final long version;
+
+        Entry(CarState car, long version) {
+            this.car = car;
+            this.version = version;
+        }
+
+        boolean isCurrent() {
+            return versionOf(car.get()) == version;
+        }
+    }
+
+    /**
+     * Cars by ID, the seat bucket queues (1-6; full cars are in none) and counters.
+     */
+    private static final class Fleet {
+
+        final ConcurrentHashMap<Integer, CarState> cars = new ConcurrentHashMap<>();
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        final ConcurrentLinkedQueue<Entry>[] buckets = new ConcurrentLinkedQueue[MAX_SEATS + 1];
+        // Cars in service per available seats, and entries (live or stale) per bucket queue
+        final AtomicIntegerArray counts = new AtomicIntegerArray(MAX_SEATS + 1);
+        final AtomicIntegerArray queued = new AtomicIntegerArray(MAX_SEATS + 1);
+
+        Fleet() {
+            for (int bucket = 1; bucket <= MAX_SEATS; bucket++) {
+                buckets[bucket] = new ConcurrentLinkedQueue<>();
+            }
+        }
+
+        /**
+         * Add a car, or resize an existing one keeping its occupied seats, and put it in service.
+         */
+        void put(int carId, int seats) {
+            CarState car = cars.get(carId);
+
+            while (true) {
+                if (car == null) {
+                    CarState added = new CarState(carId, newState(0, seats, seats));
+                    cars.put(carId, added);
+                    counts.incrementAndGet(seats);
+                    enqueue(added, added.get());
+                    return;
+                }
+
+                long state = car.get();
+                if (isRetired(state) && availableOf(state) == seatsOf(state)) {
+                    // Emptied while retired: gone, or about to be removed
+                    car = null;
+                    continue;
+                }
+
+                int occupied = seatsOf(state) - availableOf(state);
+                long resized = newState(versionOf(state) + 1, seats, Math.max(0, seats - occupied));
+                if (car.compareAndSet(state, resized)) {
+                    if (isRetired(state)) {
+                        counts.incrementAndGet(availableOf(resized));
+                        enqueue(car, resized);
+                    } else {
+                        moved(car, state, resized);
+                    }
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Take seats from a car in service if it is still in the given state.
+         */
+        boolean reserve(CarState car, long state, int seats) {
+            if (isRetired(state) || availableOf(state) < seats) {
+                return false;
+            }
+
+            long reserved = withAvailable(nextVersion(state), availableOf(state) - seats);
+            if (!car.compareAndSet(state, reserved)) {
+                return false;
+            }
+
+            moved(car, state, reserved);
+            return true;
+        }
+
+        /**
+         * Account for a car in service that changed from one state to another.
+         */
+        void moved(CarState car, long from, long to) {
+            counts.decrementAndGet(availableOf(from));
+            counts.incrementAndGet(availableOf(to));
+            enqueue(car, to);
+        }
+
+        void enqueue(CarState car, long state) {
+            int bucket = availableOf(state);
+            if (bucket == 0) {
+                return;
+            }
+
+            buckets[bucket].offer(new Entry(car, versionOf(state)));
+            if (queued.incrementAndGet(bucket) > 2 * counts.get(bucket) + SWEEP_SLACK) {
+                sweep(bucket);
+            }
+        }
+
+        void drop(int bucket, Entry entry) {
+            if (buckets[bucket].remove(entry)) {
+                queued.decrementAndGet(bucket);
+            }
+        }
+
+        /**
+         * Drop every stale entry of a bucket; concurrent sweeps only repeat work.
+         */
+        void sweep(int bucket) {
+            ConcurrentLinkedQueue<Entry> queue = buckets[bucket];
+            queue.removeIf(entry -> !entry.isCurrent());
+            queued.set(bucket, queue.size());
+        }
+    }
+
+    /**
+     * A new fleet is simply a private Fleet adopted on install.
+     */
+    private static final class Generation implements CarGeneration {
+
+        private final Fleet fleet = new Fleet();
+
+        @Override
+        public void add(int carId, int seats) {
+            fleet.put(carId, seats);
+        }
+
+        @Override
+        public int size() {
+            return fleet.cars.size();
+        }
+
+        @Override
+        public void restore(int carId, int seats, int availableSeats, boolean retired) {
+            CarState car = new CarState(carId, newState(0, seats, availableSeats) | (retired ? RETIRED : 0));
+            fleet.cars.put(carId, car);
+
+            if (!retired) {
+                fleet.counts.incrementAndGet(availableSeats);
+                fleet.enqueue(car, car.get());
+            }
+        }
+
+        @Override
+        public void forEach(IntIntConsumer consumer) {
+            // Every car is still fully free, so each bucket holds cars of one size in FIFO order
+            for (int bucket = 1; bucket <= MAX_SEATS; bucket++) {
+                for (Entry entry : fleet.buckets[bucket]) {
+                    if (entry.isCurrent()) {
+                        consumer.accept(entry.car.id, seatsOf(entry.car.get()));
+                    }
+                }
+            }
+        }
+    }
+}
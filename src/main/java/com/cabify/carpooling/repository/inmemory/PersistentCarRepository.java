@@ -0,0 +1,407 @@
+package com.cabify.carpooling.repository.inmemory;
+
+import com.cabify.carpooling.collection.IntIntHashMap.IntIntConsumer;
+import com.cabify.carpooling.collection.PersistentIntLongMap;
+import com.cabify.carpooling.collection.PersistentLongQueue;
+import com.cabify.carpooling.model.Car;
+import com.cabify.carpooling.repository.CarGeneration;
+import com.cabify.carpooling.repository.CarRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * CarRepository over the fleet of a {@link PersistentState}, for the copy-on-write engine.
+ * Each car's seats, available seats, retired flag and a version are packed in one long of a
+ * persistent map. Seat buckets are persistent FIFO queues of (car, version) entries: a change
+ * appends an entry to the car's new bucket and leaves the old one behind, stale. Stale entries
+ * are dropped from the head after every change, so the head of a bucket is always the car that
+ * has waited longest there, and a bucket is swept once stale entries outnumber live ones. Cars
+ * are therefore allocated in the same order as by {@link InMemoryCarRepository}.
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(name = "carpooling.engine.mode", havingValue = "copy-on-write")
+public class PersistentCarRepository implements CarRepository {
+
+    private static final int MAX_SEATS = 6;
+    private static final long NO_CAR = 0;
+    // Stale entries a bucket may hold beyond its live ones before it is swept
+    private static final int SWEEP_SLACK = 64;
+
+    // State layout: available seats (bits 0-7), seats (8-15), retired (16), version (17-63).
+    // Versions are drawn from one counter per fleet, so a car removed and added again never
+    // revives the entries of its earlier life
+    private static final int SEATS_SHIFT = 8;
+    private static final long RETIRED = 1L << 16;
+    private static final int VERSION_SHIFT = 17;
+
+    private final PersistentState state;
+
+    public PersistentCarRepository(PersistentState state) {
+        this.state = state;
+    }
+
+    @Override
+    public Car get(int carId) {
+        long car = state.current().fleet.cars.get(carId, NO_CAR);
+
+        return car != NO_CAR ? new Car(carId, seatsOf(car)) : null;
+    }
+
+    @Override
+    public void replaceAll(List<Car> cars) {
+        Editor fleet = new Editor(Fleet.EMPTY);
+        for (Car car : cars) {
+            fleet.put(car.getId(), car.getSeats());
+        }
+        update(fleet.build());
+    }
+
+    @Override
+    public CarGeneration newGeneration() {
+        return new Generation();
+    }
+
+    @Override
+    public void install(CarGeneration generation) {
+        update(((Generation) generation).fleet.build());
+    }
+
+    @Override
+    public void forEachCar(CarVisitor visitor) {
+        Fleet fleet = state.current().fleet;
+
+        // Cars with free seats in allocation order; the order of full cars does not matter,
+        // since no search ever reads their bucket
+        for (int bucket = 1; bucket <= MAX_SEATS; bucket++) {
+            fleet.buckets[bucket].forEach(entry -> {
+                if (fleet.isLive(entry)) {
+                    long car = fleet.cars.get(carOf(entry), NO_CAR);
+                    visitor.accept(carOf(entry), seatsOf(car), availableOf(car), false);
+                }
+            });
+        }
+
+        fleet.cars.forEach((carId, car) -> {
+            if (availableOf(car) == 0 && !isRetired(car)) {
+                visitor.accept(carId, seatsOf(car), 0, false);
+            }
+        });
+        fleet.cars.forEach((carId, car) -> {
+            if (isRetired(car)) {
+                visitor.accept(carId, seatsOf(car), availableOf(car), true);
+            }
+        });
+    }
+
+    @Override
+    public void put(Car car) {
+        Editor fleet = new Editor(state.working().fleet);
+        fleet.put(car.getId(), car.getSeats());
+        update(fleet.build());
+    }
+
+    @Override
+    public boolean contains(int carId) {
+        return state.current().fleet.cars.containsKey(carId);
+    }
+
+    @Override
+    public void retire(int carId) {
+        Fleet current = state.working().fleet;
+        long car = current.cars.get(carId, NO_CAR);
+        if (car == NO_CAR || isRetired(car)) {
+            return;
+        }
+
+        Editor fleet = new Editor(current);
+        fleet.change(carId, car, car | RETIRED);
+        update(fleet.build());
+    }
+
+    @Override
+    public boolean isRetired(int carId) {
+        return isRetired(state.current().fleet.cars.get(carId, NO_CAR));
+    }
+
+    @Override
+    public int countCars(int availableSeats) {
+        return availableSeats >= 0 && availableSeats <= MAX_SEATS ? state.current().fleet.counts[availableSeats] : 0;
+    }
+
+    @Override
+    public void flush() {
+        update(Fleet.EMPTY);
+    }
+
+    @Override
+    public Integer findAndReserveCar(int seats) {
+        Fleet current = state.working().fleet;
+
+        for (int bucket = Math.max(seats, 1); bucket <= MAX_SEATS; bucket++) {
+            PersistentLongQueue queue = current.buckets[bucket];
+            if (queue.isEmpty()) {
+                continue;
+            }
+
+            // The head is live: the car that has waited longest in this bucket
+            int carId = carOf(queue.peek());
+            long car = current.cars.get(carId, NO_CAR);
+
+            Editor fleet = new Editor(current);
+            fleet.change(carId, car, withAvailable(car, availableOf(car) - seats));
+            update(fleet.build());
+            return carId;
+        }
+
+        return null;
+    }
+
+    @Override
+    public Integer getAvailableSeats(int carId) {
+        return availableOf(state.current().fleet.cars.get(carId, NO_CAR));
+    }
+
+    @Override
+    public Integer releaseSeats(int carId, int seats) {
+        Fleet current = state.working().fleet;
+        long car = current.cars.get(carId, NO_CAR);
+        if (car == NO_CAR) {
+            return 0;
+        }
+
+        int available = Math.max(0, Math.min(seatsOf(car), availableOf(car) + seats));
+        Editor fleet = new Editor(current);
+        fleet.change(carId, car, withAvailable(car, available));
+        update(fleet.build());
+
+        return available;
+    }
+
+    @Override
+    public boolean tryReserveSeats(int carId, int seats) {
+        Fleet current = state.working().fleet;
+        long car = current.cars.get(carId, NO_CAR);
+        if (car == NO_CAR || isRetired(car) || availableOf(car) < seats) {
+            return false;
+        }
+
+        Editor fleet = new Editor(current);
+        fleet.change(carId, car, withAvailable(car, availableOf(car) - seats));
+        update(fleet.build());
+        return true;
+    }
+
+    private void update(Fleet fleet) {
+        state.update(state.working().with(fleet));
+    }
+
+    private static int availableOf(long car) {
+        return (int) (car & 0xFF);
+    }
+
+    private static int seatsOf(long car) {
+        return (int) (car >>> SEATS_SHIFT & 0xFF);
+    }
+
+    private static boolean isRetired(long car) {
+        return (car & RETIRED) != 0;
+    }
+
+    private static long versionOf(long car) {
+        return car >>> VERSION_SHIFT;
+    }
+
+    private static long withAvailable(long car, int available) {
+        return car & ~0xFFL | available;
+    }
+
+    private static long newCar(int seats, int available) {
+        return (long) seats << SEATS_SHIFT | available;
+    }
+
+    // Bucket entry layout: car ID (high 32 bits), low 32 bits of the car's version
+    private static long entry(int carId, long car) {
+        return (long) carId << 32 | versionOf(car) & 0xFFFFFFFFL;
+    }
+
+    private static int carOf(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    /**
+     * Check if a bucket entry is still the car's current one.
+     */
+    private static boolean isLive(PersistentIntLongMap cars, long entry) {
+        long car = cars.get(carOf(entry), NO_CAR);
+        return car != NO_CAR && !isRetired(car) && (versionOf(car) & 0xFFFFFFFFL) == (entry & 0xFFFFFFFFL);
+    }
+
+    /**
+     * One version of the fleet: cars by ID, the seat bucket queues (1-6; full and retired cars
+     * are in none), the number of cars in service per available seats (0-6) and the next version.
+     */
+    static final class Fleet {
+
+        static final Fleet EMPTY = new Fleet(PersistentIntLongMap.empty(), emptyBuckets(), new int[MAX_SEATS + 1], 0);
+
+        final PersistentIntLongMap cars;
+        final PersistentLongQueue[] buckets;
+        final int[] counts;
+        final long nextVersion;
+
+        private Fleet(PersistentIntLongMap cars, PersistentLongQueue[] buckets, int[] counts, long nextVersion) {
+            this.cars = cars;
+            this.buckets = buckets;
+            this.counts = counts;
+            this.nextVersion = nextVersion;
+        }
+
+        boolean isLive(long entry) {
+            return PersistentCarRepository.isLive(cars, entry);
+        }
+
+        private static PersistentLongQueue[] emptyBuckets() {
+            PersistentLongQueue[] buckets = new PersistentLongQueue[MAX_SEATS + 1];
+            for (int bucket = 0; bucket <= MAX_SEATS; bucket++) {
+                buckets[bucket] = PersistentLongQueue.empty();
+            }
+            return buckets;
+        }
+    }
+
+    /**
+     * Builds the next version of a fleet on private copies of its small arrays.
+     */
+    private static final class Editor {
+
+        private PersistentIntLongMap cars;
+        private final PersistentLongQueue[] buckets;
+        private final int[] counts;
+        private long nextVersion;
+
+        Editor(Fleet fleet) {
+            cars = fleet.cars;
+            buckets = fleet.buckets.clone();
+            counts = fleet.counts.clone();
+            nextVersion = fleet.nextVersion;
+        }
+
+        Fleet build() {
+            return new Fleet(cars, buckets, counts, nextVersion);
+        }
+
+        /**
+         * Add a car, or resize an existing one keeping its occupied seats, and put it in service.
+         */
+        void put(int carId, int seats) {
+            long car = cars.get(carId, NO_CAR);
+            if (car == NO_CAR) {
+                change(carId, NO_CAR, newCar(seats, seats));
+                return;
+            }
+
+            int occupied = seatsOf(car) - availableOf(car);
+            change(carId, car, newCar(seats, Math.max(0, seats - occupied)));
+        }
+
+        /**
+         * Move a car from one state to the next, under a new version, in buckets and counts. A
+         * retired car that is empty again is removed.
+         */
+        void change(int carId, long from, long to) {
+            to = to & ((1L << VERSION_SHIFT) - 1) | nextVersion++ << VERSION_SHIFT;
+            if (isRetired(to) && availableOf(to) == seatsOf(to)) {
+                cars = cars.remove(carId);
+            } else {
+                cars = cars.put(carId, to);
+            }
+
+            if (from != NO_CAR && !isRetired(from)) {
+                counts[availableOf(from)]--;
+                dropStaleHead(availableOf(from));
+            }
+            if (!isRetired(to)) {
+                counts[availableOf(to)]++;
+                enqueue(carId, to);
+            }
+        }
+
+        /**
+         * Restore a car as it was, appended to its bucket.
+         */
+        void restore(int carId, int seats, int available, boolean retired) {
+            long car = newCar(seats, available) | (retired ? RETIRED : 0) | nextVersion++ << VERSION_SHIFT;
+            cars = cars.put(carId, car);
+
+            if (!retired) {
+                counts[available]++;
+                enqueue(carId, car);
+            }
+        }
+
+        private void enqueue(int carId, long car) {
+            int bucket = availableOf(car);
+            if (bucket == 0) {
+                return;
+            }
+
+            buckets[bucket] = buckets[bucket].offer(entry(carId, car));
+            if (buckets[bucket].size() > 2 * counts[bucket] + SWEEP_SLACK) {
+                PersistentIntLongMap cars = this.cars;
+                buckets[bucket] = buckets[bucket].filter(entry -> isLive(cars, entry));
+            }
+        }
+
+        private void dropStaleHead(int bucket) {
+            if (bucket == 0) {
+                return;
+            }
+
+            PersistentLongQueue queue = buckets[bucket];
+            while (!queue.isEmpty() && !isLive(cars, queue.peek())) {
+                queue = queue.poll();
+            }
+            buckets[bucket] = queue;
+        }
+    }
+
+    /**
+     * A new fleet is simply a private editor, built on install.
+     */
+    private static final class Generation implements CarGeneration {
+
+        private final Editor fleet = new Editor(Fleet.EMPTY);
+
+        @Override
+        public void add(int carId, int seats) {
+            fleet.put(carId, seats);
+        }
+
+        @Override
+        public int size() {
+            return fleet.cars.size();
+        }
+
+        @Override
+        public void restore(int carId, int seats, int availableSeats, boolean retired) {
+            fleet.restore(carId, seats, availableSeats, retired);
+        }
+
+        @Override
+        public void forEach(IntIntConsumer consumer) {
+            // Every car is still fully free, so each bucket holds cars of one size in FIFO order
+            Fleet built = fleet.build();
+            for (int bucket = 1; bucket <= MAX_SEATS; bucket++) {
+                built.buckets[bucket].forEach(entry -> {
+                    if (built.isLive(entry)) {
+                        consumer.accept(carOf(entry), seatsOf(built.cars.get(carOf(entry), NO_CAR)));
+                    }
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package com.cabify.carpooling.repository.inmemory;
+
+import com.cabify.carpooling.collection.IntIntHashMap.IntIntConsumer;
+import com.cabify.carpooling.collection.PersistentIntLongMap;
+import com.cabify.carpooling.collection.PersistentLongQueue;
+import com.cabify.carpooling.repository.GroupRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * GroupRepository over the groups of a {@link PersistentState}, for the copy-on-write engine.
+ * Each group's people, the queue it waits in and its arrival sequence are packed in one long
+ * of a persistent map. The waiting queues are persistent FIFO queues of (group, sequence)
+ * entries, cleaned like the seat buckets of {@link PersistentCarRepository}: a group leaving
+ * a queue leaves its entry behind, stale, and stale entries are dropped from the head.
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(name = "carpooling.engine.mode", havingValue = "copy-on-write")
+public class PersistentGroupRepository implements GroupRepository {
+
+    private static final int MAX_PEOPLE = 6;
+    private static final long NO_GROUP = 0;
+    // Stale entries a queue may hold beyond its live ones before it is swept
+    private static final int SWEEP_SLACK = 64;
+
+    // Group layout: people (bits 0-7, 0 if not saved), waiting queue (8-15, 0 if not waiting),
+    // arrival sequence (16-63)
+    private static final int QUEUE_SHIFT = 8;
+    private static final int SEQUENCE_SHIFT = 16;
+
+    private final PersistentState state;
+
+    public PersistentGroupRepository(PersistentState state) {
+        this.state = state;
+    }
+
+    @Override
+    public Integer getPeople(int groupId) {
+        int people = peopleOf(state.current().groups.groups.get(groupId, NO_GROUP));
+
+        return people != 0 ? people : null;
+    }
+
+    @Override
+    public void save(int groupId, int people) {
+        Editor groups = new Editor(state.working().groups);
+        long group = groups.groups.get(groupId, NO_GROUP);
+        groups.set(groupId, group & ~0xFFL | people);
+        update(groups.build());
+    }
+
+    @Override
+    public void remove(int groupId) {
+        Groups current = state.working().groups;
+        long group = current.groups.get(groupId, NO_GROUP);
+        if (group == NO_GROUP) {
+            return;
+        }
+
+        Editor groups = new Editor(current);
+        groups.set(groupId, NO_GROUP);
+        groups.left(group);
+        update(groups.build());
+    }
+
+    @Override
+    public LinkedHashMap<Integer, Integer> getWaitingQueue() {
+        Groups groups = state.current().groups;
+
+        // Merge the per-size queues back into a single arrival-ordered view
+        List<long[]> waiting = new ArrayList<>();
+        for (int people = 1; people <= MAX_PEOPLE; people++) {
+            groups.queues[people].forEach(entry -> {
+                if (groups.isLive(entry)) {
+                    long group = groups.groups.get(groupOf(entry), NO_GROUP);
+                    waiting.add(new long[] {sequenceOf(group), groupOf(entry), queueOf(group)});
+                }
+            });
+        }
+        waiting.sort((a, b) -> Long.compare(a[0], b[0]));
+
+        LinkedHashMap<Integer, Integer> result = new LinkedHashMap<>();
+        for (long[] group : waiting) {
+            result.put((int) group[1], (int) group[2]);
+        }
+        return result;
+    }
+
+    @Override
+    public void forEachGroup(IntIntConsumer consumer) {
+        state.current().groups.groups.forEach((groupId, group) -> {
+            if (peopleOf(group) != 0) {
+                consumer.accept(groupId, peopleOf(group));
+            }
+        });
+    }
+
+    @Override
+    public void forEachWaiting(int people, WaitingVisitor visitor) {
+        Groups groups = state.current().groups;
+
+        checkPeople(people);
+        groups.queues[people].forEach(entry -> {
+            if (groups.isLive(entry)) {
+                visitor.accept(groupOf(entry), sequenceOf(groups.groups.get(groupOf(entry), NO_GROUP)));
+            }
+        });
+    }
+
+    @Override
+    public void restoreWaiting(int groupId, int people, long arrivalSequence) {
+        checkPeople(people);
+
+        Editor groups = new Editor(state.working().groups);
+        groups.enqueue(groupId, people, arrivalSequence);
+        groups.nextSequence = Math.max(groups.nextSequence, arrivalSequence + 1);
+        update(groups.build());
+    }
+
+    @Override
+    public Integer findOldestWaitingGroup(int seats) {
+        Groups groups = state.current().groups;
+        Integer oldestGroupId = null;
+        long oldestSequence = Long.MAX_VALUE;
+
+        for (int people = 1; people <= Math.min(seats, MAX_PEOPLE); people++) {
+            PersistentLongQueue queue = groups.queues[people];
+            if (queue.isEmpty()) {
+                continue;
+            }
+
+            // The head is live: the oldest group of this size
+            int groupId = groupOf(queue.peek());
+            long sequence = sequenceOf(groups.groups.get(groupId, NO_GROUP));
+            if (sequence < oldestSequence) {
+                oldestGroupId = groupId;
+                oldestSequence = sequence;
+            }
+        }
+
+        return oldestGroupId;
+    }
+
+    @Override
+    public int countWaiting(int people) {
+        return people >= 1 && people <= MAX_PEOPLE ? state.current().groups.waiting[people] : 0;
+    }
+
+    @Override
+    public boolean areThereGroupsForAllocation(int seats) {
+        Groups groups = state.current().groups;
+
+        for (int people = Math.min(seats, MAX_PEOPLE); people > 0; people--) {
+            if (groups.waiting[people] > 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public void replaceQueue(LinkedHashMap<Integer, Integer> queue) {
+        Editor groups = new Editor(state.working().groups);
+
+        // Take every group out of its queue and restart the arrival sequence
+        groups.groups.forEach((groupId, group) -> {
+            if (queueOf(group) != 0) {
+                groups.set(groupId, group & 0xFF);
+            }
+        });
+        groups.clearQueues();
+
+        for (Map.Entry<Integer, Integer> entry : queue.entrySet()) {
+            checkPeople(entry.getValue());
+            groups.enqueue(entry.getKey(), entry.getValue(), groups.nextSequence++);
+        }
+        update(groups.build());
+    }
+
+    @Override
+    public void enqueue(int groupId, int people) {
+        checkPeople(people);
+
+        Editor groups = new Editor(state.working().groups);
+        long sequence = groups.nextSequence++;
+        if (queueOf(groups.groups.get(groupId, NO_GROUP)) == 0) {
+            groups.enqueue(groupId, people, sequence);
+        }
+        update(groups.build());
+    }
+
+    @Override
+    public void dequeue(int groupId) {
+        Groups current = state.working().groups;
+        long group = current.groups.get(groupId, NO_GROUP);
+        if (queueOf(group) == 0) {
+            return;
+        }
+
+        Editor groups = new Editor(current);
+        groups.set(groupId, group & 0xFF);
+        groups.left(group);
+        update(groups.build());
+    }
+
+    @Override
+    public void flush() {
+        update(Groups.EMPTY);
+    }
+
+    private void update(Groups groups) {
+        state.update(state.working().with(groups));
+    }
+
+    private static void checkPeople(int people) {
+        if (people < 1 || people > MAX_PEOPLE) {
+            throw new IllegalArgumentException(
+                    String.format("Group size must be between 1 and %d, got %d", MAX_PEOPLE, people));
+        }
+    }
+
+    private static int peopleOf(long group) {
+        return (int) (group & 0xFF);
+    }
+
+    private static int queueOf(long group) {
+        return (int) (group >>> QUEUE_SHIFT & 0xFF);
+    }
+
+    private static long sequenceOf(long group) {
+        return group >>> SEQUENCE_SHIFT;
+    }
+
+    // Queue entry layout: group ID (high 32 bits), low 32 bits of its arrival sequence
+    private static long entry(int groupId, long sequence) {
+        return (long) groupId << 32 | sequence & 0xFFFFFFFFL;
+    }
+
+    private static int groupOf(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    /**
+     * Check if a queue entry is still the group's current place in a queue.
+     */
+    private static boolean isLive(PersistentIntLongMap groups, long entry) {
+        long group = groups.get(groupOf(entry), NO_GROUP);
+        return queueOf(group) != 0 && (sequenceOf(group) & 0xFFFFFFFFL) == (entry & 0xFFFFFFFFL);
+    }
+
+    /**
+     * One version of the groups: groups by ID, the waiting queues (1-6), the number of groups
+     * waiting in each and the next arrival sequence.
+     */
+    static final class Groups {
+
+        static final Groups EMPTY = new Groups(PersistentIntLongMap.empty(), emptyQueues(), new int[MAX_PEOPLE + 1], 0);
+
+        final PersistentIntLongMap groups;
+        final PersistentLongQueue[] queues;
+        final int[] waiting;
+        final long nextSequence;
+
+        private Groups(PersistentIntLongMap groups, PersistentLongQueue[] queues, int[] waiting, long nextSequence) {
+            this.groups = groups;
+            this.queues = queues;
+            this.waiting = waiting;
+            this.nextSequence = nextSequence;
+        }
+
+        boolean isLive(long entry) {
+            return PersistentGroupRepository.isLive(groups, entry);
+        }
+
+        private static PersistentLongQueue[] emptyQueues() {
+            PersistentLongQueue[] queues = new PersistentLongQueue[MAX_PEOPLE + 1];
+            for (int people = 0; people <= MAX_PEOPLE; people++) {
+                queues[people] = PersistentLongQueue.empty();
+            }
+            return queues;
+        }
+    }
+
+    /**
+     * Builds the next version of the groups on private copies of their small arrays.
+     */
+    private static final class Editor {
+
+        private PersistentIntLongMap groups;
+        private PersistentLongQueue[] queues;
+        private final int[] waiting;
+        private long nextSequence;
+
+        Editor(Groups current) {
+            groups = current.groups;
+            queues = current.queues.clone();
+            waiting = current.waiting.clone();
+            nextSequence = current.nextSequence;
+        }
+
+        Groups build() {
+            return new Groups(groups, queues, waiting, nextSequence);
+        }
+
+        /**
+         * Set a group's packed state; a group neither saved nor waiting is removed.
+         */
+        void set(int groupId, long group) {
+            groups = group != NO_GROUP ? groups.put(groupId, group) : groups.remove(groupId);
+        }
+
+        void enqueue(int groupId, int people, long sequence) {
+            long group = groups.get(groupId, NO_GROUP);
+            long waitingGroup = group & 0xFF | (long) people << QUEUE_SHIFT | sequence << SEQUENCE_SHIFT;
+            if (group == waitingGroup) {
+                return;
+            }
+
+            set(groupId, waitingGroup);
+            // Already waiting elsewhere in the queues: its old entry is stale now
+            left(group);
+
+            waiting[people]++;
+            queues[people] = queues[people].offer(entry(groupId, sequence));
+            if (queues[people].size() > 2 * waiting[people] + SWEEP_SLACK) {
+                PersistentIntLongMap groups = this.groups;
+                queues[people] = queues[people].filter(entry -> isLive(groups, entry));
+            }
+        }
+
+        /**
+         * Account for a group that has just left its queue, given its state before it left.
+         */
+        void left(long group) {
+            int people = queueOf(group);
+            if (people == 0) {
+                return;
+            }
+
+            waiting[people]--;
+            PersistentLongQueue queue = queues[people];
+            while (!queue.isEmpty() && !isLive(groups, queue.peek())) {
+                queue = queue.poll();
+            }
+            queues[people] = queue;
+        }
+
+        void clearQueues() {
+            queues = Groups.emptyQueues();
+            Arrays.fill(waiting, 0);
+            nextSequence = 0;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.cabify.carpooling.repository.inmemory;
+
+import com.cabify.carpooling.collection.IntIntHashMap.IntIntConsumer;
+import com.cabify.carpooling.collection.PersistentIntLongMap;
+import com.cabify.carpooling.repository.JourneyRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+
+/**
+ * JourneyRepository over the journeys of a {@link PersistentState}, for the copy-on-write engine.
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(name = "carpooling.engine.mode", havingValue = "copy-on-write")
+public class PersistentJourneyRepository implements JourneyRepository {
+
+    private static final long NO_CAR = Long.MIN_VALUE;
+
+    private final PersistentState state;
+
+    public PersistentJourneyRepository(PersistentState state) {
+        this.state = state;
+    }
+
+    @Override
+    public Integer getCar(int groupId) {
+        long carId = state.current().journeys.get(groupId, NO_CAR);
+
+        return carId != NO_CAR ? (int) carId : null;
+    }
+
+    @Override
+    public void save(int groupId, int carId) {
+        update(state.working().journeys.put(groupId, carId));
+    }
+
+    @Override
+    public void remove(int groupId) {
+        update(state.working().journeys.remove(groupId));
+    }
+
+    @Override
+    public int count() {
+        return state.current().journeys.size();
+    }
+
+    @Override
+    public void forEach(IntIntConsumer consumer) {
+        state.current().journeys.forEach((groupId, carId) -> consumer.accept(groupId, (int) carId));
+    }
+
+    @Override
+    public void flush() {
+        update(PersistentIntLongMap.empty());
+    }
+
+    private void update(PersistentIntLongMap journeys) {
+        state.update(state.working().with(journeys));
+    }
+}
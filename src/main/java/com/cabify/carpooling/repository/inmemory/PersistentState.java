@@ -0,0 +1,98 @@
+package com.cabify.carpooling.repository.inmemory;
+
+import com.cabify.carpooling.collection.PersistentIntLongMap;
+import com.cabify.carpooling.engine.PublishedState;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * The whole pooling state as one immutable root of persistent structures: the fleet, the
+ * groups with their waiting queues and the journeys. The persistent repositories replace the
+ * working root on every change; the engine publishes it through a volatile reference. Queries
+ * run by the engine see the version they started on, any other caller the working root.
+ */
+@Component
+@ConditionalOnProperty(name = "carpooling.engine.mode", havingValue = "copy-on-write")
+public class PersistentState implements PublishedState {
+
+    private final ThreadLocal<Root> pinned = new ThreadLocal<>();
+
+    // Replaced by the writer only; never null, and every root is immutable
+    private Root working = new Root(PersistentCarRepository.Fleet.EMPTY, PersistentGroupRepository.Groups.EMPTY,
+            PersistentIntLongMap.empty());
+    private volatile Root latest = working;
+
+    @Override
+    public void publish() {
+        latest = working;
+    }
+
+    @Override
+    public void discard() {
+        working = latest;
+    }
+
+    @Override
+    public Version latest() {
+        return latest;
+    }
+
+    /**
+     * Get the root the calling thread reads: the version its query runs on, if any.
+     */
+    Root current() {
+        Root root = pinned.get();
+        return root != null ? root : working;
+    }
+
+    Root working() {
+        return working;
+    }
+
+    void update(Root root) {
+        working = root;
+    }
+
+    /**
+     * One version of the whole state.
+     */
+    final class Root implements Version {
+
+        final PersistentCarRepository.Fleet fleet;
+        final PersistentGroupRepository.Groups groups;
+        // Group ID -> car ID
+        final PersistentIntLongMap journeys;
+
+        Root(PersistentCarRepository.Fleet fleet, PersistentGroupRepository.Groups groups,
+                PersistentIntLongMap journeys) {
+            this.fleet = fleet;
+            this.groups = groups;
+            this.journeys = journeys;
+        }
+
+        Root with(PersistentCarRepository.Fleet fleet) {
+            return new Root(fleet, groups, journeys);
+        }
+
+        Root with(PersistentGroupRepository.Groups groups) {
+            return new Root(fleet, groups, journeys);
+        }
+
+        Root with(PersistentIntLongMap journeys) {
+            return new Root(fleet, groups, journeys);
+        }
+
+        @Override
+        public <T> T read(Supplier<T> query) {
+            Root outer = pinned.get();
+            pinned.set(this);
+            try {
+                return query.get();
+            } finally {
+                pinned.set(outer);
+            }
+        }
+    }
+}
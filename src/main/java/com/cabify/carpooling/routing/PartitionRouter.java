@@ -0,0 +1,76 @@
+package com.cabify.carpooling.routing;
+
+import com.cabify.carpooling.exception.PartitionUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Forwards requests to the node owning a partition over pooled HTTP/1.1 connections.
+ */
+@Component
+@ConditionalOnProperty(name = "carpooling.router.enabled", havingValue = "true")
+public class PartitionRouter {
+
+    private static final Logger log = LoggerFactory.getLogger(PartitionRouter.class);
+
+    private final PartitionTable table;
+    private final Duration timeout;
+    private final HttpClient client;
+
+    public PartitionRouter(
+            @Value("${carpooling.router.partitions}") String partitions,
+            @Value("${carpooling.router.timeout:5s}") Duration timeout) {
+        this.table = PartitionTable.parse(partitions);
+        this.timeout = timeout;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+
+        log.info("Routing to {} partitions: {}", table.size(), partitions);
+    }
+
+    public PartitionTable table() {
+        return table;
+    }
+
+    /**
+     * Send a request to the node owning a partition; {@code body} may be null for none.
+     */
+    public CompletableFuture<HttpResponse<byte[]>> send(int partition, String method, String path,
+                                                        String contentType, byte[] body) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(table.node(partition) + path))
+                .timeout(timeout)
+                .method(method, body != null
+                        ? HttpRequest.BodyPublishers.ofByteArray(body)
+                        : HttpRequest.BodyPublishers.noBody());
+        if (contentType != null) {
+            request.header("Content-Type", contentType);
+        }
+
+        return client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    /**
+     * Wait for a response from a partition, failing with {@link PartitionUnavailableException}
+     * if its node could not be reached or did not answer in time.
+     */
+    public HttpResponse<byte[]> await(int partition, CompletableFuture<HttpResponse<byte[]>> response) {
+        try {
+            return response.join();
+        } catch (CompletionException e) {
+            throw new PartitionUnavailableException(partition, table.node(partition).toString(), e.getCause());
+        }
+    }
+}
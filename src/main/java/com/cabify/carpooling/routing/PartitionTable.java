@@ -0,0 +1,61 @@
+package com.cabify.carpooling.routing;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The nodes of a partitioned deployment, in partition order. A pool is owned whole by the
+ * partition its ID hashes to, so its cars and groups always meet on one node, and any router
+ * finds the owner without a lookup table. The fleet without a pool belongs to the first node.
+ * Changing the node list moves pools between partitions, so their fleets must be reloaded
+ * with PUT /pools/{poolId}/cars afterwards.
+ */
+public final class PartitionTable {
+
+    private final List<URI> nodes;
+
+    public PartitionTable(List<URI> nodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A partition table needs at least one node");
+        }
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+    }
+
+    /**
+     * Parse a comma-separated list of node base URLs, e.g. {@code http://a:9091,http://b:9091}.
+     */
+    public static PartitionTable parse(String nodes) {
+        List<URI> uris = new ArrayList<>();
+        for (String node : nodes.split(",")) {
+            String trimmed = node.trim();
+            if (!trimmed.isEmpty()) {
+                uris.add(URI.create(trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed));
+            }
+        }
+        return new PartitionTable(uris);
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public URI node(int partition) {
+        return nodes.get(partition);
+    }
+
+    /**
+     * Partition owning a pool, or the first one for the fleet without a pool (null): the high
+     * bits of the Fibonacci hash of the pool ID's hash code, scaled to the number of partitions,
+     * so similar IDs spread evenly.
+     */
+    public int partitionOf(String poolId) {
+        if (poolId == null) {
+            return 0;
+        }
+
+        int h = poolId.hashCode() * 0x9E3779B9;
+        return (int) ((Integer.toUnsignedLong(h) * nodes.size()) >>> 32);
+    }
+}
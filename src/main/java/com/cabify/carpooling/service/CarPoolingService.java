@@ -1,267 +1,227 @@
 package com.cabify.carpooling.service;
 
-import com.cabify.carpooling.exception.ExistingGroupException;
-import com.cabify.carpooling.exception.GroupNotFoundException;
+import com.cabify.carpooling.exception.NotPrimaryException;
+import com.cabify.carpooling.metrics.CarPoolingMetrics;
+import com.cabify.carpooling.metrics.CarPoolingMetrics.Operation;
 import com.cabify.carpooling.model.Car;
-import com.cabify.carpooling.repository.CarRepository;
-import com.cabify.carpooling.repository.GroupRepository;
-import com.cabify.carpooling.repository.JourneyRepository;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.stereotype.Service;
+import com.cabify.carpooling.model.DropoffResult;
+import com.cabify.carpooling.model.JourneyResult;
+import com.cabify.carpooling.persistence.StateSnapshot;
+import com.cabify.carpooling.repository.CarGeneration;
 
-import java.util.LinkedHashMap;
+import java.io.IOException;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Service for managing journey assignments and car allocations.
+ * Operations are executed by the {@link FleetOperations} it is wired with: the {@link LocalFleet}
+ * itself, a {@link ConsensusFleet} in a Raft cluster, or the {@link ShardedFleet} with the
+ * sharded engine. The service rejects mutations on a replica, times every operation and reports
+ * the state gauges of its operations; recovery, snapshots and replication act on the local fleet.
  */
-@Service
 public class CarPoolingService {
 
-    private static final Logger log = LoggerFactory.getLogger(CarPoolingService.class);
+    private final LocalFleet local;
+    private final FleetOperations operations;
+    private final CarPoolingMetrics metrics;
 
-    private final CarRepository carRepository;
-    private final GroupRepository groupRepository;
-    private final JourneyRepository journeyRepository;
+    // Set on a replica: mutations only arrive from the primary
+    private volatile boolean readOnly;
 
-    private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
-    private final Lock readLock = rwLock.readLock();
-    private final Lock writeLock = rwLock.writeLock();
+    /**
+     * Execute every operation on the local fleet.
+     */
+    public CarPoolingService(LocalFleet local, CarPoolingMetrics metrics) {
+        this(local, local, metrics);
+    }
 
-    public CarPoolingService(
-            CarRepository carRepository,
-            GroupRepository groupRepository,
-            JourneyRepository journeyRepository) {
-        this.carRepository = carRepository;
-        this.groupRepository = groupRepository;
-        this.journeyRepository = journeyRepository;
+    public CarPoolingService(LocalFleet local, FleetOperations operations, CarPoolingMetrics metrics) {
+        this.local = local;
+        this.operations = operations;
+        this.metrics = metrics;
+
+        metrics.registerGauges(operations);
     }
 
     /**
-     * Reset the application state and load the incoming list of cars.
+     * Rebuild the state from a snapshot, if any, and the write-ahead log records after it,
+     * then start logging new mutations. Must run before the service takes requests.
      */
-    public synchronized void loadCars(List<Car> cars) {
-        writeLock.lock();
-        try {
-            long startTime = System.currentTimeMillis();
-            int carCount = cars.size();
-
-            carRepository.flush();
-            groupRepository.flush();
-            journeyRepository.flush();
-
-            carRepository.replaceAll(cars);
+    public void recover(StateSnapshot snapshot) throws IOException {
+        local.recover(snapshot);
+    }
 
-            long duration = System.currentTimeMillis() - startTime;
+    /**
+     * Copy the full state as of the last applied command.
+     * Writers pause only while primitive copies are taken; encoding happens on the caller.
+     */
+    public StateSnapshot snapshot() {
+        return local.snapshot();
+    }
 
-            log.info("Cars loaded - application state reset. cars_count={}, duration_ms={}", carCount, duration);
-        } finally {
-            writeLock.unlock();
-        }
+    /**
+     * Copy the full state and run an action in the same writer pause, e.g. to subscribe to
+     * exactly the commands that follow the copy.
+     */
+    public StateSnapshot snapshot(Runnable duringPause) {
+        return local.snapshot(duringPause);
     }
 
     /**
-     * Request a journey for a group, allocating a car or queueing it.
+     * Replace the whole state with one received from the primary, as of its LSN.
+     * The local log restarts with that state as its first record.
      */
-    public synchronized void requestJourney(int groupId, int people) {
-        writeLock.lock();
-        try {
-            long startTime = System.currentTimeMillis();
+    public void installReplica(StateSnapshot snapshot) {
+        local.installReplica(snapshot);
+    }
 
-            // Check if group exists
-            if (groupRepository.getPeople(groupId) != null) {
-                throw new ExistingGroupException();
-            }
+    /**
+     * Apply one command streamed from the primary; LSNs must follow each other without gaps.
+     */
+    public void applyReplicated(long lsn, byte[] record, int length) {
+        local.applyReplicated(lsn, record, length);
+    }
 
-            groupRepository.save(groupId, people);
+    /**
+     * Reject (true) or accept (false) mutations from clients.
+     */
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
 
-            if (journeyRepository.getCar(groupId) != null) {
-                log.warn("Journey request for group already assigned. group_id={}, people={}", groupId, people);
-                return;
-            }
+    public boolean isReadOnly() {
+        return readOnly;
+    }
 
-            // Find car
-            Integer carId = carRepository.findAndReserveCar(people);
+    /**
+     * Get the sequence number of the last applied command, counted even without a log.
+     */
+    public long lastLsn() {
+        return local.lastLsn();
+    }
 
-            if (carId != null) {
-                journeyRepository.save(groupId, carId);
+    /**
+     * Reset the application state and load the incoming list of cars.
+     */
+    public void loadCars(List<Car> cars) {
+        checkWritable();
+        long startNanos = System.nanoTime();
+        try {
+            operations.loadCars(cars);
+        } finally {
+            metrics.record(Operation.LOAD_CARS, startNanos);
+        }
+    }
 
-                long duration = System.currentTimeMillis() - startTime;
-                log.info("Journey assigned successfully. group_id={}, people={}, car_id={}, duration_ms={}",
-                        groupId, people, carId, duration);
-            } else {
-                groupRepository.enqueue(groupId, people);
+    /**
+     * Start a new fleet that can be filled, e.g. while streaming a request, before it is loaded.
+     */
+    public CarGeneration newFleet() {
+        return operations.newFleet();
+    }
 
-                long duration = System.currentTimeMillis() - startTime;
-                log.info("Journey queued - no available car. group_id={}, people={}, duration_ms={}",
-                        groupId, people, duration);
-            }
+    /**
+     * Reset the application state and install a fleet built with {@link #newFleet()}.
+     */
+    public void loadCars(CarGeneration fleet) {
+        checkWritable();
+        long startNanos = System.nanoTime();
+        try {
+            operations.loadCars(fleet);
         } finally {
-            writeLock.unlock();
+            metrics.record(Operation.LOAD_CARS, startNanos);
         }
     }
 
     /**
-     * Process a dropoff for a group.
+     * Add, resize or retire cars without resetting journeys or the waiting queue.
+     * The whole update is checked before any of it is applied; new and enlarged cars are
+     * then filled from the waiting queue, in the order they appear in the update.
      */
-    public synchronized void dropoff(int groupId) {
-        writeLock.lock();
+    public void updateFleet(List<Car> upserts, int[] retiredCarIds) {
+        checkWritable();
+        long startNanos = System.nanoTime();
         try {
-            long startTime = System.currentTimeMillis();
-
-            // Check if group exists
-            Integer people = groupRepository.getPeople(groupId);
-            if (people == null) {
-                throw new GroupNotFoundException();
-            }
-
-            // Check if group has traveled
-            Integer carId = journeyRepository.getCar(groupId);
-
-            if (carId != null) {
-                journeyRepository.remove(groupId);
-
-                updateCarAllocation(carId, people);
-
-                long duration = System.currentTimeMillis() - startTime;
-                log.info("Dropoff processed for traveling group. group_id={}, people={}, car_id={}, duration_ms={}",
-                        groupId, people, carId, duration);
-            } else {
-                long duration = System.currentTimeMillis() - startTime;
-                log.info("Dropoff processed for waiting group. group_id={}, people={}, duration_ms={}",
-                        groupId, people, duration);
-            }
-
-            groupRepository.remove(groupId);
+            operations.updateFleet(upserts, retiredCarIds);
         } finally {
-            writeLock.unlock();
+            metrics.record(Operation.UPDATE_FLEET, startNanos);
         }
     }
 
     /**
-     * Locate the car assigned to a group.
+     * Request a journey for a group, allocating a car or queueing it.
      */
-    public synchronized Car locate(int groupId) {
-        readLock.lock();
+    public void requestJourney(int groupId, int people) {
+        checkWritable();
+        long startNanos = System.nanoTime();
         try {
-            Integer people = groupRepository.getPeople(groupId);
-            if (people == null) {
-                throw new GroupNotFoundException();
-            }
-
-            Integer carId = journeyRepository.getCar(groupId);
-            if (carId == null) {
-                return null;
-            }
-
-            return carRepository.get(carId);
+            operations.requestJourney(groupId, people);
         } finally {
-            readLock.unlock();
+            metrics.record(Operation.REQUEST_JOURNEY, startNanos);
         }
     }
 
     /**
-     * Reassign free seats of a car to waiting groups after a dropoff.
+     * Request journeys for a batch of groups in one engine pass, in arrival order.
+     * A group that already exists is reported as a duplicate instead of failing the batch.
      */
-    private void updateCarAllocation(int carId, int newFreeSeats) {
-        long startTime = System.currentTimeMillis();
-
-        // Atomic operation: release seats and get the new total available seats
-        int totalFreeSeats = carRepository.releaseSeats(carId, newFreeSeats);
-
-        log.debug("Seats released atomically. car_id={}, seats_released={}, total_available={}",
-                carId, newFreeSeats, totalFreeSeats);
-
-        // Select groups that can fit in the available seats
-        LinkedHashMap<Integer, Integer> groups = selectGroupsToAllocate(totalFreeSeats);
-        StringBuilder assignedGroups = new StringBuilder();
-        int successfullyAssigned = 0;
-
-        // Try to assign each group atomically
-        for (Map.Entry<Integer, Integer> entry : groups.entrySet()) {
-            int groupId = entry.getKey();
-            int people = entry.getValue();
-
-            // Atomic operation: try to reserve seats for this group
-            boolean reserved = carRepository.tryReserveSeats(carId, people);
-
-            if (reserved) {
-                log.debug("Seats reserved successfully. car_id={}, seats_reserved={}", carId, people);
-
-                journeyRepository.save(groupId, carId);
-                groupRepository.dequeue(groupId);
-
-                successfullyAssigned += people;
-                if (assignedGroups.length() > 0) {
-                    assignedGroups.append(", ");
-                }
-                assignedGroups.append(String.format("group_id=%d,people=%d", groupId, people));
-            } else {
-                log.warn("Could not reserve seats for group during reallocation (race condition). " +
-                        "car_id={}, group_id={}, people={}", carId, groupId, people);
-
-                break;
-            }
+    public List<JourneyResult> requestJourneys(int[] groupIds, int[] people) {
+        checkWritable();
+        if (groupIds.length != people.length) {
+            throw new IllegalArgumentException("Group IDs and people counts must have the same length");
         }
 
-        long duration = System.currentTimeMillis() - startTime;
-        int remainingSeats = carRepository.getAvailableSeats(carId);
-
-        log.info(
-                "Car allocation updated after dropoff. car_id={}, new_free_seats={}, total_free_seats={}, " +
-                        "groups_attempted={}, groups_assigned={}, total_people_assigned={}, remaining_seats={}, " +
-                        "assigned_groups=[{}], duration_ms={}",
-                carId, newFreeSeats, totalFreeSeats, groups.size(),
-                (assignedGroups.length() > 0 ? groups.size() : 0),
-                successfullyAssigned, remainingSeats, assignedGroups.toString(), duration);
+        long startNanos = System.nanoTime();
+        try {
+            return operations.requestJourneys(groupIds, people);
+        } finally {
+            metrics.record(Operation.REQUEST_JOURNEYS, startNanos);
+        }
     }
 
     /**
-     * Select the optimal set of groups that fits into the provided seats.
-     * Returns a map of groupId -> people count.
+     * Process a dropoff for a group.
      */
-    private LinkedHashMap<Integer, Integer> selectGroupsToAllocate(int seats) {
-        long startTime = System.currentTimeMillis();
-
-        LinkedHashMap<Integer, Integer> result = new LinkedHashMap<>();
-        LinkedHashMap<Integer, Integer> groups = groupRepository.getWaitingQueue();
-
-        int queueSize = groups.size();
-        int pendingSeats = seats;
-
-        for (Map.Entry<Integer, Integer> entry : groups.entrySet()) {
-            int groupId = entry.getKey();
-            int people = entry.getValue();
-
-            if (pendingSeats <= 0) {
-                break;
-            }
-
-            if (!groupRepository.areThereGroupsForAllocation(pendingSeats)) {
-                break;
-            }
-
-            if (people <= pendingSeats) {
-                result.put(groupId, people);
-                pendingSeats -= people;
-            }
+    public void dropoff(int groupId) {
+        checkWritable();
+        long startNanos = System.nanoTime();
+        try {
+            operations.dropoff(groupId);
+        } finally {
+            metrics.record(Operation.DROPOFF, startNanos);
         }
+    }
 
-        long duration = System.currentTimeMillis() - startTime;
-
-        if (!result.isEmpty()) {
-            int totalPeopleAllocated = result.values().stream().mapToInt(Integer::intValue).sum();
+    /**
+     * Process dropoffs for a batch of groups in one engine pass.
+     * All seats are released first, then every affected car is refilled from the waiting
+     * queue once, in the order the cars were first freed.
+     */
+    public List<DropoffResult> dropoffs(int[] groupIds) {
+        checkWritable();
+        long startNanos = System.nanoTime();
+        try {
+            return operations.dropoffs(groupIds);
+        } finally {
+            metrics.record(Operation.DROPOFFS, startNanos);
+        }
+    }
 
-            log.debug(
-                    "Groups selected for allocation. available_seats={}, selected_groups_count={}, queue_size={}, total_people_allocated={}, remaining_seats={}, duration_ms={}",
-                    seats, result.size(), queueSize, totalPeopleAllocated, pendingSeats, duration);
+    /**
+     * Locate the car assigned to a group.
+     */
+    public Car locate(int groupId) {
+        long startNanos = System.nanoTime();
+        try {
+            return operations.locate(groupId);
+        } finally {
+            metrics.record(Operation.LOCATE, startNanos);
         }
+    }
 
-        return result;
+    private void checkWritable() {
+        if (readOnly) {
+            throw new NotPrimaryException();
+        }
     }
 }
@@ -0,0 +1,118 @@
+package com.cabify.carpooling.service;
+
+import com.cabify.carpooling.model.Car;
+import com.cabify.carpooling.model.DropoffResult;
+import com.cabify.carpooling.model.JourneyResult;
+import com.cabify.carpooling.persistence.BinaryWriter;
+import com.cabify.carpooling.persistence.Commands;
+import com.cabify.carpooling.raft.Consensus;
+import com.cabify.carpooling.repository.CarGeneration;
+
+import java.util.List;
+
+/**
+ * Executes the car pooling operations in a Raft cluster: every mutation is encoded first,
+ * agreed through {@link Consensus} and applied on every node in commit order by its
+ * {@link LocalFleet}, the cluster's state machine. Reads are served by the local copy.
+ */
+public class ConsensusFleet implements FleetOperations {
+
+    private final Consensus consensus;
+    private final LocalFleet local;
+
+    /**
+     * The consensus must apply committed commands to the given local fleet
+     * (see {@link LocalFleet#applyCommitted}).
+     */
+    public ConsensusFleet(Consensus consensus, LocalFleet local) {
+        this.consensus = consensus;
+        this.local = local;
+    }
+
+    @Override
+    public void loadCars(List<Car> cars) {
+        BinaryWriter out = new BinaryWriter(16 + cars.size() * 4);
+        LocalFleet.encodeLoadCars(out, cars);
+        propose(out);
+    }
+
+    @Override
+    public CarGeneration newFleet() {
+        return local.newFleet();
+    }
+
+    @Override
+    public void loadCars(CarGeneration fleet) {
+        BinaryWriter out = new BinaryWriter(16 + fleet.size() * 4);
+        LocalFleet.encodeLoadCars(out, fleet);
+        propose(out);
+    }
+
+    @Override
+    public void updateFleet(List<Car> upserts, int[] retiredCarIds) {
+        BinaryWriter out = new BinaryWriter(16 + (upserts.size() + retiredCarIds.length) * 4);
+        LocalFleet.encodeUpdateFleet(out, upserts, retiredCarIds);
+        propose(out);
+    }
+
+    @Override
+    public void requestJourney(int groupId, int people) {
+        BinaryWriter out = new BinaryWriter(8);
+        Commands.requestJourney(out, groupId, people);
+        propose(out);
+    }
+
+    @Override
+    public List<JourneyResult> requestJourneys(int[] groupIds, int[] people) {
+        BinaryWriter out = new BinaryWriter(8 + groupIds.length * 4);
+        Commands.requestJourneys(out, groupIds, people);
+        return propose(out);
+    }
+
+    @Override
+    public void dropoff(int groupId) {
+        BinaryWriter out = new BinaryWriter(8);
+        Commands.dropoff(out, groupId);
+        propose(out);
+    }
+
+    @Override
+    public List<DropoffResult> dropoffs(int[] groupIds) {
+        BinaryWriter out = new BinaryWriter(8 + groupIds.length * 4);
+        Commands.dropoffs(out, groupIds);
+        return propose(out);
+    }
+
+    @Override
+    public Car locate(int groupId) {
+        return local.locate(groupId);
+    }
+
+    @Override
+    public int countWaiting(int people) {
+        return local.countWaiting(people);
+    }
+
+    @Override
+    public int countCars(int availableSeats) {
+        return local.countCars(availableSeats);
+    }
+
+    @Override
+    public int countJourneys() {
+        return local.countJourneys();
+    }
+
+    /**
+     * Propose a command to the cluster and return its result once applied here,
+     * rethrowing the exception that rejected it.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T propose(BinaryWriter out) {
+        Object result = consensus.propose(out);
+        if (result instanceof RuntimeException) {
+            throw (RuntimeException) result;
+        }
+        return (T) result;
+    }
+}
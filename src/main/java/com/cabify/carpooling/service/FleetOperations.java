@@ -0,0 +1,62 @@
+package com.cabify.carpooling.service;
+
+import com.cabify.carpooling.metrics.FleetCounts;
+import com.cabify.carpooling.model.Car;
+import com.cabify.carpooling.model.DropoffResult;
+import com.cabify.carpooling.model.JourneyResult;
+import com.cabify.carpooling.repository.CarGeneration;
+
+import java.util.List;
+
+/**
+ * One way of executing the car pooling operations: on the local engine, through a consensus
+ * cluster or across shards. The CarPoolingService is given one when it is wired, adds the
+ * read-only check and the timing around every call, and reports its counts as gauges.
+ */
+public interface FleetOperations extends FleetCounts {
+
+    /**
+     * Reset the application state and load the incoming list of cars.
+     */
+    void loadCars(List<Car> cars);
+
+    /**
+     * Start a new fleet that can be filled, e.g. while streaming a request, before it is loaded.
+     */
+    CarGeneration newFleet();
+
+    /**
+     * Reset the application state and install a fleet built with {@link #newFleet()}.
+     */
+    void loadCars(CarGeneration fleet);
+
+    /**
+     * Add, resize or retire cars without resetting journeys or the waiting queue.
+     */
+    void updateFleet(List<Car> upserts, int[] retiredCarIds);
+
+    /**
+     * Request a journey for a group, allocating a car or queueing it.
+     */
+    void requestJourney(int groupId, int people);
+
+    /**
+     * Request journeys for a batch of groups, in arrival order; duplicates are reported, not thrown.
+     */
+    List<JourneyResult> requestJourneys(int[] groupIds, int[] people);
+
+    /**
+     * Process a dropoff for a group.
+     */
+    void dropoff(int groupId);
+
+    /**
+     * Process dropoffs for a batch of groups; unknown groups are reported, not thrown.
+     */
+    List<DropoffResult> dropoffs(int[] groupIds);
+
+    /**
+     * Locate the car assigned to a group, or null while it waits.
+     */
+    Car locate(int groupId);
+}
@@ -0,0 +1,862 @@
+package com.cabify.carpooling.service;
+
+import com.cabify.carpooling.collection.IntIntHashMap;
+import com.cabify.carpooling.engine.CopyOnWriteEngine;
+import com.cabify.carpooling.engine.PoolingEngine;
+import com.cabify.carpooling.engine.StripedEngine;
+import com.cabify.carpooling.exception.ExistingGroupException;
+import com.cabify.carpooling.exception.GroupNotFoundException;
+import com.cabify.carpooling.exception.InvalidPayloadException;
+import com.cabify.carpooling.logging.HotPathEvent;
+import com.cabify.carpooling.logging.HotPathLogger;
+import com.cabify.carpooling.metrics.CarPoolingMetrics;
+import com.cabify.carpooling.model.Car;
+import com.cabify.carpooling.model.DropoffResult;
+import com.cabify.carpooling.model.JourneyResult;
+import com.cabify.carpooling.persistence.BinaryReader;
+import com.cabify.carpooling.persistence.BinaryWriter;
+import com.cabify.carpooling.persistence.CommandHandler;
+import com.cabify.carpooling.persistence.Commands;
+import com.cabify.carpooling.persistence.StateSnapshot;
+import com.cabify.carpooling.persistence.WriteAheadLog;
+import com.cabify.carpooling.replication.ReplicationHub;
+import com.cabify.carpooling.repository.CarGeneration;
+import com.cabify.carpooling.repository.CarRepository;
+import com.cabify.carpooling.repository.GroupRepository;
+import com.cabify.carpooling.repository.JourneyRepository;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Executes the car pooling operations on this node's own state.
+ * Every mutation runs through the configured {@link PoolingEngine} and, once applied, is
+ * appended to the {@link WriteAheadLog}; callers return only after it is durable.
+ * In a Raft cluster it is the state machine: committed commands are applied here in log order.
+ * With a {@link StripedEngine}, dropoffs only lock the car they free (see {@link #dropoff}).
+ * With a {@link CopyOnWriteEngine}, snapshots are copied from a pinned version while writers go on.
+ */
+@Component
+public class LocalFleet implements FleetOperations {
+
+    private static final int MAX_PEOPLE = 6;
+
+    private final CarRepository carRepository;
+    private final GroupRepository groupRepository;
+    private final JourneyRepository journeyRepository;
+
+    private final PoolingEngine engine;
+    // Set with the striped engine, which runs dropoffs per car
+    private final StripedEngine striped;
+    private final CarPoolingMetrics metrics;
+    // Log lines are formatted off the engine lock, on the logger's own thread
+    private final HotPathLogger log;
+
+    private final WriteAheadLog wal;
+    private final ReplicationHub replication;
+    // Command encoding scratch space, only touched inside engine writes
+    private final BinaryWriter command = new BinaryWriter(256);
+    private final Applier applier = new Applier();
+    // Sequence number of the last applied command, only advanced inside engine writes;
+    // a batch may wait on a later one, which is only conservative
+    private volatile long lastLsn;
+
+    public LocalFleet(
+            CarRepository carRepository,
+            GroupRepository groupRepository,
+            JourneyRepository journeyRepository,
+            PoolingEngine engine,
+            CarPoolingMetrics metrics,
+            HotPathLogger log,
+            WriteAheadLog wal,
+            ReplicationHub replication) {
+        this.carRepository = carRepository;
+        this.groupRepository = groupRepository;
+        this.journeyRepository = journeyRepository;
+        this.engine = engine;
+        this.striped = engine instanceof StripedEngine ? (StripedEngine) engine : null;
+        this.metrics = metrics;
+        this.log = log;
+        this.wal = wal;
+        this.replication = replication;
+    }
+
+    /**
+     * Rebuild the state from a snapshot, if any, and the write-ahead log records after it,
+     * then start logging new mutations. Must run before the service takes requests.
+     */
+    public void recover(StateSnapshot snapshot) throws IOException {
+        long afterLsn = 0;
+        if (snapshot != null) {
+            engine.write(() -> applyRestore(snapshot));
+            afterLsn = snapshot.lsn();
+        }
+
+        lastLsn = wal.open(afterLsn, (lsn, record) -> engine.write(() -> Commands.decode(record, applier)));
+    }
+
+    /**
+     * Copy the full state as of the last applied command.
+     * Writers pause only while primitive copies are taken; encoding happens on the caller.
+     */
+    public StateSnapshot snapshot() {
+        return snapshot(() -> {
+        });
+    }
+
+    /**
+     * Copy the full state and run an action in the same writer pause, e.g. to subscribe to
+     * exactly the commands that follow the copy.
+     */
+    public StateSnapshot snapshot(Runnable duringPause) {
+        if (engine instanceof CopyOnWriteEngine) {
+            // Writers only pause while the latest version is pinned; it is copied while they go on
+            long[] lsn = new long[1];
+            return ((CopyOnWriteEngine) engine).readAfter(() -> {
+                lsn[0] = lastLsn;
+                duringPause.run();
+            }, () -> captureSnapshot(lsn[0]));
+        }
+
+        return engine.writeAndGet(() -> {
+            StateSnapshot snapshot = captureSnapshot(lastLsn);
+            duringPause.run();
+            return snapshot;
+        });
+    }
+
+    /**
+     * Replace the whole state with one received from the primary, as of its LSN.
+     * The local log restarts with that state as its first record.
+     */
+    public void installReplica(StateSnapshot snapshot) {
+        engine.write(() -> {
+            applyRestore(snapshot);
+
+            if (wal.isEnabled()) {
+                wal.reset(snapshot.lsn() - 1);
+                command.reset();
+                Commands.restore(command, snapshot);
+                wal.append(command);
+            }
+            lastLsn = snapshot.lsn();
+        });
+    }
+
+    /**
+     * Apply one command streamed from the primary; LSNs must follow each other without gaps.
+     */
+    public void applyReplicated(long lsn, byte[] record, int length) {
+        engine.write(() -> {
+            if (lsn != lastLsn + 1) {
+                throw new IllegalStateException(
+                        String.format("Replicated LSN %d does not follow LSN %d", lsn, lastLsn));
+            }
+
+            Commands.decode(new BinaryReader(record, 0, length), applier);
+
+            if (wal.isEnabled()) {
+                command.reset();
+                command.writeBytes(record, 0, length);
+                wal.append(command);
+            }
+            lastLsn = lsn;
+        });
+    }
+
+    /**
+     * Get the sequence number of the last applied command, counted even without a log.
+     */
+    public long lastLsn() {
+        return lastLsn;
+    }
+
+    /**
+     * Apply a command committed by the Raft cluster; every node applies the same commands in
+     * the same order. Returns the batch results, or the exception that rejected the command,
+     * for the client waiting on the leader. The LSN follows the Raft log index.
+     */
+    public Object applyCommitted(long index, byte[] record) {
+        return engine.writeAndGet(() -> {
+            lastLsn = index;
+            if (record.length == 0) {
+                return null;
+            }
+
+            try {
+                applier.result = null;
+                Commands.decode(new BinaryReader(record, 0, record.length), applier);
+                return applier.result;
+            } catch (ExistingGroupException | GroupNotFoundException | InvalidPayloadException e) {
+                // Rejected identically on every node, before changing anything
+                return e;
+            }
+        });
+    }
+
+    @Override
+    public void loadCars(List<Car> cars) {
+        long position = engine.writeAndGet(() -> {
+            applyLoadCars(cars);
+            return logLoadCars(cars);
+        });
+        wal.awaitDurable(position);
+    }
+
+    @Override
+    public CarGeneration newFleet() {
+        return carRepository.newGeneration();
+    }
+
+    @Override
+    public void loadCars(CarGeneration fleet) {
+        long position = engine.writeAndGet(() -> {
+            applyLoadCars(fleet);
+            return logLoadCars(fleet);
+        });
+        wal.awaitDurable(position);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The whole update is checked before any of it is applied; new and enlarged cars are
+     * then filled from the waiting queue, in the order they appear in the update.
+     */
+    @Override
+    public void updateFleet(List<Car> upserts, int[] retiredCarIds) {
+        long position = engine.writeAndGet(() -> {
+            applyUpdateFleet(upserts, retiredCarIds);
+            return logUpdateFleet(upserts, retiredCarIds);
+        });
+        wal.awaitDurable(position);
+    }
+
+    @Override
+    public void requestJourney(int groupId, int people) {
+        long position = engine.writeAndGet(() -> {
+            applyRequestJourney(groupId, people);
+            return logRequestJourney(groupId, people);
+        });
+        wal.awaitDurable(position);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The whole batch runs in one engine pass.
+     */
+    @Override
+    public List<JourneyResult> requestJourneys(int[] groupIds, int[] people) {
+        List<JourneyResult> results = engine.writeAndGet(() -> applyRequestJourneys(groupIds, people, true));
+        wal.awaitDurable(lastLsn);
+        return results;
+    }
+
+    /**
+     * {@inheritDoc}
+     * With the striped engine, only the group's car is locked while it is refilled, so
+     * dropoffs from different cars run in parallel.
+     */
+    @Override
+    public void dropoff(int groupId) {
+        if (striped != null) {
+            // The striped engine runs without a write-ahead log: nothing to wait for
+            applyDropoffPerCar(groupId);
+            return;
+        }
+
+        long position = engine.writeAndGet(() -> {
+            applyDropoff(groupId);
+            return logDropoff(groupId);
+        });
+        wal.awaitDurable(position);
+    }
+
+    /**
+     * {@inheritDoc}
+     * All seats are released first in one engine pass, then every affected car is refilled
+     * from the waiting queue once, in the order the cars were first freed.
+     */
+    @Override
+    public List<DropoffResult> dropoffs(int[] groupIds) {
+        List<DropoffResult> results = engine.writeAndGet(() -> {
+            List<DropoffResult> applied = applyDropoffs(groupIds);
+            logDropoffs(groupIds);
+            return applied;
+        });
+        wal.awaitDurable(lastLsn);
+        return results;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Runs without the service monitor; the engine guarantees a consistent view.
+     */
+    @Override
+    public Car locate(int groupId) {
+        return engine.read(() -> applyLocate(groupId));
+    }
+
+    @Override
+    public int countWaiting(int people) {
+        return groupRepository.countWaiting(people);
+    }
+
+    @Override
+    public int countCars(int availableSeats) {
+        return carRepository.countCars(availableSeats);
+    }
+
+    @Override
+    public int countJourneys() {
+        return journeyRepository.count();
+    }
+
+    /**
+     * Apply a batch of journey requests in arrival order, inside an engine write.
+     * Recorded (record) when called live; replayed and committed batches are not logged again.
+     */
+    private List<JourneyResult> applyRequestJourneys(int[] groupIds, int[] people, boolean record) {
+        List<JourneyResult> results = new ArrayList<>(groupIds.length);
+
+        for (int i = 0; i < groupIds.length; i++) {
+            int groupId = groupIds[i];
+
+            try {
+                Integer carId = applyRequestJourney(groupId, people[i]);
+                if (record) {
+                    // Logged one by one: duplicates changed nothing and are left out
+                    logRequestJourney(groupId, people[i]);
+                }
+                results.add(journeyResult(groupId, carId));
+            } catch (ExistingGroupException e) {
+                results.add(JourneyResult.duplicate(groupId));
+            }
+        }
+
+        return results;
+    }
+
+    private JourneyResult journeyResult(int groupId, Integer carId) {
+        return carId != null
+                ? JourneyResult.assigned(groupId, carRepository.get(carId))
+                : JourneyResult.queued(groupId);
+    }
+
+    private long logLoadCars(List<Car> cars) {
+        if (!isRecording()) {
+            return ++lastLsn;
+        }
+
+        command.reset();
+        encodeLoadCars(command, cars);
+
+        return append();
+    }
+
+    private long logLoadCars(CarGeneration fleet) {
+        if (!isRecording()) {
+            return ++lastLsn;
+        }
+
+        command.reset();
+        encodeLoadCars(command, fleet);
+
+        return append();
+    }
+
+    private long logUpdateFleet(List<Car> upserts, int[] retiredCarIds) {
+        if (!isRecording()) {
+            return ++lastLsn;
+        }
+
+        command.reset();
+        encodeUpdateFleet(command, upserts, retiredCarIds);
+
+        return append();
+    }
+
+    static void encodeLoadCars(BinaryWriter out, List<Car> cars) {
+        Commands.loadCars(out, cars.size());
+        for (Car car : cars) {
+            Commands.car(out, car.getId(), car.getSeats());
+        }
+    }
+
+    static void encodeLoadCars(BinaryWriter out, CarGeneration fleet) {
+        Commands.loadCars(out, fleet.size());
+        fleet.forEach((carId, seats) -> Commands.car(out, carId, seats));
+    }
+
+    static void encodeUpdateFleet(BinaryWriter out, List<Car> upserts, int[] retiredCarIds) {
+        Commands.updateFleet(out, upserts.size());
+        for (Car car : upserts) {
+            Commands.car(out, car.getId(), car.getSeats());
+        }
+        Commands.retiredCars(out, retiredCarIds);
+    }
+
+    private long logRequestJourney(int groupId, int people) {
+        if (!isRecording()) {
+            return ++lastLsn;
+        }
+
+        command.reset();
+        Commands.requestJourney(command, groupId, people);
+
+        return append();
+    }
+
+    private long logDropoff(int groupId) {
+        if (!isRecording()) {
+            return ++lastLsn;
+        }
+
+        command.reset();
+        Commands.dropoff(command, groupId);
+
+        return append();
+    }
+
+    private long logDropoffs(int[] groupIds) {
+        if (!isRecording()) {
+            return ++lastLsn;
+        }
+
+        command.reset();
+        Commands.dropoffs(command, groupIds);
+
+        return append();
+    }
+
+    /**
+     * Check if commands must be encoded: for the log, or for replicas streaming them.
+     */
+    private boolean isRecording() {
+        return wal.isEnabled() || replication.hasSubscribers();
+    }
+
+    private long append() {
+        lastLsn = wal.isEnabled() ? wal.append(command) : lastLsn + 1;
+        replication.publish(lastLsn, command);
+        return lastLsn;
+    }
+
+    private StateSnapshot captureSnapshot(long lsn) {
+        StateSnapshot snapshot = new StateSnapshot(lsn);
+
+        carRepository.forEachCar(snapshot::addCar);
+        groupRepository.forEachGroup(snapshot::addGroup);
+        journeyRepository.forEach(snapshot::addJourney);
+        for (int size = 1; size <= MAX_PEOPLE; size++) {
+            int people = size;
+            groupRepository.forEachWaiting(people, (groupId, sequence) -> snapshot.addWaiting(groupId, people, sequence));
+        }
+
+        return snapshot;
+    }
+
+    private void applyRestore(StateSnapshot snapshot) {
+        groupRepository.flush();
+        journeyRepository.flush();
+
+        CarGeneration fleet = carRepository.newGeneration();
+        snapshot.forEachCar(fleet::restore);
+        carRepository.install(fleet);
+
+        snapshot.forEachGroup(groupRepository::save);
+        snapshot.forEachJourney(journeyRepository::save);
+        // Arrival sequences are restored as they were, so the queue order survives exactly
+        snapshot.forEachWaiting(groupRepository::restoreWaiting);
+    }
+
+    private Car applyLocate(int groupId) {
+        Integer people = groupRepository.getPeople(groupId);
+        if (people == null) {
+            throw new GroupNotFoundException();
+        }
+
+        Integer carId = journeyRepository.getCar(groupId);
+        if (carId == null) {
+            return null;
+        }
+
+        return carRepository.get(carId);
+    }
+
+    private void applyLoadCars(List<Car> cars) {
+        long startTime = System.currentTimeMillis();
+        int carCount = cars.size();
+
+        carRepository.flush();
+        groupRepository.flush();
+        journeyRepository.flush();
+
+        carRepository.replaceAll(cars);
+
+        long duration = System.currentTimeMillis() - startTime;
+
+        log.log(HotPathEvent.CARS_LOADED, carCount, duration);
+    }
+
+    private void applyUpdateFleet(List<Car> upserts, int[] retiredCarIds) {
+        long startTime = System.currentTimeMillis();
+
+        // Validate everything against the current state first, so a bad update changes nothing
+        for (Car car : upserts) {
+            Car current = carRepository.get(car.getId());
+            if (current == null) {
+                continue;
+            }
+
+            int occupiedSeats = current.getSeats() - carRepository.getAvailableSeats(car.getId());
+            if (car.getSeats() < occupiedSeats) {
+                throw new InvalidPayloadException(String.format(
+                        "Car %d cannot be resized to %d seats: %d seats are occupied",
+                        car.getId(), car.getSeats(), occupiedSeats));
+            }
+        }
+
+        for (int carId : retiredCarIds) {
+            if (!carRepository.contains(carId)) {
+                throw new InvalidPayloadException(String.format("Car %d to retire does not exist", carId));
+            }
+        }
+
+        // Apply: remember how many seats each upserted car gained
+        int[] gainedSeats = new int[upserts.size()];
+
+        for (int i = 0; i < upserts.size(); i++) {
+            Car car = upserts.get(i);
+            int availableBefore = carRepository.isRetired(car.getId())
+                    ? 0
+                    : carRepository.getAvailableSeats(car.getId());
+
+            carRepository.put(car);
+            gainedSeats[i] = carRepository.getAvailableSeats(car.getId()) - availableBefore;
+        }
+
+        for (int carId : retiredCarIds) {
+            carRepository.retire(carId);
+        }
+
+        // New and enlarged cars take waiting groups straight away
+        for (int i = 0; i < upserts.size(); i++) {
+            if (gainedSeats[i] > 0) {
+                int carId = upserts.get(i).getId();
+                assignWaitingGroups(carId, gainedSeats[i], carRepository.getAvailableSeats(carId), false);
+            }
+        }
+
+        long duration = System.currentTimeMillis() - startTime;
+        log.log(HotPathEvent.FLEET_UPDATED, upserts.size(), retiredCarIds.length, duration);
+    }
+
+    private void applyLoadCars(CarGeneration fleet) {
+        long startTime = System.currentTimeMillis();
+
+        groupRepository.flush();
+        journeyRepository.flush();
+        carRepository.install(fleet);
+
+        long duration = System.currentTimeMillis() - startTime;
+
+        log.log(HotPathEvent.CARS_LOADED, fleet.size(), duration);
+    }
+
+    /**
+     * Allocate a car to a new group or queue it. Returns the assigned car ID, or null if queued.
+     */
+    private Integer applyRequestJourney(int groupId, int people) {
+        long startTime = System.currentTimeMillis();
+
+        // Check if group exists
+        if (groupRepository.getPeople(groupId) != null) {
+            throw new ExistingGroupException();
+        }
+
+        groupRepository.save(groupId, people);
+
+        if (journeyRepository.getCar(groupId) != null) {
+            log.log(HotPathEvent.JOURNEY_ALREADY_ASSIGNED, groupId, people);
+            return journeyRepository.getCar(groupId);
+        }
+
+        // Find car
+        Integer carId = carRepository.findAndReserveCar(people);
+
+        if (carId != null) {
+            journeyRepository.save(groupId, carId);
+
+            long duration = System.currentTimeMillis() - startTime;
+            log.log(HotPathEvent.JOURNEY_ASSIGNED, groupId, people, carId, duration);
+        } else {
+            groupRepository.enqueue(groupId, people);
+
+            long duration = System.currentTimeMillis() - startTime;
+            log.log(HotPathEvent.JOURNEY_QUEUED, groupId, people, duration);
+        }
+
+        return carId;
+    }
+
+    private void applyDropoff(int groupId) {
+        long startTime = System.currentTimeMillis();
+
+        // Check if group exists
+        Integer people = groupRepository.getPeople(groupId);
+        if (people == null) {
+            throw new GroupNotFoundException();
+        }
+
+        // Check if group has traveled
+        Integer carId = journeyRepository.getCar(groupId);
+
+        if (carId != null) {
+            journeyRepository.remove(groupId);
+
+            updateCarAllocation(carId, people, false);
+
+            long duration = System.currentTimeMillis() - startTime;
+            log.log(HotPathEvent.DROPOFF_TRAVELLING, groupId, people, carId, duration);
+        } else {
+            long duration = System.currentTimeMillis() - startTime;
+            log.log(HotPathEvent.DROPOFF_WAITING, groupId, people, duration);
+        }
+
+        groupRepository.remove(groupId);
+    }
+
+    /**
+     * Drop off a group with the striped engine. A waiting group is removed in one bookkeeping
+     * section; a travelling group is removed, and its car released and refilled, under the
+     * car's lock stripe. Nothing is logged, as the striped engine runs without a write-ahead
+     * log or replicas; the LSN still advances when the group is removed, for snapshots.
+     */
+    private void applyDropoffPerCar(int groupId) {
+        long startTime = System.currentTimeMillis();
+
+        Integer carId = striped.bookkeeping(() -> {
+            Integer people = groupRepository.getPeople(groupId);
+            if (people == null) {
+                throw new GroupNotFoundException();
+            }
+
+            Integer car = journeyRepository.getCar(groupId);
+            if (car == null) {
+                groupRepository.remove(groupId);
+                lastLsn++;
+                log.log(HotPathEvent.DROPOFF_WAITING, groupId, people, System.currentTimeMillis() - startTime);
+            }
+            return car;
+        });
+
+        if (carId == null) {
+            return;
+        }
+
+        striped.writeCar(carId, () -> {
+            int people = striped.bookkeeping(() -> {
+                // A concurrent dropoff of the same group may have taken the stripe first
+                Integer groupPeople = groupRepository.getPeople(groupId);
+                if (groupPeople == null || !carId.equals(journeyRepository.getCar(groupId))) {
+                    throw new GroupNotFoundException();
+                }
+
+                journeyRepository.remove(groupId);
+                groupRepository.remove(groupId);
+                lastLsn++;
+                return groupPeople;
+            });
+
+            updateCarAllocation(carId, people, true);
+
+            long duration = System.currentTimeMillis() - startTime;
+            log.log(HotPathEvent.DROPOFF_TRAVELLING, groupId, people, carId, duration);
+            return null;
+        });
+    }
+
+    private List<DropoffResult> applyDropoffs(int[] groupIds) {
+        long startTime = System.currentTimeMillis();
+        List<DropoffResult> results = new ArrayList<>(groupIds.length);
+
+        // Car ID -> seats released in this batch, plus the order cars were first freed
+        IntIntHashMap releasedSeats = new IntIntHashMap(groupIds.length, 0);
+        int[] affectedCars = new int[groupIds.length];
+        int affectedCount = 0;
+
+        for (int groupId : groupIds) {
+            Integer people = groupRepository.getPeople(groupId);
+            if (people == null) {
+                results.add(DropoffResult.notFound(groupId));
+                continue;
+            }
+
+            Integer carId = journeyRepository.getCar(groupId);
+            if (carId != null) {
+                journeyRepository.remove(groupId);
+                boolean retired = carRepository.isRetired(carId);
+                carRepository.releaseSeats(carId, people);
+
+                // Retired cars are not refilled
+                if (!retired && releasedSeats.put(carId, releasedSeats.get(carId) + people) == 0) {
+                    affectedCars[affectedCount++] = carId;
+                }
+            }
+
+            groupRepository.remove(groupId);
+            results.add(DropoffResult.ok(groupId));
+        }
+
+        // One reallocation pass per affected car
+        for (int i = 0; i < affectedCount; i++) {
+            int carId = affectedCars[i];
+            int groupsAssigned = assignWaitingGroups(
+                    carId, releasedSeats.get(carId), carRepository.getAvailableSeats(carId), false);
+            metrics.recordReallocation(groupsAssigned);
+        }
+
+        long duration = System.currentTimeMillis() - startTime;
+        log.log(HotPathEvent.BATCH_DROPOFF, groupIds.length, affectedCount, duration);
+
+        return results;
+    }
+
+    /**
+     * Reassign free seats of a car to waiting groups after a dropoff.
+     * Called either inside an exclusive engine write or, with the striped engine, under the
+     * car's lock stripe (perCar).
+     */
+    private void updateCarAllocation(int carId, int newFreeSeats, boolean perCar) {
+        boolean retired = carRepository.isRetired(carId);
+
+        // Atomic operation: release seats and get the new total available seats
+        int totalFreeSeats = carRepository.releaseSeats(carId, newFreeSeats);
+
+        log.log(HotPathEvent.SEATS_RELEASED, carId, newFreeSeats, totalFreeSeats);
+
+        if (retired) {
+            log.log(HotPathEvent.RETIRED_CAR_NOT_REFILLED, carId, totalFreeSeats);
+            return;
+        }
+
+        int groupsAssigned = assignWaitingGroups(carId, newFreeSeats, totalFreeSeats, perCar);
+        metrics.recordReallocation(groupsAssigned);
+    }
+
+    /**
+     * Fill the free seats of a car from the waiting queue and return the number of groups assigned.
+     * Groups are taken oldest first among those that still fit in the remaining seats.
+     * Per car (under the car's lock stripe), each group is taken in a bookkeeping section of its own.
+     */
+    private int assignWaitingGroups(int carId, int newFreeSeats, int totalFreeSeats, boolean perCar) {
+        long startTime = System.currentTimeMillis();
+
+        int groupsAssigned = 0;
+        int successfullyAssigned = 0;
+        int pendingSeats = totalFreeSeats;
+
+        while (pendingSeats > 0) {
+            int seats = pendingSeats;
+            int people = perCar
+                    ? striped.bookkeeping(() -> assignOldestWaitingGroup(carId, seats))
+                    : assignOldestWaitingGroup(carId, seats);
+            if (people == 0) {
+                break;
+            }
+
+            pendingSeats -= people;
+            groupsAssigned++;
+            successfullyAssigned += people;
+        }
+
+        long duration = System.currentTimeMillis() - startTime;
+        int remainingSeats = carRepository.getAvailableSeats(carId);
+
+        log.log(HotPathEvent.CAR_ALLOCATION_UPDATED, carId, newFreeSeats, totalFreeSeats, groupsAssigned,
+                successfullyAssigned, remainingSeats, duration);
+
+        return groupsAssigned;
+    }
+
+    /**
+     * Move the oldest waiting group that fits in the given seats into a car and return its size,
+     * or 0 if no group fits or the seats are gone.
+     */
+    private int assignOldestWaitingGroup(int carId, int seats) {
+        Integer groupId = groupRepository.findOldestWaitingGroup(seats);
+        if (groupId == null) {
+            return 0;
+        }
+
+        int people = groupRepository.getPeople(groupId);
+
+        // Atomic operation: try to reserve seats for this group
+        if (!carRepository.tryReserveSeats(carId, people)) {
+            log.log(HotPathEvent.RESERVATION_RACE, carId, groupId, people);
+            return 0;
+        }
+
+        log.log(HotPathEvent.WAITING_GROUP_ASSIGNED, carId, groupId, people);
+
+        journeyRepository.save(groupId, carId);
+        groupRepository.dequeue(groupId);
+
+        return people;
+    }
+
+    /**
+     * Applies replayed or replicated commands without recording them again.
+     * Called inside an engine write.
+     */
+    private final class Applier implements CommandHandler {
+
+        // Results of the last batch command, for Raft clients
+        private Object result;
+
+        @Override
+        public void loadCars(int[] carIds, int[] seats) {
+            applyLoadCars(toCars(carIds, seats));
+        }
+
+        @Override
+        public void updateFleet(int[] carIds, int[] seats, int[] retiredCarIds) {
+            applyUpdateFleet(toCars(carIds, seats), retiredCarIds);
+        }
+
+        @Override
+        public void requestJourney(int groupId, int people) {
+            applyRequestJourney(groupId, people);
+        }
+
+        @Override
+        public void requestJourneys(int[] groupIds, int[] people) {
+            result = applyRequestJourneys(groupIds, people, false);
+        }
+
+        @Override
+        public void dropoff(int groupId) {
+            applyDropoff(groupId);
+        }
+
+        @Override
+        public void dropoffs(int[] groupIds) {
+            result = applyDropoffs(groupIds);
+        }
+
+        @Override
+        public void restore(StateSnapshot snapshot) {
+            applyRestore(snapshot);
+        }
+
+        private List<Car> toCars(int[] carIds, int[] seats) {
+            List<Car> cars = new ArrayList<>(carIds.length);
+            for (int i = 0; i < carIds.length; i++) {
+                cars.add(new Car(carIds[i], seats[i]));
+            }
+            return cars;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.cabify.carpooling.service;
+
+import com.cabify.carpooling.engine.CopyOnWriteEngine;
+import com.cabify.carpooling.engine.EngineConfiguration;
+import com.cabify.carpooling.engine.PoolingEngine;
+import com.cabify.carpooling.exception.InvalidPayloadException;
+import com.cabify.carpooling.exception.PoolNotFoundException;
+import com.cabify.carpooling.logging.HotPathLogger;
+import com.cabify.carpooling.metrics.CarPoolingMetrics;
+import com.cabify.carpooling.persistence.NoOpWriteAheadLog;
+import com.cabify.carpooling.persistence.WriteAheadLog;
+import com.cabify.carpooling.replication.ReplicationHub;
+import com.cabify.carpooling.repository.CarGeneration;
+import com.cabify.carpooling.repository.CarRepository;
+import com.cabify.carpooling.repository.GroupRepository;
+import com.cabify.carpooling.repository.JourneyRepository;
+import com.cabify.carpooling.repository.inmemory.InMemoryCarRepository;
+import com.cabify.carpooling.repository.inmemory.InMemoryGroupRepository;
+import com.cabify.carpooling.repository.inmemory.InMemoryJourneyRepository;
+import com.cabify.carpooling.repository.inmemory.PersistentCarRepository;
+import com.cabify.carpooling.repository.inmemory.PersistentGroupRepository;
+import com.cabify.carpooling.repository.inmemory.PersistentJourneyRepository;
+import com.cabify.carpooling.repository.inmemory.PersistentState;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Independent fleets ("pools") served next to the default one under {@code /pools/{poolId}}.
+ * Each pool is a CarPoolingService with its own cars, waiting queue, journeys and engine, so
+ * requests to different pools never contend on a lock. A pool is created by its first
+ * PUT /pools/{poolId}/cars. Pools are kept in memory only, so they cannot be combined with
+ * the write-ahead log, snapshots, replication or Raft, which all cover the default fleet.
+ */
+@Component
+@ConditionalOnProperty(name = "carpooling.pools.enabled", havingValue = "true")
+public class PoolRegistry implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(PoolRegistry.class);
+
+    private static final Pattern POOL_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final int REPLICATION_BACKLOG_BYTES = 1024 * 1024;
+    private static final String COPY_ON_WRITE = "copy-on-write";
+
+    private final MeterRegistry registry;
+    private final HotPathLogger hotPathLogger;
+    private final String engineMode;
+    private final int ringBufferSize;
+    private final int lockStripes;
+    private final int maxPools;
+    private final WriteAheadLog noWal = new NoOpWriteAheadLog();
+
+    private final ConcurrentHashMap<String, Pool> pools = new ConcurrentHashMap<>();
+
+    @Autowired
+    public PoolRegistry(
+            MeterRegistry registry,
+            HotPathLogger hotPathLogger,
+            WriteAheadLog wal,
+            @Value("${carpooling.engine.mode:locking}") String engineMode,
+            @Value("${carpooling.engine.ring-buffer-size:1024}") int ringBufferSize,
+            @Value("${carpooling.engine.lock-stripes:64}") int lockStripes,
+            @Value("${carpooling.pools.max:64}") int maxPools,
+            @Value("${carpooling.snapshot.enabled:false}") boolean snapshotsEnabled,
+            @Value("${carpooling.replication.role:standalone}") String replicationRole,
+            @Value("${carpooling.raft.enabled:false}") boolean raftEnabled) {
+        this(registry, hotPathLogger, engineMode, ringBufferSize, lockStripes, maxPools);
+
+        if (wal.isEnabled() || snapshotsEnabled || !"standalone".equals(replicationRole) || raftEnabled) {
+            throw new IllegalStateException("carpooling.pools.enabled requires the write-ahead log, snapshots, "
+                    + "replication and Raft to be disabled: pools are kept in memory only");
+        }
+        if ("sharded".equals(engineMode)) {
+            throw new IllegalStateException("carpooling.pools.enabled does not support carpooling.engine.mode=sharded: "
+                    + "each pool already has an engine of its own");
+        }
+    }
+
+    /**
+     * Create a registry outside Spring, e.g. for benchmarks.
+     */
+    public PoolRegistry(MeterRegistry registry, HotPathLogger hotPathLogger, String engineMode,
+                        int ringBufferSize, int lockStripes, int maxPools) {
+        this.registry = registry;
+        this.hotPathLogger = hotPathLogger;
+        this.engineMode = engineMode;
+        this.ringBufferSize = ringBufferSize;
+        this.lockStripes = lockStripes;
+        this.maxPools = maxPools;
+    }
+
+    /**
+     * Get the service of an existing pool.
+     */
+    public CarPoolingService get(String poolId) {
+        Pool pool = pools.get(poolId);
+        if (pool == null) {
+            throw new PoolNotFoundException(poolId);
+        }
+        return pool.service;
+    }
+
+    /**
+     * Get the service of a pool, creating the pool if it does not exist yet.
+     */
+    public CarPoolingService getOrCreate(String poolId) {
+        Pool pool = pools.get(poolId);
+        return pool != null ? pool.service : create(poolId);
+    }
+
+    /**
+     * Start a fleet for a pool without creating it, so that a PUT whose body turns out invalid
+     * leaves no pool behind. A fleet is not tied to a repository: a pool created later takes it.
+     */
+    public CarGeneration newFleet(String poolId) {
+        Pool pool = pools.get(poolId);
+        if (pool != null) {
+            return pool.service.newFleet();
+        }
+        return COPY_ON_WRITE.equals(engineMode)
+                ? new PersistentCarRepository(new PersistentState()).newGeneration()
+                : new InMemoryCarRepository().newGeneration();
+    }
+
+    public Set<String> poolIds() {
+        return new TreeSet<>(pools.keySet());
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (Pool pool : pools.values()) {
+            if (pool.engine instanceof DisposableBean) {
+                ((DisposableBean) pool.engine).destroy();
+            }
+        }
+        pools.clear();
+    }
+
+    private synchronized CarPoolingService create(String poolId) {
+        Pool existing = pools.get(poolId);
+        if (existing != null) {
+            return existing.service;
+        }
+
+        if (!POOL_ID.matcher(poolId).matches()) {
+            throw new InvalidPayloadException(String.format(
+                    "Invalid pool ID %s: use 1 to 64 letters, digits, '-' or '_'", poolId));
+        }
+        if (pools.size() >= maxPools) {
+            throw new InvalidPayloadException(String.format(
+                    "Cannot create pool %s: the limit of %d pools is reached", poolId, maxPools));
+        }
+
+        Pool pool = new Pool(poolId);
+        pools.put(poolId, pool);
+        log.info("Created pool {} ({} of at most {})", poolId, pools.size(), maxPools);
+
+        return pool.service;
+    }
+
+    /**
+     * The state and engine of one pool.
+     */
+    private final class Pool {
+
+        final PoolingEngine engine;
+        final CarPoolingService service;
+
+        Pool(String poolId) {
+            CarRepository cars;
+            GroupRepository groups;
+            JourneyRepository journeys;
+
+            if (COPY_ON_WRITE.equals(engineMode)) {
+                PersistentState state = new PersistentState();
+                cars = new PersistentCarRepository(state);
+                groups = new PersistentGroupRepository(state);
+                journeys = new PersistentJourneyRepository(state);
+                engine = new CopyOnWriteEngine(state);
+            } else {
+                cars = new InMemoryCarRepository();
+                groups = new InMemoryGroupRepository();
+                journeys = new InMemoryJourneyRepository();
+                engine = EngineConfiguration.newEngine(engineMode, ringBufferSize, lockStripes);
+            }
+
+            CarPoolingMetrics metrics = new CarPoolingMetrics(registry, poolId);
+            service = new CarPoolingService(new LocalFleet(cars, groups, journeys, engine, metrics,
+                    hotPathLogger, noWal, new ReplicationHub(REPLICATION_BACKLOG_BYTES)), metrics);
+
+            try {
+                service.recover(null);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.cabify.carpooling.service;
+
+import com.cabify.carpooling.metrics.CarPoolingMetrics;
+import com.cabify.carpooling.raft.RaftManager;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Chooses once, at startup, how the CarPoolingService executes operations: on the local fleet,
+ * across the shards of {@code carpooling.engine.mode=sharded}, or through the Raft cluster when
+ * {@code carpooling.raft.enabled} is set. The two cannot be combined (see EngineConfiguration).
+ */
+@Configuration
+public class ServiceConfiguration {
+
+    @Bean
+    public CarPoolingService carPoolingService(
+            LocalFleet local,
+            CarPoolingMetrics metrics,
+            ObjectProvider<ShardedFleet> shardedFleet,
+            ObjectProvider<RaftManager> raftManager) {
+        ShardedFleet shards = shardedFleet.getIfAvailable();
+        if (shards != null) {
+            return new CarPoolingService(local, shards, metrics);
+        }
+
+        RaftManager raft = raftManager.getIfAvailable();
+        if (raft != null) {
+            // Writes go through the cluster before the web server takes requests
+            return new CarPoolingService(local, new ConsensusFleet(raft.server(), local), metrics);
+        }
+        return new CarPoolingService(local, metrics);
+    }
+}
@@ -0,0 +1,644 @@
+package com.cabify.carpooling.service;
+
+import com.cabify.carpooling.collection.IntIntHashMap.IntIntConsumer;
+import com.cabify.carpooling.engine.PoolingEngine;
+import com.cabify.carpooling.engine.ShardedEngine;
+import com.cabify.carpooling.exception.ExistingGroupException;
+import com.cabify.carpooling.exception.GroupNotFoundException;
+import com.cabify.carpooling.exception.InvalidPayloadException;
+import com.cabify.carpooling.logging.HotPathEvent;
+import com.cabify.carpooling.logging.HotPathLogger;
+import com.cabify.carpooling.metrics.CarPoolingMetrics;
+import com.cabify.carpooling.model.Car;
+import com.cabify.carpooling.model.DropoffResult;
+import com.cabify.carpooling.model.JourneyResult;
+import com.cabify.carpooling.repository.CarGeneration;
+import com.cabify.carpooling.repository.inmemory.InMemoryCarRepository;
+import com.cabify.carpooling.repository.inmemory.InMemoryGroupRepository;
+import com.cabify.carpooling.repository.inmemory.InMemoryJourneyRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The fleet of the sharded engine: every shard has its own cars, groups, journeys and waiting
+ * queue, only mutated on the shard's writer thread. A group belongs to the shard of its ID and a
+ * car to the shard of its own, so a group is located with two lookups. A group that no car of
+ * its shard can take is offered to the cars of the other shards, and seats still free after a
+ * dropoff are offered to the groups waiting in other shards, so the shards fill up as one fleet.
+ * Each shard serves its waiting groups oldest first; across shards the order is approximate.
+ * With the sharded engine it executes every operation of the CarPoolingService (see
+ * ServiceConfiguration), and its counts add up the shards.
+ */
+@Component
+@ConditionalOnProperty(name = "carpooling.engine.mode", havingValue = "sharded")
+public class ShardedFleet implements FleetOperations {
+
+    private static final int MAX_SEATS = 6;
+
+    private final ShardedEngine engine;
+    private final Shard[] shards;
+    private final CarPoolingMetrics metrics;
+    private final HotPathLogger log;
+
+    private final Counter overflowJourneys;
+    private final Counter stolenGroups;
+
+    @Autowired
+    public ShardedFleet(PoolingEngine engine, CarPoolingMetrics metrics, MeterRegistry registry, HotPathLogger log) {
+        this((ShardedEngine) engine, metrics, registry, log);
+    }
+
+    /**
+     * Create a fleet outside Spring, e.g. for benchmarks, to hand to a CarPoolingService.
+     */
+    public ShardedFleet(ShardedEngine engine, CarPoolingMetrics metrics, MeterRegistry registry, HotPathLogger log) {
+        this.engine = engine;
+        this.metrics = metrics;
+        this.log = log;
+
+        shards = new Shard[engine.shardCount()];
+        for (int i = 0; i < shards.length; i++) {
+            Shard shard = new Shard(i);
+            shards[i] = shard;
+
+            String index = String.valueOf(i);
+            Gauge.builder("carpooling.shard.waiting.groups", shard, Shard::countWaiting)
+                    .description("Groups in the waiting queue of a shard")
+                    .tag("shard", index)
+                    .register(registry);
+            Gauge.builder("carpooling.shard.free.seats", shard, Shard::totalFreeSeats)
+                    .description("Available seats across the cars in service of a shard")
+                    .tag("shard", index)
+                    .register(registry);
+            Gauge.builder("carpooling.shard.journeys.active", shard.journeys, InMemoryJourneyRepository::count)
+                    .description("Groups of a shard currently travelling")
+                    .tag("shard", index)
+                    .register(registry);
+        }
+
+        overflowJourneys = Counter.builder("carpooling.shard.overflow.journeys")
+                .description("Requested groups seated in a car of another shard")
+                .register(registry);
+        stolenGroups = Counter.builder("carpooling.shard.stolen.groups")
+                .description("Waiting groups seated in a car freed in another shard")
+                .register(registry);
+    }
+
+    @Override
+    public CarGeneration newFleet() {
+        return new Generation();
+    }
+
+    @Override
+    public void loadCars(List<Car> cars) {
+        Generation fleet = new Generation();
+        for (Car car : cars) {
+            fleet.add(car.getId(), car.getSeats());
+        }
+        loadCars(fleet);
+    }
+
+    @Override
+    public void loadCars(CarGeneration fleet) {
+        long startTime = System.currentTimeMillis();
+        Generation generation = (Generation) fleet;
+
+        engine.writeAndGet(() -> {
+            for (Shard shard : shards) {
+                write(shard, () -> {
+                    shard.groups.flush();
+                    shard.journeys.flush();
+                    shard.cars.install(generation.parts[shard.index]);
+                    return null;
+                });
+            }
+            return null;
+        });
+
+        log.log(HotPathEvent.CARS_LOADED, generation.size(), System.currentTimeMillis() - startTime);
+    }
+
+    @Override
+    public void updateFleet(List<Car> upserts, int[] retiredCarIds) {
+        long startTime = System.currentTimeMillis();
+
+        engine.writeAndGet(() -> {
+            // Validate everything first, so a bad update changes nothing
+            for (Car car : upserts) {
+                Shard shard = carShard(car.getId());
+                int occupiedSeats = engine.readShard(shard.index, () -> shard.occupiedSeats(car.getId()));
+                if (car.getSeats() < occupiedSeats) {
+                    throw new InvalidPayloadException(String.format(
+                            "Car %d cannot be resized to %d seats: %d seats are occupied",
+                            car.getId(), car.getSeats(), occupiedSeats));
+                }
+            }
+            for (int carId : retiredCarIds) {
+                Shard shard = carShard(carId);
+                if (!engine.readShard(shard.index, () -> shard.cars.contains(carId))) {
+                    throw new InvalidPayloadException(String.format("Car %d to retire does not exist", carId));
+                }
+            }
+
+            // Apply: remember which upserted cars gained seats
+            boolean[] gainedSeats = new boolean[upserts.size()];
+            for (int i = 0; i < upserts.size(); i++) {
+                Car car = upserts.get(i);
+                Shard shard = carShard(car.getId());
+                gainedSeats[i] = write(shard, () -> shard.upsert(car));
+            }
+            for (int carId : retiredCarIds) {
+                Shard shard = carShard(carId);
+                write(shard, () -> {
+                    shard.cars.retire(carId);
+                    return null;
+                });
+            }
+
+            // New and enlarged cars take waiting groups, from their own shard first
+            for (int i = 0; i < upserts.size(); i++) {
+                if (gainedSeats[i]) {
+                    int carId = upserts.get(i).getId();
+                    Shard shard = carShard(carId);
+                    offerFreeSeats(shard, carId, freeSeatsOf(write(shard, () -> shard.refill(carId))));
+                }
+            }
+            return null;
+        });
+
+        log.log(HotPathEvent.FLEET_UPDATED, upserts.size(), retiredCarIds.length, System.currentTimeMillis() - startTime);
+    }
+
+    @Override
+    public void requestJourney(int groupId, int people) {
+        seat(groupId, people);
+    }
+
+    /**
+     * Request a journey and return the assigned car ID, or null if the group is queued.
+     */
+    private Integer seat(int groupId, int people) {
+        long startTime = System.currentTimeMillis();
+
+        Integer carId = engine.shared(() -> {
+            Shard home = groupShard(groupId);
+            Integer homeCar = write(home, () -> home.admit(groupId, people));
+            return homeCar != null ? homeCar : seatElsewhere(home, groupId, people);
+        });
+
+        long duration = System.currentTimeMillis() - startTime;
+        if (carId != null) {
+            log.log(HotPathEvent.JOURNEY_ASSIGNED, groupId, people, carId, duration);
+        } else {
+            log.log(HotPathEvent.JOURNEY_QUEUED, groupId, people, duration);
+        }
+        return carId;
+    }
+
+    @Override
+    public List<JourneyResult> requestJourneys(int[] groupIds, int[] people) {
+        List<JourneyResult> results = new ArrayList<>(groupIds.length);
+
+        for (int i = 0; i < groupIds.length; i++) {
+            try {
+                Integer carId = seat(groupIds[i], people[i]);
+                results.add(carId != null
+                        ? JourneyResult.assigned(groupIds[i], getCar(carId))
+                        : JourneyResult.queued(groupIds[i]));
+            } catch (ExistingGroupException e) {
+                results.add(JourneyResult.duplicate(groupIds[i]));
+            }
+        }
+
+        return results;
+    }
+
+    @Override
+    public void dropoff(int groupId) {
+        long startTime = System.currentTimeMillis();
+
+        engine.shared(() -> {
+            Shard home = groupShard(groupId);
+            long journey = write(home, () -> home.leave(groupId));
+            int carId = carOf(journey);
+            int people = peopleOf(journey);
+            if (carId == NO_CAR) {
+                log.log(HotPathEvent.DROPOFF_WAITING, groupId, people, System.currentTimeMillis() - startTime);
+                return null;
+            }
+
+            // The car is refilled from its own shard first, then from the others
+            Shard owner = carShard(carId);
+            int refill = owner == home
+                    ? refillOf(journey)
+                    : write(owner, () -> owner.releaseAndRefill(carId, people));
+            int stolen = offerFreeSeats(owner, carId, freeSeatsOf(refill));
+            metrics.recordReallocation(seatedOf(refill) + stolen);
+
+            log.log(HotPathEvent.DROPOFF_TRAVELLING, groupId, people, carId, System.currentTimeMillis() - startTime);
+            return null;
+        });
+    }
+
+    @Override
+    public List<DropoffResult> dropoffs(int[] groupIds) {
+        List<DropoffResult> results = new ArrayList<>(groupIds.length);
+
+        for (int groupId : groupIds) {
+            try {
+                dropoff(groupId);
+                results.add(DropoffResult.ok(groupId));
+            } catch (GroupNotFoundException e) {
+                results.add(DropoffResult.notFound(groupId));
+            }
+        }
+
+        return results;
+    }
+
+    @Override
+    public Car locate(int groupId) {
+        Shard home = groupShard(groupId);
+        Integer carId = engine.readShard(home.index, () -> {
+            if (home.groups.getPeople(groupId) == null) {
+                throw new GroupNotFoundException();
+            }
+            return home.journeys.getCar(groupId);
+        });
+
+        return carId != null ? getCar(carId) : null;
+    }
+
+    @Override
+    public int countWaiting(int people) {
+        int waiting = 0;
+        for (Shard shard : shards) {
+            waiting += shard.groups.countWaiting(people);
+        }
+        return waiting;
+    }
+
+    @Override
+    public int countCars(int availableSeats) {
+        int cars = 0;
+        for (Shard shard : shards) {
+            cars += shard.cars.countCars(availableSeats);
+        }
+        return cars;
+    }
+
+    @Override
+    public int countJourneys() {
+        int journeys = 0;
+        for (Shard shard : shards) {
+            journeys += shard.journeys.count();
+        }
+        return journeys;
+    }
+
+    private Car getCar(int carId) {
+        Shard owner = carShard(carId);
+        return engine.readShard(owner.index, () -> owner.cars.get(carId));
+    }
+
+    /**
+     * Try the cars of the other shards for a group just queued at home, and return the car it got.
+     */
+    private Integer seatElsewhere(Shard home, int groupId, int people) {
+        for (int i = 1; i < shards.length; i++) {
+            Shard owner = shards[(home.index + i) % shards.length];
+
+            while (owner.maxFreeSeats >= people) {
+                Integer carId = write(owner, () -> owner.cars.findAndReserveCar(people));
+                if (carId == null) {
+                    // Out of date: the shard has just republished its free seats
+                    continue;
+                }
+
+                if (write(home, () -> home.seatWaiting(groupId, carId))) {
+                    overflowJourneys.increment();
+                    return carId;
+                }
+
+                // Seated at home or dropped off meanwhile: give the seats back
+                offerFreeSeats(owner, carId, freeSeatsOf(write(owner, () -> owner.releaseAndRefill(carId, people))));
+                return engine.readShard(home.index, () -> home.journeys.getCar(groupId));
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Offer the free seats of a car, already refilled from its own shard, to the oldest groups
+     * that fit among those waiting in the other shards, and return the number of groups seated.
+     */
+    private int offerFreeSeats(Shard owner, int carId, int freeSeats) {
+        int stolen = 0;
+        for (int i = 1; i < shards.length && freeSeats > 0; i++) {
+            Shard home = shards[(owner.index + i) % shards.length];
+
+            while (freeSeats > 0 && home.isWaitingFor(freeSeats)) {
+                int seats = freeSeats;
+                Integer groupId = engine.readShard(home.index, () -> home.groups.findOldestWaitingGroup(seats));
+                if (groupId == null) {
+                    break;
+                }
+                Integer people = engine.readShard(home.index, () -> home.groups.getPeople(groupId));
+                if (people == null) {
+                    continue;
+                }
+
+                if (!write(owner, () -> owner.cars.tryReserveSeats(carId, people))) {
+                    freeSeats = engine.readShard(owner.index, () -> owner.freeSeats(carId));
+                    continue;
+                }
+
+                if (write(home, () -> home.seatWaiting(groupId, carId))) {
+                    stolenGroups.increment();
+                    log.log(HotPathEvent.WAITING_GROUP_ASSIGNED, carId, groupId, people);
+                    freeSeats -= people;
+                    stolen++;
+                } else {
+                    // Seated elsewhere or dropped off meanwhile
+                    write(owner, () -> owner.cars.releaseSeats(carId, people));
+                }
+            }
+        }
+
+        return stolen;
+    }
+
+    /**
+     * Apply a mutation on a shard's writer thread, then publish the shard's hints.
+     */
+    private <T> T write(Shard shard, Supplier<T> mutation) {
+        return engine.writeShard(shard.index, () -> {
+            try {
+                return mutation.get();
+            } finally {
+                shard.publish();
+            }
+        });
+    }
+
+    private Shard groupShard(int groupId) {
+        return shards[engine.shardOf(groupId)];
+    }
+
+    private Shard carShard(int carId) {
+        return shards[engine.shardOf(carId)];
+    }
+
+    // A group dropped off, packed as its car (NO_CAR if it was waiting), its people and, for a
+    // car of the group's own shard, the refill of the car once released
+    private static final int NO_CAR = 0;
+
+    private static long journey(int carId, int people, int refill) {
+        return (long) carId << 32 | (long) refill << 8 | people;
+    }
+
+    private static int carOf(long journey) {
+        return (int) (journey >>> 32);
+    }
+
+    private static int refillOf(long journey) {
+        return (int) (journey >>> 8 & 0xFFFF);
+    }
+
+    private static int peopleOf(long journey) {
+        return (int) (journey & 0xFF);
+    }
+
+    // A refill of a car, packed as the waiting groups it seated and the seats still free
+    private static int packRefill(int seated, int freeSeats) {
+        return seated << 8 | freeSeats;
+    }
+
+    private static int seatedOf(int refill) {
+        return refill >>> 8;
+    }
+
+    private static int freeSeatsOf(int refill) {
+        return refill & 0xFF;
+    }
+
+    /**
+     * The state of one shard. Mutated on the shard's writer thread only.
+     */
+    private final class Shard {
+
+        final int index;
+        final InMemoryCarRepository cars = new InMemoryCarRepository();
+        final InMemoryGroupRepository groups = new InMemoryGroupRepository();
+        final InMemoryJourneyRepository journeys = new InMemoryJourneyRepository();
+
+        // Published after every mutation, so other shards can skip this one without a visit:
+        // the most free seats in one car, and a bit per size of group waiting
+        volatile int maxFreeSeats;
+        volatile int waitingSizes;
+
+        Shard(int index) {
+            this.index = index;
+        }
+
+        /**
+         * Register a group and seat it in a car of this shard, or queue it.
+         */
+        Integer admit(int groupId, int people) {
+            if (groups.getPeople(groupId) != null) {
+                throw new ExistingGroupException();
+            }
+            groups.save(groupId, people);
+
+            Integer carId = cars.findAndReserveCar(people);
+            if (carId != null) {
+                journeys.save(groupId, carId);
+            } else {
+                groups.enqueue(groupId, people);
+            }
+            return carId;
+        }
+
+        /**
+         * Seat a waiting group of this shard in a car, of any shard, whose seats are already reserved.
+         */
+        boolean seatWaiting(int groupId, int carId) {
+            if (groups.getPeople(groupId) == null || journeys.getCar(groupId) != null) {
+                return false;
+            }
+
+            groups.dequeue(groupId);
+            journeys.save(groupId, carId);
+            return true;
+        }
+
+        /**
+         * Remove a group of this shard and return its packed journey. A car of this shard is
+         * released and refilled straight away; one of another shard is left to the caller.
+         */
+        long leave(int groupId) {
+            Integer people = groups.getPeople(groupId);
+            if (people == null) {
+                throw new GroupNotFoundException();
+            }
+
+            Integer carId = journeys.getCar(groupId);
+            groups.remove(groupId);
+            if (carId == null) {
+                return journey(NO_CAR, people, 0);
+            }
+
+            journeys.remove(groupId);
+            int refill = engine.shardOf(carId) == index ? releaseAndRefill(carId, people) : 0;
+            return journey(carId, people, refill);
+        }
+
+        /**
+         * Release seats of a car of this shard, seat waiting groups of this shard in it, oldest
+         * first, and return the packed refill.
+         */
+        int releaseAndRefill(int carId, int people) {
+            cars.releaseSeats(carId, people);
+
+            return refill(carId);
+        }
+
+        /**
+         * Seat waiting groups of this shard in a car, oldest first among those that still fit,
+         * and return the packed refill: the groups seated and the seats still free.
+         * Retired cars are not refilled.
+         */
+        int refill(int carId) {
+            int freeSeats = freeSeats(carId);
+            int seated = 0;
+
+            while (freeSeats > 0) {
+                Integer groupId = groups.findOldestWaitingGroup(freeSeats);
+                if (groupId == null) {
+                    break;
+                }
+
+                int people = groups.getPeople(groupId);
+                if (!cars.tryReserveSeats(carId, people)) {
+                    break;
+                }
+
+                journeys.save(groupId, carId);
+                groups.dequeue(groupId);
+                freeSeats -= people;
+                seated++;
+            }
+            return packRefill(seated, freeSeats);
+        }
+
+        /**
+         * Add or resize a car and return whether it gained available seats.
+         */
+        boolean upsert(Car car) {
+            int availableBefore = cars.isRetired(car.getId()) ? 0 : cars.getAvailableSeats(car.getId());
+
+            cars.put(car);
+            return cars.getAvailableSeats(car.getId()) > availableBefore;
+        }
+
+        /**
+         * Get the seats a car of this shard can still take, 0 if it is retired or gone.
+         */
+        int freeSeats(int carId) {
+            return cars.contains(carId) && !cars.isRetired(carId) ? cars.getAvailableSeats(carId) : 0;
+        }
+
+        int occupiedSeats(int carId) {
+            Car car = cars.get(carId);
+            return car != null ? car.getSeats() - cars.getAvailableSeats(carId) : 0;
+        }
+
+        boolean isWaitingFor(int seats) {
+            return (waitingSizes & ((2 << Math.min(seats, MAX_SEATS)) - 2)) != 0;
+        }
+
+        void publish() {
+            int free = 0;
+            for (int seats = MAX_SEATS; seats > 0 && free == 0; seats--) {
+                if (cars.countCars(seats) > 0) {
+                    free = seats;
+                }
+            }
+
+            int waiting = 0;
+            for (int people = 1; people <= MAX_SEATS; people++) {
+                if (groups.countWaiting(people) > 0) {
+                    waiting |= 1 << people;
+                }
+            }
+
+            maxFreeSeats = free;
+            waitingSizes = waiting;
+        }
+
+        double countWaiting() {
+            int waiting = 0;
+            for (int people = 1; people <= MAX_SEATS; people++) {
+                waiting += groups.countWaiting(people);
+            }
+            return waiting;
+        }
+
+        double totalFreeSeats() {
+            long seats = 0;
+            for (int bucket = 1; bucket <= MAX_SEATS; bucket++) {
+                seats += (long) bucket * cars.countCars(bucket);
+            }
+            return seats;
+        }
+    }
+
+    /**
+     * A new fleet, split as it is filled into one generation per shard.
+     */
+    private final class Generation implements CarGeneration {
+
+        final CarGeneration[] parts = new CarGeneration[shards.length];
+
+        Generation() {
+            for (Shard shard : shards) {
+                parts[shard.index] = shard.cars.newGeneration();
+            }
+        }
+
+        @Override
+        public void add(int carId, int seats) {
+            parts[engine.shardOf(carId)].add(carId, seats);
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (CarGeneration part : parts) {
+                size += part.size();
+            }
+            return size;
+        }
+
+        @Override
+        public void restore(int carId, int seats, int availableSeats, boolean retired) {
+            parts[engine.shardOf(carId)].restore(carId, seats, availableSeats, retired);
+        }
+
+        @Override
+        public void forEach(IntIntConsumer consumer) {
+            for (CarGeneration part : parts) {
+                part.forEach(consumer);
+            }
+        }
+    }
+}
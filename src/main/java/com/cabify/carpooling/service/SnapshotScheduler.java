@@ -0,0 +1,114 @@
+package com.cabify.carpooling.service;
+
+import com.cabify.carpooling.persistence.SnapshotStore;
+import com.cabify.carpooling.persistence.StateSnapshot;
+import com.cabify.carpooling.persistence.WriteAheadLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes a snapshot every {@code carpooling.snapshot.interval} when the state changed, and a
+ * last one on shutdown. Writers only pause while the state is copied (with the copy-on-write
+ * engine, only while its latest version is pinned); encoding and file I/O run on the snapshot
+ * thread. Log segments the snapshot covers are deleted afterwards.
+ */
+@Component
+@ConditionalOnProperty(name = "carpooling.snapshot.enabled", havingValue = "true")
+public class SnapshotScheduler implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotScheduler.class);
+
+    private final CarPoolingService carPoolingService;
+    private final SnapshotStore snapshotStore;
+    private final WriteAheadLog wal;
+    private final Duration interval;
+
+    private ScheduledExecutorService executor;
+    private long lastSnapshotLsn;
+
+    public SnapshotScheduler(
+            CarPoolingService carPoolingService,
+            SnapshotStore snapshotStore,
+            WriteAheadLog wal,
+            @Value("${carpooling.snapshot.interval:5m}") Duration interval) {
+        this.carPoolingService = carPoolingService;
+        this.snapshotStore = snapshotStore;
+        this.wal = wal;
+        this.interval = interval;
+    }
+
+    @Override
+    public synchronized void start() {
+        lastSnapshotLsn = carPoolingService.lastLsn();
+
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::snapshotIfChanged,
+                interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void stop() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+
+        snapshotIfChanged();
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return executor != null;
+    }
+
+    /**
+     * Stop after the web server, so the last snapshot includes every request.
+     */
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    /**
+     * Take and write a snapshot unless nothing changed since the last one.
+     */
+    public synchronized void snapshotIfChanged() {
+        if (carPoolingService.lastLsn() == lastSnapshotLsn) {
+            return;
+        }
+
+        try {
+            long startNanos = System.nanoTime();
+            StateSnapshot snapshot = carPoolingService.snapshot();
+            long pauseNanos = System.nanoTime() - startNanos;
+
+            long bytes = snapshotStore.write(snapshot);
+            wal.truncateBefore(snapshot.lsn());
+            lastSnapshotLsn = snapshot.lsn();
+
+            log.info("Snapshot at LSN {} written: {} cars, {} groups, {} bytes, pause_us={}, total_ms={}",
+                    snapshot.lsn(), snapshot.carCount(), snapshot.groupCount(), bytes,
+                    TimeUnit.NANOSECONDS.toMicros(pauseNanos),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        } catch (IOException | RuntimeException e) {
+            log.error("Snapshot failed, keeping the previous one", e);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.cabify.carpooling.service;
+
+import com.cabify.carpooling.persistence.SnapshotStore;
+import com.cabify.carpooling.persistence.StateSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * Loads the latest snapshot and replays the write-ahead log after it while the context
+ * starts, so the web server (and /status) only comes up once the repositories are rebuilt.
+ */
+@Component
+public class StateRecovery implements InitializingBean {
+
+    private static final Logger log = LoggerFactory.getLogger(StateRecovery.class);
+
+    private final CarPoolingService carPoolingService;
+    private final ObjectProvider<SnapshotStore> snapshotStore;
+
+    public StateRecovery(CarPoolingService carPoolingService, ObjectProvider<SnapshotStore> snapshotStore) {
+        this.carPoolingService = carPoolingService;
+        this.snapshotStore = snapshotStore;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        long startTime = System.currentTimeMillis();
+
+        SnapshotStore store = snapshotStore.getIfAvailable();
+        StateSnapshot snapshot = store != null ? store.loadLatest() : null;
+        if (snapshot != null) {
+            log.info("Loaded snapshot at LSN {}: {} cars, {} groups",
+                    snapshot.lsn(), snapshot.carCount(), snapshot.groupCount());
+        }
+
+        carPoolingService.recover(snapshot);
+
+        log.info("State recovered up to LSN {} in {} ms",
+                carPoolingService.lastLsn(), System.currentTimeMillis() - startTime);
+    }
+}
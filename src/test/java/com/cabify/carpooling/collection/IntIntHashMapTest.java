@@ -0,0 +1,95 @@
+package com.cabify.carpooling.collection;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the primitive open-addressing maps.
+ */
+class IntIntHashMapTest {
+
+    private static final int MISSING = -1;
+
+    @Test
+    void testPutGetRemove() {
+        IntIntHashMap map = new IntIntHashMap(0, MISSING);
+
+        assertEquals(MISSING, map.put(1, 10));
+        assertEquals(10, map.put(1, 11));
+        assertEquals(11, map.get(1));
+        assertTrue(map.containsKey(1));
+        assertEquals(MISSING, map.get(2));
+        assertEquals(1, map.size());
+
+        assertEquals(11, map.remove(1));
+        assertEquals(MISSING, map.remove(1));
+        assertFalse(map.containsKey(1));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void testZeroAndNegativeKeys() {
+        IntIntHashMap map = new IntIntHashMap(0, MISSING);
+
+        map.put(0, 5);
+        map.put(-7, 6);
+
+        assertEquals(5, map.get(0));
+        assertEquals(6, map.get(-7));
+        assertEquals(2, map.size());
+
+        assertEquals(5, map.remove(0));
+        assertEquals(MISSING, map.get(0));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void testMatchesHashMapUnderRandomChurn() {
+        IntIntHashMap map = new IntIntHashMap(0, MISSING);
+        Map<Integer, Integer> reference = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 200_000; i++) {
+            // Small key space forces long probe chains and backward shifts
+            int key = random.nextInt(5_000);
+
+            if (random.nextInt(3) == 0) {
+                Integer expected = reference.remove(key);
+                assertEquals(expected == null ? MISSING : expected, map.remove(key));
+            } else {
+                int value = random.nextInt(1_000);
+                Integer expected = reference.put(key, value);
+                assertEquals(expected == null ? MISSING : expected, map.put(key, value));
+            }
+        }
+
+        assertEquals(reference.size(), map.size());
+        for (int key = 0; key < 5_000; key++) {
+            assertEquals(reference.getOrDefault(key, MISSING), map.get(key));
+        }
+
+        Map<Integer, Integer> visited = new HashMap<>();
+        map.forEach(visited::put);
+        assertEquals(reference, visited);
+    }
+
+    @Test
+    void testClearShrinksTable() {
+        IntIntHashMap map = new IntIntHashMap(0, MISSING);
+        for (int key = 1; key <= 100_000; key++) {
+            map.put(key, key);
+        }
+        long grown = map.footprintBytes();
+
+        map.clear();
+
+        assertTrue(map.isEmpty());
+        assertEquals(MISSING, map.get(1));
+        assertTrue(map.footprintBytes() < grown);
+    }
+}
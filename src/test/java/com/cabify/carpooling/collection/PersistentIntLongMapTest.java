@@ -0,0 +1,112 @@
+package com.cabify.carpooling.collection;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the persistent map and queue: same contents as their mutable counterparts,
+ * and older versions left untouched by later updates.
+ */
+class PersistentIntLongMapTest {
+
+    private static final long MISSING = -1;
+
+    @Test
+    void testPutGetRemove() {
+        PersistentIntLongMap empty = PersistentIntLongMap.empty();
+        PersistentIntLongMap one = empty.put(1, 10);
+        PersistentIntLongMap updated = one.put(1, 11);
+
+        assertSame(updated, updated.put(1, 11));
+        assertEquals(10, one.get(1, MISSING));
+        assertEquals(11, updated.get(1, MISSING));
+        assertEquals(MISSING, updated.get(2, MISSING));
+        assertEquals(1, updated.size());
+
+        PersistentIntLongMap removed = updated.remove(1);
+        assertSame(removed, removed.remove(1));
+        assertFalse(removed.containsKey(1));
+        assertTrue(updated.containsKey(1));
+        assertEquals(0, removed.size());
+        assertEquals(0, empty.size());
+    }
+
+    @Test
+    void testMatchesHashMapAndKeepsOldVersions() {
+        PersistentIntLongMap map = PersistentIntLongMap.empty();
+        Map<Integer, Long> reference = new HashMap<>();
+        List<PersistentIntLongMap> versions = new ArrayList<>();
+        List<Map<Integer, Long>> references = new ArrayList<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 200_000; i++) {
+            // Small key space, negative keys included, so nodes split and merge back often
+            int key = random.nextInt(5_000) - 1_000;
+            if (random.nextInt(3) == 0) {
+                map = map.remove(key);
+                reference.remove(key);
+            } else {
+                long value = random.nextLong();
+                map = map.put(key, value);
+                reference.put(key, value);
+            }
+
+            if (i % 20_000 == 0) {
+                versions.add(map);
+                references.add(new HashMap<>(reference));
+            }
+        }
+        versions.add(map);
+        references.add(reference);
+
+        for (int v = 0; v < versions.size(); v++) {
+            assertContents(references.get(v), versions.get(v));
+        }
+    }
+
+    @Test
+    void testQueueIsFifoAndKeepsOldVersions() {
+        PersistentLongQueue queue = PersistentLongQueue.empty();
+        for (long i = 0; i < 10; i++) {
+            queue = queue.offer(i);
+        }
+
+        PersistentLongQueue polled = queue.poll().poll().offer(10);
+        assertEquals(0, queue.peek());
+        assertEquals(10, queue.size());
+        assertEquals(2, polled.peek());
+        assertEquals(9, polled.size());
+
+        List<Long> elements = new ArrayList<>();
+        polled.filter(value -> value % 2 == 0).forEach(elements::add);
+        assertEquals(List.of(2L, 4L, 6L, 8L, 10L), elements);
+
+        elements.clear();
+        queue.forEach(elements::add);
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L), elements);
+
+        while (!polled.isEmpty()) {
+            polled = polled.poll();
+        }
+        assertSame(PersistentLongQueue.empty(), polled);
+    }
+
+    private static void assertContents(Map<Integer, Long> expected, PersistentIntLongMap actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int key = -1_000; key < 4_000; key++) {
+            assertEquals(expected.getOrDefault(key, MISSING), actual.get(key, MISSING), "key " + key);
+            assertEquals(expected.containsKey(key), actual.containsKey(key), "key " + key);
+        }
+
+        Map<Integer, Long> visited = new HashMap<>();
+        actual.forEach((key, value) -> assertNull(visited.put(key, value), "key " + key + " visited twice"));
+        assertEquals(expected, visited);
+    }
+}
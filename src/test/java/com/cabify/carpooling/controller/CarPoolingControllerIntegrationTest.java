@@ -34,6 +34,14 @@ class CarPoolingControllerIntegrationTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    void testPools_DisabledByDefault() throws Exception {
+        mockMvc.perform(put("/pools/madrid/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"id\": 1, \"seats\": 4}]"))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     void testPutCars_ValidPayload() throws Exception {
         List<CarDTO> cars = Arrays.asList(
@@ -56,6 +64,61 @@ class CarPoolingControllerIntegrationTest {
                 .andExpect(status().isBadRequest());
     }
 
+    @Test
+    void testPutCars_InvalidCarKeepsCurrentFleet() throws Exception {
+        mockMvc.perform(put("/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"id\": 1, \"seats\": 4, \"model\": {\"name\": \"x\"}}]"))
+                .andExpect(status().isOk());
+
+        JourneyDTO journey = new JourneyDTO(1, 4);
+        mockMvc.perform(post("/journey")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(journey)))
+                .andExpect(status().isOk());
+
+        // Invalid car at index 2, a null car, malformed JSON and non-array bodies are all rejected
+        mockMvc.perform(put("/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"id\": 2, \"seats\": 4}, {\"id\": 3, \"seats\": 5}, {\"id\": 4, \"seats\": 9}]"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(put("/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"id\": 2, \"seats\": 4}, null]"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(put("/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"id\": 2, \"seats\": 4}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(put("/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"id\": 2, \"seats\": 4}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(put("/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[]"))
+                .andExpect(status().isBadRequest());
+        // No coercion of other JSON types, and nothing may follow the array
+        for (String body : new String[] {
+                "[{\"id\": 2, \"seats\": true}]",
+                "[{\"id\": \"2\", \"seats\": 4}]",
+                "[{\"id\": 2, \"seats\": 4.5}]",
+                "[{\"id\": 2, \"seats\": 4}] [{\"id\": 3, \"seats\": 4}]",
+                "[{\"id\": 2, \"seats\": 4}] x"}) {
+            mockMvc.perform(put("/cars")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(body))
+                    .andExpect(status().isBadRequest());
+        }
+
+        // The state was not reset by any rejected load
+        mockMvc.perform(post("/locate")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .content("ID=1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(1));
+    }
+
     @Test
     void testPostJourney_ValidPayload() throws Exception {
         // First load cars
@@ -247,4 +310,188 @@ class CarPoolingControllerIntegrationTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.id").value(1));
     }
+
+    @Test
+    void testPostJourneysBatch_ReportsResultPerGroup() throws Exception {
+        List<CarDTO> cars = Arrays.asList(new CarDTO(1, 4));
+        mockMvc.perform(put("/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(cars)))
+                .andExpect(status().isOk());
+
+        // Group 1 takes the car, group 2 waits, group 1 again is a duplicate
+        List<JourneyDTO> journeys = Arrays.asList(
+                new JourneyDTO(1, 4),
+                new JourneyDTO(2, 2),
+                new JourneyDTO(1, 3));
+
+        mockMvc.perform(post("/journeys/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(journeys)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(jsonPath("$[0].status").value("assigned"))
+                .andExpect(jsonPath("$[0].car.id").value(1))
+                .andExpect(jsonPath("$[0].car.seats").value(4))
+                .andExpect(jsonPath("$[1].id").value(2))
+                .andExpect(jsonPath("$[1].status").value("queued"))
+                .andExpect(jsonPath("$[1].car").doesNotExist())
+                .andExpect(jsonPath("$[2].id").value(1))
+                .andExpect(jsonPath("$[2].status").value("duplicate"));
+
+        mockMvc.perform(post("/locate")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .content("ID=2"))
+                .andExpect(status().isNoContent());
+    }
+
+    @Test
+    void testPostJourneysBatch_InvalidItemRejectsBatch() throws Exception {
+        List<CarDTO> cars = Arrays.asList(new CarDTO(1, 6));
+        mockMvc.perform(put("/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(cars)))
+                .andExpect(status().isOk());
+
+        List<JourneyDTO> journeys = Arrays.asList(
+                new JourneyDTO(1, 2),
+                new JourneyDTO(2, 7));
+
+        mockMvc.perform(post("/journeys/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(journeys)))
+                .andExpect(status().isBadRequest());
+
+        // Nothing from the rejected batch was applied
+        mockMvc.perform(post("/locate")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .content("ID=1"))
+                .andExpect(status().isNotFound());
+
+        mockMvc.perform(post("/journeys/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[]"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testPostDropoffsBatch_ReportsResultPerGroup() throws Exception {
+        List<CarDTO> cars = Arrays.asList(new CarDTO(1, 4));
+        mockMvc.perform(put("/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(cars)))
+                .andExpect(status().isOk());
+
+        List<JourneyDTO> journeys = Arrays.asList(
+                new JourneyDTO(1, 4),
+                new JourneyDTO(2, 3));
+        mockMvc.perform(post("/journeys/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(journeys)))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(post("/dropoffs/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[1, 999]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(jsonPath("$[0].status").value("ok"))
+                .andExpect(jsonPath("$[1].id").value(999))
+                .andExpect(jsonPath("$[1].status").value("not_found"));
+
+        // The waiting group got the freed car
+        mockMvc.perform(post("/locate")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .content("ID=2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(1));
+
+        mockMvc.perform(post("/dropoffs/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[]"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testDeleteCars_ResetsWithoutCars() throws Exception {
+        mockMvc.perform(put("/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"id\": 1, \"seats\": 4}]"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/journey")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new JourneyDTO(1, 4))))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(delete("/cars"))
+                .andExpect(status().isOk());
+
+        // Groups are gone, and new ones wait until cars are added
+        mockMvc.perform(post("/locate")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .content("ID=1"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(post("/journey")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new JourneyDTO(2, 4))))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/locate")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .content("ID=2"))
+                .andExpect(status().isNoContent());
+    }
+
+    @Test
+    void testPatchCars_AddsCarsWithoutReset() throws Exception {
+        List<CarDTO> cars = Arrays.asList(new CarDTO(1, 4));
+        mockMvc.perform(put("/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(cars)))
+                .andExpect(status().isOk());
+
+        List<JourneyDTO> journeys = Arrays.asList(
+                new JourneyDTO(1, 4),
+                new JourneyDTO(2, 5));
+        mockMvc.perform(post("/journeys/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(journeys)))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(patch("/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"upsert\": [{\"id\": 2, \"seats\": 6}], \"retire\": [1]}"))
+                .andExpect(status().isOk());
+
+        // The journey on the retired car is kept and the waiting group got the new car
+        mockMvc.perform(post("/locate")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .content("ID=1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(1));
+        mockMvc.perform(post("/locate")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .content("ID=2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(2));
+
+        // Shrinking below occupancy, unknown or repeated cars reject the update
+        mockMvc.perform(patch("/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"upsert\": [{\"id\": 2, \"seats\": 4}]}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"retire\": [42]}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"upsert\": [{\"id\": 2, \"seats\": 6}], \"retire\": [2]}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{}"))
+                .andExpect(status().isBadRequest());
+    }
 }
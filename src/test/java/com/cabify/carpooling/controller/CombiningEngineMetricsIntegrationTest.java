@@ -0,0 +1,46 @@
+package com.cabify.carpooling.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Integration tests for the lock acquisition metrics of the combining engine.
+ */
+@SpringBootTest(properties = "carpooling.engine.mode=combining")
+@AutoConfigureMockMvc
+@AutoConfigureMetrics
+class CombiningEngineMetricsIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void testPrometheusEndpoint_ExposesLockAcquisitionsPerRequest() throws Exception {
+        mockMvc.perform(put("/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"id\": 1, \"seats\": 4}]"))
+                .andExpect(status().isOk());
+        for (int groupId = 1; groupId <= 3; groupId++) {
+            mockMvc.perform(post("/journey")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"id\": " + groupId + ", \"people\": 2}"))
+                    .andExpect(status().isOk());
+        }
+
+        // One request at a time: nothing to combine, every mutation takes the lock itself
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("carpooling_engine_requests_total 4.0")))
+                .andExpect(content().string(containsString("carpooling_engine_lock_acquisitions_total 4.0")))
+                .andExpect(content().string(containsString("carpooling_engine_lock_acquisitions_per_request 1.0")));
+    }
+}
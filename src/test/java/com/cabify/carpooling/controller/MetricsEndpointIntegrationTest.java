@@ -0,0 +1,66 @@
+package com.cabify.carpooling.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Integration tests for the engine metrics exposed at /actuator/prometheus.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureMetrics
+class MetricsEndpointIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void testPrometheusEndpoint_ExposesEngineMetrics() throws Exception {
+        mockMvc.perform(put("/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"id\": 1, \"seats\": 4}, {\"id\": 2, \"seats\": 6}]"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(post("/journey")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"id\": 1, \"people\": 4}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/journey")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"id\": 2, \"people\": 6}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/journey")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"id\": 3, \"people\": 3}"))
+                .andExpect(status().isOk());
+
+        // Dropping off group 1 frees car 1 for the waiting group of 3
+        mockMvc.perform(post("/dropoff")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .content("ID=1"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString(
+                        "carpooling_operation_seconds_count{operation=\"request_journey\",} 3.0")))
+                .andExpect(content().string(containsString(
+                        "carpooling_operation_seconds_bucket{operation=\"dropoff\"")))
+                .andExpect(content().string(containsString(
+                        "carpooling_waiting_groups{people=\"3\",} 0.0")))
+                .andExpect(content().string(containsString(
+                        "carpooling_cars{available_seats=\"1\",} 1.0")))
+                .andExpect(content().string(containsString("carpooling_free_seats 1.0")))
+                .andExpect(content().string(containsString("carpooling_journeys_active 2.0")))
+                .andExpect(content().string(containsString("carpooling_reallocated_groups_total 1.0")));
+    }
+}
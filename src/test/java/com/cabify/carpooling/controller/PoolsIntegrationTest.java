@@ -0,0 +1,116 @@
+package com.cabify.carpooling.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Integration tests for the independent pools served under /pools/{poolId}.
+ */
+@SpringBootTest(properties = {"carpooling.pools.enabled=true", "carpooling.pools.max=3"})
+@AutoConfigureMockMvc
+@AutoConfigureMetrics
+class PoolsIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void testPools_AreIndependentFleets() throws Exception {
+        putCars("/pools/madrid/cars", "[{\"id\": 1, \"seats\": 4}]");
+        putCars("/pools/barcelona/cars", "[{\"id\": 1, \"seats\": 6}, {\"id\": 2, \"seats\": 4}]");
+        putCars("/cars", "[{\"id\": 7, \"seats\": 5}]");
+
+        // The same group ID is a different group in every pool
+        requestJourney("/pools/madrid/journey", 1, 4).andExpect(status().isOk());
+        requestJourney("/pools/barcelona/journey", 1, 6).andExpect(status().isOk());
+        requestJourney("/journey", 1, 2).andExpect(status().isOk());
+
+        locate("/pools/madrid/locate", 1).andExpect(status().isOk()).andExpect(jsonPath("$.seats").value(4));
+        locate("/pools/barcelona/locate", 1).andExpect(status().isOk()).andExpect(jsonPath("$.seats").value(6));
+        locate("/locate", 1).andExpect(status().isOk()).andExpect(jsonPath("$.id").value(7));
+
+        // Resetting one pool leaves the others alone
+        putCars("/pools/madrid/cars", "[{\"id\": 1, \"seats\": 4}]");
+        locate("/pools/madrid/locate", 1).andExpect(status().isNotFound());
+        locate("/pools/barcelona/locate", 1).andExpect(status().isOk());
+        locate("/locate", 1).andExpect(status().isOk());
+
+        mockMvc.perform(post("/pools/barcelona/dropoffs/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[1, 2]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("ok"))
+                .andExpect(jsonPath("$[1].status").value("not_found"));
+
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("carpooling_pool_cars{available_seats=\"6\",pool=\"barcelona\",}")))
+                .andExpect(content().string(containsString("carpooling_cars{available_seats=\"0\",}")));
+    }
+
+    @Test
+    void testPools_InvalidFleetCreatesNoPool() throws Exception {
+        for (String cars : new String[]{"", "[]", "[{\"id\": 1, \"seats\": 9}]", "[{\"id\": 1, "}) {
+            mockMvc.perform(put("/pools/ghost/cars")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(cars))
+                    .andExpect(status().isBadRequest());
+        }
+
+        // The pool does not exist, so it still answers 404 and takes no pool slot
+        locate("/pools/ghost/locate", 1).andExpect(status().isNotFound());
+        requestJourney("/pools/ghost/journey", 1, 4).andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testPools_UnknownOrInvalidPool() throws Exception {
+        requestJourney("/pools/nowhere/journey", 1, 4).andExpect(status().isNotFound());
+        locate("/pools/nowhere/locate", 1).andExpect(status().isNotFound());
+
+        mockMvc.perform(put("/pools/bad.id/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"id\": 1, \"seats\": 4}]"))
+                .andExpect(status().isBadRequest());
+
+        // carpooling.pools.max=3 (other tests may have created some already)
+        for (String poolId : new String[]{"a", "b", "c", "d"}) {
+            mockMvc.perform(put("/pools/" + poolId + "/cars")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("[{\"id\": 1, \"seats\": 4}]"));
+        }
+        mockMvc.perform(put("/pools/e/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"id\": 1, \"seats\": 4}]"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private void putCars(String path, String cars) throws Exception {
+        mockMvc.perform(put(path)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(cars))
+                .andExpect(status().isOk());
+    }
+
+    private ResultActions requestJourney(String path, int groupId, int people)
+            throws Exception {
+        return mockMvc.perform(post(path)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"id\": " + groupId + ", \"people\": " + people + "}"));
+    }
+
+    private ResultActions locate(String path, int groupId) throws Exception {
+        return mockMvc.perform(post(path)
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .content("ID=" + groupId));
+    }
+}
@@ -0,0 +1,303 @@
+package com.cabify.carpooling.controller;
+
+import com.cabify.carpooling.CarPoolingApplication;
+import com.cabify.carpooling.routing.PartitionTable;
+import com.cabify.carpooling.service.PoolRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Integration tests for RouterController in front of two partition nodes running in this JVM,
+ * and a third partition whose node is down.
+ */
+@SpringBootTest(properties = "carpooling.router.enabled=true")
+@AutoConfigureMockMvc
+class RouterControllerIntegrationTest {
+
+    private static final int LIVE_NODES = 2;
+    private static final int DOWN = LIVE_NODES;
+
+    private static final List<ConfigurableApplicationContext> NODES = new ArrayList<>();
+    private static String partitions;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @DynamicPropertySource
+    static void partitions(DynamicPropertyRegistry registry) {
+        registry.add("carpooling.router.partitions", RouterControllerIntegrationTest::startNodes);
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        NODES.forEach(ConfigurableApplicationContext::close);
+        NODES.clear();
+        partitions = null;
+    }
+
+    @Test
+    void testRouter_ForwardsEachPoolToItsNode() throws Exception {
+        for (int partition = 0; partition < LIVE_NODES; partition++) {
+            String pool = poolOn(partition);
+            mockMvc.perform(put("/pools/" + pool + "/cars")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(cars(20)))
+                    .andExpect(status().isOk());
+
+            for (int groupId = 1; groupId <= 10; groupId++) {
+                mockMvc.perform(post("/pools/" + pool + "/journey")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"id\": " + groupId + ", \"people\": 4}"))
+                        .andExpect(status().isOk());
+            }
+            mockMvc.perform(post("/pools/" + pool + "/journey")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"id\": 3, \"people\": 1}"))
+                    .andExpect(status().isBadRequest());
+
+            // The pool lives on its owner only
+            for (int node = 0; node < LIVE_NODES; node++) {
+                assertEquals(node == partition, pools(node).poolIds().contains(pool), "node " + node);
+            }
+        }
+
+        String pool = poolOn(0);
+        mockMvc.perform(post("/pools/" + pool + "/dropoff")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .content("ID=3"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/pools/" + pool + "/locate")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .content("ID=3"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(post("/pools/" + poolOn(1) + "/locate")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .content("ID=3"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void testRouter_SeatsGroupsInAnyCarOfTheirPool() throws Exception {
+        // Groups 2 and 3 and car 1 hash apart, yet the one car carries both groups
+        for (String prefix : new String[]{"", "/pools/" + poolOn(1)}) {
+            mockMvc.perform(put(prefix + "/cars")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("[{\"id\": 1, \"seats\": 4}]"))
+                    .andExpect(status().isOk());
+
+            for (int groupId = 2; groupId <= 3; groupId++) {
+                mockMvc.perform(post(prefix + "/journey")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"id\": " + groupId + ", \"people\": 2}"))
+                        .andExpect(status().isOk());
+                mockMvc.perform(post(prefix + "/locate")
+                        .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                        .content("ID=" + groupId))
+                        .andExpect(status().isOk())
+                        .andExpect(jsonPath("$.id").value(1));
+            }
+        }
+    }
+
+    @Test
+    void testRouter_BatchesKeepRequestOrder() throws Exception {
+        String pool = poolOn(1);
+        mockMvc.perform(put("/pools/" + pool + "/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(cars(20)))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(post("/pools/" + pool + "/journeys/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"id\": 1, \"people\": 2}, {\"id\": 2, \"people\": 3}, {\"id\": 3, \"people\": 1},"
+                        + " {\"id\": 4, \"people\": 4}, {\"id\": 1, \"people\": 2}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id", contains(1, 2, 3, 4, 1)))
+                .andExpect(jsonPath("$[*].status", contains("assigned", "assigned", "assigned", "assigned", "duplicate")));
+
+        mockMvc.perform(post("/pools/" + pool + "/dropoffs/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[4, 99, 2, 1]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id", contains(4, 99, 2, 1)))
+                .andExpect(jsonPath("$[*].status", contains("ok", "not_found", "ok", "ok")));
+    }
+
+    @Test
+    void testRouter_UpdatesAndResetsFleets() throws Exception {
+        String pool = poolOn(0);
+        mockMvc.perform(put("/pools/" + pool + "/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(cars(2)))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(patch("/pools/" + pool + "/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"retire\": [1]}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/pools/" + pool + "/journey")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"id\": 1, \"people\": 4}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/pools/" + pool + "/locate")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .content("ID=1"))
+                .andExpect(jsonPath("$.id").value(2));
+
+        // Without cars, groups are dropped and new ones wait
+        mockMvc.perform(delete("/pools/" + pool + "/cars"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/pools/" + pool + "/locate")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .content("ID=1"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(post("/pools/" + pool + "/journey")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"id\": 2, \"people\": 4}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/pools/" + pool + "/locate")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .content("ID=2"))
+                .andExpect(status().isNoContent());
+    }
+
+    @Test
+    void testRouter_RejectsWhatNodesRejectBeforeForwarding() throws Exception {
+        String pool = poolOn(1);
+        mockMvc.perform(put("/pools/" + pool + "/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(cars(2)))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/pools/" + pool + "/journey")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"id\": 1, \"people\": 4}"))
+                .andExpect(status().isOk());
+
+        // Nodes read cars strictly: no coercion, no trailing content
+        String[] invalidFleets = {
+                "[{\"id\": 1, \"seats\": 4}, {\"id\": 2, \"seats\": 9}]",
+                "[]",
+                "[{\"id\": 1, \"seats\": \"4\"}]",
+                "[{\"id\": 1, \"seats\": 4.5}]",
+                "[{\"id\": \"1\", \"seats\": 4}]",
+                "[{\"id\": 1, \"seats\": 4}] garbage",
+                "[{\"id\": 1, \"seats\": 4}][]"
+        };
+        for (String fleet : invalidFleets) {
+            mockMvc.perform(put("/pools/" + pool + "/cars")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(fleet))
+                    .andExpect(status().isBadRequest());
+            mockMvc.perform(put("/pools/never-created/cars")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(fleet))
+                    .andExpect(status().isBadRequest());
+        }
+        mockMvc.perform(post("/pools/" + pool + "/journeys/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"id\": 2, \"people\": 2}, {\"id\": 3, \"people\": 7}]"))
+                .andExpect(status().isBadRequest());
+
+        // Nothing reached the nodes
+        mockMvc.perform(post("/pools/" + pool + "/locate")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .content("ID=1"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/pools/" + pool + "/locate")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .content("ID=2"))
+                .andExpect(status().isNotFound());
+        for (int node = 0; node < LIVE_NODES; node++) {
+            assertFalse(pools(node).poolIds().contains("never-created"));
+        }
+    }
+
+    @Test
+    void testRouter_UnreachablePartitionFailsOnlyItsPools() throws Exception {
+        String down = poolOn(DOWN);
+        mockMvc.perform(put("/pools/" + down + "/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(cars(2)))
+                .andExpect(status().isServiceUnavailable());
+        mockMvc.perform(post("/pools/" + down + "/journey")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"id\": 1, \"people\": 4}"))
+                .andExpect(status().isServiceUnavailable());
+
+        String up = poolOn(0);
+        mockMvc.perform(put("/pools/" + up + "/cars")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(cars(2)))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/pools/" + up + "/journey")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"id\": 1, \"people\": 4}"))
+                .andExpect(status().isOk());
+    }
+
+    private static String poolOn(int partition) {
+        PartitionTable table = PartitionTable.parse(partitions);
+        for (int i = 1; ; i++) {
+            if (table.partitionOf("pool-" + i) == partition) {
+                return "pool-" + i;
+            }
+        }
+    }
+
+    private static PoolRegistry pools(int node) {
+        return NODES.get(node).getBean(PoolRegistry.class);
+    }
+
+    private static String cars(int count) {
+        StringJoiner cars = new StringJoiner(",", "[", "]");
+        for (int carId = 1; carId <= count; carId++) {
+            cars.add("{\"id\": " + carId + ", \"seats\": 4}");
+        }
+        return cars.toString();
+    }
+
+    private static synchronized String startNodes() {
+        if (partitions == null) {
+            StringJoiner urls = new StringJoiner(",");
+            for (int i = 0; i < LIVE_NODES; i++) {
+                ConfigurableApplicationContext node = new SpringApplicationBuilder(CarPoolingApplication.class)
+                        .run("--server.port=0", "--spring.jmx.enabled=false", "--spring.devtools.restart.enabled=false",
+                                "--carpooling.pools.enabled=true");
+                NODES.add(node);
+                urls.add("http://localhost:" + ((ServletWebServerApplicationContext) node).getWebServer().getPort());
+            }
+            urls.add("http://localhost:" + closedPort());
+            partitions = urls.toString();
+        }
+        return partitions;
+    }
+
+    private static int closedPort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
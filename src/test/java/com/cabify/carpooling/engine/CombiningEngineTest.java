@@ -0,0 +1,90 @@
+package com.cabify.carpooling.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the combining engine: a burst of concurrent mutations behaves like the same
+ * mutations applied one at a time, and each caller gets its own result or failure.
+ */
+class CombiningEngineTest {
+
+    private static final int REQUESTS = 500;
+
+    @Test
+    void testConcurrentBurst_AppliedOnceEachInSomeSequentialOrder() throws Exception {
+        CombiningEngine engine = new CombiningEngine();
+        // Not thread-safe on purpose: only the engine keeps mutations apart
+        List<Integer> applied = new ArrayList<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(50);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> positions = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            int request = i;
+            positions.add(executor.submit(() -> {
+                start.await();
+                return engine.writeAndGet(() -> {
+                    applied.add(request);
+                    return applied.size() - 1;
+                });
+            }));
+        }
+        start.countDown();
+
+        boolean[] seen = new boolean[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) {
+            int position = positions.get(i).get();
+            assertFalse(seen[position], "position " + position + " returned twice");
+            seen[position] = true;
+            // Each caller sees the state right after its own mutation
+            assertEquals(i, engine.read(() -> applied.get(position)));
+        }
+        executor.shutdown();
+
+        assertEquals(REQUESTS, engine.read(applied::size));
+        assertEquals(REQUESTS, engine.requests());
+        assertTrue(engine.lockAcquisitions() >= 1 && engine.lockAcquisitions() <= REQUESTS,
+                "lock acquisitions: " + engine.lockAcquisitions());
+    }
+
+    @Test
+    void testFailingMutation_OnlyFailsItsCaller() throws Exception {
+        CombiningEngine engine = new CombiningEngine();
+        List<Integer> applied = new ArrayList<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            int request = i;
+            results.add(executor.submit(() -> engine.writeAndGet(() -> {
+                if (request % 10 == 0) {
+                    throw new IllegalArgumentException("request " + request);
+                }
+                applied.add(request);
+                return request;
+            })));
+        }
+
+        for (int i = 0; i < 100; i++) {
+            if (i % 10 == 0) {
+                Exception error = assertThrows(Exception.class, results.get(i)::get);
+                assertInstanceOf(IllegalArgumentException.class, error.getCause());
+                assertEquals("request " + i, error.getCause().getMessage());
+            } else {
+                assertEquals(i, results.get(i).get());
+            }
+        }
+        executor.shutdown();
+
+        assertEquals(90, engine.read(applied::size));
+    }
+}
@@ -0,0 +1,75 @@
+package com.cabify.carpooling.engine;
+
+import com.cabify.carpooling.repository.JourneyRepository;
+import com.cabify.carpooling.repository.inmemory.PersistentJourneyRepository;
+import com.cabify.carpooling.repository.inmemory.PersistentState;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the copy-on-write engine: queries never wait for a writer and see only whole
+ * mutations, and a failing mutation leaves nothing behind.
+ */
+class CopyOnWriteEngineTest {
+
+    @Test
+    void testQueryDuringWrite_SeesLastPublishedVersion() throws Exception {
+        PersistentState state = new PersistentState();
+        CopyOnWriteEngine engine = new CopyOnWriteEngine(state);
+        JourneyRepository journeys = new PersistentJourneyRepository(state);
+        engine.write(() -> journeys.save(1, 10));
+
+        CountDownLatch written = new CountDownLatch(1);
+        CountDownLatch queried = new CountDownLatch(1);
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> engine.write(() -> {
+            journeys.save(1, 11);
+            journeys.save(2, 20);
+            written.countDown();
+            await(queried);
+        }));
+
+        // The writer holds the lock halfway through its mutation
+        assertTrue(written.await(10, TimeUnit.SECONDS));
+        assertEquals(10, engine.read(() -> journeys.getCar(1)));
+        assertNull(engine.read(() -> journeys.getCar(2)));
+        queried.countDown();
+        writer.get(10, TimeUnit.SECONDS);
+
+        assertEquals(11, engine.read(() -> journeys.getCar(1)));
+        assertEquals(20, engine.read(() -> journeys.getCar(2)));
+    }
+
+    @Test
+    void testFailingMutation_RolledBack() {
+        PersistentState state = new PersistentState();
+        CopyOnWriteEngine engine = new CopyOnWriteEngine(state);
+        JourneyRepository journeys = new PersistentJourneyRepository(state);
+        engine.write(() -> journeys.save(1, 10));
+
+        assertThrows(IllegalStateException.class, () -> engine.write(() -> {
+            journeys.remove(1);
+            journeys.save(2, 20);
+            throw new IllegalStateException("rejected");
+        }));
+
+        assertEquals(10, engine.read(() -> journeys.getCar(1)));
+        // The next writer starts from the published version too
+        engine.write(() -> journeys.save(3, 30));
+        assertEquals(2, engine.read(journeys::count));
+        assertNull(engine.read(() -> journeys.getCar(2)));
+        assertEquals(10, engine.read(() -> journeys.getCar(1)));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.cabify.carpooling.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the single-writer engine: producers wait for a full ring without hanging, and a
+ * shutdown racing with producers applies or rejects every mutation, never leaving one waiting.
+ */
+class SingleWriterEngineTest {
+
+    private static final int THREADS = 16;
+
+    @Test
+    void testFullRing_EveryMutationApplied() throws Exception {
+        SingleWriterEngine engine = new SingleWriterEngine(4);
+        AtomicInteger applied = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> producers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            producers.add(executor.submit(() -> {
+                for (int i = 0; i < 2_000; i++) {
+                    engine.write(applied::incrementAndGet);
+                }
+            }));
+        }
+        for (Future<?> producer : producers) {
+            producer.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        engine.destroy();
+
+        assertEquals(THREADS * 2_000, applied.get());
+    }
+
+    @Test
+    void testDestroyWhileProducing_NoCallerLeftWaiting() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            SingleWriterEngine engine = new SingleWriterEngine(8);
+            AtomicInteger applied = new AtomicInteger();
+            AtomicInteger returned = new AtomicInteger();
+
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            List<Future<?>> producers = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                producers.add(executor.submit(() -> {
+                    try {
+                        while (true) {
+                            engine.write(applied::incrementAndGet);
+                            returned.incrementAndGet();
+                        }
+                    } catch (IllegalStateException e) {
+                        // Stopped: the expected way out
+                    }
+                }));
+            }
+
+            Thread.sleep(5);
+            engine.destroy();
+            for (Future<?> producer : producers) {
+                producer.get(10, TimeUnit.SECONDS);
+            }
+            executor.shutdown();
+
+            // Every mutation that was applied returned to its caller
+            assertEquals(applied.get(), returned.get(), "round " + round);
+        }
+    }
+}
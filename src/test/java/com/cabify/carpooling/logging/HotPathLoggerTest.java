@@ -0,0 +1,82 @@
+package com.cabify.carpooling.logging;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.cabify.carpooling.service.CarPoolingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for HotPathLogger.
+ */
+class HotPathLoggerTest {
+
+    private final Logger serviceLogger = (Logger) LoggerFactory.getLogger(CarPoolingService.class);
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+
+    private HotPathLogger hotPathLogger;
+
+    @BeforeEach
+    void setUp() {
+        appender.start();
+        serviceLogger.addAppender(appender);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        serviceLogger.detachAppender(appender);
+        if (hotPathLogger != null) {
+            hotPathLogger.destroy();
+        }
+    }
+
+    @Test
+    void testLog_FormatsOnBackgroundThread() {
+        hotPathLogger = new HotPathLogger(16, 1);
+
+        hotPathLogger.log(HotPathEvent.JOURNEY_ASSIGNED, 7, 4, 2, 0);
+        assertTrue(hotPathLogger.flush(5, TimeUnit.SECONDS));
+
+        assertEquals(1, appender.list.size());
+        ILoggingEvent event = appender.list.get(0);
+        assertEquals("Journey assigned successfully. group_id=7, people=4, car_id=2, duration_ms=0",
+                event.getFormattedMessage());
+        assertEquals("hot-path-log", event.getThreadName());
+    }
+
+    @Test
+    void testLog_SamplesSuccessButNeverWarnings() {
+        hotPathLogger = new HotPathLogger(64, 3);
+
+        for (int groupId = 1; groupId <= 9; groupId++) {
+            hotPathLogger.log(HotPathEvent.JOURNEY_QUEUED, groupId, 2, 0);
+        }
+        hotPathLogger.log(HotPathEvent.JOURNEY_ALREADY_ASSIGNED, 1, 2);
+        hotPathLogger.log(HotPathEvent.JOURNEY_ALREADY_ASSIGNED, 2, 2);
+        assertTrue(hotPathLogger.flush(5, TimeUnit.SECONDS));
+
+        List<String> messages = appender.list.stream()
+                .map(ILoggingEvent::getFormattedMessage)
+                .collect(Collectors.toList());
+
+        assertEquals(3, messages.stream().filter(m -> m.startsWith("Journey queued")).count());
+        assertTrue(messages.contains("Journey queued - no available car. group_id=1, people=2, duration_ms=0"));
+        assertTrue(messages.contains("Journey queued - no available car. group_id=4, people=2, duration_ms=0"));
+        assertEquals(2, messages.stream().filter(m -> m.startsWith("Journey request for group already")).count());
+    }
+
+    @Test
+    void testConstructor_RejectsInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new HotPathLogger(1000, 1));
+        assertThrows(IllegalArgumentException.class, () -> new HotPathLogger(16, 0));
+    }
+}
@@ -0,0 +1,133 @@
+package com.cabify.carpooling.persistence;
+
+import com.cabify.carpooling.model.Car;
+import com.cabify.carpooling.repository.CarGeneration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for FileWriteAheadLog, replayed through a CarPoolingService wired by hand.
+ */
+class FileWriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<PersistentService> nodes = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (PersistentService node : nodes) {
+            node.close();
+        }
+    }
+
+    @Test
+    void testRecover_RebuildsAssignmentsAndQueueOrder() throws Exception {
+        PersistentService node = start(64 * 1024);
+        CarGeneration fleet = node.service.newFleet();
+        fleet.add(1, 4);
+        fleet.add(2, 6);
+        fleet.add(1, 5);
+        node.service.loadCars(fleet);
+        node.service.requestJourney(10, 4);
+        node.service.requestJourney(11, 6);
+        node.service.requestJourney(12, 3);
+        node.service.requestJourneys(new int[]{13, 10, 14}, new int[]{2, 1, 1});
+        node.service.updateFleet(Arrays.asList(new Car(3, 4)), new int[]{2});
+        node.service.dropoff(11);
+        node.service.dropoffs(new int[]{10, 99});
+        node.close();
+
+        PersistentService recovered = start(64 * 1024);
+
+        PersistentService.assertSameState(node, recovered, 10, 11, 12, 13, 14);
+        assertEquals(3, recovered.service.locate(12).getId());
+        assertFalse(recovered.cars.contains(2));
+    }
+
+    @Test
+    void testRecover_TruncatesTornTailAndKeepsAppending() throws Exception {
+        PersistentService node = start(64 * 1024);
+        node.service.loadCars(Arrays.asList(new Car(1, 4)));
+        node.service.requestJourney(1, 4);
+        node.service.requestJourney(2, 2);
+        node.close();
+
+        // A crash in the middle of a write leaves half a record behind
+        Path segment = segments().get(0);
+        Files.write(segment, new byte[]{0, 0, 0, 9, 1, 2}, StandardOpenOption.APPEND);
+
+        PersistentService recovered = start(64 * 1024);
+        PersistentService.assertSameState(node, recovered, 1, 2);
+
+        recovered.service.dropoff(1);
+        recovered.close();
+
+        PersistentService again = start(64 * 1024);
+        assertEquals(1, again.service.locate(2).getId());
+        assertThrows(Exception.class, () -> again.service.locate(1));
+    }
+
+    @Test
+    void testRecover_ReadsEverySegment() throws Exception {
+        PersistentService node = start(32);
+        node.service.loadCars(Arrays.asList(new Car(1, 6), new Car(2, 6)));
+        for (int groupId = 1; groupId <= 20; groupId++) {
+            node.service.requestJourney(groupId, 1 + groupId % 3);
+        }
+        node.service.dropoffs(new int[]{1, 2, 3});
+        node.close();
+
+        assertTrue(segments().size() > 1);
+
+        PersistentService recovered = start(32);
+        PersistentService.assertSameState(node, recovered, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20);
+    }
+
+    @Test
+    void testRecover_RecordLargerThanSegment() throws Exception {
+        List<Car> cars = new ArrayList<>();
+        for (int carId = 1; carId <= 100; carId++) {
+            cars.add(new Car(carId, 4));
+        }
+
+        // The load record alone is several times the segment size
+        PersistentService node = start(32);
+        node.service.loadCars(cars);
+        node.service.requestJourney(1, 4);
+        node.service.requestJourney(2, 3);
+        node.close();
+
+        PersistentService recovered = start(32);
+        PersistentService.assertSameState(node, recovered, 1, 2);
+        assertTrue(recovered.cars.contains(100));
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = new ArrayList<>();
+            files.sorted().forEach(segments::add);
+            return segments;
+        }
+    }
+
+    private PersistentService start(long segmentSize) throws Exception {
+        PersistentService node = new PersistentService(new FileWriteAheadLog(directory, segmentSize, true));
+        nodes.add(node);
+        node.service.recover(null);
+        return node;
+    }
+}
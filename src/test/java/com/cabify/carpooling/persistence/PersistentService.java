@@ -0,0 +1,73 @@
+package com.cabify.carpooling.persistence;
+
+import com.cabify.carpooling.engine.LockingEngine;
+import com.cabify.carpooling.logging.HotPathLogger;
+import com.cabify.carpooling.metrics.CarPoolingMetrics;
+import com.cabify.carpooling.raft.Consensus;
+import com.cabify.carpooling.replication.ReplicationHub;
+import com.cabify.carpooling.repository.inmemory.InMemoryCarRepository;
+import com.cabify.carpooling.repository.inmemory.InMemoryGroupRepository;
+import com.cabify.carpooling.repository.inmemory.InMemoryJourneyRepository;
+import com.cabify.carpooling.service.CarPoolingService;
+import com.cabify.carpooling.service.ConsensusFleet;
+import com.cabify.carpooling.service.LocalFleet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * A CarPoolingService wired by hand over a given write-ahead log, for restart, replication
+ * and Raft tests.
+ */
+public final class PersistentService implements AutoCloseable {
+
+    public final InMemoryCarRepository cars = new InMemoryCarRepository();
+    public final InMemoryGroupRepository groups = new InMemoryGroupRepository();
+    public final InMemoryJourneyRepository journeys = new InMemoryJourneyRepository();
+    public final ReplicationHub replication = new ReplicationHub(64 * 1024 * 1024);
+    final HotPathLogger hotPathLogger = new HotPathLogger(1024, 1);
+    final WriteAheadLog wal;
+    public final LocalFleet fleet;
+    public final CarPoolingService service;
+
+    public PersistentService(WriteAheadLog wal) {
+        this(wal, null);
+    }
+
+    /**
+     * Send writes through the consensus built over the local fleet, if one is given.
+     */
+    public PersistentService(WriteAheadLog wal, Function<LocalFleet, Consensus> consensus) {
+        this.wal = wal;
+        CarPoolingMetrics metrics = new CarPoolingMetrics(new SimpleMeterRegistry());
+        this.fleet = new LocalFleet(cars, groups, journeys, new LockingEngine(), metrics, hotPathLogger, wal, replication);
+        this.service = consensus != null
+                ? new CarPoolingService(fleet, new ConsensusFleet(consensus.apply(fleet), fleet), metrics)
+                : new CarPoolingService(fleet, metrics);
+    }
+
+    /**
+     * Assert both services hold the same groups, queue order and seat buckets.
+     */
+    public static void assertSameState(PersistentService expected, PersistentService actual, int... groupIds) {
+        for (int groupId : groupIds) {
+            assertEquals(expected.groups.getPeople(groupId), actual.groups.getPeople(groupId), "group " + groupId);
+            assertEquals(expected.journeys.getCar(groupId), actual.journeys.getCar(groupId), "group " + groupId);
+        }
+        assertEquals(expected.groups.getWaitingQueue(), actual.groups.getWaitingQueue());
+        for (int seats = 0; seats <= 6; seats++) {
+            assertEquals(expected.cars.countCars(seats), actual.cars.countCars(seats));
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (wal instanceof DisposableBean) {
+            ((DisposableBean) wal).destroy();
+        }
+        hotPathLogger.destroy();
+    }
+}
@@ -0,0 +1,125 @@
+package com.cabify.carpooling.persistence;
+
+import com.cabify.carpooling.model.Car;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SnapshotStore and snapshot-based recovery.
+ */
+class SnapshotStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<PersistentService> nodes = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (PersistentService node : nodes) {
+            node.close();
+        }
+    }
+
+    @Test
+    void testSnapshot_RestoresStateAndQueueOrder() throws Exception {
+        SnapshotStore store = new SnapshotStore(directory.resolve("snapshots"), 2);
+        PersistentService node = start(new NoOpWriteAheadLog(), null);
+        node.service.loadCars(Arrays.asList(new Car(1, 4), new Car(2, 6), new Car(3, 5), new Car(4, 4)));
+        node.service.requestJourney(10, 3);
+        node.service.requestJourney(11, 6);
+        node.service.requestJourney(12, 4);
+        node.service.requestJourney(13, 2);
+        node.service.requestJourney(14, 4);
+        node.service.requestJourney(15, 1);
+        node.service.requestJourney(16, 5);
+        node.service.requestJourney(17, 2);
+        node.service.updateFleet(List.of(), new int[]{2});
+
+        store.write(node.service.snapshot());
+        assertEquals(10, node.service.lastLsn());
+
+        PersistentService restored = start(new NoOpWriteAheadLog(), store.loadLatest());
+        PersistentService.assertSameState(node, restored, 10, 11, 12, 13, 14, 15, 16, 17);
+        assertTrue(restored.cars.isRetired(2));
+        assertEquals(10, restored.service.lastLsn());
+
+        // Freed seats go to the same waiting groups on both sides
+        for (PersistentService side : Arrays.asList(node, restored)) {
+            side.service.dropoff(12);
+            side.service.dropoff(11);
+            side.service.requestJourney(18, 1);
+        }
+        PersistentService.assertSameState(node, restored, 10, 11, 12, 13, 14, 15, 16, 17, 18);
+        assertFalse(restored.cars.contains(2));
+    }
+
+    @Test
+    void testRecover_LoadsSnapshotThenLogTail() throws Exception {
+        Path logDirectory = directory.resolve("wal");
+        SnapshotStore store = new SnapshotStore(directory.resolve("snapshots"), 2);
+        PersistentService node = start(new FileWriteAheadLog(logDirectory, 64, true), null);
+        node.service.loadCars(Arrays.asList(new Car(1, 6), new Car(2, 6)));
+        for (int groupId = 1; groupId <= 12; groupId++) {
+            node.service.requestJourney(groupId, 1 + groupId % 4);
+        }
+
+        StateSnapshot snapshot = node.service.snapshot();
+        store.write(snapshot);
+        node.wal.truncateBefore(snapshot.lsn());
+        assertTrue(files(logDirectory).size() < 13);
+
+        node.service.dropoffs(new int[]{1, 2});
+        node.service.requestJourney(13, 2);
+        node.close();
+
+        PersistentService recovered = start(new FileWriteAheadLog(logDirectory, 64, true), store.loadLatest());
+        PersistentService.assertSameState(node, recovered, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13);
+        assertEquals(node.service.lastLsn(), recovered.service.lastLsn());
+    }
+
+    @Test
+    void testLoadLatest_SkipsCorruptSnapshot() throws Exception {
+        Path snapshotDirectory = directory.resolve("snapshots");
+        SnapshotStore store = new SnapshotStore(snapshotDirectory, 2);
+        PersistentService node = start(new NoOpWriteAheadLog(), null);
+        node.service.loadCars(Arrays.asList(new Car(1, 4)));
+        store.write(node.service.snapshot());
+        node.service.requestJourney(1, 2);
+        store.write(node.service.snapshot());
+
+        Path newest = files(snapshotDirectory).get(1);
+        byte[] bytes = Files.readAllBytes(newest);
+        bytes[bytes.length / 2] ^= 0x40;
+        Files.write(newest, bytes);
+
+        StateSnapshot snapshot = store.loadLatest();
+        assertEquals(1, snapshot.lsn());
+        assertEquals(0, snapshot.groupCount());
+    }
+
+    private List<Path> files(Path path) throws IOException {
+        try (Stream<Path> files = Files.list(path)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private PersistentService start(WriteAheadLog wal, StateSnapshot snapshot) throws Exception {
+        PersistentService node = new PersistentService(wal);
+        nodes.add(node);
+        node.service.recover(snapshot);
+        return node;
+    }
+}
@@ -0,0 +1,71 @@
+package com.cabify.carpooling.raft;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileRaftStorageTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testReopen_RestoresVoteAndEntriesAfterTruncation() throws IOException {
+        try (FileRaftStorage storage = new FileRaftStorage(directory, true)) {
+            storage.saveVote(2, 3);
+            storage.append(1, 1, new byte[]{1});
+            storage.append(2, 2, new byte[]{2});
+            storage.append(3, 2, new byte[]{3});
+            storage.truncateFrom(2);
+            storage.append(2, 3, new byte[]{4, 5});
+            storage.saveVote(3, 1);
+            storage.sync();
+        }
+
+        try (FileRaftStorage storage = new FileRaftStorage(directory, true)) {
+            assertEquals(3, storage.term());
+            assertEquals(1, storage.votedFor());
+            List<String> entries = entries(storage);
+            assertEquals(List.of("1:1:[1]", "2:3:[4, 5]"), entries);
+        }
+    }
+
+    @Test
+    void testReopen_CutsTornTail() throws IOException {
+        try (FileRaftStorage storage = new FileRaftStorage(directory, false)) {
+            storage.append(1, 1, new byte[]{1});
+            storage.append(2, 1, new byte[]{2});
+            storage.sync();
+        }
+
+        Path file = directory.resolve("raft.log");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+
+        try (FileRaftStorage storage = new FileRaftStorage(directory, false)) {
+            assertEquals(List.of("1:1:[1]"), entries(storage));
+            storage.append(2, 1, new byte[]{9});
+            storage.sync();
+        }
+        try (FileRaftStorage storage = new FileRaftStorage(directory, false)) {
+            assertEquals(List.of("1:1:[1]", "2:1:[9]"), entries(storage));
+        }
+    }
+
+    private static List<String> entries(RaftStorage storage) {
+        List<String> entries = new ArrayList<>();
+        storage.forEachEntry((index, term, command) ->
+                entries.add(index + ":" + term + ":" + Arrays.toString(command)));
+        return entries;
+    }
+}
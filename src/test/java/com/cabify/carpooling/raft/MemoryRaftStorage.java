@@ -0,0 +1,61 @@
+package com.cabify.carpooling.raft;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Raft storage held in memory, surviving simulated crashes as long as the object is kept.
+ */
+final class MemoryRaftStorage implements RaftStorage {
+
+    private long term;
+    private int votedFor;
+    private final List<Long> terms = new ArrayList<>();
+    private final List<byte[]> commands = new ArrayList<>();
+
+    @Override
+    public long term() {
+        return term;
+    }
+
+    @Override
+    public int votedFor() {
+        return votedFor;
+    }
+
+    @Override
+    public void forEachEntry(EntryConsumer consumer) {
+        for (int i = 0; i < commands.size(); i++) {
+            consumer.accept(i + 1, terms.get(i), commands.get(i));
+        }
+    }
+
+    @Override
+    public void saveVote(long term, int votedFor) {
+        this.term = term;
+        this.votedFor = votedFor;
+    }
+
+    @Override
+    public void append(long index, long term, byte[] command) {
+        if (index != commands.size() + 1) {
+            throw new IllegalStateException("Entry " + index + " does not follow " + commands.size());
+        }
+        terms.add(term);
+        commands.add(command);
+    }
+
+    @Override
+    public void truncateFrom(long index) {
+        terms.subList((int) index - 1, terms.size()).clear();
+        commands.subList((int) index - 1, commands.size()).clear();
+    }
+
+    @Override
+    public void sync() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,190 @@
+package com.cabify.carpooling.raft;
+
+import com.cabify.carpooling.exception.GroupNotFoundException;
+import com.cabify.carpooling.persistence.BinaryWriter;
+import com.cabify.carpooling.persistence.Commands;
+import com.cabify.carpooling.persistence.PersistentService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Raft consensus on a simulated network: elections, replication, partitions, crashes and
+ * message loss, checking that every node ends with the same allocation state.
+ */
+class RaftNodeTest {
+
+    private RaftSimulation cluster;
+
+    @AfterEach
+    void tearDown() {
+        if (cluster != null) {
+            cluster.close();
+        }
+    }
+
+    @Test
+    void testReplication_AppliesSameAssignmentsOnEveryNode() {
+        cluster = new RaftSimulation(3, 1);
+        RaftNode leader = cluster.awaitLeader();
+
+        cluster.propose(leader, loadCars(1, 4, 2, 6));
+        cluster.propose(leader, requestJourney(10, 4));
+        cluster.propose(leader, requestJourney(11, 6));
+        cluster.propose(leader, requestJourney(12, 3));
+        cluster.propose(leader, dropoff(11));
+        cluster.awaitConverged();
+
+        assertSameStateEverywhere(10, 11, 12);
+        for (PersistentService node : cluster.liveServices()) {
+            assertEquals(2, node.service.locate(12).getId());
+            assertThrows(GroupNotFoundException.class, () -> node.service.locate(11));
+        }
+        cluster.assertLogsMatch();
+    }
+
+    @Test
+    void testFollower_RejectsProposals() {
+        cluster = new RaftSimulation(3, 2);
+        RaftNode leader = cluster.awaitLeader();
+        RaftNode follower = cluster.node(leader.id() % 3 + 1);
+
+        assertEquals(-1, cluster.propose(follower, requestJourney(1, 2)));
+        assertEquals(leader.id(), follower.leaderId());
+    }
+
+    @Test
+    void testPartition_MinorityLeaderStepsDownAndLosesUncommittedCommands() {
+        cluster = new RaftSimulation(5, 3);
+        RaftNode oldLeader = cluster.awaitLeader();
+        cluster.propose(oldLeader, loadCars(1, 4, 2, 4, 3, 4));
+        cluster.propose(oldLeader, requestJourney(1, 4));
+        cluster.awaitConverged();
+
+        // The old leader keeps one follower, the other three elect a new leader
+        int companion = oldLeader.id() % 5 + 1;
+        cluster.partition(oldLeader.id(), companion);
+        long lost = cluster.propose(oldLeader, requestJourney(99, 2));
+        assertTrue(lost > 0);
+
+        cluster.tick(RaftSimulation.ELECTION_TICKS * 3);
+        RaftNode newLeader = cluster.leader();
+        assertNotEquals(oldLeader.id(), newLeader.id());
+        assertNotEquals(companion, newLeader.id());
+        assertFalse(oldLeader.isLeader(), "a leader without a majority must step down");
+        assertTrue(oldLeader.commitIndex() < lost);
+
+        cluster.propose(newLeader, requestJourney(2, 4));
+        cluster.propose(newLeader, dropoff(1));
+        cluster.heal();
+        cluster.awaitConverged();
+
+        assertSameStateEverywhere(1, 2, 99);
+        for (PersistentService node : cluster.liveServices()) {
+            assertThrows(GroupNotFoundException.class, () -> node.service.locate(99));
+            assertNotNull(node.service.locate(2));
+        }
+        cluster.assertLogsMatch();
+    }
+
+    @Test
+    void testLeaderCrash_NewLeaderKeepsCommittedCommandsAndRestartedNodeCatchesUp() {
+        cluster = new RaftSimulation(3, 4);
+        RaftNode leader = cluster.awaitLeader();
+        cluster.propose(leader, loadCars(1, 6, 2, 6));
+        cluster.propose(leader, requestJourney(1, 5));
+        cluster.propose(leader, requestJourney(2, 5));
+        cluster.awaitConverged();
+
+        cluster.crash(leader.id());
+        cluster.tick(RaftSimulation.ELECTION_TICKS * 3);
+        RaftNode newLeader = cluster.awaitLeader();
+        assertNotEquals(leader.id(), newLeader.id());
+        cluster.propose(newLeader, requestJourney(3, 1));
+        cluster.propose(newLeader, requestJourney(4, 1));
+
+        cluster.restart(leader.id());
+        cluster.awaitConverged();
+
+        assertSameStateEverywhere(1, 2, 3, 4);
+        assertEquals(cluster.service(newLeader.id()).service.lastLsn(), cluster.service(leader.id()).service.lastLsn());
+        cluster.assertLogsMatch();
+    }
+
+    @Test
+    void testLossyNetwork_ConvergesAfterRandomFailures() {
+        cluster = new RaftSimulation(5, 5);
+        Random random = new Random(42);
+        cluster.propose(cluster.awaitLeader(), loadCars(1, 4, 2, 6, 3, 5, 4, 3));
+        cluster.dropMessages(0.2);
+
+        for (int round = 0; round < 300; round++) {
+            RaftNode leader = cluster.leader();
+            if (leader != null) {
+                int groupId = random.nextInt(40) + 1;
+                cluster.propose(leader, random.nextInt(3) == 0 ? dropoff(groupId) : requestJourney(groupId, random.nextInt(6) + 1));
+            }
+            if (round % 50 == 25) {
+                cluster.partition(random.nextInt(5) + 1);
+            } else if (round % 50 == 40) {
+                cluster.heal();
+                cluster.dropMessages(0.2);
+            }
+            cluster.tick(1);
+        }
+
+        cluster.heal();
+        cluster.awaitConverged();
+
+        int[] groupIds = new int[40];
+        for (int i = 0; i < groupIds.length; i++) {
+            groupIds[i] = i + 1;
+        }
+        assertSameStateEverywhere(groupIds);
+        cluster.assertLogsMatch();
+    }
+
+    @Test
+    void testSingleNode_CommitsOnItsOwn() {
+        cluster = new RaftSimulation(1, 6);
+        RaftNode leader = cluster.awaitLeader();
+
+        cluster.propose(leader, loadCars(1, 4));
+        cluster.propose(leader, requestJourney(1, 4));
+        cluster.awaitConverged();
+
+        assertEquals(1, cluster.service(leader.id()).service.locate(1).getId());
+    }
+
+    private void assertSameStateEverywhere(int... groupIds) {
+        List<PersistentService> nodes = cluster.liveServices();
+        for (PersistentService node : nodes.subList(1, nodes.size())) {
+            PersistentService.assertSameState(nodes.get(0), node, groupIds);
+        }
+    }
+
+    private static BinaryWriter loadCars(int... carIdsAndSeats) {
+        BinaryWriter out = new BinaryWriter(64);
+        Commands.loadCars(out, carIdsAndSeats.length / 2);
+        for (int i = 0; i < carIdsAndSeats.length; i += 2) {
+            Commands.car(out, carIdsAndSeats[i], carIdsAndSeats[i + 1]);
+        }
+        return out;
+    }
+
+    private static BinaryWriter requestJourney(int groupId, int people) {
+        BinaryWriter out = new BinaryWriter(8);
+        Commands.requestJourney(out, groupId, people);
+        return out;
+    }
+
+    private static BinaryWriter dropoff(int groupId) {
+        BinaryWriter out = new BinaryWriter(8);
+        Commands.dropoff(out, groupId);
+        return out;
+    }
+}
@@ -0,0 +1,190 @@
+package com.cabify.carpooling.raft;
+
+import com.cabify.carpooling.exception.ExistingGroupException;
+import com.cabify.carpooling.exception.NotPrimaryException;
+import com.cabify.carpooling.model.Car;
+import com.cabify.carpooling.model.DropoffResult;
+import com.cabify.carpooling.model.JourneyResult;
+import com.cabify.carpooling.persistence.NoOpWriteAheadLog;
+import com.cabify.carpooling.persistence.PersistentService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Three Raft nodes over localhost TCP, each wired to its own CarPoolingService.
+ */
+class RaftServerTest {
+
+    private static final int SIZE = 3;
+
+    @TempDir
+    Path directory;
+
+    private final Map<Integer, InetSocketAddress> members = new LinkedHashMap<>();
+    private final RaftServer[] servers = new RaftServer[SIZE + 1];
+    private final PersistentService[] nodes = new PersistentService[SIZE + 1];
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (int id = 1; id <= SIZE; id++) {
+            stop(id);
+        }
+    }
+
+    @Test
+    void testCluster_ReplicatesWritesAndFailsOver() throws Exception {
+        startCluster(15, 5000);
+
+        int leader = awaitLeader();
+        nodes[leader].service.loadCars(Arrays.asList(new Car(1, 4), new Car(2, 6)));
+        nodes[leader].service.requestJourney(10, 4);
+        List<JourneyResult> journeys = nodes[leader].service.requestJourneys(new int[]{11, 10}, new int[]{6, 2});
+        assertEquals(JourneyResult.Status.ASSIGNED, journeys.get(0).getStatus());
+        assertEquals(JourneyResult.Status.DUPLICATE, journeys.get(1).getStatus());
+        assertThrows(ExistingGroupException.class, () -> nodes[leader].service.requestJourney(11, 1));
+
+        int follower = leader % SIZE + 1;
+        assertThrows(NotPrimaryException.class, () -> nodes[follower].service.requestJourney(12, 1));
+        awaitApplied(nodes[leader].service.lastLsn());
+        assertEquals(2, nodes[follower].service.locate(11).getId());
+
+        // The remaining two nodes elect a new leader and keep every committed write
+        stop(leader);
+        int newLeader = awaitLeader();
+        assertNotEquals(leader, newLeader);
+        List<DropoffResult> dropoffs = nodes[newLeader].service.dropoffs(new int[]{10, 99});
+        assertEquals(DropoffResult.Status.OK, dropoffs.get(0).getStatus());
+        assertEquals(DropoffResult.Status.NOT_FOUND, dropoffs.get(1).getStatus());
+
+        // The old leader comes back from its Raft log and catches up
+        start(leader);
+        awaitApplied(nodes[newLeader].service.lastLsn());
+        for (int id = 1; id <= SIZE; id++) {
+            PersistentService.assertSameState(nodes[newLeader], nodes[id], 10, 11);
+        }
+    }
+
+    @Test
+    void testLeader_ForgetsProposalsItStopsWaitingFor() throws Exception {
+        // Check quorum runs every 2 s, so the leader outlives the client's 100 ms wait
+        startCluster(200, 100);
+        int leader = awaitLeader();
+        nodes[leader].service.loadCars(Arrays.asList(new Car(1, 4)));
+
+        stopAllBut(leader);
+        assertThrows(NotPrimaryException.class, () -> nodes[leader].service.requestJourney(10, 1));
+
+        await(() -> servers[leader].pendingProposals() == 0);
+        assertTrue(servers[leader].isLeader());
+    }
+
+    @Test
+    void testLeader_FailsPendingProposalsWhenItStepsDown() throws Exception {
+        startCluster(50, 10_000);
+        int leader = awaitLeader();
+        nodes[leader].service.loadCars(Arrays.asList(new Car(1, 4)));
+
+        // Losing its majority, the leader steps down long before the client would give up
+        stopAllBut(leader);
+        NotPrimaryException e = assertThrows(NotPrimaryException.class,
+                () -> nodes[leader].service.requestJourney(10, 1));
+
+        assertTrue(e.getMessage().startsWith("Leadership changed"), e.getMessage());
+        await(() -> servers[leader].pendingProposals() == 0);
+    }
+
+    private void startCluster(int electionTicks, long commitTimeoutMillis) throws IOException {
+        for (int id = 1; id <= SIZE; id++) {
+            members.put(id, new InetSocketAddress("localhost", freePort()));
+        }
+        for (int id = 1; id <= SIZE; id++) {
+            start(id, electionTicks, commitTimeoutMillis);
+        }
+    }
+
+    private void stopAllBut(int leader) throws Exception {
+        for (int id = 1; id <= SIZE; id++) {
+            if (id != leader) {
+                stop(id);
+            }
+        }
+    }
+
+    private void start(int id) throws IOException {
+        start(id, 15, 5000);
+    }
+
+    private void start(int id, int electionTicks, long commitTimeoutMillis) throws IOException {
+        RaftStorage storage = new FileRaftStorage(directory.resolve("node-" + id), false);
+        RaftServer[] server = new RaftServer[1];
+        PersistentService node = new PersistentService(new NoOpWriteAheadLog(),
+                fleet -> server[0] = new RaftServer(id, members, storage, fleet::applyCommitted, 10, electionTicks, 3,
+                        commitTimeoutMillis));
+        node.service.recover(null);
+        server[0].start();
+
+        nodes[id] = node;
+        servers[id] = server[0];
+    }
+
+    private void stop(int id) throws Exception {
+        if (servers[id] != null) {
+            servers[id].stop();
+            nodes[id].close();
+            servers[id] = null;
+            nodes[id] = null;
+        }
+    }
+
+    private int awaitLeader() throws InterruptedException {
+        int[] leader = new int[1];
+        await(() -> {
+            for (int id = 1; id <= SIZE; id++) {
+                if (servers[id] != null && servers[id].isLeader()) {
+                    leader[0] = id;
+                    return true;
+                }
+            }
+            return false;
+        });
+        return leader[0];
+    }
+
+    private void awaitApplied(long lsn) throws InterruptedException {
+        await(() -> {
+            for (int id = 1; id <= SIZE; id++) {
+                if (nodes[id] != null && nodes[id].service.lastLsn() < lsn) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for the cluster");
+            Thread.sleep(10);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.cabify.carpooling.raft;
+
+import com.cabify.carpooling.persistence.BinaryWriter;
+import com.cabify.carpooling.persistence.NoOpWriteAheadLog;
+import com.cabify.carpooling.persistence.PersistentService;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * In-process Raft cluster on a simulated network, driven tick by tick from the test thread
+ * with a seeded random source, so every run of a scenario is identical.
+ * Each node applies committed commands to its own CarPoolingService.
+ * The network can be partitioned and made lossy, and nodes can crash and restart from their
+ * storage. Two safety properties are checked on every tick: at most one leader per term, and
+ * every node applies the same command at a given index.
+ */
+final class RaftSimulation implements AutoCloseable {
+
+    static final int ELECTION_TICKS = 10;
+    static final int HEARTBEAT_TICKS = 2;
+
+    private final Random random;
+    private final int[] ids;
+    private final Map<Integer, MemoryRaftStorage> storages = new HashMap<>();
+    private final Map<Integer, RaftNode> nodes = new HashMap<>();
+    private final Map<Integer, PersistentService> services = new HashMap<>();
+
+    private final ArrayDeque<RaftMessage> network = new ArrayDeque<>();
+    private final Set<Long> cutLinks = new HashSet<>();
+    private double dropRate;
+
+    // Safety checks across the whole run
+    private final Map<Long, Integer> leadersByTerm = new HashMap<>();
+    private final Map<Long, byte[]> appliedCommands = new HashMap<>();
+
+    RaftSimulation(int size, long seed) {
+        this.random = new Random(seed);
+        this.ids = new int[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = i + 1;
+        }
+        for (int id : ids) {
+            storages.put(id, new MemoryRaftStorage());
+            start(id);
+        }
+    }
+
+    /**
+     * Advance every live node by the given number of ticks, delivering messages in between.
+     */
+    void tick(int ticks) {
+        for (int t = 0; t < ticks; t++) {
+            for (RaftNode node : nodes.values()) {
+                node.tick();
+            }
+            deliver();
+            checkOneLeaderPerTerm();
+        }
+    }
+
+    /**
+     * Tick until a single leader is known, and return it.
+     */
+    RaftNode awaitLeader() {
+        for (int t = 0; t < ELECTION_TICKS * 20; t++) {
+            RaftNode leader = leader();
+            if (leader != null) {
+                return leader;
+            }
+            tick(1);
+        }
+        return fail("No leader elected");
+    }
+
+    /**
+     * The live leader of the highest term, if every live node that knows a leader agrees.
+     */
+    RaftNode leader() {
+        RaftNode leader = null;
+        for (RaftNode node : nodes.values()) {
+            if (node.isLeader() && (leader == null || node.term() > leader.term())) {
+                leader = node;
+            }
+        }
+        return leader;
+    }
+
+    /**
+     * Propose a command on a node and let it flush, returning its index or -1 if not leader.
+     */
+    long propose(RaftNode node, BinaryWriter command) {
+        long index = node.propose(Arrays.copyOf(command.array(), command.size()));
+        deliver();
+        return index;
+    }
+
+    /**
+     * Tick until every live node has applied everything the leader has, or fail.
+     */
+    void awaitConverged() {
+        for (int t = 0; t < ELECTION_TICKS * 50; t++) {
+            RaftNode leader = leader();
+            if (leader != null && leader.commitIndex() == leader.lastIndex()) {
+                boolean converged = true;
+                for (RaftNode node : nodes.values()) {
+                    converged &= node.lastApplied() == leader.lastIndex();
+                }
+                if (converged) {
+                    return;
+                }
+            }
+            tick(1);
+        }
+        fail("Cluster did not converge");
+    }
+
+    /**
+     * Cut every link between the given nodes and the rest.
+     */
+    void partition(int... group) {
+        Set<Integer> side = new HashSet<>();
+        for (int id : group) {
+            side.add(id);
+        }
+        for (int from : ids) {
+            for (int to : ids) {
+                if (side.contains(from) != side.contains(to)) {
+                    cutLinks.add(link(from, to));
+                }
+            }
+        }
+    }
+
+    void heal() {
+        cutLinks.clear();
+        dropRate = 0;
+    }
+
+    void dropMessages(double rate) {
+        dropRate = rate;
+    }
+
+    void crash(int id) {
+        nodes.remove(id);
+        closeService(services.remove(id));
+    }
+
+    /**
+     * Bring a crashed node back from its storage with an empty state machine, which is
+     * rebuilt by applying the log again as the commit index becomes known.
+     */
+    void restart(int id) {
+        start(id);
+    }
+
+    RaftNode node(int id) {
+        return nodes.get(id);
+    }
+
+    PersistentService service(int id) {
+        return services.get(id);
+    }
+
+    List<PersistentService> liveServices() {
+        return List.copyOf(services.values());
+    }
+
+    /**
+     * Assert every live node stores the same log as the leader.
+     */
+    void assertLogsMatch() {
+        RaftNode leader = leader();
+        for (RaftNode node : nodes.values()) {
+            assertEquals(leader.lastIndex(), node.lastIndex(), "log length of node " + node.id());
+            for (long index = 1; index <= leader.lastIndex(); index++) {
+                assertEquals(leader.termAt(index), node.termAt(index), "term at " + index + " on node " + node.id());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for (PersistentService service : services.values()) {
+            closeService(service);
+        }
+    }
+
+    private void start(int id) {
+        int[] peers = Arrays.stream(ids).filter(peer -> peer != id).toArray();
+        PersistentService service = new PersistentService(new NoOpWriteAheadLog());
+        try {
+            service.service.recover(null);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        RaftNode node = new RaftNode(id, peers, storages.get(id), (index, term, command) -> {
+            byte[] first = appliedCommands.putIfAbsent(index, command);
+            if (first != null) {
+                assertArrayEquals(first, command, "nodes applied different commands at index " + index);
+            }
+            service.fleet.applyCommitted(index, command);
+        }, new Random(random.nextLong()), ELECTION_TICKS, HEARTBEAT_TICKS);
+
+        nodes.put(id, node);
+        services.put(id, service);
+    }
+
+    /**
+     * Flush every node and deliver messages until the network is quiet.
+     */
+    private void deliver() {
+        for (int round = 0; round < 1000; round++) {
+            for (RaftNode node : nodes.values()) {
+                try {
+                    network.addAll(node.flush());
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            if (network.isEmpty()) {
+                return;
+            }
+
+            while (!network.isEmpty()) {
+                RaftMessage message = network.poll();
+                RaftNode target = nodes.get(message.to);
+                boolean dropped = dropRate > 0 && random.nextDouble() < dropRate;
+                if (target != null && nodes.containsKey(message.from)
+                        && !cutLinks.contains(link(message.from, message.to)) && !dropped) {
+                    target.step(message);
+                }
+            }
+        }
+        fail("Network never went quiet");
+    }
+
+    private void checkOneLeaderPerTerm() {
+        for (RaftNode node : nodes.values()) {
+            if (node.isLeader()) {
+                Integer previous = leadersByTerm.putIfAbsent(node.term(), node.id());
+                if (previous != null && previous != node.id()) {
+                    fail("Nodes " + previous + " and " + node.id() + " both led term " + node.term());
+                }
+            }
+        }
+    }
+
+    private static long link(int from, int to) {
+        return ((long) from << 32) | to;
+    }
+
+    private static void closeService(PersistentService service) {
+        try {
+            service.close();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.cabify.carpooling.replication;
+
+import com.cabify.carpooling.exception.GroupNotFoundException;
+import com.cabify.carpooling.exception.NotPrimaryException;
+import com.cabify.carpooling.model.Car;
+import com.cabify.carpooling.persistence.FileWriteAheadLog;
+import com.cabify.carpooling.persistence.NoOpWriteAheadLog;
+import com.cabify.carpooling.persistence.PersistentService;
+import com.cabify.carpooling.persistence.WriteAheadLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Primary-to-follower replication over a localhost socket, between services wired by hand.
+ */
+class ReplicationTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<PersistentService> nodes = new ArrayList<>();
+    private final List<ReplicationServer> servers = new ArrayList<>();
+    private final List<ReplicationClient> clients = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (ReplicationClient client : clients) {
+            client.stop();
+        }
+        for (ReplicationServer server : servers) {
+            server.stop();
+        }
+        for (PersistentService node : nodes) {
+            node.close();
+        }
+    }
+
+    @Test
+    void testFollower_ReceivesSnapshotThenCommands() throws Exception {
+        PersistentService primary = start(new NoOpWriteAheadLog());
+        primary.service.loadCars(Arrays.asList(new Car(1, 4), new Car(2, 6)));
+        primary.service.requestJourney(10, 4);
+        primary.service.requestJourney(11, 6);
+        ReplicationServer server = serve(primary);
+
+        PersistentService follower = start(new NoOpWriteAheadLog());
+        ReplicationClient client = follow(follower, server);
+        awaitCaughtUp(primary, follower);
+
+        // Commands applied after the snapshot arrive through the stream
+        primary.service.requestJourney(12, 3);
+        primary.service.updateFleet(Arrays.asList(new Car(3, 4)), new int[]{2});
+        primary.service.dropoffs(new int[]{11, 99});
+        primary.service.requestJourney(13, 5);
+        awaitCaughtUp(primary, follower);
+
+        PersistentService.assertSameState(primary, follower, 10, 11, 12, 13);
+        assertEquals(3, follower.service.locate(12).getId());
+        assertEquals(0, client.lagRecords());
+        assertEquals(1, primary.replication.subscriberCount());
+    }
+
+    @Test
+    void testFollower_RejectsWritesUntilPromoted() throws Exception {
+        PersistentService primary = start(new NoOpWriteAheadLog());
+        primary.service.loadCars(Arrays.asList(new Car(1, 4)));
+        ReplicationServer server = serve(primary);
+
+        PersistentService follower = start(new NoOpWriteAheadLog());
+        follower.service.setReadOnly(true);
+        ReplicationClient client = follow(follower, server);
+        awaitCaughtUp(primary, follower);
+
+        assertThrows(NotPrimaryException.class, () -> follower.service.requestJourney(1, 2));
+        assertThrows(NotPrimaryException.class, () -> follower.service.loadCars(Arrays.asList(new Car(9, 4))));
+
+        client.stop();
+        clients.remove(client);
+        follower.service.setReadOnly(false);
+        follower.service.requestJourney(1, 2);
+
+        assertEquals(1, follower.service.locate(1).getId());
+        assertThrows(GroupNotFoundException.class, () -> primary.service.locate(1));
+    }
+
+    @Test
+    void testFollower_ResyncsAfterPrimaryRestarts() throws Exception {
+        PersistentService primary = start(new NoOpWriteAheadLog());
+        primary.service.loadCars(Arrays.asList(new Car(1, 4), new Car(2, 4)));
+        ReplicationServer server = serve(primary);
+
+        PersistentService follower = start(new NoOpWriteAheadLog());
+        ReplicationClient client = follow(follower, server);
+        awaitCaughtUp(primary, follower);
+
+        // Writes made while the follower is cut off come back through a new snapshot
+        server.stop();
+        await(() -> !client.isConnected());
+        primary.service.requestJourney(10, 4);
+        primary.service.requestJourney(11, 2);
+        ReplicationServer restarted = new ReplicationServer(primary.service, primary.replication, server.localPort());
+        restarted.start();
+        servers.add(restarted);
+
+        awaitCaughtUp(primary, follower);
+        PersistentService.assertSameState(primary, follower, 10, 11);
+    }
+
+    @Test
+    void testFollower_LogsReplicatedStateLocally() throws Exception {
+        PersistentService primary = start(new NoOpWriteAheadLog());
+        primary.service.loadCars(Arrays.asList(new Car(1, 4), new Car(2, 6)));
+        primary.service.requestJourney(10, 4);
+        ReplicationServer server = serve(primary);
+
+        PersistentService follower = start(new FileWriteAheadLog(directory, 64 * 1024, false));
+        ReplicationClient client = follow(follower, server);
+        primary.service.requestJourney(11, 6);
+        primary.service.requestJourney(12, 2);
+        primary.service.dropoff(10);
+        awaitCaughtUp(primary, follower);
+        client.stop();
+        clients.remove(client);
+        follower.close();
+        nodes.remove(follower);
+
+        // A restarted follower rebuilds the replicated state from its own log
+        PersistentService recovered = start(new FileWriteAheadLog(directory, 64 * 1024, false));
+
+        PersistentService.assertSameState(primary, recovered, 10, 11, 12);
+        assertEquals(primary.service.lastLsn(), recovered.service.lastLsn());
+    }
+
+    private PersistentService start(WriteAheadLog wal) throws Exception {
+        PersistentService node = new PersistentService(wal);
+        nodes.add(node);
+        node.service.recover(null);
+        return node;
+    }
+
+    private ReplicationServer serve(PersistentService primary) throws Exception {
+        ReplicationServer server = new ReplicationServer(primary.service, primary.replication, 0);
+        server.start();
+        servers.add(server);
+        return server;
+    }
+
+    private ReplicationClient follow(PersistentService follower, ReplicationServer server) {
+        ReplicationClient client = new ReplicationClient(follower.service, "localhost", server.localPort());
+        client.start();
+        clients.add(client);
+        return client;
+    }
+
+    private static void awaitCaughtUp(PersistentService primary, PersistentService follower) throws InterruptedException {
+        await(() -> follower.service.lastLsn() == primary.service.lastLsn());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for replication");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.cabify.carpooling.repository.inmemory;
+
+import com.cabify.carpooling.model.Car;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the array car store's lookups, which run without the monitor.
+ */
+class InMemoryCarRepositoryTest {
+
+    private static final int READERS = 4;
+
+    @Test
+    void testLookups_FindCarsWhileRetiredCarsAreRemoved() throws Exception {
+        InMemoryCarRepository repository = new InMemoryCarRepository();
+        int numCars = 1 << 15;
+        List<Car> fleet = new ArrayList<>();
+        for (int carId = 1; carId <= numCars; carId++) {
+            fleet.add(new Car(carId, 6));
+        }
+        repository.replaceAll(fleet);
+
+        ExecutorService executor = Executors.newFixedThreadPool(READERS + 1);
+        AtomicInteger misses = new AtomicInteger();
+        List<Future<?>> readers = new ArrayList<>();
+
+        // Odd cars are never touched, so every lookup must find them unchanged
+        for (int i = 0; i < READERS; i++) {
+            readers.add(executor.submit(() -> {
+                for (int round = 0; round < 200; round++) {
+                    for (int carId = 1; carId <= numCars; carId += 2) {
+                        Car car = repository.get(carId);
+                        if (car == null || car.getId() != carId || !repository.contains(carId)
+                                || repository.isRetired(carId) || repository.getAvailableSeats(carId) != 6) {
+                            misses.incrementAndGet();
+                        }
+                    }
+                }
+            }));
+        }
+
+        // Meanwhile even cars are retired with a seat taken, then removed as the seat is released,
+        // like a striped dropoff freeing a retired car
+        AtomicBoolean readersDone = new AtomicBoolean();
+        Future<?> remover = executor.submit(() -> {
+            while (!readersDone.get()) {
+                for (int carId = 2; carId <= numCars; carId += 2) {
+                    repository.put(new Car(carId, 6));
+                    repository.tryReserveSeats(carId, 1);
+                    repository.retire(carId);
+                }
+                for (int carId = 2; carId <= numCars; carId += 2) {
+                    repository.releaseSeats(carId, 1);
+                }
+            }
+        });
+
+        for (Future<?> reader : readers) {
+            reader.get();
+        }
+        readersDone.set(true);
+        remover.get();
+        executor.shutdown();
+
+        assertEquals(0, misses.get());
+        for (int carId = 2; carId <= numCars; carId += 2) {
+            assertFalse(repository.contains(carId));
+        }
+    }
+}
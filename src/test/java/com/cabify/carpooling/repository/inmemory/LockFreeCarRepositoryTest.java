@@ -0,0 +1,203 @@
+package com.cabify.carpooling.repository.inmemory;
+
+import com.cabify.carpooling.model.Car;
+import com.cabify.carpooling.repository.CarRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the lock-free car store: same allocation order as the array store on one thread,
+ * and no over-committed car under concurrent reservations.
+ */
+class LockFreeCarRepositoryTest {
+
+    private static final int THREADS = 8;
+
+    @Test
+    void testSameAllocationOrderAsArrayStore() {
+        CarRepository expected = new InMemoryCarRepository();
+        CarRepository actual = new LockFreeCarRepository();
+        expected.replaceAll(fleet(200));
+        actual.replaceAll(fleet(200));
+
+        SplittableRandom random = new SplittableRandom(7);
+        List<int[]> reservations = new ArrayList<>();
+
+        for (int i = 0; i < 100_000; i++) {
+            int people = 1 + random.nextInt(6);
+            int operation = random.nextInt(10);
+
+            if (operation < 4) {
+                Integer carId = expected.findAndReserveCar(people);
+                assertEquals(carId, actual.findAndReserveCar(people), "operation " + i);
+                if (carId != null) {
+                    reservations.add(new int[]{carId, people});
+                }
+            } else if (operation < 6) {
+                int carId = 1 + random.nextInt(210);
+                boolean reserved = expected.tryReserveSeats(carId, people);
+                assertEquals(reserved, actual.tryReserveSeats(carId, people), "operation " + i);
+                if (reserved) {
+                    reservations.add(new int[]{carId, people});
+                }
+            } else if (operation < 9 && !reservations.isEmpty()) {
+                int[] reservation = reservations.remove(random.nextInt(reservations.size()));
+                assertEquals(expected.releaseSeats(reservation[0], reservation[1]),
+                        actual.releaseSeats(reservation[0], reservation[1]), "operation " + i);
+            } else if (operation == 9) {
+                int carId = 1 + random.nextInt(210);
+                Car car = new Car(carId, 4 + random.nextInt(3));
+                if (random.nextBoolean() && expected.contains(carId)) {
+                    expected.retire(carId);
+                    actual.retire(carId);
+                } else if (car.getSeats() >= occupied(expected, carId)) {
+                    expected.put(car);
+                    actual.put(car);
+                }
+            }
+        }
+
+        for (int seats = 0; seats <= 6; seats++) {
+            assertEquals(expected.countCars(seats), actual.countCars(seats), "seats " + seats);
+        }
+        for (int carId = 1; carId <= 210; carId++) {
+            assertEquals(expected.contains(carId), actual.contains(carId), "car " + carId);
+            if (expected.contains(carId)) {
+                assertEquals(expected.get(carId).getSeats(), actual.get(carId).getSeats(), "car " + carId);
+            }
+            assertEquals(expected.getAvailableSeats(carId), actual.getAvailableSeats(carId), "car " + carId);
+            assertEquals(expected.isRetired(carId), actual.isRetired(carId), "car " + carId);
+        }
+    }
+
+    @Test
+    void testConcurrentReservations_NeverOverCommit() throws Exception {
+        int numCars = 32;
+        LockFreeCarRepository repository = new LockFreeCarRepository();
+        repository.replaceAll(fleet(numCars));
+
+        // Seats each thread holds per car, counted after the store grants them and before the
+        // store gets them back, so a count above the car's seats is a real over-commit
+        AtomicIntegerArray held = new AtomicIntegerArray(numCars + 1);
+        AtomicInteger overCommits = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int seed = t;
+            workers.add(executor.submit(() -> {
+                SplittableRandom random = new SplittableRandom(seed);
+                Deque<int[]> reservations = new ArrayDeque<>();
+
+                for (int i = 0; i < 200_000; i++) {
+                    int people = 1 + random.nextInt(6);
+                    Integer carId = null;
+
+                    if (reservations.size() < 8 && random.nextBoolean()) {
+                        carId = repository.findAndReserveCar(people);
+                    } else if (reservations.size() < 8) {
+                        int candidate = 1 + random.nextInt(numCars);
+                        carId = repository.tryReserveSeats(candidate, people) ? candidate : null;
+                    } else {
+                        int[] reservation = reservations.poll();
+                        held.addAndGet(reservation[0], -reservation[1]);
+                        repository.releaseSeats(reservation[0], reservation[1]);
+                    }
+
+                    if (carId != null) {
+                        if (held.addAndGet(carId, people) > seatsOf(carId)) {
+                            overCommits.incrementAndGet();
+                        }
+                        reservations.add(new int[]{carId, people});
+                    }
+                }
+
+                // Stop holding half of the reservations, keep the rest for the final check
+                while (reservations.size() > 4) {
+                    int[] reservation = reservations.poll();
+                    held.addAndGet(reservation[0], -reservation[1]);
+                    repository.releaseSeats(reservation[0], reservation[1]);
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        executor.shutdown();
+
+        assertEquals(0, overCommits.get(), "cars over-committed");
+
+        int[] cars = new int[7];
+        for (int carId = 1; carId <= numCars; carId++) {
+            int available = repository.getAvailableSeats(carId);
+            assertEquals(seatsOf(carId) - held.get(carId), available, "car " + carId);
+            cars[available]++;
+        }
+        for (int seats = 0; seats <= 6; seats++) {
+            assertEquals(cars[seats], repository.countCars(seats), "seats " + seats);
+        }
+    }
+
+    @Test
+    void testConcurrentFindAndReserve_GrantsEverySeatOnce() throws Exception {
+        int numCars = 500;
+        LockFreeCarRepository repository = new LockFreeCarRepository();
+        repository.replaceAll(fleet(numCars));
+
+        int totalSeats = 0;
+        for (int carId = 1; carId <= numCars; carId++) {
+            totalSeats += seatsOf(carId);
+        }
+
+        AtomicInteger granted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            workers.add(executor.submit(() -> {
+                while (repository.findAndReserveCar(1) != null) {
+                    granted.incrementAndGet();
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        executor.shutdown();
+
+        assertEquals(totalSeats, granted.get());
+        assertEquals(numCars, repository.countCars(0));
+        for (int carId = 1; carId <= numCars; carId++) {
+            assertEquals(0, repository.getAvailableSeats(carId), "car " + carId);
+        }
+    }
+
+    private static int occupied(CarRepository repository, int carId) {
+        Car car = repository.get(carId);
+
+        return car != null ? car.getSeats() - repository.getAvailableSeats(carId) : 0;
+    }
+
+    private static int seatsOf(int carId) {
+        return 4 + carId % 3;
+    }
+
+    private static List<Car> fleet(int size) {
+        List<Car> cars = new ArrayList<>(size);
+        for (int carId = 1; carId <= size; carId++) {
+            cars.add(new Car(carId, seatsOf(carId)));
+        }
+        return cars;
+    }
+}
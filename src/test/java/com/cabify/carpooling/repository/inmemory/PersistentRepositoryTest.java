@@ -0,0 +1,166 @@
+package com.cabify.carpooling.repository.inmemory;
+
+import com.cabify.carpooling.engine.PublishedState;
+import com.cabify.carpooling.model.Car;
+import com.cabify.carpooling.repository.CarRepository;
+import com.cabify.carpooling.repository.GroupRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the persistent stores: same allocation and queue order as the array stores, and a
+ * published version left untouched by the writes after it.
+ */
+class PersistentRepositoryTest {
+
+    @Test
+    void testCars_SameAllocationOrderAsArrayStore() {
+        CarRepository expected = new InMemoryCarRepository();
+        CarRepository actual = new PersistentCarRepository(new PersistentState());
+        expected.replaceAll(fleet(200));
+        actual.replaceAll(fleet(200));
+
+        SplittableRandom random = new SplittableRandom(7);
+        List<int[]> reservations = new ArrayList<>();
+
+        for (int i = 0; i < 100_000; i++) {
+            int people = 1 + random.nextInt(6);
+            int operation = random.nextInt(10);
+
+            if (operation < 4) {
+                Integer carId = expected.findAndReserveCar(people);
+                assertEquals(carId, actual.findAndReserveCar(people), "operation " + i);
+                if (carId != null) {
+                    reservations.add(new int[]{carId, people});
+                }
+            } else if (operation < 6) {
+                int carId = 1 + random.nextInt(210);
+                boolean reserved = expected.tryReserveSeats(carId, people);
+                assertEquals(reserved, actual.tryReserveSeats(carId, people), "operation " + i);
+                if (reserved) {
+                    reservations.add(new int[]{carId, people});
+                }
+            } else if (operation < 9 && !reservations.isEmpty()) {
+                int[] reservation = reservations.remove(random.nextInt(reservations.size()));
+                assertEquals(expected.releaseSeats(reservation[0], reservation[1]),
+                        actual.releaseSeats(reservation[0], reservation[1]), "operation " + i);
+            } else if (operation == 9) {
+                int carId = 1 + random.nextInt(210);
+                Car car = new Car(carId, 4 + random.nextInt(3));
+                if (random.nextBoolean() && expected.contains(carId)) {
+                    expected.retire(carId);
+                    actual.retire(carId);
+                } else if (car.getSeats() >= occupied(expected, carId)) {
+                    expected.put(car);
+                    actual.put(car);
+                }
+            }
+        }
+
+        for (int seats = 0; seats <= 6; seats++) {
+            assertEquals(expected.countCars(seats), actual.countCars(seats), "seats " + seats);
+        }
+        for (int carId = 1; carId <= 210; carId++) {
+            assertEquals(expected.contains(carId), actual.contains(carId), "car " + carId);
+            assertEquals(expected.getAvailableSeats(carId), actual.getAvailableSeats(carId), "car " + carId);
+            assertEquals(expected.isRetired(carId), actual.isRetired(carId), "car " + carId);
+        }
+    }
+
+    @Test
+    void testGroups_SameQueueOrderAsArrayStore() {
+        GroupRepository expected = new InMemoryGroupRepository();
+        GroupRepository actual = new PersistentGroupRepository(new PersistentState());
+        SplittableRandom random = new SplittableRandom(11);
+
+        for (int i = 0; i < 100_000; i++) {
+            int groupId = 1 + random.nextInt(500);
+            int people = 1 + random.nextInt(6);
+
+            switch (random.nextInt(6)) {
+                case 0:
+                case 1:
+                    // Arrives again with a new size, to the back of the queues
+                    expected.dequeue(groupId);
+                    actual.dequeue(groupId);
+                    expected.save(groupId, people);
+                    actual.save(groupId, people);
+                    expected.enqueue(groupId, people);
+                    actual.enqueue(groupId, people);
+                    break;
+                case 2:
+                    expected.dequeue(groupId);
+                    actual.dequeue(groupId);
+                    break;
+                case 3:
+                    expected.remove(groupId);
+                    actual.remove(groupId);
+                    break;
+                case 4:
+                    Integer oldest = expected.findOldestWaitingGroup(people);
+                    assertEquals(oldest, actual.findOldestWaitingGroup(people), "operation " + i);
+                    if (oldest != null) {
+                        expected.dequeue(oldest);
+                        actual.dequeue(oldest);
+                    }
+                    break;
+                default:
+                    assertEquals(expected.areThereGroupsForAllocation(people),
+                            actual.areThereGroupsForAllocation(people), "operation " + i);
+                    assertEquals(expected.countWaiting(people), actual.countWaiting(people), "operation " + i);
+            }
+        }
+
+        assertEquals(expected.getWaitingQueue(), actual.getWaitingQueue());
+        for (int groupId = 1; groupId <= 500; groupId++) {
+            assertEquals(expected.getPeople(groupId), actual.getPeople(groupId), "group " + groupId);
+        }
+    }
+
+    @Test
+    void testPublishedVersion_UnchangedByLaterWrites() {
+        PersistentState state = new PersistentState();
+        PersistentCarRepository cars = new PersistentCarRepository(state);
+        PersistentJourneyRepository journeys = new PersistentJourneyRepository(state);
+        cars.replaceAll(fleet(10));
+        state.publish();
+        PublishedState.Version published = state.latest();
+
+        Integer carId = cars.findAndReserveCar(4);
+        journeys.save(1, carId);
+
+        // A query on the published version sees the state before the writes
+        assertEquals(seatsOf(carId), published.read(() -> cars.getAvailableSeats(carId)));
+        assertNull(published.read(() -> journeys.getCar(1)));
+        assertEquals(seatsOf(carId) - 4, cars.getAvailableSeats(carId));
+        assertEquals(carId, journeys.getCar(1));
+
+        // Discarding drops the writes since the last publish
+        state.discard();
+        assertEquals(seatsOf(carId), cars.getAvailableSeats(carId));
+        assertNull(journeys.getCar(1));
+    }
+
+    private static int occupied(CarRepository repository, int carId) {
+        Car car = repository.get(carId);
+
+        return car != null ? car.getSeats() - repository.getAvailableSeats(carId) : 0;
+    }
+
+    private static int seatsOf(int carId) {
+        return 4 + carId % 3;
+    }
+
+    private static List<Car> fleet(int size) {
+        List<Car> cars = new ArrayList<>(size);
+        for (int carId = 1; carId <= size; carId++) {
+            cars.add(new Car(carId, seatsOf(carId)));
+        }
+        return cars;
+    }
+}
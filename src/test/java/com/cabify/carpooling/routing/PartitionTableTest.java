@@ -0,0 +1,43 @@
+package com.cabify.carpooling.routing;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionTableTest {
+
+    @Test
+    void testParse_TrimsNodesAndTrailingSlashes() {
+        PartitionTable table = PartitionTable.parse(" http://a:9091/, http://b:9092 ,");
+
+        assertEquals(2, table.size());
+        assertEquals(URI.create("http://a:9091"), table.node(0));
+        assertEquals(URI.create("http://b:9092"), table.node(1));
+        assertThrows(IllegalArgumentException.class, () -> PartitionTable.parse(" , "));
+    }
+
+    @Test
+    void testPartitionOf_SpreadsSimilarPoolIdsEvenly() {
+        for (int size = 1; size <= 8; size++) {
+            PartitionTable table = PartitionTable.parse("http://node" + ",http://node".repeat(size - 1));
+            int[] counts = new int[size];
+            for (int i = 1; i <= 100_000; i++) {
+                counts[table.partitionOf("pool-" + i)]++;
+            }
+
+            for (int count : counts) {
+                assertEquals(100_000.0 / size, count, 100_000 * 0.02, "partitions: " + size);
+            }
+        }
+    }
+
+    @Test
+    void testPartitionOf_PutsFleetWithoutPoolOnFirstNode() {
+        PartitionTable table = PartitionTable.parse("http://a:9091,http://b:9092,http://c:9093");
+
+        assertEquals(0, table.partitionOf(null));
+        assertEquals(table.partitionOf("madrid"), table.partitionOf(new String("madrid")));
+    }
+}
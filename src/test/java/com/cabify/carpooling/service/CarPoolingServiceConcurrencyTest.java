@@ -1,5 +1,6 @@
 package com.cabify.carpooling.service;
 
+import com.cabify.carpooling.exception.GroupNotFoundException;
 import com.cabify.carpooling.model.Car;
 import com.cabify.carpooling.repository.CarRepository;
 import com.cabify.carpooling.repository.GroupRepository;
@@ -13,6 +14,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -313,6 +315,171 @@ class CarPoolingServiceConcurrencyTest {
         }
     }
 
+    @Test
+    void testConcurrentDropoffsAndRequests_KeepSeatsAndAssignmentsConsistent() throws InterruptedException {
+        int numCars = 20;
+        List<Car> fleet = new ArrayList<>();
+        for (int carId = 1; carId <= numCars; carId++) {
+            fleet.add(new Car(carId, 6));
+        }
+        carPoolingService.loadCars(fleet);
+
+        // Two groups of 3 in every car, then a queue of mixed sizes
+        int travelling = 2 * numCars;
+        int initialGroups = travelling + 200;
+        for (int groupId = 1; groupId <= initialGroups; groupId++) {
+            carPoolingService.requestJourney(groupId, groupId <= travelling ? 3 : 1 + groupId % 6);
+        }
+
+        int numThreads = 8;
+        int totalGroups = initialGroups + 200;
+        AtomicInteger nextDropoff = new AtomicInteger(1);
+        AtomicInteger nextRequest = new AtomicInteger(initialGroups + 1);
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        CountDownLatch latch = new CountDownLatch(numThreads);
+
+        // Drop off the first groups in order, many of them on different cars at once,
+        // while new groups keep arriving
+        for (int i = 0; i < numThreads; i++) {
+            executor.submit(() -> {
+                try {
+                    for (int groupId = nextDropoff.getAndIncrement(); groupId <= initialGroups - 40;
+                         groupId = nextDropoff.getAndIncrement()) {
+                        carPoolingService.dropoff(groupId);
+
+                        int newGroupId = nextRequest.getAndIncrement();
+                        if (newGroupId <= totalGroups) {
+                            carPoolingService.requestJourney(newGroupId, 1 + newGroupId % 6);
+                        }
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+
+        assertTrue(latch.await(60, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        // Every remaining group is either travelling or waiting, never both
+        Map<Integer, Integer> waiting = groupRepository.getWaitingQueue();
+        int[] occupiedSeats = new int[numCars + 1];
+        for (int groupId = 1; groupId <= totalGroups; groupId++) {
+            Integer people = groupRepository.getPeople(groupId);
+            Integer carId = journeyRepository.getCar(groupId);
+            if (people == null) {
+                assertNull(carId, "Group " + groupId + " was dropped off but still travels");
+                assertFalse(waiting.containsKey(groupId), "Group " + groupId + " was dropped off but still waits");
+                continue;
+            }
+
+            assertTrue(carId != null ^ waiting.containsKey(groupId),
+                    "Group " + groupId + " must be either travelling or waiting");
+            if (carId != null) {
+                occupiedSeats[carId] += people;
+            }
+        }
+
+        // No car carries more people than it has seats, and its free seats add up
+        for (int carId = 1; carId <= numCars; carId++) {
+            assertTrue(occupiedSeats[carId] <= 6, "Car " + carId + " is over-committed");
+            assertEquals(6 - occupiedSeats[carId], carRepository.getAvailableSeats(carId), "car " + carId);
+        }
+    }
+
+    @Test
+    void testConcurrentDropoffsAndRetirements_KeepCarsFindable() throws InterruptedException {
+        int numCars = 2000;
+        List<Car> fleet = new ArrayList<>();
+        for (int carId = 1; carId <= numCars; carId++) {
+            fleet.add(new Car(carId, 6));
+        }
+        carPoolingService.loadCars(fleet);
+
+        // One group of 4 in every car, and a queue of groups too large for the 2 seats left
+        int[] carOf = new int[numCars + 1];
+        for (int groupId = 1; groupId <= numCars; groupId++) {
+            carPoolingService.requestJourney(groupId, 4);
+            carOf[groupId] = carPoolingService.locate(groupId).getId();
+        }
+        for (int groupId = numCars + 1; groupId <= numCars + 500; groupId++) {
+            carPoolingService.requestJourney(groupId, 3);
+        }
+
+        int dropoffThreads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(dropoffThreads + 2);
+        CountDownLatch dropoffsDone = new CountDownLatch(dropoffThreads + 1);
+        AtomicInteger nextDropoff = new AtomicInteger(1);
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+
+        // Dropping off the last group of a retired car removes it, while other cars are looked up
+        for (int i = 0; i < dropoffThreads; i++) {
+            executor.submit(() -> {
+                try {
+                    for (int groupId = nextDropoff.getAndIncrement(); groupId <= numCars;
+                         groupId = nextDropoff.getAndIncrement()) {
+                        carPoolingService.dropoff(groupId);
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                } finally {
+                    dropoffsDone.countDown();
+                }
+            });
+        }
+        executor.submit(() -> {
+            try {
+                for (int first = 2; first <= numCars; first += 100) {
+                    int[] retired = new int[50];
+                    for (int i = 0; i < retired.length; i++) {
+                        retired[i] = first + 2 * i;
+                    }
+                    carPoolingService.updateFleet(Collections.emptyList(), retired);
+                }
+            } catch (Throwable e) {
+                failures.add(e);
+            } finally {
+                dropoffsDone.countDown();
+            }
+        });
+        executor.submit(() -> {
+            while (dropoffsDone.getCount() > 0) {
+                for (int groupId = 1; groupId <= numCars; groupId++) {
+                    try {
+                        Car car = carPoolingService.locate(groupId);
+                        if (car == null || car.getId() != carOf[groupId]) {
+                            failures.add(new AssertionError("Group " + groupId + " located in " + car));
+                        }
+                    } catch (GroupNotFoundException e) {
+                        // Dropped off meanwhile
+                    }
+                }
+            }
+        });
+
+        assertTrue(dropoffsDone.await(60, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(Collections.emptyList(), failures);
+
+        // Cars still in service have exactly the seats their travelling groups leave free
+        int[] occupiedSeats = new int[numCars + 1];
+        for (int groupId = numCars + 1; groupId <= numCars + 500; groupId++) {
+            Integer carId = journeyRepository.getCar(groupId);
+            if (carId != null) {
+                occupiedSeats[carId] += 3;
+            }
+        }
+        for (int carId = 1; carId <= numCars; carId++) {
+            if (carId % 2 == 1) {
+                assertFalse(carRepository.isRetired(carId));
+                assertEquals(6 - occupiedSeats[carId], carRepository.getAvailableSeats(carId), "car " + carId);
+            } else if (occupiedSeats[carId] == 0) {
+                assertFalse(carRepository.contains(carId), "Free retired car " + carId + " is still stored");
+            }
+        }
+    }
+
     @Test
     void testHighConcurrencyStressTest() throws InterruptedException {
         carPoolingService.loadCars(Arrays.asList(
@@ -2,7 +2,9 @@ package com.cabify.carpooling.service;
 
 import com.cabify.carpooling.exception.ExistingGroupException;
 import com.cabify.carpooling.exception.GroupNotFoundException;
+import com.cabify.carpooling.exception.InvalidPayloadException;
 import com.cabify.carpooling.model.Car;
+import com.cabify.carpooling.model.DropoffResult;
 import com.cabify.carpooling.repository.CarRepository;
 import com.cabify.carpooling.repository.GroupRepository;
 import com.cabify.carpooling.repository.JourneyRepository;
@@ -286,6 +288,143 @@ class CarPoolingServiceTest {
         assertNull(journeyRepository.getCar(5)); // Still queued
     }
 
+    @Test
+    void testReallocation_KeepsArrivalOrderAcrossGroupSizes() {
+        carPoolingService.loadCars(Arrays.asList(new Car(1, 6)));
+
+        // Fill car
+        carPoolingService.requestJourney(1, 6);
+
+        // Queue groups of mixed sizes: 4, 2, 1, 3
+        carPoolingService.requestJourney(2, 4);
+        carPoolingService.requestJourney(3, 2);
+        carPoolingService.requestJourney(4, 1);
+        carPoolingService.requestJourney(5, 3);
+
+        // Dropoff to free 6 seats
+        carPoolingService.dropoff(1);
+
+        // Oldest groups first: 4 + 2 = 6, the later groups of 1 and 3 keep waiting
+        assertEquals(1, journeyRepository.getCar(2));
+        assertEquals(1, journeyRepository.getCar(3));
+        assertNull(journeyRepository.getCar(4));
+        assertNull(journeyRepository.getCar(5));
+        assertEquals(Arrays.asList(4, 5), Arrays.asList(groupRepository.getWaitingQueue().keySet().toArray()));
+    }
+
+    @Test
+    void testGroupRepository_FindOldestWaitingGroup() {
+        groupRepository.save(1, 5);
+        groupRepository.save(2, 2);
+        groupRepository.save(3, 1);
+        groupRepository.enqueue(1, 5);
+        groupRepository.enqueue(2, 2);
+        groupRepository.enqueue(3, 1);
+
+        assertEquals(1, groupRepository.findOldestWaitingGroup(6));
+        assertEquals(2, groupRepository.findOldestWaitingGroup(4));
+        assertEquals(3, groupRepository.findOldestWaitingGroup(1));
+
+        groupRepository.remove(2);
+        assertEquals(3, groupRepository.findOldestWaitingGroup(4));
+        assertNull(groupRepository.findOldestWaitingGroup(0));
+    }
+
+    @Test
+    void testDropoffs_ReleasesAllSeatsBeforeReallocating() {
+        carPoolingService.loadCars(Arrays.asList(new Car(1, 4), new Car(2, 4)));
+
+        // Fill both cars with groups of 2
+        carPoolingService.requestJourney(1, 2);
+        carPoolingService.requestJourney(2, 2);
+        carPoolingService.requestJourney(3, 2);
+        carPoolingService.requestJourney(4, 2);
+
+        // A group of 4 waits, then a group of 2
+        carPoolingService.requestJourney(5, 4);
+        carPoolingService.requestJourney(6, 2);
+
+        // Freeing both halves of car 1 in one batch lets the group of 4 in
+        List<DropoffResult> results = carPoolingService.dropoffs(new int[] {1, 999, 2});
+
+        assertEquals(3, results.size());
+        assertEquals(DropoffResult.Status.OK, results.get(0).getStatus());
+        assertEquals(DropoffResult.Status.NOT_FOUND, results.get(1).getStatus());
+        assertEquals(999, results.get(1).getGroupId());
+        assertEquals(DropoffResult.Status.OK, results.get(2).getStatus());
+
+        assertNull(groupRepository.getPeople(1));
+        assertNull(groupRepository.getPeople(2));
+        assertEquals(1, journeyRepository.getCar(5));
+        assertNull(journeyRepository.getCar(6));
+        assertEquals(0, carRepository.getAvailableSeats(1));
+    }
+
+    @Test
+    void testUpdateFleet_NewAndEnlargedCarsDrainQueue() {
+        carPoolingService.loadCars(Arrays.asList(new Car(1, 4)));
+
+        carPoolingService.requestJourney(1, 3);
+        carPoolingService.requestJourney(2, 4);
+        carPoolingService.requestJourney(3, 2);
+        carPoolingService.requestJourney(4, 1);
+
+        // Car 1 grows to 6 seats (3 free) and car 2 joins with 4 seats
+        carPoolingService.updateFleet(Arrays.asList(new Car(1, 6), new Car(2, 4)), new int[0]);
+
+        assertEquals(1, journeyRepository.getCar(1));
+        assertEquals(1, journeyRepository.getCar(3));
+        assertEquals(1, journeyRepository.getCar(4));
+        assertEquals(2, journeyRepository.getCar(2));
+        assertEquals(6, carRepository.get(1).getSeats());
+        assertEquals(0, carRepository.getAvailableSeats(1));
+        assertEquals(0, carRepository.getAvailableSeats(2));
+    }
+
+    @Test
+    void testUpdateFleet_RetiredCarEmptiesThenDisappears() {
+        carPoolingService.loadCars(Arrays.asList(new Car(1, 4), new Car(2, 4)));
+
+        carPoolingService.requestJourney(1, 2);
+        carPoolingService.updateFleet(Arrays.asList(), new int[] {1, 2});
+
+        // The empty car leaves at once, the busy one stays for its group
+        assertNull(carRepository.get(2));
+        assertTrue(carRepository.isRetired(1));
+
+        // A retired car takes no new groups, even after a dropoff frees seats
+        carPoolingService.requestJourney(2, 1);
+        carPoolingService.requestJourney(3, 2);
+        assertNull(journeyRepository.getCar(2));
+
+        carPoolingService.dropoff(1);
+
+        assertNull(carRepository.get(1));
+        assertNull(journeyRepository.getCar(2));
+        assertNull(journeyRepository.getCar(3));
+        assertEquals(2, groupRepository.getWaitingQueue().size());
+    }
+
+    @Test
+    void testUpdateFleet_RejectsShrinkBelowOccupancy() {
+        carPoolingService.loadCars(Arrays.asList(new Car(1, 6)));
+        carPoolingService.requestJourney(1, 4);
+
+        assertThrows(InvalidPayloadException.class, () -> carPoolingService.updateFleet(
+                Arrays.asList(new Car(2, 4), new Car(1, 3)), new int[0]));
+        assertThrows(InvalidPayloadException.class, () -> carPoolingService.updateFleet(
+                Arrays.asList(), new int[] {99}));
+
+        // Nothing from the rejected updates was applied
+        assertNull(carRepository.get(2));
+        assertEquals(6, carRepository.get(1).getSeats());
+
+        // Shrinking down to the occupied seats is fine
+        carPoolingService.updateFleet(Arrays.asList(new Car(1, 4)), new int[0]);
+        assertEquals(0, carRepository.getAvailableSeats(1));
+        assertEquals(1, carPoolingService.locate(1).getId());
+    }
+
     @Test
     void testRequestJourney_AlreadyAssignedGroup() {
         carPoolingService.loadCars(Arrays.asList(new Car(1, 6)));
@@ -0,0 +1,10 @@
+package com.cabify.carpooling.service;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Runs the CarPoolingService unit tests against the combining engine.
+ */
+@SpringBootTest(properties = "carpooling.engine.mode=combining")
+class CombiningCarPoolingServiceTest extends CarPoolingServiceTest {
+}
@@ -0,0 +1,10 @@
+package com.cabify.carpooling.service;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Runs the CarPoolingService concurrency tests against the copy-on-write engine.
+ */
+@SpringBootTest(properties = "carpooling.engine.mode=copy-on-write")
+class CopyOnWriteCarPoolingServiceConcurrencyTest extends CarPoolingServiceConcurrencyTest {
+}
@@ -0,0 +1,10 @@
+package com.cabify.carpooling.service;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Runs the CarPoolingService unit tests against the lock-free car store.
+ */
+@SpringBootTest(properties = "carpooling.cars.store=lock-free")
+class LockFreeCarPoolingServiceTest extends CarPoolingServiceTest {
+}
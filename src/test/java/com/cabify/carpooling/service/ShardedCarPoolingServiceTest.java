@@ -0,0 +1,160 @@
+package com.cabify.carpooling.service;
+
+import com.cabify.carpooling.engine.PoolingEngine;
+import com.cabify.carpooling.engine.ShardedEngine;
+import com.cabify.carpooling.exception.ExistingGroupException;
+import com.cabify.carpooling.exception.GroupNotFoundException;
+import com.cabify.carpooling.exception.InvalidPayloadException;
+import com.cabify.carpooling.model.Car;
+import com.cabify.carpooling.model.DropoffResult;
+import com.cabify.carpooling.model.JourneyResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CarPoolingService tests for the sharded engine, through the service API and the metrics only:
+ * the shards hold their own repositories, so the global ones the other service tests read stay
+ * empty.
+ */
+@SpringBootTest(properties = {"carpooling.engine.mode=sharded", "carpooling.engine.shards=4"})
+class ShardedCarPoolingServiceTest {
+
+    @Autowired
+    private CarPoolingService service;
+
+    @Autowired
+    private PoolingEngine engine;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Test
+    void testRequestJourneys_ReportsResultPerGroup() {
+        service.loadCars(Collections.singletonList(new Car(1, 4)));
+
+        List<JourneyResult> results = service.requestJourneys(new int[]{10, 11, 10}, new int[]{4, 1, 2});
+
+        assertEquals(JourneyResult.Status.ASSIGNED, results.get(0).getStatus());
+        assertEquals(1, results.get(0).getCar().getId());
+        assertEquals(JourneyResult.Status.QUEUED, results.get(1).getStatus());
+        assertEquals(JourneyResult.Status.DUPLICATE, results.get(2).getStatus());
+        assertEquals(1, service.locate(10).getId());
+        assertNull(service.locate(11));
+    }
+
+    @Test
+    void testDropoffs_ReportsUnknownGroupsAndRefills() {
+        service.loadCars(Collections.singletonList(new Car(1, 4)));
+        service.requestJourney(10, 4);
+        service.requestJourney(11, 3);
+
+        List<DropoffResult> results = service.dropoffs(new int[]{10, 99, 10});
+
+        assertEquals(DropoffResult.Status.OK, results.get(0).getStatus());
+        assertEquals(DropoffResult.Status.NOT_FOUND, results.get(1).getStatus());
+        assertEquals(DropoffResult.Status.NOT_FOUND, results.get(2).getStatus());
+        assertEquals(1, service.locate(11).getId());
+    }
+
+    @Test
+    void testDuplicateAndUnknownGroups_AreRejected() {
+        service.loadCars(Collections.singletonList(new Car(1, 4)));
+        service.requestJourney(10, 2);
+
+        assertThrows(ExistingGroupException.class, () -> service.requestJourney(10, 2));
+        assertThrows(GroupNotFoundException.class, () -> service.locate(99));
+        assertThrows(GroupNotFoundException.class, () -> service.dropoff(99));
+
+        service.dropoff(10);
+        assertThrows(GroupNotFoundException.class, () -> service.locate(10));
+        assertThrows(GroupNotFoundException.class, () -> service.dropoff(10));
+    }
+
+    @Test
+    void testDropoff_RefillsOldestGroupThatFits() {
+        service.loadCars(Collections.singletonList(new Car(1, 4)));
+        // Groups of the car's own shard are served strictly oldest first
+        int[] groups = groupsOfShardOf(1, 4);
+        service.requestJourney(groups[0], 4);
+        service.requestJourney(groups[1], 3);
+        service.requestJourney(groups[2], 2);
+        service.requestJourney(groups[3], 1);
+
+        service.dropoff(groups[0]);
+
+        assertEquals(1, service.locate(groups[1]).getId());
+        assertNull(service.locate(groups[2]));
+        assertEquals(1, service.locate(groups[3]).getId());
+    }
+
+    @Test
+    void testUpdateFleet_ChecksWholeUpdateThenFillsNewCars() {
+        service.loadCars(Collections.singletonList(new Car(1, 4)));
+        service.requestJourney(10, 4);
+        service.requestJourney(11, 5);
+
+        service.updateFleet(Collections.singletonList(new Car(2, 6)), new int[0]);
+        assertEquals(2, service.locate(11).getId());
+
+        // Shrinking below occupancy or retiring an unknown car changes nothing
+        assertThrows(InvalidPayloadException.class,
+                () -> service.updateFleet(Collections.singletonList(new Car(2, 4)), new int[0]));
+        assertThrows(InvalidPayloadException.class,
+                () -> service.updateFleet(Collections.singletonList(new Car(3, 6)), new int[]{42}));
+        assertEquals(6, service.locate(11).getSeats());
+
+        // A retired car keeps its journey but is not refilled
+        service.updateFleet(Collections.emptyList(), new int[]{1});
+        assertEquals(1, service.locate(10).getId());
+        service.requestJourney(12, 4);
+        service.dropoff(10);
+        assertNull(service.locate(12));
+    }
+
+    @Test
+    void testMetrics_GaugesAddUpShardsAndReallocationsAreCounted() {
+        service.loadCars(Collections.singletonList(new Car(1, 4)));
+        service.requestJourneys(new int[]{10, 11, 12}, new int[]{4, 3, 1});
+
+        assertEquals(1, gauge("carpooling.journeys.active"));
+        assertEquals(0, gauge("carpooling.free.seats"));
+        assertEquals(1, registry.get("carpooling.cars").tag("available_seats", "0").gauge().value());
+        assertEquals(1, registry.get("carpooling.waiting.groups").tag("people", "3").gauge().value());
+        assertEquals(1, registry.get("carpooling.waiting.groups").tag("people", "1").gauge().value());
+
+        // Both waiting groups fit in the freed car, whichever shard they wait in
+        double reallocated = registry.get("carpooling.reallocated.groups").counter().count();
+        service.dropoff(10);
+
+        assertEquals(reallocated + 2, registry.get("carpooling.reallocated.groups").counter().count());
+        assertEquals(2, gauge("carpooling.journeys.active"));
+        assertEquals(0, registry.get("carpooling.waiting.groups").tag("people", "3").gauge().value());
+    }
+
+    private double gauge(String name) {
+        return registry.get(name).gauge().value();
+    }
+
+    /**
+     * Pick group IDs of the same shard as the given car.
+     */
+    private int[] groupsOfShardOf(int carId, int count) {
+        ShardedEngine sharded = (ShardedEngine) engine;
+        int[] groups = new int[count];
+
+        int found = 0;
+        for (int groupId = 1; found < count; groupId++) {
+            if (sharded.shardOf(groupId) == sharded.shardOf(carId)) {
+                groups[found++] = groupId;
+            }
+        }
+        return groups;
+    }
+}
@@ -0,0 +1,174 @@
+package com.cabify.carpooling.service;
+
+import com.cabify.carpooling.engine.PoolingEngine;
+import com.cabify.carpooling.engine.ShardedEngine;
+import com.cabify.carpooling.exception.ExistingGroupException;
+import com.cabify.carpooling.exception.GroupNotFoundException;
+import com.cabify.carpooling.model.Car;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the sharded engine, through the service only: each shard has its own state, so
+ * the shards are checked to behave as one fleet.
+ */
+@SpringBootTest(properties = {"carpooling.engine.mode=sharded", "carpooling.engine.shards=4"})
+class ShardedFleetTest {
+
+    private static final int THREADS = 8;
+
+    @Autowired
+    private CarPoolingService service;
+
+    @Autowired
+    private PoolingEngine engine;
+
+    @Test
+    void testRequestJourney_OverflowsToCarOfAnotherShard() {
+        service.loadCars(Collections.singletonList(new Car(1, 4)));
+        int[] groups = groupsOfNextShard(1, 2);
+
+        service.requestJourney(groups[0], 4);
+        service.requestJourney(groups[1], 1);
+
+        assertEquals(1, service.locate(groups[0]).getId());
+        assertNull(service.locate(groups[1]));
+        assertThrows(ExistingGroupException.class, () -> service.requestJourney(groups[0], 2));
+    }
+
+    @Test
+    void testDropoff_OffersFreedSeatsToGroupsOfOtherShards() {
+        service.loadCars(Collections.singletonList(new Car(1, 4)));
+        int[] groups = groupsOfNextShard(1, 4);
+
+        service.requestJourney(groups[0], 4);
+        service.requestJourney(groups[1], 3);
+        service.requestJourney(groups[2], 2);
+        service.requestJourney(groups[3], 2);
+
+        // Oldest group that fits first, then the next one that fits in the seats left
+        service.dropoff(groups[0]);
+        assertEquals(1, service.locate(groups[1]).getId());
+        assertNull(service.locate(groups[2]));
+
+        service.dropoff(groups[1]);
+        assertEquals(1, service.locate(groups[2]).getId());
+        assertEquals(1, service.locate(groups[3]).getId());
+
+        assertThrows(GroupNotFoundException.class, () -> service.locate(groups[0]));
+        assertThrows(GroupNotFoundException.class, () -> service.dropoff(groups[0]));
+    }
+
+    @Test
+    void testUpdateFleet_NewCarTakesGroupsOfEveryShard() {
+        service.loadCars(Collections.singletonList(new Car(1, 4)));
+        int[] groups = groupsOfNextShard(2, 3);
+        service.requestJourney(groups[0], 4);
+        service.requestJourney(groups[1], 3);
+        service.requestJourney(groups[2], 3);
+
+        service.updateFleet(Collections.singletonList(new Car(2, 6)), new int[0]);
+
+        assertEquals(2, service.locate(groups[1]).getId());
+        assertEquals(2, service.locate(groups[2]).getId());
+    }
+
+    @Test
+    void testConcurrentChurn_ShardsBehaveAsOneFleet() throws Exception {
+        int numCars = 40;
+        List<Car> cars = new ArrayList<>();
+        for (int carId = 1; carId <= numCars; carId++) {
+            cars.add(new Car(carId, 4 + carId % 3));
+        }
+        service.loadCars(cars);
+
+        // Each thread owns the group IDs congruent to its index, so no two threads touch a group
+        int[][] live = new int[THREADS][];
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            workers.add(executor.submit(() -> {
+                SplittableRandom random = new SplittableRandom(thread);
+                int[] groups = new int[30];
+                int nextGroup = 0;
+
+                for (int i = 0; i < 3_000; i++) {
+                    int slot = random.nextInt(groups.length);
+                    if (groups[slot] != 0) {
+                        service.dropoff(groups[slot]);
+                        groups[slot] = 0;
+                    } else {
+                        groups[slot] = 1 + thread + THREADS * nextGroup++;
+                        service.requestJourney(groups[slot], peopleOf(groups[slot]));
+                    }
+                }
+                live[thread] = groups;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        executor.shutdown();
+
+        int[] occupied = new int[numCars + 1];
+        List<Integer> waiting = new ArrayList<>();
+        for (int[] groups : live) {
+            for (int groupId : groups) {
+                if (groupId == 0) {
+                    continue;
+                }
+                Car car = service.locate(groupId);
+                if (car != null) {
+                    occupied[car.getId()] += peopleOf(groupId);
+                } else {
+                    waiting.add(groupId);
+                }
+            }
+        }
+
+        int maxFreeSeats = 0;
+        for (int carId = 1; carId <= numCars; carId++) {
+            int seats = 4 + carId % 3;
+            assertTrue(occupied[carId] <= seats, "car " + carId + " over-committed: " + occupied[carId]);
+            maxFreeSeats = Math.max(maxFreeSeats, seats - occupied[carId]);
+        }
+        // No group may wait while a car of any shard has room for it
+        for (int groupId : waiting) {
+            assertTrue(peopleOf(groupId) > maxFreeSeats,
+                    "group " + groupId + " of " + peopleOf(groupId) + " waits next to " + maxFreeSeats + " free seats");
+        }
+    }
+
+    private static int peopleOf(int groupId) {
+        return 1 + groupId % 6;
+    }
+
+    /**
+     * Pick group IDs of the shard after the given car's one; waiting groups are only served
+     * oldest first within their own shard.
+     */
+    private int[] groupsOfNextShard(int carId, int count) {
+        ShardedEngine sharded = (ShardedEngine) engine;
+        int[] groups = new int[count];
+
+        int found = 0;
+        for (int groupId = 1; found < count; groupId++) {
+            if (sharded.shardOf(groupId) == (sharded.shardOf(carId) + 1) % sharded.shardCount()) {
+                groups[found++] = groupId;
+            }
+        }
+        return groups;
+    }
+}
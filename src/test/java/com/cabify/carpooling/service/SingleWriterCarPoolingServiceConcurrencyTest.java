@@ -0,0 +1,10 @@
+package com.cabify.carpooling.service;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Runs the CarPoolingService concurrency tests against the single-writer engine.
+ */
+@SpringBootTest(properties = "carpooling.engine.mode=single-writer")
+class SingleWriterCarPoolingServiceConcurrencyTest extends CarPoolingServiceConcurrencyTest {
+}
@@ -0,0 +1,10 @@
+package com.cabify.carpooling.service;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Runs the CarPoolingService unit tests against the single-writer engine.
+ */
+@SpringBootTest(properties = "carpooling.engine.mode=single-writer")
+class SingleWriterCarPoolingServiceTest extends CarPoolingServiceTest {
+}